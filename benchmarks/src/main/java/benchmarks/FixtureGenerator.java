@@ -0,0 +1,85 @@
+package benchmarks;
+
+import bftsmart.consensus.messages.ConsensusMessage;
+import bftsmart.consensus.messages.MessageFactory;
+import bftsmart.tom.core.messages.TOMMessage;
+import bftsmart.tom.core.messages.TOMMessageType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+public class FixtureGenerator {
+
+    private static final String DEFAULT_OUTPUT_DIRECTORY = "benchmarks/src/main/resources/fixtures";
+    private static final int MAC_LENGTH = 32;
+    private static final long SEED = 42;
+
+    private FixtureGenerator(){}
+
+    public static void main(String[] args) throws IOException {
+        File directory = new File(args.length > 0 ? args[0] : DEFAULT_OUTPUT_DIRECTORY);
+        if (!directory.isDirectory() && !directory.mkdirs()){
+            throw new IOException("Couldn't create the fixture directory " + directory);
+        }
+        Random random = new Random(SEED);
+        write(new File(directory, Fixtures.OBJECT_AT_OFFSET_0), serialize(newTomMessage(random)));
+        write(new File(directory, Fixtures.OBJECT_AT_OFFSET_N), frame(serialize(newConsensusMessage(random)), random));
+        write(new File(directory, Fixtures.NO_OBJECT), noise(1460, random));
+        write(new File(directory, Fixtures.NO_OBJECT_LARGE), noise(65495, random));
+    }
+
+    static TOMMessage newTomMessage(Random random){
+        byte[] content = new byte[256];
+        random.nextBytes(content);
+        return new TOMMessage(1001, 0, 17, 17, content, 0, TOMMessageType.ORDERED_REQUEST);
+    }
+
+    static ConsensusMessage newConsensusMessage(Random random){
+        byte[] value = new byte[512];
+        random.nextBytes(value);
+        return new MessageFactory(0).createPropose(42, 0, value);
+    }
+
+    public static byte[] serialize(Object object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bytes)){
+            oos.writeObject(object);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static byte[] frame(byte[] serializedMessage, Random random) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bytes);
+        dos.writeInt(serializedMessage.length);
+        dos.write(serializedMessage);
+        byte[] mac = new byte[MAC_LENGTH];
+        random.nextBytes(mac);
+        dos.write(mac);
+        dos.flush();
+        return bytes.toByteArray();
+    }
+
+    public static byte[] noise(int length, Random random){
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        for (int i = 0; i < bytes.length; i++){
+            if (bytes[i] == (byte) 0xAC){ bytes[i] = 0; }
+        }
+        return bytes;
+    }
+
+    private static void write(File file, byte[] bytes) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)){
+            out.write(bytes);
+        }
+        System.out.println("Wrote " + bytes.length + " bytes to " + file);
+    }
+
+}
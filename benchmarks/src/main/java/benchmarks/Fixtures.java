@@ -0,0 +1,102 @@
+package benchmarks;
+
+import org.pcap4j.packet.EthernetPacket;
+import org.pcap4j.packet.IllegalRawDataException;
+import org.pcap4j.packet.IpV4Packet;
+import org.pcap4j.packet.IpV4Rfc791Tos;
+import org.pcap4j.packet.Packet;
+import org.pcap4j.packet.TcpPacket;
+import org.pcap4j.packet.UnknownPacket;
+import org.pcap4j.packet.namednumber.DataLinkType;
+import org.pcap4j.packet.namednumber.EtherType;
+import org.pcap4j.packet.namednumber.IpNumber;
+import org.pcap4j.packet.namednumber.IpVersion;
+import org.pcap4j.packet.namednumber.TcpPort;
+import org.pcap4j.util.MacAddress;
+import sniffer.CapturedPacket;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+public final class Fixtures {
+
+    public static final String OBJECT_AT_OFFSET_0 = "tom-message.bin";
+    public static final String OBJECT_AT_OFFSET_N = "framed-consensus-message.bin";
+    public static final String NO_OBJECT = "noise.bin";
+    public static final String NO_OBJECT_LARGE = "noise-large.bin";
+
+    private Fixtures(){}
+
+    public static byte[] load(String name){
+        try (InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name)){
+            if (in == null){ throw new IllegalArgumentException("Unknown fixture: " + name); }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int read; (read = in.read(buffer)) != -1; ){
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toByteArray();
+        } catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static CapturedPacket loadAsCapturedPacket(String name){
+        return capture(toTcpPacket(load(name), 11000, 11001));
+    }
+
+    public static CapturedPacket capture(Packet packet){
+        return new CapturedPacket(packet, System.currentTimeMillis() * 1_000_000L, packet.length(), DataLinkType.EN10MB.value());
+    }
+
+    public static Packet loadAsTcpPacket(String name){
+        return toTcpPacket(load(name), 11000, 11001);
+    }
+
+    public static Packet toTcpPacket(byte[] payload, int srcPort, int dstPort){
+        try {
+            Inet4Address srcAddr = (Inet4Address) InetAddress.getByName("10.0.0.1");
+            Inet4Address dstAddr = (Inet4Address) InetAddress.getByName("10.0.0.2");
+            TcpPacket.Builder tcp = new TcpPacket.Builder()
+                    .srcPort(TcpPort.getInstance((short) srcPort))
+                    .dstPort(TcpPort.getInstance((short) dstPort))
+                    .sequenceNumber(1)
+                    .acknowledgmentNumber(1)
+                    .dataOffset((byte) 5)
+                    .ack(true)
+                    .psh(true)
+                    .window((short) 65535)
+                    .srcAddr(srcAddr)
+                    .dstAddr(dstAddr)
+                    .correctChecksumAtBuild(true)
+                    .correctLengthAtBuild(true)
+                    .payloadBuilder(new UnknownPacket.Builder().rawData(payload));
+            IpV4Packet.Builder ip = new IpV4Packet.Builder()
+                    .version(IpVersion.IPV4)
+                    .tos(IpV4Rfc791Tos.newInstance((byte) 0))
+                    .ttl((byte) 64)
+                    .protocol(IpNumber.TCP)
+                    .srcAddr(srcAddr)
+                    .dstAddr(dstAddr)
+                    .correctChecksumAtBuild(true)
+                    .correctLengthAtBuild(true)
+                    .payloadBuilder(tcp);
+            EthernetPacket.Builder ethernet = new EthernetPacket.Builder()
+                    .srcAddr(MacAddress.getByName("02:00:00:00:00:01"))
+                    .dstAddr(MacAddress.getByName("02:00:00:00:00:02"))
+                    .type(EtherType.IPV4)
+                    .paddingAtBuild(true)
+                    .payloadBuilder(ip);
+            byte[] frame = ethernet.build().getRawData();
+            return EthernetPacket.newPacket(frame, 0, frame.length);
+        } catch (UnknownHostException | IllegalRawDataException e){
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
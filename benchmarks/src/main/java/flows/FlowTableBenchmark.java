@@ -0,0 +1,68 @@
+package flows;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FlowTableBenchmark {
+
+    @Param({"1000", "100000"})
+    public int numFlows;
+
+    @Param({"false", "true"})
+    public boolean offHeap;
+
+    private long[] addresses;
+    private long[] portsAndProtocols;
+    private FlowKey[] keys;
+    private FlowTable flowTable;
+    private Map<FlowKey, long[]> flowMap;
+    private int next;
+    private long timestamp;
+
+    @Setup
+    public void setUp(){
+        Random random = new Random(42);
+        addresses = new long[numFlows];
+        portsAndProtocols = new long[numFlows];
+        keys = new FlowKey[numFlows];
+        for (int i = 0; i < numFlows; i++){
+            keys[i] = new FlowKey(4, 6, random.nextInt(), random.nextInt(0x10000), random.nextInt(), 11000);
+            addresses[i] = keys[i].packAddresses();
+            portsAndProtocols[i] = keys[i].packPortsAndProtocol();
+        }
+        flowTable = new FlowTable(numFlows * 2, offHeap);
+        flowMap = new HashMap<>();
+    }
+
+    @Benchmark
+    public int flowTableUpdate(){
+        int i = nextFlow();
+        return flowTable.update(addresses[i], portsAndProtocols[i], 1500, timestamp += 1000);
+    }
+
+    @Benchmark
+    public long[] hashMapUpdate(){
+        int i = nextFlow();
+        long[] stats = flowMap.computeIfAbsent(keys[i].copy(), k -> new long[3]);
+        stats[0]++;
+        stats[1] += 1500;
+        stats[2] = timestamp += 1000;
+        return stats;
+    }
+
+    private int nextFlow(){
+        next = (next * 1103515245 + 12345) & 0x7FFFFFFF;
+        return next % numFlows;
+    }
+
+}
@@ -0,0 +1,305 @@
+package loadtest;
+
+import metrics.LatencySnapshot;
+import output.GroupCommitSettings;
+import packetSinks.AbstractPacketSink;
+import packetSinks.PacketDeserializationAnalysisFileOutputter;
+import packetSinks.PcapFileOutputter;
+import pcap.CaptureFileFormat;
+import pcap.CaptureFileReader;
+import queues.OverflowPolicy;
+import queues.RingBufferSettings;
+import queues.WaitStrategy;
+import records.PayloadMode;
+import records.RecordFormat;
+import records.RecordSettings;
+import scheduler.ExecutionMode;
+import scheduler.SinkScheduler;
+import sniffer.CapturedPacket;
+import sniffer.Sniffer;
+import windows.WindowSettings;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Finds the packet rate at which the pipeline starts losing data. A pcap file of synthetic BFT-SMaRt traffic
+ * is replayed through a {@link Sniffer} into the analysis and raw capture sinks, configured as in the console,
+ * at increasing speeds after a warm-up run. Rates double until a step drops packets or falls behind, then the boundary is bisected.
+ * Every step reports the achieved rate, the drops at each stage and the sinks' tail latencies.
+ * <p>
+ * With --direct the file is replayed straight into the sinks, for hosts without libpcap or capture rights.
+ */
+public class LoadTest {
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "usage: LoadTest [--file <pcap file>] [--rate <start packets/s>] [--max-rate <packets/s>] [--packets <n>] [--flows <n>]",
+            "                [--mix <request>,<consensus>,<noise>] [--message-bytes <min>-<max>] [--max-drop-rate <fraction>]",
+            "                [--bisections <n>] [--direct]",
+            "generates the traffic into --file (or a temporary file) unless the file already exists");
+
+    private static final RingBufferSettings SNIFFER_QUEUE_SETTINGS = new RingBufferSettings(65536, OverflowPolicy.DROP_NEWEST, WaitStrategy.PARK);
+    private static final RingBufferSettings SINK_QUEUE_SETTINGS = new RingBufferSettings(16384, OverflowPolicy.DROP_NEWEST, WaitStrategy.PARK);
+    private static final RecordSettings RECORD_SETTINGS = new RecordSettings(RecordFormat.BINARY, PayloadMode.FULL);
+    private static final double MIN_ACHIEVED_FRACTION = 0.95;
+    private static final long DRAIN_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private LoadTest(){}
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> options = parseOptions(args);
+        if (options == null){
+            System.out.println(USAGE);
+            return;
+        }
+        TrafficSettings traffic = trafficSettings(options);
+        double maxRate = Double.parseDouble(options.getOrDefault("max-rate", "10000000"));
+        double maxDropRate = Double.parseDouble(options.getOrDefault("max-drop-rate", "0"));
+        int bisections = Integer.parseInt(options.getOrDefault("bisections", "3"));
+        boolean direct = options.containsKey("direct");
+
+        File file = (options.containsKey("file") ? new File(options.get("file")) : File.createTempFile("loadtest", ".pcap"));
+        if (!options.containsKey("file")){ file.deleteOnExit(); }
+        if (!options.containsKey("file") || !file.exists()){
+            TrafficGenerator generator = new TrafficGenerator(traffic);
+            generator.write(file);
+            System.out.printf("Generated %s: %s (%d requests, %d consensus messages, %d noise messages over %.1f s)%n", file, traffic,
+                    generator.getNumRequests(), generator.getNumConsensusMessages(), generator.getNumNoiseMessages(), generator.getDurationNanos() / 1e9);
+        }
+        double recordedRate = recordedRate(file);
+
+        runStep(file, traffic.getPacketsPerSecond(), traffic.getPacketsPerSecond() / recordedRate, direct); // warms up the JIT
+        System.out.println(StepResult.HEADER);
+        double sustainable = 0;
+        double unsustainable = 0;
+        for (double rate = traffic.getPacketsPerSecond(); rate <= maxRate; rate *= 2){
+            StepResult result = runStep(file, rate, rate / recordedRate, direct);
+            System.out.println(result);
+            if (!result.isSustainable(maxDropRate)){
+                unsustainable = rate;
+                break;
+            }
+            sustainable = rate;
+        }
+        for (int i = 0; i < bisections && sustainable > 0 && unsustainable > 0; i++){
+            double rate = (sustainable + unsustainable) / 2;
+            StepResult result = runStep(file, rate, rate / recordedRate, direct);
+            System.out.println(result);
+            if (result.isSustainable(maxDropRate)){
+                sustainable = rate;
+            } else {
+                unsustainable = rate;
+            }
+        }
+        if (sustainable == 0){
+            System.out.println("Not even the starting rate was sustainable - lower --rate");
+        } else {
+            System.out.printf("Highest sustainable rate: %.0f packets/s%s%n", sustainable,
+                    (unsustainable == 0 ? " (the highest rate tried - raise --max-rate)" : ""));
+        }
+    }
+
+    private static Map<String, String> parseOptions(String[] args){
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++){
+            if (!args[i].startsWith("--")){ return null; }
+            String name = args[i].substring(2);
+            if (name.equals("direct")){
+                options.put(name, "");
+            } else if (i + 1 < args.length){
+                options.put(name, args[++i]);
+            } else {
+                return null;
+            }
+        }
+        return options;
+    }
+
+    private static TrafficSettings trafficSettings(Map<String, String> options){
+        TrafficSettings defaults = TrafficSettings.DEFAULT;
+        String[] mix = options.getOrDefault("mix", defaults.getRequestWeight() + "," + defaults.getConsensusWeight() + "," + defaults.getNoiseWeight()).split(",");
+        String[] messageBytes = options.getOrDefault("message-bytes", defaults.getMinMessageBytes() + "-" + defaults.getMaxMessageBytes()).split("-");
+        if (mix.length != 3 || messageBytes.length != 2){ throw new IllegalArgumentException(USAGE); }
+        return new TrafficSettings(Double.parseDouble(options.getOrDefault("rate", String.valueOf(defaults.getPacketsPerSecond()))),
+                Integer.parseInt(options.getOrDefault("packets", String.valueOf(defaults.getNumPackets()))),
+                Integer.parseInt(options.getOrDefault("flows", String.valueOf(defaults.getNumFlows()))),
+                Double.parseDouble(mix[0]), Double.parseDouble(mix[1]), Double.parseDouble(mix[2]),
+                Integer.parseInt(messageBytes[0]), Integer.parseInt(messageBytes[1]), defaults.isLengthPrefixed(), defaults.getSeed());
+    }
+
+    private static double recordedRate(File file) throws IOException {
+        try (CaptureFileReader reader = new CaptureFileReader(file)){
+            CapturedPacket first = reader.next();
+            CapturedPacket last = first;
+            long numPackets = 0;
+            for (CapturedPacket packet = first; packet != null; packet = reader.next()){
+                last = packet;
+                numPackets++;
+            }
+            if (numPackets < 2 || last.getTimestampNanos() == first.getTimestampNanos()){
+                throw new IOException("The capture file needs at least two packets with distinct timestamps: " + file);
+            }
+            return (numPackets - 1) * 1e9 / (last.getTimestampNanos() - first.getTimestampNanos());
+        }
+    }
+
+    private static StepResult runStep(File file, double targetRate, double speed, boolean direct) throws IOException, InterruptedException {
+        File outputDirectory = Files.createTempDirectory("loadtest").toFile();
+        SinkScheduler scheduler = new SinkScheduler();
+        PacketDeserializationAnalysisFileOutputter analysis;
+        StepResult result;
+        try {
+            analysis = new PacketDeserializationAnalysisFileOutputter(new File(outputDirectory, "analysis.txt").getPath(),
+                    SINK_QUEUE_SETTINGS, PacketDeserializationAnalysisFileOutputter.DEFAULT_ANALYSIS_PARALLELISM, PacketDeserializationAnalysisFileOutputter.DEFAULT_FLOW_TABLE_CAPACITY,
+                    false, PacketDeserializationAnalysisFileOutputter.DEFAULT_FLOW_IDLE_TIMEOUT_NANOS, GroupCommitSettings.DEFAULT, WindowSettings.DEFAULT, RECORD_SETTINGS);
+            PcapFileOutputter rawCapture = new PcapFileOutputter(new File(outputDirectory, "raw").getPath(), CaptureFileFormat.PCAP,
+                    PcapFileOutputter.NO_ROTATION, PcapFileOutputter.NO_ROTATION, SINK_QUEUE_SETTINGS);
+            List<AbstractPacketSink> sinks = Arrays.asList(analysis, rawCapture);
+            scheduler.schedule("analysis", analysis, ExecutionMode.DEDICATED);
+            scheduler.schedule("raw capture", rawCapture, ExecutionMode.DEDICATED);
+
+            result = new StepResult(targetRate);
+            long start = System.nanoTime();
+            if (direct){
+                result.handedToSinks = replayDirect(file, speed, sinks);
+            } else {
+                Sniffer sniffer = new Sniffer(file, speed, SNIFFER_QUEUE_SETTINGS);
+                for (AbstractPacketSink sink : sinks){
+                    sniffer.addSink(sink);
+                }
+                sniffer.run();
+                if (sniffer.getNumCapturedPackets() == 0){
+                    throw new IllegalStateException("The Sniffer couldn't replay " + file + " - replays need libpcap; --direct drives the sinks straight from the file");
+                }
+                result.captured = sniffer.getNumCapturedPackets();
+                result.snifferDropped = sniffer.getNumDroppedPackets();
+                result.handedToSinks = result.captured - result.snifferDropped;
+            }
+            awaitDrained(sinks, result.handedToSinks);
+            result.elapsedNanos = System.nanoTime() - start;
+            result.analysisDropped = analysis.getNumDroppedPackets();
+            result.rawCaptureDropped = rawCapture.getNumDroppedPackets();
+            result.analysisLatency = analysis.getCaptureToSinkLatency().snapshot();
+            result.rawCaptureLatency = rawCapture.getCaptureToSinkLatency().snapshot();
+        } finally {
+            scheduler.shutdownNow();
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+            deleteRecursively(outputDirectory);
+        }
+        result.analyzeLatency = analysis.getAnalysisLatency().snapshot();
+        return result;
+    }
+
+    private static long replayDirect(File file, double speed, List<AbstractPacketSink> sinks) throws IOException {
+        for (AbstractPacketSink sink : sinks){
+            sink.incrementNumActiveSources();
+        }
+        long numPackets = 0;
+        try (CaptureFileReader reader = new CaptureFileReader(file)){
+            long firstTimestampNanos = Long.MIN_VALUE;
+            long startNanos = 0;
+            CapturedPacket packet;
+            while ((packet = reader.next()) != null){
+                if (firstTimestampNanos == Long.MIN_VALUE){
+                    firstTimestampNanos = packet.getTimestampNanos();
+                    startNanos = System.nanoTime();
+                }
+                long delay = startNanos + Math.round((packet.getTimestampNanos() - firstTimestampNanos) / speed) - System.nanoTime();
+                if (delay > 0){ LockSupport.parkNanos(delay); }
+                CapturedPacket released = new CapturedPacket(packet.getRawData(), packet.getTimestampNanos(), packet.getOriginalLength(), packet.getDataLinkType());
+                for (AbstractPacketSink sink : sinks){
+                    sink.acceptPacket(released);
+                }
+                numPackets++;
+            }
+        } finally {
+            for (AbstractPacketSink sink : sinks){
+                sink.decrementNumActiveSources();
+            }
+        }
+        return numPackets;
+    }
+
+    private static void awaitDrained(List<AbstractPacketSink> sinks, long numPackets) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MILLIS;
+        for (AbstractPacketSink sink : sinks){
+            while (sink.getNumProcessedPackets() + sink.getNumDroppedPackets() + sink.getNumSampledOutPackets() < numPackets){
+                if (System.currentTimeMillis() > deadline){ throw new IllegalStateException("A sink stopped making progress"); }
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    private static void deleteRecursively(File file){
+        File[] children = file.listFiles();
+        if (children != null){
+            for (File child : children){
+                deleteRecursively(child);
+            }
+        }
+        if (!file.delete()){ file.deleteOnExit(); }
+    }
+
+    private static class StepResult {
+
+        private static final String HEADER = String.format("%12s %12s %10s %10s %10s   %-22s %-22s %10s",
+                "target/s", "achieved/s", "sniffer", "analysis", "raw", "analysis p50/p99/p99.9", "raw p50/p99/p99.9", "analyze");
+        private static final String LATENCY_UNIT = "us";
+
+        private final double targetRate;
+        private long captured;
+        private long snifferDropped;
+        private long handedToSinks;
+        private long analysisDropped;
+        private long rawCaptureDropped;
+        private long elapsedNanos;
+        private LatencySnapshot analysisLatency;
+        private LatencySnapshot rawCaptureLatency;
+        private LatencySnapshot analyzeLatency;
+
+        private StepResult(double targetRate){
+            this.targetRate = targetRate;
+        }
+
+        private long getNumPackets(){
+            return Math.max(captured, handedToSinks);
+        }
+
+        private double getAchievedRate(){
+            return getNumPackets() * 1e9 / elapsedNanos;
+        }
+
+        private double getDropRate(){
+            long delivered = Math.min(handedToSinks - analysisDropped, handedToSinks - rawCaptureDropped);
+            return 1 - (double) delivered / getNumPackets();
+        }
+
+        private boolean isSustainable(double maxDropRate){
+            return getDropRate() <= maxDropRate && getAchievedRate() >= targetRate * MIN_ACHIEVED_FRACTION;
+        }
+
+        private static String dropRate(long dropped, long total){
+            return String.format("%.3f%%", (total == 0 ? 0 : 100.0 * dropped / total));
+        }
+
+        private static String percentiles(LatencySnapshot latency){
+            return String.format("%d/%d/%d %s", latency.getP50Nanos() / 1000, latency.getP99Nanos() / 1000, latency.getP999Nanos() / 1000, LATENCY_UNIT);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%12.0f %12.0f %10s %10s %10s   %-22s %-22s %10s", targetRate, getAchievedRate(),
+                    dropRate(snifferDropped, captured), dropRate(analysisDropped, handedToSinks), dropRate(rawCaptureDropped, handedToSinks),
+                    percentiles(analysisLatency), percentiles(rawCaptureLatency), (analyzeLatency.getP99Nanos() / 1000) + " " + LATENCY_UNIT);
+        }
+
+    }
+
+}
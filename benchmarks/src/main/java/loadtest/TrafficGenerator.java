@@ -0,0 +1,174 @@
+package loadtest;
+
+import benchmarks.FixtureGenerator;
+import bftsmart.consensus.messages.MessageFactory;
+import bftsmart.tom.core.messages.TOMMessage;
+import bftsmart.tom.core.messages.TOMMessageType;
+import pcap.CaptureFileFormat;
+import pcap.CaptureFileWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Writes a pcap file of client connections to a BFT-SMaRt replica. Each packet is a complete
+ * Ethernet/IPv4/TCP frame with valid checksums. The payloads are freshly serialized TOMMessages,
+ * consensus messages (propose, write and accept), or noise, in the configured mix.
+ */
+public class TrafficGenerator {
+
+    private static final int LINK_TYPE_ETHERNET = 1;
+    private static final int MAX_SEGMENT_BYTES = 1460;
+    private static final int ETHERNET_HEADER_LENGTH = 14;
+    private static final int IP_HEADER_LENGTH = 20;
+    private static final int TCP_HEADER_LENGTH = 20;
+    private static final int HEADERS_LENGTH = ETHERNET_HEADER_LENGTH + IP_HEADER_LENGTH + TCP_HEADER_LENGTH;
+    private static final int TCP_PROTOCOL = 6;
+    private static final int CLIENT_NETWORK = 0x0A000000; // 10.0.0.0/8
+    private static final int SERVER_ADDRESS = 0x0A640001; // 10.100.0.1
+    private static final int FIRST_CLIENT_PORT = 40000;
+    private static final int SERVER_PORT = 11000;
+    private static final int HASH_LENGTH = 32;
+    private static final long START_NANOS = 1_700_000_000L * 1_000_000_000L;
+    private static final byte[] CLIENT_MAC = {0x02, 0, 0, 0, 0, 0x01};
+    private static final byte[] SERVER_MAC = {0x02, 0, 0, 0, 0, 0x02};
+
+    private final TrafficSettings settings;
+    private final Random random;
+    private final int[] sequenceNumbers;
+    private final MessageFactory consensusMessages;
+    private long timestampNanos;
+    private int ipIdentification;
+    private int numRequests;
+    private int numConsensusMessages;
+    private int numNoiseMessages;
+
+    public TrafficGenerator(TrafficSettings settings){
+        this.settings = settings;
+        this.random = new Random(settings.getSeed());
+        this.sequenceNumbers = new int[settings.getNumFlows()];
+        this.consensusMessages = new MessageFactory(0);
+    }
+
+    public void write(File file) throws IOException {
+        timestampNanos = START_NANOS;
+        try (CaptureFileWriter writer = new CaptureFileWriter(file, CaptureFileFormat.PCAP)){
+            int numWritten = 0;
+            while (numWritten < settings.getNumPackets()){
+                int flow = random.nextInt(settings.getNumFlows());
+                byte[] message = nextMessage();
+                for (int offset = 0; offset < message.length && numWritten < settings.getNumPackets(); offset += MAX_SEGMENT_BYTES){
+                    byte[] frame = frame(flow, message, offset, Math.min(MAX_SEGMENT_BYTES, message.length - offset));
+                    timestampNanos += nextInterArrivalNanos();
+                    writer.writePacket(timestampNanos, frame.length, LINK_TYPE_ETHERNET, frame, 0, frame.length);
+                    numWritten++;
+                }
+            }
+        }
+    }
+
+    private long nextInterArrivalNanos(){
+        return Math.round(-Math.log(1 - random.nextDouble()) * 1e9 / settings.getPacketsPerSecond());
+    }
+
+    private byte[] nextMessage() throws IOException {
+        double totalWeight = settings.getRequestWeight() + settings.getConsensusWeight() + settings.getNoiseWeight();
+        double pick = random.nextDouble() * totalWeight;
+        int size = settings.getMinMessageBytes() + random.nextInt(settings.getMaxMessageBytes() - settings.getMinMessageBytes() + 1);
+        if (pick < settings.getRequestWeight()){
+            Object request = newRequest(size);
+            numRequests++;
+            return objectPayload(request);
+        } else if (pick < settings.getRequestWeight() + settings.getConsensusWeight()){
+            Object consensusMessage = newConsensusMessage(size);
+            numConsensusMessages++;
+            return objectPayload(consensusMessage);
+        } else {
+            numNoiseMessages++;
+            return FixtureGenerator.noise(size, random);
+        }
+    }
+
+    private TOMMessage newRequest(int size){
+        byte[] content = new byte[size];
+        random.nextBytes(content);
+        return new TOMMessage(1000 + random.nextInt(settings.getNumFlows()), 0, numRequests, numRequests, content, 0, TOMMessageType.ORDERED_REQUEST);
+    }
+
+    private Object newConsensusMessage(int size){
+        int consensusId = numConsensusMessages / 3;
+        switch (numConsensusMessages % 3){
+            case 0:
+                byte[] value = new byte[size];
+                random.nextBytes(value);
+                return consensusMessages.createPropose(consensusId, 0, value);
+            case 1:
+                return consensusMessages.createWrite(consensusId, 0, hash());
+            default:
+                return consensusMessages.createAccept(consensusId, 0, hash());
+        }
+    }
+
+    private byte[] hash(){
+        byte[] hash = new byte[HASH_LENGTH];
+        random.nextBytes(hash);
+        return hash;
+    }
+
+    private byte[] objectPayload(Object message) throws IOException {
+        byte[] serialized = FixtureGenerator.serialize(message);
+        return (settings.isLengthPrefixed() ? FixtureGenerator.frame(serialized, random) : serialized);
+    }
+
+    private byte[] frame(int flow, byte[] payload, int offset, int length){
+        byte[] frame = new byte[HEADERS_LENGTH + length];
+        int clientAddress = CLIENT_NETWORK | (flow + 1);
+        ByteBuffer buffer = ByteBuffer.wrap(frame);
+        buffer.put(SERVER_MAC).put(CLIENT_MAC).putShort((short) 0x0800);
+        buffer.put((byte) 0x45).put((byte) 0).putShort((short) (IP_HEADER_LENGTH + TCP_HEADER_LENGTH + length))
+                .putShort((short) ipIdentification++).putShort((short) 0x4000).put((byte) 64).put((byte) TCP_PROTOCOL)
+                .putShort((short) 0).putInt(clientAddress).putInt(SERVER_ADDRESS);
+        buffer.putShort((short) (FIRST_CLIENT_PORT + flow % 20000)).putShort((short) SERVER_PORT)
+                .putInt(sequenceNumbers[flow]).putInt(1).put((byte) 0x50).put((byte) 0x18).putShort((short) 0xFFFF)
+                .putShort((short) 0).putShort((short) 0);
+        buffer.put(payload, offset, length);
+        sequenceNumbers[flow] += length;
+        buffer.putShort(ETHERNET_HEADER_LENGTH + 10, checksum(frame, ETHERNET_HEADER_LENGTH, IP_HEADER_LENGTH, 0));
+        long pseudoHeader = (clientAddress >>> 16) + (clientAddress & 0xFFFF) + (SERVER_ADDRESS >>> 16) + (SERVER_ADDRESS & 0xFFFF)
+                + TCP_PROTOCOL + TCP_HEADER_LENGTH + length;
+        buffer.putShort(ETHERNET_HEADER_LENGTH + IP_HEADER_LENGTH + 16,
+                checksum(frame, ETHERNET_HEADER_LENGTH + IP_HEADER_LENGTH, TCP_HEADER_LENGTH + length, pseudoHeader));
+        return frame;
+    }
+
+    private static short checksum(byte[] data, int offset, int length, long sum){
+        int end = offset + length;
+        for (int i = offset; i + 1 < end; i += 2){
+            sum += ((data[i] & 0xFF) << 8) | (data[i + 1] & 0xFF);
+        }
+        if ((length & 1) != 0){ sum += (data[end - 1] & 0xFF) << 8; }
+        while ((sum >>> 16) != 0){
+            sum = (sum & 0xFFFF) + (sum >>> 16);
+        }
+        return (short) ~sum;
+    }
+
+    public long getDurationNanos(){
+        return timestampNanos - START_NANOS;
+    }
+
+    public int getNumRequests() {
+        return numRequests;
+    }
+
+    public int getNumConsensusMessages() {
+        return numConsensusMessages;
+    }
+
+    public int getNumNoiseMessages() {
+        return numNoiseMessages;
+    }
+
+}
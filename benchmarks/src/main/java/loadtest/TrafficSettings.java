@@ -0,0 +1,95 @@
+package loadtest;
+
+/**
+ * Shape of the synthetic traffic: the average packet rate (arrivals are Poisson), how many packets and
+ * connections, the relative weights of request, consensus and noise messages, and the range of message
+ * payload sizes. Messages larger than a segment are split across several packets as TCP would.
+ */
+public class TrafficSettings {
+
+    public static final TrafficSettings DEFAULT = new TrafficSettings(10_000, 200_000, 64);
+
+    private final double packetsPerSecond;
+    private final int numPackets;
+    private final int numFlows;
+    private final double requestWeight;
+    private final double consensusWeight;
+    private final double noiseWeight;
+    private final int minMessageBytes;
+    private final int maxMessageBytes;
+    private final boolean lengthPrefixed;
+    private final long seed;
+
+    public TrafficSettings(double packetsPerSecond, int numPackets, int numFlows){
+        this(packetsPerSecond, numPackets, numFlows, 0.6, 0.3, 0.1, 64, 4096, true, 42);
+    }
+
+    public TrafficSettings(double packetsPerSecond, int numPackets, int numFlows, double requestWeight, double consensusWeight,
+                           double noiseWeight, int minMessageBytes, int maxMessageBytes, boolean lengthPrefixed, long seed){
+        if (packetsPerSecond <= 0 || numPackets <= 0 || numFlows <= 0){
+            throw new IllegalArgumentException("The packet rate, number of packets and number of flows must be positive");
+        } else if (requestWeight < 0 || consensusWeight < 0 || noiseWeight < 0 || requestWeight + consensusWeight + noiseWeight <= 0){
+            throw new IllegalArgumentException("The message weights must be non-negative and not all zero");
+        } else if (minMessageBytes <= 0 || maxMessageBytes < minMessageBytes){
+            throw new IllegalArgumentException("The message sizes must be a non-empty range of positive sizes");
+        }
+        this.packetsPerSecond = packetsPerSecond;
+        this.numPackets = numPackets;
+        this.numFlows = numFlows;
+        this.requestWeight = requestWeight;
+        this.consensusWeight = consensusWeight;
+        this.noiseWeight = noiseWeight;
+        this.minMessageBytes = minMessageBytes;
+        this.maxMessageBytes = maxMessageBytes;
+        this.lengthPrefixed = lengthPrefixed;
+        this.seed = seed;
+    }
+
+    public double getPacketsPerSecond() {
+        return packetsPerSecond;
+    }
+
+    public int getNumPackets() {
+        return numPackets;
+    }
+
+    public int getNumFlows() {
+        return numFlows;
+    }
+
+    public double getRequestWeight() {
+        return requestWeight;
+    }
+
+    public double getConsensusWeight() {
+        return consensusWeight;
+    }
+
+    public double getNoiseWeight() {
+        return noiseWeight;
+    }
+
+    public int getMinMessageBytes() {
+        return minMessageBytes;
+    }
+
+    public int getMaxMessageBytes() {
+        return maxMessageBytes;
+    }
+
+    public boolean isLengthPrefixed() {
+        return lengthPrefixed;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.0f packets/s, %d packets, %d flows, mix request/consensus/noise %.2f/%.2f/%.2f, messages %d-%d bytes%s",
+                packetsPerSecond, numPackets, numFlows, requestWeight, consensusWeight, noiseWeight,
+                minMessageBytes, maxMessageBytes, (lengthPrefixed ? ", length-prefixed" : ""));
+    }
+
+}
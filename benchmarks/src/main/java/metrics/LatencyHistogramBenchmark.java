@@ -0,0 +1,41 @@
+package metrics;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LatencyHistogramBenchmark {
+
+    private LatencyHistogram histogram;
+
+    @Setup
+    public void setUp(){
+        histogram = new LatencyHistogram("benchmark");
+    }
+
+    @Benchmark
+    public void recordElapsed(){
+        long start = System.nanoTime();
+        histogram.record(System.nanoTime() - start);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordElapsedContended(){
+        long start = System.nanoTime();
+        histogram.record(System.nanoTime() - start);
+    }
+
+    @Benchmark
+    public long nanoTimePair(){
+        long start = System.nanoTime();
+        return System.nanoTime() - start;
+    }
+
+}
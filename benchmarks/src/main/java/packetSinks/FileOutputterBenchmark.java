@@ -0,0 +1,82 @@
+package packetSinks;
+
+import benchmarks.Fixtures;
+import org.openjdk.jmh.annotations.*;
+import output.Compression;
+import output.GroupCommitSettings;
+import pcap.CaptureFileFormat;
+import queues.RingBufferSettings;
+import sniffer.CapturedPacket;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileOutputterBenchmark {
+
+    @Param({Fixtures.OBJECT_AT_OFFSET_0, Fixtures.OBJECT_AT_OFFSET_N, Fixtures.NO_OBJECT})
+    public String fixture;
+
+    @Param({"NONE", "GZIP"})
+    public Compression compression;
+
+    private CapturedPacket packet;
+    private File rawOutputFile;
+    private File analysisOutputFile;
+    private File pcapOutputPrefix;
+    private RawPacketFileOutputter rawOutputter;
+    private PacketDeserializationAnalysisFileOutputter analysisOutputter;
+    private PcapFileOutputter pcapOutputter;
+    private GroupCommitSettings outputSettings;
+
+    @Setup
+    public void setUp() throws IOException {
+        packet = Fixtures.loadAsCapturedPacket(fixture);
+        rawOutputFile = File.createTempFile("rawPackets", ".txt");
+        analysisOutputFile = File.createTempFile("packetAnalysis", ".txt");
+        pcapOutputPrefix = File.createTempFile("rawPackets", "");
+        GroupCommitSettings defaults = GroupCommitSettings.DEFAULT;
+        outputSettings = new GroupCommitSettings(defaults.getBufferSize(), defaults.getMaxCommitDelayMillis(), defaults.getFsyncPolicy(), compression);
+        rawOutputter = new RawPacketFileOutputter(rawOutputFile.getPath());
+        analysisOutputter = new PacketDeserializationAnalysisFileOutputter(analysisOutputFile.getPath(), RingBufferSettings.DEFAULT,
+                PacketDeserializationAnalysisFileOutputter.DEFAULT_ANALYSIS_PARALLELISM, PacketDeserializationAnalysisFileOutputter.DEFAULT_FLOW_TABLE_CAPACITY,
+                false, PacketDeserializationAnalysisFileOutputter.DEFAULT_FLOW_IDLE_TIMEOUT_NANOS, outputSettings);
+        pcapOutputter = new PcapFileOutputter(pcapOutputPrefix.getPath(), CaptureFileFormat.PCAP, PcapFileOutputter.NO_ROTATION,
+                PcapFileOutputter.NO_ROTATION, RingBufferSettings.DEFAULT, outputSettings);
+    }
+
+    @TearDown
+    public void tearDown(){
+        rawOutputter.writer.close();
+        analysisOutputter.doBeforeShuttingDown();
+        analysisOutputter.writer.close();
+        pcapOutputter.closeOutput();
+        rawOutputFile.delete();
+        analysisOutputFile.delete();
+        new File(outputSettings.fileNameFor(analysisOutputFile.getPath())).delete();
+        pcapOutputPrefix.delete();
+        new File(outputSettings.fileNameFor(pcapOutputPrefix.getPath() + "-000000" + CaptureFileFormat.PCAP.getFileExtension())).delete();
+    }
+
+    @Benchmark
+    public void rawPacketFileOutputter(){
+        rawOutputter.processPacket(packet);
+    }
+
+    @Benchmark
+    public void pcapFileOutputter(){
+        pcapOutputter.processPacket(packet);
+    }
+
+    @Benchmark
+    public void packetDeserializationAnalysisFileOutputter(){
+        analysisOutputter.processPacket(packet);
+    }
+
+}
@@ -0,0 +1,66 @@
+package packetSinks;
+
+import benchmarks.Fixtures;
+import org.openjdk.jmh.annotations.*;
+import sniffer.CapturedPacket;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PacketDeserializerBenchmark {
+
+    @Param({Fixtures.OBJECT_AT_OFFSET_0, Fixtures.OBJECT_AT_OFFSET_N, Fixtures.NO_OBJECT, Fixtures.NO_OBJECT_LARGE})
+    public String fixture;
+
+    private CapturedPacket packet;
+    private AnalysisResultCache cache;
+    private PacketDeserializer.PacketAnalysisResults results;
+    private FlowFramingDetector framings;
+
+    @Setup
+    public void setUp(){
+        packet = Fixtures.loadAsCapturedPacket(fixture);
+        cache = new AnalysisResultCache("benchmark");
+        results = new PacketDeserializer.PacketAnalysisResults();
+        framings = new FlowFramingDetector("benchmark");
+    }
+
+    @Benchmark
+    public Object analyzePacket(){
+        return PacketDeserializer.analyzePacket(packet);
+    }
+
+    @Benchmark
+    public Object analyzeRepeatedPacketWithCache(){
+        return PacketDeserializer.analyzePacket(packet, cache);
+    }
+
+    /**
+     * The sinks' steady state: one results object reused for every packet. Run with -prof gc to check
+     * that no bytes are allocated per operation.
+     */
+    @Benchmark
+    public Object analyzePacketIntoReusedResults(){
+        return PacketDeserializer.analyzePacket(packet, null, results);
+    }
+
+    /**
+     * An established connection: once the flow's framing is learnt, framed fixtures are decoded at
+     * the known offset and the others are searched as before.
+     */
+    @Benchmark
+    public Object analyzePacketOnFramedFlow(){
+        return PacketDeserializer.analyzePacket(packet, null, framings, results);
+    }
+
+    @Benchmark
+    public Object analyzeRepeatedPacketIntoReusedResults(){
+        return PacketDeserializer.analyzePacket(packet, cache, results);
+    }
+
+}
@@ -0,0 +1,49 @@
+package packetSinks;
+
+import benchmarks.Fixtures;
+import org.openjdk.jmh.annotations.*;
+import queues.RingBufferSettings;
+import sniffer.CapturedPacket;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelAnalysisBenchmark {
+
+    @Param({"1", "2", "4", "8", "16"})
+    public int analysisParallelism;
+
+    @Param({Fixtures.OBJECT_AT_OFFSET_N})
+    public String fixture;
+
+    private CapturedPacket packet;
+    private File analysisOutputFile;
+    private PacketDeserializationAnalysisFileOutputter analysisOutputter;
+
+    @Setup
+    public void setUp() throws IOException {
+        packet = Fixtures.loadAsCapturedPacket(fixture);
+        analysisOutputFile = File.createTempFile("packetAnalysis", ".txt");
+        analysisOutputter = new PacketDeserializationAnalysisFileOutputter(analysisOutputFile.getPath(), RingBufferSettings.DEFAULT, analysisParallelism);
+    }
+
+    @TearDown
+    public void tearDown(){
+        analysisOutputter.doBeforeShuttingDown();
+        analysisOutputter.writer.close();
+        analysisOutputFile.delete();
+    }
+
+    @Benchmark
+    public void processPacket(){
+        analysisOutputter.processPacket(packet);
+    }
+
+}
@@ -0,0 +1,58 @@
+package queues;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Control;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HandoffBenchmark {
+
+    private static final int CAPACITY = 16384;
+    private static final Object ELEMENT = new Object();
+
+    private SpscRingBuffer<Object> ringBuffer;
+    private BlockingQueue<Object> linkedQueue;
+
+    @Setup
+    public void setUp(){
+        ringBuffer = new SpscRingBuffer<>(CAPACITY, OverflowPolicy.DROP_NEWEST, WaitStrategy.BUSY_SPIN);
+        linkedQueue = new LinkedBlockingQueue<>(CAPACITY);
+    }
+
+    @Benchmark
+    @Group("spscRingBuffer")
+    public void ringBufferOffer(Control control){
+        while (!ringBuffer.offer(ELEMENT) && !control.stopMeasurement){}
+    }
+
+    @Benchmark
+    @Group("spscRingBuffer")
+    public Object ringBufferPoll(Control control){
+        Object element = null;
+        while ((element = ringBuffer.poll()) == null && !control.stopMeasurement){}
+        return element;
+    }
+
+    @Benchmark
+    @Group("linkedBlockingQueue")
+    public void linkedQueueOffer(Control control){
+        while (!linkedQueue.offer(ELEMENT) && !control.stopMeasurement){}
+    }
+
+    @Benchmark
+    @Group("linkedBlockingQueue")
+    public Object linkedQueuePoll(Control control){
+        Object element = null;
+        while ((element = linkedQueue.poll()) == null && !control.stopMeasurement){}
+        return element;
+    }
+
+}
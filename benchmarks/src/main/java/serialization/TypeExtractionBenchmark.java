@@ -0,0 +1,48 @@
+package serialization;
+
+import benchmarks.Fixtures;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TypeExtractionBenchmark {
+
+    @Param({Fixtures.OBJECT_AT_OFFSET_0, Fixtures.OBJECT_AT_OFFSET_N})
+    public String fixture;
+
+    private byte[] data;
+    private int offset;
+    private SerializationStreamParser parser;
+
+    @Setup
+    public void setUp(){
+        data = Fixtures.load(fixture);
+        while (offset < data.length && (data[offset] & 0xFF) != 0xAC){
+            offset++;
+        }
+        parser = new SerializationStreamParser();
+    }
+
+    @Benchmark
+    public String objectInputStream() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data, offset, data.length - offset))){
+            return ois.readObject().getClass().getName();
+        }
+    }
+
+    @Benchmark
+    public String streamParser(){
+        parser.parse(data, offset, data.length - offset);
+        return parser.getTypeName();
+    }
+
+}
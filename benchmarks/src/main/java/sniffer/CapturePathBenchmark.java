@@ -0,0 +1,44 @@
+package sniffer;
+
+import benchmarks.Fixtures;
+import org.openjdk.jmh.annotations.*;
+import org.pcap4j.packet.Packet;
+import org.pcap4j.packet.factory.PacketFactories;
+import org.pcap4j.packet.namednumber.DataLinkType;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CapturePathBenchmark {
+
+    @Param({Fixtures.OBJECT_AT_OFFSET_0, Fixtures.OBJECT_AT_OFFSET_N})
+    public String fixture;
+
+    private byte[] frame;
+    private PacketHeaders headers;
+
+    @Setup
+    public void setUp(){
+        frame = Fixtures.loadAsTcpPacket(fixture).getRawData();
+        headers = new PacketHeaders();
+    }
+
+    @Benchmark
+    public Packet eagerDecode(){
+        return PacketFactories.getFactory(Packet.class, DataLinkType.class)
+                .newInstance(frame, 0, frame.length, DataLinkType.EN10MB);
+    }
+
+    @Benchmark
+    public int rawCaptureWithHeaderParse(){
+        CapturedPacket packet = new CapturedPacket(frame, 0, frame.length, DataLinkType.EN10MB.value());
+        headers.parse(packet.getRawData(), packet.getCapturedLength(), packet.getDataLinkType());
+        return headers.getPayloadOffset();
+    }
+
+}
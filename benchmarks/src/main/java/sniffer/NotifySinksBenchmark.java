@@ -0,0 +1,64 @@
+package sniffer;
+
+import benchmarks.Fixtures;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import packetSinks.PacketSink;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NotifySinksBenchmark {
+
+    @Param({"1", "2", "4", "8"})
+    public int numSinks;
+
+    private CapturedPacket packet;
+    private Sniffer sniffer;
+
+    @Setup
+    public void setUp(Blackhole blackhole){
+        packet = Fixtures.loadAsCapturedPacket(Fixtures.OBJECT_AT_OFFSET_N);
+        sniffer = new Sniffer(new File("unused.pcap"), Sniffer.REPLAY_AS_FAST_AS_POSSIBLE);
+        for (int i = 0; i < numSinks; i++){
+            sniffer.addSink(new ConsumingSink(blackhole));
+        }
+        sniffer.enableAllSinks();
+    }
+
+    @Benchmark
+    public void notifySinks(){
+        sniffer.notifySinks(packet);
+    }
+
+    private static class ConsumingSink implements PacketSink {
+
+        private final Blackhole blackhole;
+
+        ConsumingSink(Blackhole blackhole){
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void acceptPacket(CapturedPacket o) {
+            blackhole.consume(o);
+        }
+
+        @Override
+        public void incrementNumActiveSources() {}
+
+        @Override
+        public void decrementNumActiveSources() {}
+
+        @Override
+        public void run() {}
+
+    }
+
+}
@@ -0,0 +1,232 @@
+package batch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import output.Compression;
+import packetSinks.AnalysisResultCache;
+import packetSinks.FlowFramingDetector;
+import packetSinks.PacketDeserializationAnalysisFileOutputter;
+import packetSinks.PacketDeserializer;
+import packetSinks.PacketDeserializer.PacketAnalysisResults;
+import pcap.CaptureFileFormat;
+import pcap.CaptureFileReader;
+import pcap.CaptureFileSplit;
+import sniffer.CapturedPacket;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Re-analyzes archived capture files offline on a fork/join pool. The file list is halved recursively so
+ * many files are analyzed at once; each uncompressed file is in turn cut at fixed offsets into splits
+ * that find their first record themselves and are analyzed in parallel as well. Every split produces its
+ * own {@link ArchiveReport} and the reports are merged as the tasks complete, so analysis threads only
+ * share the result cache and the names of the object types.
+ */
+public class ArchiveAnalyzer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ArchiveAnalyzer.class);
+
+    public static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+    public static final long DEFAULT_SPLIT_BYTES = 64L * 1024 * 1024;
+
+    private final ForkJoinPool pool;
+    private final long splitBytes;
+    private final int flowTableCapacity;
+    private final AnalysisResultCache resultCache;
+    private final FlowFramingDetector framingDetector;
+    private final Map<String, Integer> typeIds;
+    private final List<String> typesById;
+
+    public ArchiveAnalyzer(){
+        this(DEFAULT_PARALLELISM, DEFAULT_SPLIT_BYTES, PacketDeserializationAnalysisFileOutputter.DEFAULT_FLOW_TABLE_CAPACITY);
+    }
+
+    public ArchiveAnalyzer(int parallelism, long splitBytes, int flowTableCapacity){
+        if (splitBytes <= 0){ throw new IllegalArgumentException("The split size must be positive"); }
+        this.pool = new ForkJoinPool(parallelism);
+        this.splitBytes = splitBytes;
+        this.flowTableCapacity = flowTableCapacity;
+        this.resultCache = new AnalysisResultCache("archive analysis results");
+        this.framingDetector = new FlowFramingDetector("archive flow framing");
+        this.typeIds = new ConcurrentHashMap<>();
+        this.typesById = new CopyOnWriteArrayList<>(Collections.singletonList((String) null));
+    }
+
+    public ArchiveReport analyze(List<File> files){
+        return pool.invoke(new FilesTask(files, 0, files.size()));
+    }
+
+    public AnalysisResultCache getResultCache(){
+        return resultCache;
+    }
+
+    public FlowFramingDetector getFramingDetector(){
+        return framingDetector;
+    }
+
+    public void shutdown(){
+        pool.shutdown();
+    }
+
+    /**
+     * Lists the capture files (possibly compressed) in a directory, or the files matching a glob in
+     * its last path component, e.g. "/captures/rawPackets-*.pcapng", sorted by name.
+     */
+    public static List<File> findCaptureFiles(String directoryOrGlob) throws IOException {
+        Path path = Paths.get(directoryOrGlob);
+        Path directory;
+        PathMatcher matcher;
+        if (Files.isDirectory(path)){
+            directory = path;
+            matcher = ArchiveAnalyzer::isCaptureFile;
+        } else {
+            directory = (path.getParent() == null ? Paths.get(".") : path.getParent());
+            matcher = FileSystems.getDefault().getPathMatcher("glob:" + path.getFileName());
+        }
+        List<File> files = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)){
+            for (Path entry : entries){
+                if (Files.isRegularFile(entry) && matcher.matches(entry.getFileName())){
+                    files.add(entry.toFile());
+                }
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    private static boolean isCaptureFile(Path fileName){
+        String name = fileName.toString();
+        name = name.substring(0, name.length() - Compression.forFileName(name).getFileExtension().length());
+        for (CaptureFileFormat format : CaptureFileFormat.values()){
+            if (name.endsWith(format.getFileExtension())){ return true; }
+        }
+        return false;
+    }
+
+    private ArchiveReport newReport(){
+        return new ArchiveReport(flowTableCapacity, typesById);
+    }
+
+    private ArchiveReport analyzeFile(File file){
+        List<CaptureFileSplit> splits;
+        try {
+            splits = CaptureFileReader.split(file, splitBytes);
+        } catch (IOException e){
+            logger.error("Couldn't read the capture file " + file + ", skipping it...", e);
+            ArchiveReport report = newReport();
+            report.countFailure();
+            return report;
+        }
+        ArchiveReport report = new SplitsTask(splits, 0, splits.size()).compute();
+        report.countFile();
+        return report;
+    }
+
+    private ArchiveReport analyzeSplit(CaptureFileSplit split){
+        ArchiveReport report = newReport();
+        report.countSplit();
+        PacketAnalysisResults results = new PacketAnalysisResults();
+        try (CaptureFileReader reader = new CaptureFileReader(split)){
+            CapturedPacket packet;
+            while ((packet = reader.next()) != null){
+                PacketDeserializer.analyzePacket(packet, resultCache, framingDetector, results);
+                report.add(results, typeIdOf(results.getType()));
+            }
+        } catch (IOException e){
+            logger.error("Couldn't finish reading " + split + ", keeping the packets read so far", e);
+            report.countFailure();
+        }
+        return report;
+    }
+
+    private int typeIdOf(String type){
+        if (type == null){ return 0; }
+        Integer typeId = typeIds.get(type);
+        if (typeId == null){
+            synchronized (typesById){
+                typeId = typeIds.get(type);
+                if (typeId == null){
+                    typeId = typesById.size();
+                    typesById.add(type);
+                    typeIds.put(type, typeId);
+                }
+            }
+        }
+        return typeId;
+    }
+
+    private class FilesTask extends RecursiveTask<ArchiveReport> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<File> files;
+        private final int from;
+        private final int to;
+
+        private FilesTask(List<File> files, int from, int to){
+            this.files = files;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected ArchiveReport compute() {
+            if (to - from == 0){
+                return newReport();
+            } else if (to - from == 1){
+                return analyzeFile(files.get(from));
+            }
+            int middle = (from + to) >>> 1;
+            FilesTask left = new FilesTask(files, from, middle);
+            left.fork();
+            ArchiveReport right = new FilesTask(files, middle, to).compute();
+            return left.join().merge(right);
+        }
+
+    }
+
+    private class SplitsTask extends RecursiveTask<ArchiveReport> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<CaptureFileSplit> splits;
+        private final int from;
+        private final int to;
+
+        private SplitsTask(List<CaptureFileSplit> splits, int from, int to){
+            this.splits = splits;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected ArchiveReport compute() {
+            if (to - from == 1){
+                return analyzeSplit(splits.get(from));
+            }
+            int middle = (from + to) >>> 1;
+            SplitsTask left = new SplitsTask(splits, from, middle);
+            left.fork();
+            ArchiveReport right = new SplitsTask(splits, middle, to).compute();
+            return left.join().merge(right);
+        }
+
+    }
+
+}
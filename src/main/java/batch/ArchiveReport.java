@@ -0,0 +1,114 @@
+package batch;
+
+import flows.FlowTable;
+import packetSinks.AggregateKey;
+import packetSinks.PacketDeserializer.PacketAnalysisResults;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Totals of a batch analysis: how often each kind of payload was seen, plus per-flow statistics.
+ * Each split of a capture file gets its own report, and reports are merged pairwise on the way up.
+ */
+public class ArchiveReport {
+
+    private final Map<AggregateKey, Long> aggregateOccurances;
+    private final FlowTable flowTable;
+    private final List<String> typesById;
+    private long numPackets;
+    private long numBytes;
+    private int numFiles;
+    private int numSplits;
+    private int numFailures;
+
+    ArchiveReport(int flowTableCapacity, List<String> typesById){
+        this.aggregateOccurances = new HashMap<>();
+        this.flowTable = new FlowTable(flowTableCapacity, false);
+        this.typesById = typesById;
+    }
+
+    void add(PacketAnalysisResults results, int typeId){
+        aggregateOccurances.merge(new AggregateKey(results.getType(), results.isSerializedObjectByteLengthFoundInPrefix()), 1L, Long::sum);
+        numPackets++;
+        numBytes += results.getPacketLength();
+        if (results.hasFlow()){
+            int slot = flowTable.update(results.getFlowAddresses(), results.getFlowPortsAndProtocol(), results.getPacketLength(), results.getTimestampNanos());
+            if (typeId > 0){ flowTable.recordObjectType(slot, typeId); }
+        }
+    }
+
+    ArchiveReport merge(ArchiveReport other){
+        for (Map.Entry<AggregateKey, Long> entry : other.aggregateOccurances.entrySet()){
+            aggregateOccurances.merge(entry.getKey(), entry.getValue(), Long::sum);
+        }
+        flowTable.mergeFrom(other.flowTable);
+        numPackets += other.numPackets;
+        numBytes += other.numBytes;
+        numFiles += other.numFiles;
+        numSplits += other.numSplits;
+        numFailures += other.numFailures;
+        return this;
+    }
+
+    void countFile(){
+        numFiles++;
+    }
+
+    void countSplit(){
+        numSplits++;
+    }
+
+    void countFailure(){
+        numFailures++;
+    }
+
+    public Map<AggregateKey, Long> getAggregateOccurances() {
+        return aggregateOccurances;
+    }
+
+    public int getNumFlows(){
+        return flowTable.size();
+    }
+
+    public long getNumPackets() {
+        return numPackets;
+    }
+
+    public long getNumBytes() {
+        return numBytes;
+    }
+
+    public int getNumFiles() {
+        return numFiles;
+    }
+
+    public int getNumSplits() {
+        return numSplits;
+    }
+
+    public int getNumFailures() {
+        return numFailures;
+    }
+
+    /**
+     * Writes the totals in the analysis sink's format, most frequent payload kinds first.
+     */
+    public void writeTo(PrintWriter out){
+        out.println(String.format("(files: %d, splits: %d, failures: %d, packets: %d, bytes: %d, flows: %d)",
+                numFiles, numSplits, numFailures, numPackets, numBytes, flowTable.size()));
+        List<Map.Entry<AggregateKey, Long>> entries = new ArrayList<>(aggregateOccurances.entrySet());
+        entries.sort(Map.Entry.<AggregateKey, Long>comparingByValue().reversed());
+        for (Map.Entry<AggregateKey, Long> entry : entries){
+            out.println(entry.getKey().getString(entry.getValue()));
+        }
+        flowTable.forEach(flow -> out.println(flow.describe(typesById)));
+        if (flowTable.getNumRejectedUpdates() > 0){
+            out.println("(the flow table was full for " + flowTable.getNumRejectedUpdates() + " packets)");
+        }
+    }
+
+}
@@ -0,0 +1,80 @@
+package display;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import output.Compression;
+import records.AnalysisRecord;
+import records.AnalysisRecordReader;
+import records.PayloadMode;
+import sniffer.PacketHeaders;
+import store.PacketQuery;
+import store.PacketStore;
+import store.StoredPacket;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class AnalysisRecordDump {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisRecordDump.class);
+
+    private static final String STORE_OPTION = "--store";
+    private static final String USAGE = "usage: AnalysisRecordDump <record file> [--store <packet store directory>]"
+            + System.lineSeparator() + "prints the records in the analysis sink's text format; --store resolves payloads that were stored by reference";
+
+    private AnalysisRecordDump(){}
+
+    public static void main(String[] args) {
+        if (args.length != 1 && !(args.length == 3 && args[1].equals(STORE_OPTION))){
+            System.out.println(USAGE);
+            return;
+        }
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 64 * 1024));
+        try (AnalysisRecordReader reader = new AnalysisRecordReader(Compression.forFileName(args[0]).unwrap(new FileInputStream(args[0])));
+             PacketStore store = (args.length == 3 ? new PacketStore(new File(args[2])) : null)){
+            AnalysisRecord record = new AnalysisRecord();
+            PacketHeaders headers = new PacketHeaders();
+            StringBuilder text = new StringBuilder();
+            long numRecords = 0;
+            while (reader.next(record)){
+                if (store != null && record.getPayloadContent() == PayloadMode.STORE_REFERENCE){
+                    resolvePayload(store, record, headers);
+                }
+                text.setLength(0);
+                out.println();
+                out.println(record.appendTo(text));
+                out.println("---------------- END ----------------");
+                numRecords++;
+            }
+            out.flush();
+            logger.info("Read {} records ({} payloads)", numRecords, reader.getPayloadMode());
+        } catch (IOException e){
+            out.flush();
+            logger.error("Couldn't read the analysis records in " + args[0], e);
+        }
+    }
+
+    private static void resolvePayload(PacketStore store, AnalysisRecord record, PacketHeaders headers) throws IOException {
+        if (!record.hasFlow()){ return; }
+        PacketQuery query = new PacketQuery(record.getTimestampNanos(), record.getTimestampNanos() + 1, record.getFlowKey());
+        store.query(query, packet -> !(packet.getOriginalLength() == record.getPacketLength() && resolvePayload(packet, record, headers)));
+    }
+
+    private static boolean resolvePayload(StoredPacket packet, AnalysisRecord record, PacketHeaders headers){
+        ByteBuffer data = packet.getData();
+        byte[] rawData = new byte[data.remaining()];
+        data.get(rawData);
+        if (!headers.parse(rawData, rawData.length, packet.getDataLinkType())){ return false; }
+        if (headers.getPayloadLength() != record.getPayloadLength()){ return false; }
+        if (headers.getSourceAddress() != (int) (record.getFlowAddresses() >>> 32)){ return false; }
+        record.setPayload(rawData, headers.getPayloadOffset());
+        return true;
+    }
+
+}
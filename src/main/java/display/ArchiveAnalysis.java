@@ -0,0 +1,55 @@
+package display;
+
+import batch.ArchiveAnalyzer;
+import batch.ArchiveReport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class ArchiveAnalysis {
+
+    private static final Logger logger = LoggerFactory.getLogger(ArchiveAnalysis.class);
+
+    private static final String USAGE = "usage: ArchiveAnalysis <capture directory | glob> [report file]"
+            + System.lineSeparator() + "analyzes every pcap/pcapng file on all cores and prints the merged payload counts and flow statistics";
+
+    private ArchiveAnalysis(){}
+
+    public static void main(String[] args) {
+        if (args.length != 1 && args.length != 2){
+            System.out.println(USAGE);
+            return;
+        }
+        List<File> files;
+        try {
+            files = ArchiveAnalyzer.findCaptureFiles(args[0]);
+        } catch (IOException e){
+            logger.error("Couldn't list the capture files in " + args[0], e);
+            return;
+        }
+        ArchiveAnalyzer analyzer = new ArchiveAnalyzer();
+        long start = System.nanoTime();
+        ArchiveReport report = analyzer.analyze(files);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        analyzer.shutdown();
+        logger.info("Analyzed {} packets from {} files ({} splits) in {} ms, result cache: {}, framing: {}",
+                report.getNumPackets(), report.getNumFiles(), report.getNumSplits(), elapsedMillis, analyzer.getResultCache(), analyzer.getFramingDetector());
+        try (OutputStream out = (args.length == 2 ? new FileOutputStream(args[1]) : null)){
+            PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(out == null ? System.out : out, StandardCharsets.UTF_8), 64 * 1024));
+            report.writeTo(writer);
+            writer.flush();
+        } catch (IOException e){
+            logger.error("Couldn't write the report to " + args[1], e);
+        }
+    }
+
+}
@@ -1,70 +1,196 @@
 package display;
 
+import metrics.PipelineMetrics;
 import org.pcap4j.core.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import packetSinks.AbstractPacketSink;
+import packetSinks.HeavyHitterFileOutputter;
 import packetSinks.PacketDeserializationAnalysisFileOutputter;
 import packetSinks.PacketSink;
-import packetSinks.RawPacketFileOutputter;
+import packetSinks.PacketStoreOutputter;
+import packetSinks.PcapFileOutputter;
+import packetSinks.TcpStreamAnalysisFileOutputter;
+import pcap.CaptureFileFormat;
+import output.GroupCommitSettings;
+import queues.OverflowPolicy;
+import queues.RingBufferSettings;
+import queues.WaitStrategy;
+import records.PayloadMode;
+import records.RecordFormat;
+import records.RecordSettings;
+import scheduler.ExecutionMode;
+import scheduler.SinkScheduler;
+import sketches.HeavyHitterSettings;
+import sniffer.CaptureProfile;
 import sniffer.Sniffer;
+import sniffer.SnifferGroup;
+import store.PacketStore;
+import windows.WindowSettings;
+import javax.management.JMException;
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Scanner;
-import java.util.concurrent.*;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 public class ConsoleInterface {
 
     private static final Logger logger = LoggerFactory.getLogger(ConsoleInterface.class);
 
-    private static final String RAW_PACKETS_OUTPUT_FILE_NAME = "/Users/ivancharviakou/Desktop/rawPackets.txt";
+    private static final String RAW_CAPTURE_FILE_PREFIX = "/Users/ivancharviakou/Desktop/rawPackets";
+    private static final long RAW_CAPTURE_MAX_FILE_BYTES = 512L * 1024 * 1024;
+    private static final long RAW_CAPTURE_MAX_FILE_MILLIS = TimeUnit.HOURS.toMillis(1);
     private static final String PACKET_ANALYSIS_OUTPUT_FILE_NAME = "/Users/ivancharviakou/Desktop/packetAnalysis.txt";
-    private static final String DEVICE_TO_SNIFF = "lo0"; // lo0, en0
-    private static ThreadPoolExecutor pool;
-    private static Sniffer sniffer;
+    private static final String PACKET_STORE_DIRECTORY = "/Users/ivancharviakou/Desktop/packetStore";
+    private static final String TCP_STREAM_OUTPUT_FILE_NAME = "/Users/ivancharviakou/Desktop/tcpStreams.txt";
+    private static final String HEAVY_HITTER_OUTPUT_FILE_NAME = "/Users/ivancharviakou/Desktop/heavyHitters.txt"; // merge summaries with HeavyHitterReport
+    private static final List<String> DEVICES_TO_SNIFF = Arrays.asList("lo0"); // lo0, en0
+    private static final String SPEED_OPTION = "--speed"; // <capture file>... [--speed <factor>] replays instead of capturing
+    private static final long MERGE_DELAY_MILLIS = 50; // SnifferGroup.UNORDERED to skip timestamp ordering
+    private static final String CAPTURE_PROFILE_PROPERTY = "captureProfile"; // default, low-latency, high-throughput
+    private static final RingBufferSettings SNIFFER_QUEUE_SETTINGS = new RingBufferSettings(65536, OverflowPolicy.DROP_NEWEST, WaitStrategy.PARK);
+    private static final int ANALYSIS_PARALLELISM = PacketDeserializationAnalysisFileOutputter.DEFAULT_ANALYSIS_PARALLELISM;
+    private static final String RECORD_FORMAT_PROPERTY = "recordFormat"; // text, binary (read with AnalysisRecordDump)
+    private static final String RECORD_PAYLOAD_PROPERTY = "recordPayload"; // full, framing, store_reference; binary records only
+    private static final RingBufferSettings SINK_QUEUE_SETTINGS = new RingBufferSettings(16384, OverflowPolicy.DROP_NEWEST, WaitStrategy.PARK);
+    private static final int COOPERATIVE_SINK_THREADS = SinkScheduler.DEFAULT_COOPERATIVE_THREADS;
+    private static SinkScheduler scheduler;
+    private static SnifferGroup snifferGroup;
     private static List<PacketSink> sinks;
+    private static PipelineMetrics metrics;
+    private static PacketDeserializationAnalysisFileOutputter analysisOutputter;
     private static Future<?> snifferHandle;
 
     private ConsoleInterface(){}
 
     public static void main(String[] args) {
-        if (!initialize()){ return; }
+        if (!initialize(args)){ return; }
         Scanner console = new Scanner(System.in);
         String input;
-        while (!(input = console.nextLine().toLowerCase()).equals(Command.QUITIT.toString().toLowerCase())){
+        while (!(input = console.nextLine().trim()).equalsIgnoreCase(Command.QUITIT.toString())){
             respondToInput(input);
         }
         shutdown();
     }
 
-    private static boolean initialize() {
+    private static boolean initialize(String[] args) {
         try {
-            sniffer = new Sniffer(DEVICE_TO_SNIFF);
+            snifferGroup = new SnifferGroup(createSniffers(args), MERGE_DELAY_MILLIS);
             sinks = new LinkedList<>();
-            pool = new ThreadPoolExecutor(3, 5, 10000, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+            metrics = new PipelineMetrics();
+            for (Sniffer sniffer : snifferGroup.getSniffers()){
+                metrics.addSniffer(sniffer);
+            }
+            scheduler = new SinkScheduler(COOPERATIVE_SINK_THREADS, SinkScheduler.DEFAULT_BATCH_SIZE);
             initializeSinks();
+            registerMetrics();
         } catch (IOException | PcapNativeException e){
             logger.error("Something's went wrong while initializing the console interface, quitting...");
             return false;
+        } catch (NumberFormatException e){
+            logger.error("The replay speed must be a number, quitting...");
+            return false;
+        } catch (IllegalArgumentException e){
+            logger.error("{}, quitting...", e.getMessage());
+            return false;
         }
         return true;
     }
 
+    private static List<Sniffer> createSniffers(String[] args) throws PcapNativeException {
+        List<Sniffer> sniffers = new ArrayList<>();
+        if (args.length == 0){
+            CaptureProfile profile = CaptureProfile.forName(System.getProperty(CAPTURE_PROFILE_PROPERTY, CaptureProfile.DEFAULT.getName()));
+            logger.info("Capturing with the {} profile", profile);
+            for (String deviceName : DEVICES_TO_SNIFF){
+                sniffers.add(new Sniffer(deviceName, SNIFFER_QUEUE_SETTINGS, profile));
+            }
+        } else {
+            double replaySpeed = Sniffer.REPLAY_AS_FAST_AS_POSSIBLE;
+            List<File> replayFiles = new ArrayList<>();
+            for (int i = 0; i < args.length; i++){
+                if (args[i].equals(SPEED_OPTION)){
+                    if (++i == args.length){ throw new IllegalArgumentException(SPEED_OPTION + " needs a replay speed"); }
+                    replaySpeed = Double.parseDouble(args[i]);
+                } else {
+                    replayFiles.add(new File(args[i]));
+                }
+            }
+            if (replayFiles.isEmpty()){ throw new IllegalArgumentException("There's no capture file to replay"); }
+            for (File replayFile : replayFiles){
+                sniffers.add(new Sniffer(replayFile, replaySpeed, SNIFFER_QUEUE_SETTINGS));
+            }
+        }
+        return sniffers;
+    }
+
     private static void initializeSinks() throws IOException {
-        sinks.add(new RawPacketFileOutputter(RAW_PACKETS_OUTPUT_FILE_NAME));
-        sinks.add(new PacketDeserializationAnalysisFileOutputter(PACKET_ANALYSIS_OUTPUT_FILE_NAME));
-        for (PacketSink sink : sinks){
-            sniffer.addSink(sink);
-            sink.incrementNumActiveSources();
-            pool.execute(sink);
+        analysisOutputter = new PacketDeserializationAnalysisFileOutputter(PACKET_ANALYSIS_OUTPUT_FILE_NAME, SINK_QUEUE_SETTINGS, ANALYSIS_PARALLELISM,
+                PacketDeserializationAnalysisFileOutputter.DEFAULT_FLOW_TABLE_CAPACITY, false, PacketDeserializationAnalysisFileOutputter.DEFAULT_FLOW_IDLE_TIMEOUT_NANOS,
+                GroupCommitSettings.DEFAULT, WindowSettings.DEFAULT, analysisRecordSettings());
+        addSink("raw capture", new PcapFileOutputter(RAW_CAPTURE_FILE_PREFIX, CaptureFileFormat.PCAPNG, RAW_CAPTURE_MAX_FILE_BYTES, RAW_CAPTURE_MAX_FILE_MILLIS, SINK_QUEUE_SETTINGS), ExecutionMode.DEDICATED);
+        addSink("analysis", analysisOutputter, ExecutionMode.DEDICATED);
+        addSink("packet store", new PacketStoreOutputter(new File(PACKET_STORE_DIRECTORY), PacketStore.DEFAULT_SEGMENT_BYTES, SINK_QUEUE_SETTINGS), ExecutionMode.COOPERATIVE);
+        addSink("tcp streams", new TcpStreamAnalysisFileOutputter(TCP_STREAM_OUTPUT_FILE_NAME, SINK_QUEUE_SETTINGS, TcpStreamAnalysisFileOutputter.DEFAULT_MAX_BYTES_PER_FLOW,
+                TcpStreamAnalysisFileOutputter.DEFAULT_MAX_TOTAL_BYTES, TcpStreamAnalysisFileOutputter.DEFAULT_IDLE_TIMEOUT_MILLIS), ExecutionMode.COOPERATIVE);
+        addSink("heavy hitters", new HeavyHitterFileOutputter(HEAVY_HITTER_OUTPUT_FILE_NAME, SINK_QUEUE_SETTINGS, HeavyHitterSettings.DEFAULT,
+                HeavyHitterFileOutputter.DEFAULT_REPORTED_HEAVY_HITTERS), ExecutionMode.COOPERATIVE);
+        metrics.addStageLatency(analysisOutputter.getAnalysisLatency());
+        metrics.addCache(analysisOutputter.getResultCache());
+        metrics.addCache(analysisOutputter.getFramingDetector());
+    }
+
+    private static RecordSettings analysisRecordSettings(){
+        String format = System.getProperty(RECORD_FORMAT_PROPERTY, RecordSettings.DEFAULT.getFormat().name());
+        String payloadMode = System.getProperty(RECORD_PAYLOAD_PROPERTY, RecordSettings.DEFAULT.getPayloadMode().name());
+        RecordSettings settings;
+        try {
+            settings = new RecordSettings(RecordFormat.valueOf(format.toUpperCase(Locale.ROOT)), PayloadMode.valueOf(payloadMode.toUpperCase(Locale.ROOT)));
+        } catch (IllegalArgumentException e){
+            throw new IllegalArgumentException("There's no analysis record format " + format + " with payload " + payloadMode);
+        }
+        if (settings.getFormat() != RecordFormat.TEXT){ logger.info("Writing analysis records {}", settings); }
+        return settings;
+    }
+
+    private static void addSink(String name, AbstractPacketSink sink, ExecutionMode mode){
+        sinks.add(sink);
+        metrics.addSink(name, sink);
+        snifferGroup.addSink(sink);
+        sink.incrementNumActiveSources();
+        scheduler.schedule(name, sink, mode);
+    }
+
+    private static void registerMetrics(){
+        try {
+            metrics.register();
+        } catch (JMException e){
+            logger.warn("Couldn't register the pipeline metrics with JMX - they're only available through the console");
         }
     }
 
     private static void respondToInput(String input){
-        if (input.equals(Command.SNIFIT.toString().toLowerCase())){
+        String[] commandAndArgument = input.split("\\s+", 2);
+        String command = commandAndArgument[0];
+        String argument = (commandAndArgument.length > 1 ? commandAndArgument[1] : "");
+        if (command.equalsIgnoreCase(Command.SNIFIT.toString())){
             snifit();
-        } else if (input.equals(Command.STOPIT.toString().toLowerCase())){
+        } else if (command.equalsIgnoreCase(Command.STOPIT.toString())){
             stopit();
+        } else if (command.equalsIgnoreCase(Command.STATIT.toString())){
+            System.out.print(metrics);
+        } else if (command.equalsIgnoreCase(Command.FILTIT.toString())){
+            filtit(argument);
+        } else if (command.equalsIgnoreCase(Command.SAMPIT.toString())){
+            sampit(argument);
+        } else if (command.equalsIgnoreCase(Command.WINDIT.toString())){
+            windit(argument);
         } else {
             System.out.println("Incorrectly formatted input... Try again");
         }
@@ -72,7 +198,7 @@ public class ConsoleInterface {
 
     private static void snifit(){
         if (snifferHandle == null || snifferHandle.isDone()){
-            snifferHandle = pool.submit(sniffer);
+            snifferHandle = scheduler.submitCapture(snifferGroup);
         } else {
             System.out.println("Already sniffing...");
         }
@@ -86,17 +212,47 @@ public class ConsoleInterface {
         }
     }
 
+    private static void filtit(String filterExpression){
+        try {
+            int numSwapped = snifferGroup.swapFilter(filterExpression);
+            System.out.println("Filter \"" + filterExpression + "\" applied to " + numSwapped + " running capture(s)");
+        } catch (PcapNativeException | NotOpenException e){
+            System.out.println("Couldn't apply the filter, keeping the current one: " + e.getMessage());
+        }
+    }
+
+    private static void sampit(String rate){
+        try {
+            analysisOutputter.setSamplingRate(Integer.parseInt(rate));
+            System.out.println("Analyzing 1 in " + analysisOutputter.getSamplingRate() + " connections");
+        } catch (IllegalArgumentException e){
+            System.out.println("The sampling rate must be a positive whole number, e.g. \"sampit 10\"");
+        }
+    }
+
+    private static void windit(String numPanes){
+        try {
+            System.out.println(analysisOutputter.getWindowedAggregates().mergeLast(Integer.parseInt(numPanes)));
+        } catch (NumberFormatException e){
+            System.out.println("The number of panes must be a whole number, e.g. \"windit 60\"");
+        }
+    }
+
     private static void shutdown(){
         for (PacketSink sink : sinks){
             sink.decrementNumActiveSources();
         }
-        pool.shutdownNow();
+        scheduler.shutdownNow();
         logger.info("Shutdown complete - waiting on threads");
     }
 
     public enum Command {
         SNIFIT,
         STOPIT,
+        STATIT,
+        FILTIT,
+        SAMPIT,
+        WINDIT,
         QUITIT
     }
 
@@ -0,0 +1,62 @@
+package display;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sketches.HeavyHitterSummary;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+public class HeavyHitterReport {
+
+    private static final Logger logger = LoggerFactory.getLogger(HeavyHitterReport.class);
+
+    private static final String TOP_OPTION = "--top";
+    private static final int DEFAULT_TOP = 20;
+    private static final String USAGE = "usage: HeavyHitterReport [--top <n>] <summary file>..."
+            + System.lineSeparator() + "merges heavy hitter summaries written by the heavy hitter sink, e.g. on several capture hosts, and prints the top n of each view";
+
+    private HeavyHitterReport(){}
+
+    public static void main(String[] args) {
+        int first = 0;
+        int top = DEFAULT_TOP;
+        if (args.length >= 2 && args[0].equals(TOP_OPTION)){
+            try {
+                top = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e){
+                top = -1;
+            }
+            first = 2;
+        }
+        if (args.length <= first || top <= 0){
+            System.out.println(USAGE);
+            return;
+        }
+        HeavyHitterSummary merged = null;
+        for (int i = first; i < args.length; i++){
+            try (InputStream in = new BufferedInputStream(new FileInputStream(args[i]))){
+                HeavyHitterSummary summary = HeavyHitterSummary.readFrom(in);
+                if (merged == null){
+                    merged = summary;
+                } else {
+                    merged.merge(summary);
+                }
+            } catch (IOException | IllegalArgumentException e){
+                logger.error("Couldn't merge the heavy hitter summary in " + args[i], e);
+                return;
+            }
+        }
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 64 * 1024));
+        merged.writeReport(out, top);
+        out.flush();
+        logger.info("Merged {} summaries {}", args.length - first, merged.getSettings());
+    }
+
+}
@@ -0,0 +1,116 @@
+package display;
+
+import flows.FlowKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pcap.CaptureFileFormat;
+import pcap.CaptureFileWriter;
+import sniffer.PacketHeaders;
+import store.PacketQuery;
+import store.PacketStore;
+import store.StoredPacket;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class PacketStoreQuery {
+
+    private static final Logger logger = LoggerFactory.getLogger(PacketStoreQuery.class);
+
+    private static final String UNBOUNDED = "-";
+    private static final String PCAP_OUTPUT_OPTION = "--pcap";
+    private static final Pattern CONNECTION = Pattern.compile("(\\d+\\.\\d+\\.\\d+\\.\\d+):(\\d+)-(\\d+\\.\\d+\\.\\d+\\.\\d+):(\\d+)/(tcp|udp)");
+    private static final String USAGE = "usage: PacketStoreQuery <store directory> <from|-> <to|-> [<a.b.c.d:port-a.b.c.d:port/tcp|udp>] [--pcap <output file>]"
+            + System.lineSeparator() + "times are ISO-8601 instants or epoch milliseconds";
+
+    private PacketStoreQuery(){}
+
+    public static void main(String[] args) {
+        if (args.length < 3){
+            System.out.println(USAGE);
+            return;
+        }
+        try (PacketStore store = new PacketStore(new File(args[0]))){
+            PacketQuery query = new PacketQuery(parseTime(args[1], PacketQuery.UNBOUNDED_START), parseTime(args[2], PacketQuery.UNBOUNDED_END), parseConnection(args));
+            File outputFile = parseOutputFile(args);
+            long start = System.nanoTime();
+            long numMatches = (outputFile == null ? printMatches(store, query) : writeMatches(store, query, outputFile));
+            System.out.printf("%d packets matched %s in %.3f s%n", numMatches, query, (System.nanoTime() - start) / 1e9);
+        } catch (IllegalArgumentException | DateTimeParseException e){
+            System.out.println(e.getMessage());
+            System.out.println(USAGE);
+        } catch (IOException | UncheckedIOException e){
+            logger.error("Couldn't query the packet store in " + args[0], e);
+        }
+    }
+
+    private static long printMatches(PacketStore store, PacketQuery query) throws IOException {
+        return store.query(query, packet -> {
+            System.out.println(packet);
+            return true;
+        });
+    }
+
+    private static long writeMatches(PacketStore store, PacketQuery query, File outputFile) throws IOException {
+        try (CaptureFileWriter writer = new CaptureFileWriter(outputFile, CaptureFileFormat.PCAPNG)){
+            return store.query(query, packet -> {
+                write(writer, packet);
+                return true;
+            });
+        }
+    }
+
+    private static void write(CaptureFileWriter writer, StoredPacket packet){
+        ByteBuffer data = packet.getData();
+        byte[] rawData = new byte[data.remaining()];
+        data.get(rawData);
+        try {
+            writer.writePacket(packet.getTimestampNanos(), packet.getOriginalLength(), packet.getDataLinkType(), rawData, 0, rawData.length);
+        } catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long parseTime(String argument, long unbounded){
+        if (argument.equals(UNBOUNDED)){ return unbounded; }
+        try {
+            return Math.multiplyExact(Long.parseLong(argument), 1_000_000L);
+        } catch (NumberFormatException e){
+            Instant instant = Instant.parse(argument);
+            return instant.getEpochSecond() * 1_000_000_000L + instant.getNano();
+        }
+    }
+
+    private static FlowKey parseConnection(String[] args){
+        if (args.length < 4 || args[3].equals(PCAP_OUTPUT_OPTION)){ return null; }
+        Matcher matcher = CONNECTION.matcher(args[3]);
+        if (!matcher.matches()){
+            throw new IllegalArgumentException("Couldn't parse the connection " + args[3]);
+        }
+        int protocol = (matcher.group(5).equals("tcp") ? PacketHeaders.PROTOCOL_TCP : PacketHeaders.PROTOCOL_UDP);
+        return new FlowKey(4, protocol, parseAddress(matcher.group(1)), Integer.parseInt(matcher.group(2)),
+                parseAddress(matcher.group(3)), Integer.parseInt(matcher.group(4)));
+    }
+
+    private static int parseAddress(String address){
+        int value = 0;
+        for (String octet : address.split("\\.")){
+            value = (value << 8) | Integer.parseInt(octet);
+        }
+        return value;
+    }
+
+    private static File parseOutputFile(String[] args){
+        for (int i = 3; i < args.length - 1; i++){
+            if (args[i].equals(PCAP_OUTPUT_OPTION)){ return new File(args[i + 1]); }
+        }
+        return null;
+    }
+
+}
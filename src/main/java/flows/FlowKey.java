@@ -0,0 +1,143 @@
+package flows;
+
+import sniffer.PacketHeaders;
+
+public final class FlowKey {
+
+    private int ipVersion;
+    private int protocol;
+    private int sourceAddress;
+    private int destinationAddress;
+    private int sourcePort;
+    private int destinationPort;
+
+    public FlowKey(){}
+
+    public FlowKey(int ipVersion, int protocol, int sourceAddress, int sourcePort, int destinationAddress, int destinationPort){
+        this.ipVersion = ipVersion;
+        this.protocol = protocol;
+        this.sourceAddress = sourceAddress;
+        this.sourcePort = sourcePort;
+        this.destinationAddress = destinationAddress;
+        this.destinationPort = destinationPort;
+    }
+
+    public FlowKey set(PacketHeaders headers){
+        this.ipVersion = headers.getIpVersion();
+        this.protocol = headers.getProtocol();
+        this.sourceAddress = headers.getSourceAddress();
+        this.sourcePort = headers.getSourcePort();
+        this.destinationAddress = headers.getDestinationAddress();
+        this.destinationPort = headers.getDestinationPort();
+        return this;
+    }
+
+    public FlowKey copy(){
+        return new FlowKey(ipVersion, protocol, sourceAddress, sourcePort, destinationAddress, destinationPort);
+    }
+
+    public long packAddresses(){
+        return packAddresses(sourceAddress, destinationAddress);
+    }
+
+    public long packPortsAndProtocol(){
+        return packPortsAndProtocol(ipVersion, protocol, sourcePort, destinationPort);
+    }
+
+    public static long packAddresses(int sourceAddress, int destinationAddress){
+        return ((long) sourceAddress << 32) | (destinationAddress & 0xFFFFFFFFL);
+    }
+
+    public static long packPortsAndProtocol(int ipVersion, int protocol, int sourcePort, int destinationPort){
+        return ((long) ipVersion << 48) | ((long) (protocol & 0xFF) << 32) | ((long) (sourcePort & 0xFFFF) << 16) | (destinationPort & 0xFFFF);
+    }
+
+    public static long reverseAddresses(long addresses){
+        return (addresses << 32) | (addresses >>> 32);
+    }
+
+    public static long reversePortsAndProtocol(long portsAndProtocol){
+        return (portsAndProtocol & ~0xFFFFFFFFL) | ((portsAndProtocol & 0xFFFF) << 16) | ((portsAndProtocol >>> 16) & 0xFFFF);
+    }
+
+    public static FlowKey unpack(long addresses, long portsAndProtocol){
+        return new FlowKey((int) (portsAndProtocol >>> 48), (int) (portsAndProtocol >>> 32) & 0xFF,
+                (int) (addresses >>> 32), (int) (portsAndProtocol >>> 16) & 0xFFFF,
+                (int) addresses, (int) portsAndProtocol & 0xFFFF);
+    }
+
+    public static long hash(long addresses, long portsAndProtocol){
+        long h = addresses * 0x9E3779B97F4A7C15L + portsAndProtocol;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    public static long connectionHash(long addresses, long portsAndProtocol){
+        return hash(addresses, portsAndProtocol) + hash(reverseAddresses(addresses), reversePortsAndProtocol(portsAndProtocol));
+    }
+
+    public int getProtocol() {
+        return protocol;
+    }
+
+    public int getSourceAddress() {
+        return sourceAddress;
+    }
+
+    public int getDestinationAddress() {
+        return destinationAddress;
+    }
+
+    public int getSourcePort() {
+        return sourcePort;
+    }
+
+    public int getDestinationPort() {
+        return destinationPort;
+    }
+
+    @Override
+    public boolean equals(Object o){
+        if (this == o){
+            return true;
+        } else if (!(o instanceof FlowKey)){
+            return false;
+        } else {
+            FlowKey other = (FlowKey) o;
+            return ipVersion == other.ipVersion && protocol == other.protocol
+                    && sourceAddress == other.sourceAddress && sourcePort == other.sourcePort
+                    && destinationAddress == other.destinationAddress && destinationPort == other.destinationPort;
+        }
+    }
+
+    @Override
+    public int hashCode(){
+        return Long.hashCode(hash(packAddresses(), packPortsAndProtocol()));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s:%d -> %s:%d (%s)", formatAddress(sourceAddress), sourcePort,
+                formatAddress(destinationAddress), destinationPort, formatProtocol());
+    }
+
+    private String formatAddress(int address){
+        if (ipVersion == 6){
+            return String.format("ipv6#%08x", address);
+        }
+        return ((address >>> 24) & 0xFF) + "." + ((address >>> 16) & 0xFF) + "." + ((address >>> 8) & 0xFF) + "." + (address & 0xFF);
+    }
+
+    private String formatProtocol(){
+        if (protocol == PacketHeaders.PROTOCOL_TCP){
+            return "tcp";
+        } else if (protocol == PacketHeaders.PROTOCOL_UDP){
+            return "udp";
+        }
+        return "protocol " + protocol;
+    }
+
+}
@@ -0,0 +1,45 @@
+package flows;
+
+import sniffer.CapturedPacket;
+import sniffer.PacketHeaders;
+
+/**
+ * Deterministic 1-in-N connection sampling. A packet is kept if the direction-independent hash of its
+ * 5-tuple falls below 1/N of the hash range, so both directions of a connection share one decision and
+ * the connections kept at a higher rate include all of those kept at a lower one. Frames without a
+ * transport flow are always kept. An instance is meant to be used by one thread.
+ */
+public final class FlowSampler {
+
+    public static final int KEEP_ALL = 1;
+
+    private final PacketHeaders headers;
+    private final long threshold;
+    private final int rate;
+
+    public FlowSampler(int rate){
+        if (rate < KEEP_ALL){
+            throw new IllegalArgumentException("The sampling rate must be at least 1, got " + rate);
+        }
+        this.headers = new PacketHeaders();
+        this.rate = rate;
+        this.threshold = Long.MAX_VALUE / rate;
+    }
+
+    public boolean accepts(CapturedPacket packet){
+        if (rate == KEEP_ALL){ return true; }
+        byte[] data = packet.getRawData();
+        if (!headers.parse(data, data.length, packet.getDataLinkType())){ return true; }
+        return accepts(FlowKey.packAddresses(headers.getSourceAddress(), headers.getDestinationAddress()),
+                FlowKey.packPortsAndProtocol(headers.getIpVersion(), headers.getProtocol(), headers.getSourcePort(), headers.getDestinationPort()));
+    }
+
+    public boolean accepts(long flowAddresses, long flowPortsAndProtocol){
+        return (FlowKey.connectionHash(flowAddresses, flowPortsAndProtocol) >>> 1) <= threshold;
+    }
+
+    public int getRate() {
+        return rate;
+    }
+
+}
@@ -0,0 +1,327 @@
+package flows;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Per-flow statistics in a single preallocated array of longs, optionally off-heap. Flows are keyed
+ * by the two longs produced by {@link FlowKey#packAddresses} and {@link FlowKey#packPortsAndProtocol}
+ * and found by linear probing, so updates neither box nor allocate. Idle flows are removed with
+ * backward-shift deletion, which keeps probe sequences short without tombstones.
+ */
+public class FlowTable {
+
+    public static final int MAX_TRACKED_TYPE_ID = 63;
+
+    private static final int KEY_ADDRESSES = 0;
+    private static final int KEY_PORTS_AND_PROTOCOL = 1;
+    private static final int PACKETS = 2;
+    private static final int BYTES = 3;
+    private static final int FIRST_SEEN = 4;
+    private static final int LAST_SEEN = 5;
+    private static final int INTER_ARRIVAL_MEAN = 6;
+    private static final int INTER_ARRIVAL_M2 = 7;
+    private static final int INTER_ARRIVAL_MIN = 8;
+    private static final int INTER_ARRIVAL_MAX = 9;
+    private static final int OBJECT_TYPES = 10;
+    private static final int OBJECTS = 11;
+    private static final int RECORD_LONGS = 12;
+
+    private static final double MAX_LOAD_FACTOR = 0.75;
+
+    private final LongBuffer records;
+    private final int mask;
+    private final int maxFlows;
+    private final Entry entry;
+    private int numFlows;
+    private long numRejectedUpdates;
+
+    public FlowTable(int requestedCapacity, boolean offHeap){
+        int capacity = Integer.highestOneBit(Math.max(2, requestedCapacity) - 1) << 1;
+        int numLongs = Math.multiplyExact(capacity, RECORD_LONGS);
+        this.records = (offHeap
+                ? ByteBuffer.allocateDirect(Math.multiplyExact(numLongs, Long.BYTES)).order(ByteOrder.nativeOrder()).asLongBuffer()
+                : LongBuffer.allocate(numLongs));
+        this.mask = capacity - 1;
+        this.maxFlows = (int) (capacity * MAX_LOAD_FACTOR);
+        this.entry = new Entry();
+        this.numFlows = 0;
+    }
+
+    public int update(long addresses, long portsAndProtocol, int numBytes, long timestampNanos){
+        int slot = findOrInsert(addresses, portsAndProtocol);
+        if (slot < 0){
+            numRejectedUpdates++;
+            return -1;
+        }
+        int base = slot * RECORD_LONGS;
+        long packets = records.get(base + PACKETS);
+        if (packets == 0){
+            records.put(base + FIRST_SEEN, timestampNanos);
+            records.put(base + INTER_ARRIVAL_MIN, Long.MAX_VALUE);
+        } else {
+            recordInterArrival(base, packets, timestampNanos - records.get(base + LAST_SEEN));
+        }
+        records.put(base + PACKETS, packets + 1);
+        records.put(base + BYTES, records.get(base + BYTES) + numBytes);
+        records.put(base + LAST_SEEN, timestampNanos);
+        return slot;
+    }
+
+    private void recordInterArrival(int base, long packets, long interArrival){
+        double mean = Double.longBitsToDouble(records.get(base + INTER_ARRIVAL_MEAN));
+        double m2 = Double.longBitsToDouble(records.get(base + INTER_ARRIVAL_M2));
+        double delta = interArrival - mean;
+        mean += delta / packets;
+        m2 += delta * (interArrival - mean);
+        records.put(base + INTER_ARRIVAL_MEAN, Double.doubleToRawLongBits(mean));
+        records.put(base + INTER_ARRIVAL_M2, Double.doubleToRawLongBits(m2));
+        records.put(base + INTER_ARRIVAL_MIN, Math.min(records.get(base + INTER_ARRIVAL_MIN), interArrival));
+        records.put(base + INTER_ARRIVAL_MAX, Math.max(records.get(base + INTER_ARRIVAL_MAX), interArrival));
+    }
+
+    public void recordObjectType(int slot, int typeId){
+        if (slot < 0){ return; }
+        int base = slot * RECORD_LONGS;
+        records.put(base + OBJECTS, records.get(base + OBJECTS) + 1);
+        records.put(base + OBJECT_TYPES, records.get(base + OBJECT_TYPES) | (1L << Math.min(typeId, MAX_TRACKED_TYPE_ID)));
+    }
+
+    private int findOrInsert(long addresses, long portsAndProtocol){
+        int slot = (int) FlowKey.hash(addresses, portsAndProtocol) & mask;
+        while (true){
+            int base = slot * RECORD_LONGS;
+            long storedPortsAndProtocol = records.get(base + KEY_PORTS_AND_PROTOCOL);
+            if (storedPortsAndProtocol == 0){
+                if (numFlows >= maxFlows){ return -1; }
+                clear(base);
+                records.put(base + KEY_ADDRESSES, addresses);
+                records.put(base + KEY_PORTS_AND_PROTOCOL, portsAndProtocol);
+                numFlows++;
+                return slot;
+            } else if (storedPortsAndProtocol == portsAndProtocol && records.get(base + KEY_ADDRESSES) == addresses){
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public int evictIdle(long nowNanos, long idleTimeoutNanos, FlowVisitor evictionVisitor){
+        int numEvicted = 0;
+        int slot = 0;
+        while (slot <= mask){
+            int base = slot * RECORD_LONGS;
+            if (records.get(base + KEY_PORTS_AND_PROTOCOL) != 0 && nowNanos - records.get(base + LAST_SEEN) >= idleTimeoutNanos){
+                if (evictionVisitor != null){
+                    entry.base = base;
+                    evictionVisitor.visit(entry);
+                }
+                remove(slot);
+                numEvicted++;
+            } else {
+                slot++;
+            }
+        }
+        return numEvicted;
+    }
+
+    private void remove(int slot){
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (records.get(next * RECORD_LONGS + KEY_PORTS_AND_PROTOCOL) != 0){
+            int nextBase = next * RECORD_LONGS;
+            int home = (int) FlowKey.hash(records.get(nextBase + KEY_ADDRESSES), records.get(nextBase + KEY_PORTS_AND_PROTOCOL)) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)){
+                copy(nextBase, hole * RECORD_LONGS);
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        clear(hole * RECORD_LONGS);
+        numFlows--;
+    }
+
+    private void copy(int fromBase, int toBase){
+        for (int i = 0; i < RECORD_LONGS; i++){
+            records.put(toBase + i, records.get(fromBase + i));
+        }
+    }
+
+    private void clear(int base){
+        for (int i = 0; i < RECORD_LONGS; i++){
+            records.put(base + i, 0);
+        }
+    }
+
+    /**
+     * Folds every flow of the other table into this one, as if this table had seen their packets too.
+     * Statistics of a flow seen by both are combined exactly when one table saw it strictly before the
+     * other (e.g. consecutive capture files), counting the gap between them as one more inter-arrival.
+     */
+    public void mergeFrom(FlowTable other){
+        other.forEach(this::merge);
+        numRejectedUpdates += other.numRejectedUpdates;
+    }
+
+    private void merge(Entry other){
+        int slot = findOrInsert(other.getAddresses(), other.getPortsAndProtocol());
+        if (slot < 0){
+            numRejectedUpdates += other.getPackets();
+            return;
+        }
+        int base = slot * RECORD_LONGS;
+        long packets = records.get(base + PACKETS);
+        if (packets == 0){
+            for (int i = PACKETS; i < RECORD_LONGS; i++){
+                records.put(base + i, other.get(i));
+            }
+            return;
+        }
+        long otherPackets = other.getPackets();
+        long numInterArrivals = packets - 1;
+        long otherNumInterArrivals = otherPackets - 1;
+        double mean = Double.longBitsToDouble(records.get(base + INTER_ARRIVAL_MEAN));
+        double m2 = Double.longBitsToDouble(records.get(base + INTER_ARRIVAL_M2));
+        if (otherNumInterArrivals > 0){
+            double otherMean = other.getInterArrivalMeanNanos();
+            double delta = otherMean - mean;
+            long total = numInterArrivals + otherNumInterArrivals;
+            mean += delta * otherNumInterArrivals / total;
+            m2 += Double.longBitsToDouble(other.get(INTER_ARRIVAL_M2)) + delta * delta * numInterArrivals * otherNumInterArrivals / total;
+            records.put(base + INTER_ARRIVAL_MIN, Math.min(records.get(base + INTER_ARRIVAL_MIN), other.get(INTER_ARRIVAL_MIN)));
+            records.put(base + INTER_ARRIVAL_MAX, Math.max(records.get(base + INTER_ARRIVAL_MAX), other.get(INTER_ARRIVAL_MAX)));
+        }
+        records.put(base + INTER_ARRIVAL_MEAN, Double.doubleToRawLongBits(mean));
+        records.put(base + INTER_ARRIVAL_M2, Double.doubleToRawLongBits(m2));
+        long lastSeen = records.get(base + LAST_SEEN);
+        long firstSeen = records.get(base + FIRST_SEEN);
+        long gap;
+        if (lastSeen <= other.getFirstSeenNanos()){
+            gap = other.getFirstSeenNanos() - lastSeen;
+        } else if (other.getLastSeenNanos() <= firstSeen){
+            gap = firstSeen - other.getLastSeenNanos();
+        } else {
+            gap = Math.round(mean); // interleaved: the true gap is unknown, so keep the mean
+        }
+        recordInterArrival(base, packets + otherPackets - 1, gap);
+        records.put(base + PACKETS, packets + otherPackets);
+        records.put(base + BYTES, records.get(base + BYTES) + other.getBytes());
+        records.put(base + FIRST_SEEN, Math.min(firstSeen, other.getFirstSeenNanos()));
+        records.put(base + LAST_SEEN, Math.max(lastSeen, other.getLastSeenNanos()));
+        records.put(base + OBJECT_TYPES, records.get(base + OBJECT_TYPES) | other.getObjectTypes());
+        records.put(base + OBJECTS, records.get(base + OBJECTS) + other.getNumObjects());
+    }
+
+    public void forEach(FlowVisitor visitor){
+        for (int slot = 0; slot <= mask; slot++){
+            if (records.get(slot * RECORD_LONGS + KEY_PORTS_AND_PROTOCOL) != 0){
+                entry.base = slot * RECORD_LONGS;
+                visitor.visit(entry);
+            }
+        }
+    }
+
+    public int size(){
+        return numFlows;
+    }
+
+    public long getNumRejectedUpdates(){
+        return numRejectedUpdates;
+    }
+
+    public interface FlowVisitor {
+
+        void visit(Entry entry);
+
+    }
+
+    public final class Entry {
+
+        private int base;
+
+        private Entry(){}
+
+        public long getAddresses(){
+            return records.get(base + KEY_ADDRESSES);
+        }
+
+        public long getPortsAndProtocol(){
+            return records.get(base + KEY_PORTS_AND_PROTOCOL);
+        }
+
+        public FlowKey getKey(){
+            return FlowKey.unpack(getAddresses(), getPortsAndProtocol());
+        }
+
+        public long getPackets(){
+            return records.get(base + PACKETS);
+        }
+
+        public long getBytes(){
+            return records.get(base + BYTES);
+        }
+
+        public long getFirstSeenNanos(){
+            return records.get(base + FIRST_SEEN);
+        }
+
+        public long getLastSeenNanos(){
+            return records.get(base + LAST_SEEN);
+        }
+
+        public double getInterArrivalMeanNanos(){
+            return Double.longBitsToDouble(records.get(base + INTER_ARRIVAL_MEAN));
+        }
+
+        public double getInterArrivalStandardDeviationNanos(){
+            long numInterArrivals = getPackets() - 1;
+            return (numInterArrivals < 2 ? 0 : Math.sqrt(Double.longBitsToDouble(records.get(base + INTER_ARRIVAL_M2)) / (numInterArrivals - 1)));
+        }
+
+        public long getInterArrivalMinNanos(){
+            return (getPackets() < 2 ? 0 : records.get(base + INTER_ARRIVAL_MIN));
+        }
+
+        public long getInterArrivalMaxNanos(){
+            return records.get(base + INTER_ARRIVAL_MAX);
+        }
+
+        public long getObjectTypes(){
+            return records.get(base + OBJECT_TYPES);
+        }
+
+        public long getNumObjects(){
+            return records.get(base + OBJECTS);
+        }
+
+        /**
+         * Formats the flow, naming its object types by their position in the given list.
+         */
+        public String describe(List<String> typesById){
+            List<String> typeNames = new ArrayList<>();
+            long types = getObjectTypes();
+            for (int typeId = 1; typeId < Math.min(typesById.size(), MAX_TRACKED_TYPE_ID); typeId++){
+                if ((types & (1L << typeId)) != 0){
+                    typeNames.add(typesById.get(typeId));
+                }
+            }
+            if ((types & (1L << MAX_TRACKED_TYPE_ID)) != 0){
+                typeNames.add("...");
+            }
+            return String.format("(flow: %s, packets: %d, bytes: %d, first seen: %d, last seen: %d, inter-arrival mean/stddev/min/max (us): %.1f/%.1f/%.1f/%.1f, objects: %d, types: %s)",
+                    getKey(), getPackets(), getBytes(), getFirstSeenNanos(), getLastSeenNanos(),
+                    getInterArrivalMeanNanos() / 1000, getInterArrivalStandardDeviationNanos() / 1000,
+                    getInterArrivalMinNanos() / 1000.0, getInterArrivalMaxNanos() / 1000.0,
+                    getNumObjects(), typeNames);
+        }
+
+        private long get(int field){
+            return records.get(base + field);
+        }
+
+    }
+
+}
@@ -0,0 +1,222 @@
+package flows;
+
+import sniffer.PacketHeaders;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Puts the payloads of TCP segments back into stream order per direction of a connection and hands
+ * the contiguous bytes to a {@link StreamConsumer}. Retransmitted bytes are trimmed, segments that
+ * arrive early are held until the gap before them is filled, and both the bytes held per flow and
+ * across all flows are capped. When a flow runs out of room its missing bytes are given up on and the
+ * consumer is told about the gap. Flows that stay idle for too long are evicted.
+ */
+public class TcpStreamReassembler {
+
+    private static final int TCP_FLAG_FIN = 0x01;
+    private static final int TCP_FLAG_SYN = 0x02;
+    private static final int TCP_FLAG_RST = 0x04;
+
+    public interface StreamConsumer {
+
+        void onData(byte[] data, int offset, int length);
+
+        void onGap();
+
+        void onClose();
+
+        int getNumBufferedBytes();
+
+    }
+
+    public interface StreamConsumerFactory {
+
+        StreamConsumer newConsumer(FlowKey key);
+
+    }
+
+    private final StreamConsumerFactory consumerFactory;
+    private final int maxBytesPerFlow;
+    private final long maxTotalBytes;
+    private final long idleTimeoutNanos;
+
+    private final LinkedHashMap<FlowKey, TcpStream> streams;
+    private final FlowKey probeKey;
+    private long numBufferedBytes;
+
+    private long numSegments;
+    private long numRetransmittedSegments;
+    private long numOutOfOrderSegments;
+    private long numGaps;
+    private long numEvictedFlows;
+
+    public TcpStreamReassembler(StreamConsumerFactory consumerFactory, int maxBytesPerFlow, long maxTotalBytes, long idleTimeoutNanos){
+        this.consumerFactory = consumerFactory;
+        this.maxBytesPerFlow = maxBytesPerFlow;
+        this.maxTotalBytes = maxTotalBytes;
+        this.idleTimeoutNanos = idleTimeoutNanos;
+        this.streams = new LinkedHashMap<>(1024, 0.75f, true);
+        this.probeKey = new FlowKey();
+    }
+
+    public void accept(PacketHeaders headers, byte[] data, long timestampNanos){
+        if (headers.getProtocol() != PacketHeaders.PROTOCOL_TCP){ return; }
+        numSegments++;
+        int flags = headers.getTcpFlags();
+        TcpStream stream = streams.get(probeKey.set(headers));
+        if (stream == null){
+            if ((flags & (TCP_FLAG_FIN | TCP_FLAG_RST)) != 0 && headers.getPayloadLength() == 0){ return; }
+            FlowKey key = probeKey.copy();
+            stream = new TcpStream(key, consumerFactory.newConsumer(key), headers.getTcpSequenceNumber(), (flags & TCP_FLAG_SYN) != 0);
+            streams.put(key, stream);
+        }
+        stream.lastSeenNanos = timestampNanos;
+        if (headers.getPayloadLength() > 0){
+            stream.acceptSegment(headers.getTcpSequenceNumber(), data, headers.getPayloadOffset(), headers.getPayloadLength());
+        }
+        if ((flags & (TCP_FLAG_FIN | TCP_FLAG_RST)) != 0){
+            remove(stream);
+        }
+        if (numBufferedBytes > maxTotalBytes){ evictUntilWithinBudget(); }
+    }
+
+    public void evictIdle(long nowNanos){
+        Iterator<TcpStream> iterator = streams.values().iterator();
+        while (iterator.hasNext()){
+            TcpStream stream = iterator.next();
+            if (nowNanos - stream.lastSeenNanos < idleTimeoutNanos){ break; }
+            iterator.remove();
+            stream.close();
+            numEvictedFlows++;
+        }
+    }
+
+    public void closeAll(){
+        for (TcpStream stream : streams.values()){
+            stream.close();
+        }
+        streams.clear();
+    }
+
+    private void evictUntilWithinBudget(){
+        Iterator<TcpStream> iterator = streams.values().iterator();
+        while (numBufferedBytes > maxTotalBytes && iterator.hasNext()){
+            TcpStream stream = iterator.next();
+            iterator.remove();
+            stream.close();
+            numEvictedFlows++;
+        }
+    }
+
+    private void remove(TcpStream stream){
+        streams.remove(stream.key);
+        stream.close();
+    }
+
+    public int getNumActiveFlows(){
+        return streams.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("(segments: %d, retransmitted: %d, out of order: %d, gaps: %d, evicted flows: %d, active flows: %d, buffered bytes: %d)",
+                numSegments, numRetransmittedSegments, numOutOfOrderSegments, numGaps, numEvictedFlows, streams.size(), numBufferedBytes);
+    }
+
+    private class TcpStream {
+
+        private final FlowKey key;
+        private final StreamConsumer consumer;
+        private final TreeMap<Long, byte[]> earlySegments;
+        private long nextSequence;
+        private int numEarlyBytes;
+        private int numConsumerBytes;
+        private long lastSeenNanos;
+
+        TcpStream(FlowKey key, StreamConsumer consumer, long firstSequenceNumber, boolean syn){
+            this.key = key;
+            this.consumer = consumer;
+            this.earlySegments = new TreeMap<>();
+            this.nextSequence = firstSequenceNumber + (syn ? 1 : 0);
+        }
+
+        void acceptSegment(long sequenceNumber, byte[] data, int offset, int length){
+            long relativeSequence = nextSequence + (int) (sequenceNumber - nextSequence);
+            boolean outOfOrder = relativeSequence > nextSequence;
+            while (true){
+                long skipped = nextSequence - relativeSequence;
+                if (skipped >= length){
+                    numRetransmittedSegments++;
+                    break;
+                } else if (skipped >= 0){
+                    if (skipped > 0){ numRetransmittedSegments++; }
+                    deliver(data, offset + (int) skipped, length - (int) skipped);
+                    deliverEarlySegments();
+                    break;
+                } else if (numEarlyBytes + length <= maxBytesPerFlow){
+                    holdEarlySegment(relativeSequence, data, offset, length);
+                    break;
+                }
+                skipGapBefore(relativeSequence);
+            }
+            if (outOfOrder){ numOutOfOrderSegments++; }
+            updateBufferedBytes();
+        }
+
+        private void deliver(byte[] data, int offset, int length){
+            consumer.onData(data, offset, length);
+            nextSequence += length;
+        }
+
+        private void holdEarlySegment(long relativeSequence, byte[] data, int offset, int length){
+            byte[] existing = earlySegments.get(relativeSequence);
+            if (existing == null || existing.length < length){
+                byte[] copy = new byte[length];
+                System.arraycopy(data, offset, copy, 0, length);
+                earlySegments.put(relativeSequence, copy);
+                numEarlyBytes += length - (existing == null ? 0 : existing.length);
+            }
+        }
+
+        private void skipGapBefore(long relativeSequence){
+            consumer.onGap();
+            numGaps++;
+            nextSequence = (earlySegments.isEmpty() ? relativeSequence : Math.min(earlySegments.firstKey(), relativeSequence));
+            deliverEarlySegments();
+        }
+
+        private void deliverEarlySegments(){
+            Map.Entry<Long, byte[]> entry;
+            while ((entry = earlySegments.firstEntry()) != null && entry.getKey() <= nextSequence){
+                earlySegments.pollFirstEntry();
+                byte[] segment = entry.getValue();
+                numEarlyBytes -= segment.length;
+                long skipped = nextSequence - entry.getKey();
+                if (skipped < segment.length){
+                    deliver(segment, (int) skipped, segment.length - (int) skipped);
+                } else {
+                    numRetransmittedSegments++;
+                }
+            }
+        }
+
+        private void updateBufferedBytes(){
+            int numBytes = numEarlyBytes + consumer.getNumBufferedBytes();
+            numBufferedBytes += numBytes - numConsumerBytes;
+            numConsumerBytes = numBytes;
+        }
+
+        void close(){
+            numBufferedBytes -= numConsumerBytes;
+            numConsumerBytes = 0;
+            earlySegments.clear();
+            numEarlyBytes = 0;
+            consumer.onClose();
+        }
+
+    }
+
+}
@@ -0,0 +1,56 @@
+package metrics;
+
+public class CacheSnapshot {
+
+    private final String name;
+    private final int entries;
+    private final long weightBytes;
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+
+    public CacheSnapshot(String name, int entries, long weightBytes, long hits, long misses, long evictions){
+        this.name = name;
+        this.entries = entries;
+        this.weightBytes = weightBytes;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getEntries() {
+        return entries;
+    }
+
+    public long getWeightBytes() {
+        return weightBytes;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public double getHitRate() {
+        long lookups = hits + misses;
+        return (lookups == 0 ? 0 : (double) hits / lookups);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: hit rate %.1f%% (%d hits, %d misses), %d entries, %d bytes, %d evictions",
+                name, getHitRate() * 100, hits, misses, entries, weightBytes, evictions);
+    }
+
+}
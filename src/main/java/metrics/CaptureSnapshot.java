@@ -0,0 +1,67 @@
+package metrics;
+
+public class CaptureSnapshot {
+
+    private final String name;
+    private final long capturedPackets;
+    private final long kernelReceivedPackets;
+    private final long kernelDroppedPackets;
+    private final long interfaceDroppedPackets;
+    private final int queueDepth;
+    private final long queueDroppedPackets;
+    private final int bufferSizeBytes;
+
+    public CaptureSnapshot(String name, long capturedPackets, long kernelReceivedPackets, long kernelDroppedPackets,
+                           long interfaceDroppedPackets, int queueDepth, long queueDroppedPackets, int bufferSizeBytes){
+        this.name = name;
+        this.capturedPackets = capturedPackets;
+        this.kernelReceivedPackets = kernelReceivedPackets;
+        this.kernelDroppedPackets = kernelDroppedPackets;
+        this.interfaceDroppedPackets = interfaceDroppedPackets;
+        this.queueDepth = queueDepth;
+        this.queueDroppedPackets = queueDroppedPackets;
+        this.bufferSizeBytes = bufferSizeBytes;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCapturedPackets() {
+        return capturedPackets;
+    }
+
+    public long getKernelReceivedPackets() {
+        return kernelReceivedPackets;
+    }
+
+    public long getKernelDroppedPackets() {
+        return kernelDroppedPackets;
+    }
+
+    public long getInterfaceDroppedPackets() {
+        return interfaceDroppedPackets;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public long getQueueDroppedPackets() {
+        return queueDroppedPackets;
+    }
+
+    /**
+     * The kernel buffer size the capture was opened with, 0 for libpcap's default.
+     */
+    public int getBufferSizeBytes() {
+        return bufferSizeBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: captured %d, kernel received %d, kernel dropped %d, interface dropped %d, queue depth %d, queue dropped %d, buffer %d bytes",
+                name, capturedPackets, kernelReceivedPackets, kernelDroppedPackets, interfaceDroppedPackets, queueDepth, queueDroppedPackets, bufferSizeBytes);
+    }
+
+}
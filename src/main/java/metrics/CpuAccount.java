@@ -0,0 +1,68 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CPU time spent on behalf of one pipeline stage. Threads that only ever work for the stage attach
+ * themselves and are read through the ThreadMXBean; shared threads add the time of each slice they run.
+ * Reports zero if the JVM can't measure thread CPU time.
+ */
+public class CpuAccount {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean SUPPORTED = enableCpuTime();
+
+    private final List<Thread> attachedThreads;
+    private final LongAdder detachedNanos;
+
+    public CpuAccount(){
+        this.attachedThreads = new CopyOnWriteArrayList<>();
+        this.detachedNanos = new LongAdder();
+    }
+
+    public void attachCurrentThread(){
+        attachedThreads.add(Thread.currentThread());
+    }
+
+    /**
+     * Moves the current thread's CPU time into the account; called by an attached thread before it ends.
+     */
+    public void detachCurrentThread(){
+        if (attachedThreads.remove(Thread.currentThread())){
+            detachedNanos.add(currentThreadCpuNanos());
+        }
+    }
+
+    public void add(long cpuNanos){
+        detachedNanos.add(cpuNanos);
+    }
+
+    public long getCpuNanos(){
+        long cpuNanos = detachedNanos.sum();
+        if (SUPPORTED){
+            for (Thread thread : attachedThreads){
+                cpuNanos += Math.max(0, THREADS.getThreadCpuTime(thread.getId()));
+            }
+        }
+        return cpuNanos;
+    }
+
+    public static long currentThreadCpuNanos(){
+        return (SUPPORTED ? THREADS.getCurrentThreadCpuTime() : 0);
+    }
+
+    private static boolean enableCpuTime(){
+        try {
+            if (!THREADS.isThreadCpuTimeSupported()){ return false; }
+            if (!THREADS.isThreadCpuTimeEnabled()){ THREADS.setThreadCpuTimeEnabled(true); }
+            return true;
+        } catch (UnsupportedOperationException | SecurityException e){
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,79 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram with log-linear buckets: every power of two is split into 16 linear sub-buckets,
+ * so recorded values are off by at most 1/16 while the whole non-negative long range fits in under a
+ * thousand counters.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int NUM_BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final String name;
+    private final AtomicLongArray counts;
+    private final LongAdder sum;
+    private final AtomicLong max;
+
+    public LatencyHistogram(String name){
+        this.name = name;
+        this.counts = new AtomicLongArray(NUM_BUCKETS);
+        this.sum = new LongAdder();
+        this.max = new AtomicLong();
+    }
+
+    public void record(long nanos){
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(indexOf(value));
+        sum.add(value);
+        if (value > max.get()){ max.accumulateAndGet(value, Math::max); }
+    }
+
+    static int indexOf(long value){
+        if (value < SUB_BUCKET_COUNT){ return (int) value; }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long upperBoundOf(int index){
+        if (index < SUB_BUCKET_COUNT){ return index; }
+        int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        long lowerBound = (long) (SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT) << (exponent - SUB_BUCKET_BITS);
+        return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    public LatencySnapshot snapshot(){
+        long[] snapshotCounts = new long[NUM_BUCKETS];
+        long count = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++){
+            snapshotCounts[i] = counts.get(i);
+            count += snapshotCounts[i];
+        }
+        long maxValue = max.get();
+        return new LatencySnapshot(name, count, (count == 0 ? 0 : sum.sum() / (double) count),
+                valueAt(snapshotCounts, count, 0.5, maxValue), valueAt(snapshotCounts, count, 0.9, maxValue),
+                valueAt(snapshotCounts, count, 0.99, maxValue), valueAt(snapshotCounts, count, 0.999, maxValue), maxValue);
+    }
+
+    private static long valueAt(long[] snapshotCounts, long count, double quantile, long maxValue){
+        if (count == 0){ return 0; }
+        long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for (int i = 0; i < snapshotCounts.length; i++){
+            seen += snapshotCounts[i];
+            if (seen >= rank){ return Math.min(upperBoundOf(i), maxValue); }
+        }
+        return maxValue;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+}
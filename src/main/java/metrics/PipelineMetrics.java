@@ -0,0 +1,197 @@
+package metrics;
+
+import packetSinks.AbstractPacketSink;
+import packetSinks.AnalysisResultCache;
+import packetSinks.FlowFramingDetector;
+import sniffer.Sniffer;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+public class PipelineMetrics implements PipelineMetricsMXBean {
+
+    public static final String OBJECT_NAME = "packetSniffer:type=PipelineMetrics";
+
+    private static final long MIN_RATE_INTERVAL_NANOS = 1_000_000_000L;
+
+    private final List<Sniffer> sniffers;
+    private final Map<String, AbstractPacketSink> sinks;
+    private final List<LatencyHistogram> stageLatencies;
+    private final List<Supplier<CacheSnapshot>> caches;
+
+    private long rateSampleNanos;
+    private long rateSamplePackets;
+    private double capturedPacketsPerSecond;
+
+    public PipelineMetrics(){
+        this.sniffers = new CopyOnWriteArrayList<>();
+        this.sinks = new LinkedHashMap<>();
+        this.stageLatencies = new CopyOnWriteArrayList<>();
+        this.caches = new CopyOnWriteArrayList<>();
+        this.rateSampleNanos = System.nanoTime();
+    }
+
+    public void addSniffer(Sniffer sniffer){
+        sniffers.add(sniffer);
+    }
+
+    public synchronized void addSink(String name, AbstractPacketSink sink){
+        sinks.put(name, sink);
+    }
+
+    public void addStageLatency(LatencyHistogram histogram){
+        stageLatencies.add(histogram);
+    }
+
+    public void addCache(AnalysisResultCache cache){
+        caches.add(cache::snapshot);
+    }
+
+    public void addCache(FlowFramingDetector framings){
+        caches.add(framings::snapshot);
+    }
+
+    public void register() throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+    }
+
+    public void unregister() throws JMException {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+    }
+
+    @Override
+    public long getCapturedPackets() {
+        long numCapturedPackets = 0;
+        for (Sniffer sniffer : sniffers){
+            numCapturedPackets += sniffer.getNumCapturedPackets();
+        }
+        return numCapturedPackets;
+    }
+
+    @Override
+    public synchronized double getCapturedPacketsPerSecond() {
+        long now = System.nanoTime();
+        if (now - rateSampleNanos >= MIN_RATE_INTERVAL_NANOS){
+            long packets = getCapturedPackets();
+            capturedPacketsPerSecond = (packets - rateSamplePackets) * 1e9 / (now - rateSampleNanos);
+            rateSampleNanos = now;
+            rateSamplePackets = packets;
+        }
+        return capturedPacketsPerSecond;
+    }
+
+    @Override
+    public long getKernelReceivedPackets() {
+        long numPackets = 0;
+        for (CaptureSnapshot capture : getCaptures()){
+            numPackets += capture.getKernelReceivedPackets();
+        }
+        return numPackets;
+    }
+
+    @Override
+    public long getKernelDroppedPackets() {
+        long numPackets = 0;
+        for (CaptureSnapshot capture : getCaptures()){
+            numPackets += capture.getKernelDroppedPackets();
+        }
+        return numPackets;
+    }
+
+    @Override
+    public long getInterfaceDroppedPackets() {
+        long numPackets = 0;
+        for (CaptureSnapshot capture : getCaptures()){
+            numPackets += capture.getInterfaceDroppedPackets();
+        }
+        return numPackets;
+    }
+
+    @Override
+    public int getSnifferQueueDepth() {
+        int queueDepth = 0;
+        for (Sniffer sniffer : sniffers){
+            queueDepth += sniffer.getQueueDepth();
+        }
+        return queueDepth;
+    }
+
+    @Override
+    public long getSnifferQueueDroppedPackets() {
+        long numPackets = 0;
+        for (Sniffer sniffer : sniffers){
+            numPackets += sniffer.getNumDroppedPackets();
+        }
+        return numPackets;
+    }
+
+    @Override
+    public List<CaptureSnapshot> getCaptures() {
+        List<CaptureSnapshot> snapshots = new ArrayList<>(sniffers.size());
+        for (Sniffer sniffer : sniffers){
+            snapshots.add(new CaptureSnapshot(sniffer.getName(), sniffer.getNumCapturedPackets(), sniffer.getKernelReceivedPackets(),
+                    sniffer.getKernelDroppedPackets(), sniffer.getInterfaceDroppedPackets(), sniffer.getQueueDepth(), sniffer.getNumDroppedPackets(),
+                    sniffer.getBufferSizeBytes()));
+        }
+        return snapshots;
+    }
+
+    @Override
+    public synchronized List<SinkSnapshot> getSinks() {
+        List<SinkSnapshot> snapshots = new ArrayList<>(sinks.size());
+        for (Map.Entry<String, AbstractPacketSink> entry : sinks.entrySet()){
+            AbstractPacketSink sink = entry.getValue();
+            snapshots.add(new SinkSnapshot(entry.getKey(), sink.getQueueDepth(), sink.getNumProcessedPackets(),
+                    sink.getNumDroppedPackets(), sink.getSamplingRate(), sink.getNumSampledOutPackets(), sink.getCaptureToSinkLatency().snapshot(),
+                    sink.isCooperative(), sink.getCpuAccount().getCpuNanos()));
+        }
+        return snapshots;
+    }
+
+    @Override
+    public List<LatencySnapshot> getStageLatencies() {
+        List<LatencySnapshot> snapshots = new ArrayList<>(stageLatencies.size());
+        for (LatencyHistogram histogram : stageLatencies){
+            snapshots.add(histogram.snapshot());
+        }
+        return snapshots;
+    }
+
+    @Override
+    public List<CacheSnapshot> getCaches() {
+        List<CacheSnapshot> snapshots = new ArrayList<>(caches.size());
+        for (Supplier<CacheSnapshot> cache : caches){
+            snapshots.add(cache.get());
+        }
+        return snapshots;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("capture: %d packets (%.1f packets/sec), kernel received %d, kernel dropped %d, interface dropped %d%n",
+                getCapturedPackets(), getCapturedPacketsPerSecond(), getKernelReceivedPackets(), getKernelDroppedPackets(), getInterfaceDroppedPackets()));
+        builder.append(String.format("sniffer queues: depth %d, dropped %d%n", getSnifferQueueDepth(), getSnifferQueueDroppedPackets()));
+        for (CaptureSnapshot capture : getCaptures()){
+            builder.append("capture ").append(capture).append(System.lineSeparator());
+        }
+        for (SinkSnapshot sink : getSinks()){
+            builder.append("sink ").append(sink).append(System.lineSeparator());
+        }
+        for (LatencySnapshot stage : getStageLatencies()){
+            builder.append("stage ").append(stage).append(System.lineSeparator());
+        }
+        for (CacheSnapshot cache : getCaches()){
+            builder.append("cache ").append(cache).append(System.lineSeparator());
+        }
+        return builder.toString();
+    }
+
+}
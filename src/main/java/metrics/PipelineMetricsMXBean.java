@@ -0,0 +1,29 @@
+package metrics;
+
+import java.util.List;
+
+public interface PipelineMetricsMXBean {
+
+    long getCapturedPackets();
+
+    double getCapturedPacketsPerSecond();
+
+    long getKernelReceivedPackets();
+
+    long getKernelDroppedPackets();
+
+    long getInterfaceDroppedPackets();
+
+    int getSnifferQueueDepth();
+
+    long getSnifferQueueDroppedPackets();
+
+    List<CaptureSnapshot> getCaptures();
+
+    List<SinkSnapshot> getSinks();
+
+    List<LatencySnapshot> getStageLatencies();
+
+    List<CacheSnapshot> getCaches();
+
+}
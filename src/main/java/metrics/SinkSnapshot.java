@@ -0,0 +1,72 @@
+package metrics;
+
+public class SinkSnapshot {
+
+    private final String name;
+    private final int queueDepth;
+    private final long processedPackets;
+    private final long droppedPackets;
+    private final int samplingRate;
+    private final long sampledOutPackets;
+    private final LatencySnapshot captureToSinkLatency;
+    private final boolean cooperative;
+    private final long cpuNanos;
+
+    public SinkSnapshot(String name, int queueDepth, long processedPackets, long droppedPackets,
+                        int samplingRate, long sampledOutPackets, LatencySnapshot captureToSinkLatency,
+                        boolean cooperative, long cpuNanos){
+        this.name = name;
+        this.queueDepth = queueDepth;
+        this.processedPackets = processedPackets;
+        this.droppedPackets = droppedPackets;
+        this.samplingRate = samplingRate;
+        this.sampledOutPackets = sampledOutPackets;
+        this.captureToSinkLatency = captureToSinkLatency;
+        this.cooperative = cooperative;
+        this.cpuNanos = cpuNanos;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public long getProcessedPackets() {
+        return processedPackets;
+    }
+
+    public long getDroppedPackets() {
+        return droppedPackets;
+    }
+
+    public int getSamplingRate() {
+        return samplingRate;
+    }
+
+    public long getSampledOutPackets() {
+        return sampledOutPackets;
+    }
+
+    public LatencySnapshot getCaptureToSinkLatency() {
+        return captureToSinkLatency;
+    }
+
+    public boolean isCooperative() {
+        return cooperative;
+    }
+
+    public long getCpuNanos() {
+        return cpuNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (%s, %.3f s CPU): queue depth %d, processed %d, dropped %d, sampling 1/%d (%d sampled out), %s",
+                name, (cooperative ? "cooperative" : "dedicated"), cpuNanos / 1e9, queueDepth, processedPackets,
+                droppedPackets, samplingRate, sampledOutPackets, captureToSinkLatency);
+    }
+
+}
@@ -0,0 +1,72 @@
+package output;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+public enum Compression {
+
+    NONE(""),
+    GZIP(".gz"),
+    DEFLATE(".deflate");
+
+    private static final int COMPRESSOR_BUFFER_SIZE = 64 * 1024;
+
+    private final String fileExtension;
+
+    Compression(String fileExtension){
+        this.fileExtension = fileExtension;
+    }
+
+    public String getFileExtension() {
+        return fileExtension;
+    }
+
+    public static Compression forFileName(String fileName){
+        for (Compression compression : values()){
+            if (compression != NONE && fileName.endsWith(compression.fileExtension)){ return compression; }
+        }
+        return NONE;
+    }
+
+    public InputStream unwrap(InputStream in) throws IOException {
+        switch (this){
+            case GZIP:
+                return new GZIPInputStream(in, COMPRESSOR_BUFFER_SIZE);
+            case DEFLATE:
+                return new InflaterInputStream(in);
+            default:
+                return in;
+        }
+    }
+
+    OutputStream wrap(OutputStream out) throws IOException {
+        switch (this){
+            case GZIP:
+                return new GZIPOutputStream(out, COMPRESSOR_BUFFER_SIZE, true){
+                    {
+                        def.setLevel(Deflater.BEST_SPEED);
+                    }
+                };
+            case DEFLATE:
+                return new DeflaterOutputStream(out, new Deflater(Deflater.BEST_SPEED), COMPRESSOR_BUFFER_SIZE, true){
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            def.end();
+                        }
+                    }
+                };
+            default:
+                return out;
+        }
+    }
+
+}
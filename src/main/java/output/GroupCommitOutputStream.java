@@ -0,0 +1,383 @@
+package output;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Output stream that decouples callers from file I/O. Writes are copied into one of a small set of reusable
+ * chunks; full chunks (or chunks older than the maximum commit delay) are handed to a dedicated committer
+ * thread that compresses, writes and optionally fsyncs them. Writers therefore only block if the committer
+ * falls behind by more than the number of spare chunks, and interrupts on the writing thread never reach the
+ * file channel. The committer only ever try-locks the stream to commit a stale chunk, so a writer holding the
+ * lock while it waits for a free chunk can never stall the committer that would free one.
+ */
+public class GroupCommitOutputStream extends OutputStream {
+
+    private static final Logger logger = LoggerFactory.getLogger(GroupCommitOutputStream.class);
+    private static final int NUM_CHUNKS = 3;
+    private static final Chunk END = new Chunk(0);
+
+    private final FileChannel channel;
+    private final OutputStream committerOutput;
+    private final GroupCommitSettings settings;
+    private final BlockingQueue<Chunk> freeChunks = new ArrayBlockingQueue<>(NUM_CHUNKS);
+    private final BlockingQueue<Chunk> committedChunks = new ArrayBlockingQueue<>(NUM_CHUNKS + 1);
+    private final Thread committer;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final CharArraySequence charView = new CharArraySequence();
+
+    private Chunk activeChunk;
+    private long numBytesWritten;
+    private boolean closed;
+    private volatile IOException commitFailure;
+
+    public GroupCommitOutputStream(Path file, GroupCommitSettings settings) throws IOException {
+        this.settings = settings;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            this.committerOutput = settings.getCompression().wrap(new ChannelOutputStream(channel));
+        } catch (IOException e){
+            channel.close();
+            throw e;
+        }
+        for (int i = 0; i < NUM_CHUNKS; i++){
+            freeChunks.add(new Chunk(settings.getBufferSize()));
+        }
+        this.committer = new Thread(this::runCommitter, "group-commit-" + file.getFileName());
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        lock.lock();
+        try {
+            Chunk chunk = acquireChunk(1);
+            chunk.bytes[chunk.length++] = (byte) b;
+            numBytesWritten++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        lock.lock();
+        try {
+            while (len > 0){
+                Chunk chunk = acquireChunk(1);
+                int n = Math.min(len, chunk.bytes.length - chunk.length);
+                System.arraycopy(b, off, chunk.bytes, chunk.length, n);
+                chunk.length += n;
+                off += n;
+                len -= n;
+                numBytesWritten += n;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Encodes the given characters as UTF-8 straight into the active chunk, avoiding the intermediate
+     * byte arrays an encoder would allocate.
+     */
+    public void writeUtf8(CharSequence s, int off, int len) throws IOException {
+        lock.lock();
+        try {
+            int end = off + len;
+            for (int i = off; i < end; i++){
+                char c = s.charAt(i);
+                if (c < 0x80){
+                    Chunk chunk = acquireChunk(1);
+                    byte[] bytes = chunk.bytes;
+                    int pos = chunk.length;
+                    int limit = Math.min(end, i + bytes.length - pos);
+                    bytes[pos++] = (byte) c;
+                    while (++i < limit && (c = s.charAt(i)) < 0x80){
+                        bytes[pos++] = (byte) c;
+                    }
+                    i--;
+                    numBytesWritten += pos - chunk.length;
+                    chunk.length = pos;
+                } else if (c < 0x800){
+                    Chunk chunk = acquireChunk(2);
+                    chunk.bytes[chunk.length++] = (byte) (0xC0 | (c >> 6));
+                    chunk.bytes[chunk.length++] = (byte) (0x80 | (c & 0x3F));
+                    numBytesWritten += 2;
+                } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(s.charAt(i + 1))){
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    Chunk chunk = acquireChunk(4);
+                    chunk.bytes[chunk.length++] = (byte) (0xF0 | (cp >> 18));
+                    chunk.bytes[chunk.length++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    chunk.bytes[chunk.length++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    chunk.bytes[chunk.length++] = (byte) (0x80 | (cp & 0x3F));
+                    numBytesWritten += 4;
+                } else if (Character.isSurrogate(c)){
+                    Chunk chunk = acquireChunk(1);
+                    chunk.bytes[chunk.length++] = (byte) '?';
+                    numBytesWritten++;
+                } else {
+                    Chunk chunk = acquireChunk(3);
+                    chunk.bytes[chunk.length++] = (byte) (0xE0 | (c >> 12));
+                    chunk.bytes[chunk.length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    chunk.bytes[chunk.length++] = (byte) (0x80 | (c & 0x3F));
+                    numBytesWritten += 3;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Same as {@link #writeUtf8(CharSequence, int, int)}, reading the characters through a reusable view
+     * of the array instead of wrapping it per call.
+     */
+    public void writeUtf8(char[] chars, int off, int len) throws IOException {
+        lock.lock();
+        try {
+            charView.chars = chars;
+            writeUtf8(charView, off, len);
+        } finally {
+            charView.chars = null;
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Hands the buffered bytes to the committer without waiting for them to reach the file.
+     */
+    @Override
+    public void flush() throws IOException {
+        lock.lock();
+        try {
+            checkOpen();
+            commitActiveChunk();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed){ return; }
+            closed = true;
+            commitActiveChunk();
+            putUninterruptibly(committedChunks, END);
+        } finally {
+            lock.unlock();
+        }
+        boolean interrupted = false;
+        while (committer.isAlive()){
+            try {
+                committer.join();
+            } catch (InterruptedException e){
+                interrupted = true;
+            }
+        }
+        if (interrupted){ Thread.currentThread().interrupt(); }
+        channel.close();
+        IOException failure = commitFailure;
+        if (failure != null){ throw failure; }
+    }
+
+    public long getNumBytesWritten() {
+        lock.lock();
+        try {
+            return numBytesWritten;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Chunk acquireChunk(int minSpace) throws IOException {
+        checkOpen();
+        if (activeChunk != null && activeChunk.bytes.length - activeChunk.length < minSpace){
+            commitActiveChunk();
+        }
+        if (activeChunk == null){
+            activeChunk = takeUninterruptibly(freeChunks);
+            activeChunk.length = 0;
+            activeChunk.createdNanos = System.nanoTime();
+        }
+        return activeChunk;
+    }
+
+    private void commitActiveChunk(){
+        if (activeChunk == null){ return; }
+        if (activeChunk.length == 0){
+            freeChunks.add(activeChunk);
+        } else {
+            putUninterruptibly(committedChunks, activeChunk);
+        }
+        activeChunk = null;
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed){ throw new IOException("Stream closed"); }
+        IOException failure = commitFailure;
+        if (failure != null){ throw new IOException("Background commit failed", failure); }
+    }
+
+    private void runCommitter(){
+        long delayNanos = TimeUnit.MILLISECONDS.toNanos(settings.getMaxCommitDelayMillis());
+        while (true){
+            Chunk chunk;
+            try {
+                chunk = committedChunks.poll(settings.getMaxCommitDelayMillis(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e){
+                continue;
+            }
+            if (chunk == null){
+                commitStaleChunk(delayNanos);
+                continue;
+            }
+            if (chunk == END){
+                finishOutput();
+                return;
+            }
+            if (commitFailure == null){
+                try {
+                    committerOutput.write(chunk.bytes, 0, chunk.length);
+                    committerOutput.flush();
+                    if (settings.getFsyncPolicy() == FsyncPolicy.EVERY_COMMIT){ channel.force(false); }
+                } catch (IOException e){
+                    logger.error("Group commit failed; further output is discarded", e);
+                    commitFailure = e;
+                }
+            }
+            freeChunks.add(chunk);
+        }
+    }
+
+    private void finishOutput(){
+        try {
+            committerOutput.close();
+            if (commitFailure == null && settings.getFsyncPolicy() != FsyncPolicy.NEVER){ channel.force(false); }
+        } catch (IOException e){
+            if (commitFailure == null){ commitFailure = e; }
+        }
+    }
+
+    private void commitStaleChunk(long delayNanos){
+        if (!lock.tryLock()){ return; }
+        try {
+            if (activeChunk != null && activeChunk.length > 0 && System.nanoTime() - activeChunk.createdNanos >= delayNanos){
+                committedChunks.add(activeChunk);
+                activeChunk = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static <T> T takeUninterruptibly(BlockingQueue<T> queue){
+        boolean interrupted = false;
+        try {
+            while (true){
+                try {
+                    return queue.take();
+                } catch (InterruptedException e){
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted){ Thread.currentThread().interrupt(); }
+        }
+    }
+
+    private static <T> void putUninterruptibly(BlockingQueue<T> queue, T element){
+        boolean interrupted = false;
+        try {
+            while (true){
+                try {
+                    queue.put(element);
+                    return;
+                } catch (InterruptedException e){
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted){ Thread.currentThread().interrupt(); }
+        }
+    }
+
+    private static class Chunk {
+
+        private final byte[] bytes;
+        private int length;
+        private long createdNanos;
+
+        private Chunk(int size){
+            this.bytes = new byte[size];
+        }
+
+    }
+
+    private static class CharArraySequence implements CharSequence {
+
+        private char[] chars;
+
+        @Override
+        public int length() {
+            return chars.length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return chars[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(chars, start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars);
+        }
+
+    }
+
+    private static class ChannelOutputStream extends OutputStream {
+
+        private final FileChannel channel;
+
+        private ChannelOutputStream(FileChannel channel){
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            while (buffer.hasRemaining()){
+                channel.write(buffer);
+            }
+        }
+
+        @Override
+        public void close() {}
+
+    }
+
+}
@@ -0,0 +1,42 @@
+package output;
+
+public class GroupCommitSettings {
+
+    public static final GroupCommitSettings DEFAULT = new GroupCommitSettings(1024 * 1024, 1000, FsyncPolicy.NEVER, Compression.NONE);
+
+    private final int bufferSize;
+    private final long maxCommitDelayMillis;
+    private final FsyncPolicy fsyncPolicy;
+    private final Compression compression;
+
+    public GroupCommitSettings(int bufferSize, long maxCommitDelayMillis, FsyncPolicy fsyncPolicy, Compression compression){
+        if (bufferSize < 16 || maxCommitDelayMillis <= 0){
+            throw new IllegalArgumentException("Unsupported group commit settings: " + bufferSize + " bytes, " + maxCommitDelayMillis + " ms");
+        }
+        this.bufferSize = bufferSize;
+        this.maxCommitDelayMillis = maxCommitDelayMillis;
+        this.fsyncPolicy = fsyncPolicy;
+        this.compression = compression;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public long getMaxCommitDelayMillis() {
+        return maxCommitDelayMillis;
+    }
+
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    public String fileNameFor(String fileName){
+        return (fileName.endsWith(compression.getFileExtension()) ? fileName : fileName + compression.getFileExtension());
+    }
+
+}
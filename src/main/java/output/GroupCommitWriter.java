@@ -0,0 +1,72 @@
+package output;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.file.Path;
+
+/**
+ * PrintWriter that encodes straight into a {@link GroupCommitOutputStream}, so text sinks keep their
+ * println-based output while the file I/O moves to the committer thread.
+ */
+public class GroupCommitWriter extends PrintWriter {
+
+    private final GroupCommitOutputStream stream;
+
+    public GroupCommitWriter(Path file, GroupCommitSettings settings) throws IOException {
+        this(new GroupCommitOutputStream(file, settings));
+    }
+
+    private GroupCommitWriter(GroupCommitOutputStream stream){
+        super(new Utf8Writer(stream), false);
+        this.stream = stream;
+    }
+
+    @Override
+    public PrintWriter append(CharSequence csq) {
+        if (csq == null){ return super.append(csq); }
+        synchronized (lock){
+            try {
+                stream.writeUtf8(csq, 0, csq.length());
+            } catch (IOException e){
+                setError();
+            }
+        }
+        return this;
+    }
+
+    public GroupCommitOutputStream getStream() {
+        return stream;
+    }
+
+    private static class Utf8Writer extends Writer {
+
+        private final GroupCommitOutputStream stream;
+
+        private Utf8Writer(GroupCommitOutputStream stream){
+            this.stream = stream;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            stream.writeUtf8(cbuf, off, len);
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            stream.writeUtf8(str, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            stream.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            stream.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,214 @@
+package packetSinks;
+
+import flows.FlowSampler;
+import metrics.CpuAccount;
+import metrics.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import queues.RingBufferSettings;
+import queues.SpscRingBuffer;
+import sniffer.CapturedPacket;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public abstract class AbstractPacketSink implements PacketSink {
+
+    private static final Logger logger = LoggerFactory.getLogger(AbstractPacketSink.class);
+
+    private static final long SHUTDOWN_CHECK_MILLIS = 100;
+
+    private int numSources;
+    private boolean shuttingDown;
+
+    private SpscRingBuffer<CapturedPacket> packetQueue;
+    private LatencyHistogram captureToSinkLatency;
+    private volatile long numProcessedPackets;
+    private volatile FlowSampler sampler;
+    private volatile long numSampledOutPackets;
+    private final CpuAccount cpuAccount;
+    private volatile Runnable wakeUp;
+    private final AtomicBoolean batchScheduled;
+    private final AtomicBoolean closed;
+
+    public AbstractPacketSink(RingBufferSettings queueSettings){
+        this.numSources = 0;
+        this.shuttingDown = false;
+        this.packetQueue = queueSettings.newRingBuffer();
+        this.captureToSinkLatency = new LatencyHistogram("capture-to-sink");
+        this.sampler = new FlowSampler(FlowSampler.KEEP_ALL);
+        this.cpuAccount = new CpuAccount();
+        this.batchScheduled = new AtomicBoolean();
+        this.closed = new AtomicBoolean();
+    }
+
+    /**
+     * Processes queued packets until shutdown has been requested and every source is done, then closes
+     * the sink on this thread, so the output is never closed while a packet is still being processed.
+     */
+    @Override
+    public void run(){
+        boolean interrupted = false;
+        while (packetsExpected()){
+            try {
+                CapturedPacket packet = packetQueue.poll(SHUTDOWN_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+                if (packet != null){ handle(packet); }
+            } catch (InterruptedException e){
+                interrupted = true;
+                requestShutdown();
+            }
+        }
+        close();
+        if (interrupted){ Thread.currentThread().interrupt(); }
+    }
+
+    /**
+     * Processes up to the given number of queued packets without blocking, for sinks that share threads
+     * instead of owning one. Returns true if more packets arrived and the caller should run another batch;
+     * otherwise the next accepted packet triggers the wake-up again. Once shutdown has been requested and
+     * the sources are done, the batch that empties the queue closes the sink.
+     */
+    public final boolean runBatch(int maxPackets){
+        try {
+            if (closed.get()){ return false; }
+            for (int i = 0; i < maxPackets; i++){
+                CapturedPacket packet = packetQueue.poll();
+                if (packet == null){ break; }
+                handle(packet);
+            }
+            if (!packetsExpected()){
+                close();
+                return false;
+            }
+        } finally {
+            batchScheduled.set(false);
+        }
+        return (!packetQueue.isEmpty() || !packetsExpected()) && batchScheduled.compareAndSet(false, true);
+    }
+
+    /**
+     * Switches the sink to cooperative execution: instead of a thread blocking on the queue, the wake-up
+     * runs whenever a packet arrives or the sink may close while no batch is pending, and must eventually
+     * call {@link #runBatch}.
+     */
+    public void enableCooperativeExecution(Runnable wakeUp){
+        this.wakeUp = wakeUp;
+    }
+
+    public boolean isCooperative(){
+        return wakeUp != null;
+    }
+
+    /**
+     * Same as interrupting the thread running the sink: it closes once its sources are done and it has
+     * processed what they handed over.
+     */
+    public void requestShutdown(){
+        if (!isShuttingDown()){ shutdown(); }
+    }
+
+    private void handle(CapturedPacket packet){
+        captureToSinkLatency.record(System.nanoTime() - packet.getArrivalNanos());
+        processPacket(packet);
+        numProcessedPackets++;
+    }
+
+    private synchronized boolean isShuttingDown(){
+        return shuttingDown;
+    }
+
+    private synchronized boolean packetsExpected(){
+        return numSources > 0 || !shuttingDown || !packetQueue.isEmpty();
+    }
+
+    @Override
+    public final void acceptPacket(CapturedPacket o){
+        if (!sampler.accepts(o)){
+            numSampledOutPackets++;
+            return;
+        }
+        if (!packetQueue.offer(o)){
+            logger.debug("Couldn't save a sniffed packet - queue is too full");
+        }
+        scheduleBatch();
+    }
+
+    private void scheduleBatch(){
+        Runnable wakeUp = this.wakeUp;
+        if (wakeUp != null && batchScheduled.compareAndSet(false, true)){ wakeUp.run(); }
+    }
+
+    public long getNumDroppedPackets(){
+        return packetQueue.getNumDropped();
+    }
+
+    public long getNumProcessedPackets(){
+        return numProcessedPackets;
+    }
+
+    public long getNumSampledOutPackets(){
+        return numSampledOutPackets;
+    }
+
+    public void setSamplingRate(int rate){
+        this.sampler = new FlowSampler(rate);
+    }
+
+    public int getSamplingRate(){
+        return sampler.getRate();
+    }
+
+    public int getQueueDepth(){
+        return packetQueue.size();
+    }
+
+    public CpuAccount getCpuAccount(){
+        return cpuAccount;
+    }
+
+    public LatencyHistogram getCaptureToSinkLatency(){
+        return captureToSinkLatency;
+    }
+
+    protected abstract void processPacket(CapturedPacket o);
+
+    @Override
+    public final synchronized void incrementNumActiveSources() {
+        if (!shuttingDown){
+            numSources++;
+        } else {
+            throw new IllegalStateException("Shutting down sink - cannot accept new sources");
+        }
+    }
+
+    @Override
+    public final void decrementNumActiveSources() {
+        boolean lastSource;
+        synchronized (this){
+            numSources--;
+            lastSource = (shuttingDown && numSources == 0);
+        }
+        if (lastSource){ scheduleBatch(); }
+    }
+
+    private void shutdown() {
+        boolean noSources;
+        synchronized (this){
+            shuttingDown = true;
+            noSources = (numSources == 0);
+        }
+        if (noSources){ scheduleBatch(); }
+    }
+
+    private void close(){
+        if (!closed.compareAndSet(false, true)){ return; }
+        doBeforeShuttingDown();
+        closeOutput();
+        logger.info("A sink has shut down");
+    }
+
+    protected void doBeforeShuttingDown(){}
+
+    protected abstract void closeOutput();
+
+}
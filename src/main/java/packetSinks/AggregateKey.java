@@ -0,0 +1,52 @@
+package packetSinks;
+
+import java.util.Objects;
+
+public class AggregateKey {
+
+    private final String deserializedObjType;
+    private final boolean lenFoundInPrefix;
+
+    public AggregateKey(String deserializedObjType, boolean lenFoundInPrefix){
+        this.deserializedObjType = deserializedObjType;
+        this.lenFoundInPrefix = lenFoundInPrefix;
+    }
+
+    public String getDeserializedObjType() {
+        return deserializedObjType;
+    }
+
+    public boolean isLenFoundInPrefix() {
+        return lenFoundInPrefix;
+    }
+
+    @Override
+    public String toString() {
+        return getString(-1);
+    }
+
+    public String getString(long numOccurances){
+        if (numOccurances <= 0){
+            return String.format("(class: %s, serial length found: %b)", deserializedObjType, lenFoundInPrefix);
+        } else {
+            return String.format("(class: %s, serial length found: %b, number of occurances: %d)", deserializedObjType, lenFoundInPrefix, numOccurances);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o){
+        if (this == o){
+            return true;
+        } else if (!(o instanceof AggregateKey)){
+            return false;
+        } else {
+            return Objects.equals(this.deserializedObjType, ((AggregateKey) o).deserializedObjType) && Objects.equals(this.lenFoundInPrefix, ((AggregateKey) o).lenFoundInPrefix);
+        }
+    }
+
+    @Override
+    public int hashCode(){
+        return Objects.hash(deserializedObjType, lenFoundInPrefix);
+    }
+
+}
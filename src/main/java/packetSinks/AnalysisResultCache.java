@@ -0,0 +1,189 @@
+package packetSinks;
+
+import metrics.CacheSnapshot;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+import packetSinks.PacketDeserializer.PacketAnalysisResults;
+
+/**
+ * Remembers the analysis of recently seen payloads so that repeated payloads (heartbeats, requests
+ * broadcast to every replica, retransmissions) skip the deserialization search. Entries are found by
+ * a 64-bit hash of the payload and confirmed by comparing the bytes. The cache is direct-mapped: a new
+ * payload evicts whatever shared its slot. Each slot keeps its entry and payload buffer for the next
+ * payload, so caching allocates only when a slot is first used or its buffer has to grow. The buffers'
+ * total size is bounded too; payloads that would grow them beyond it aren't cached.
+ * <p>
+ * Writers lock a slot without waiting and skip caching if another writer holds it. Readers don't lock:
+ * they copy the entry optimistically and count it as a miss if it was changed meanwhile.
+ */
+public class AnalysisResultCache {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+    public static final long DEFAULT_MAX_WEIGHT_BYTES = 16L * 1024 * 1024;
+
+    private final String name;
+    private final AtomicReferenceArray<Entry> entries;
+    private final int mask;
+    private final long maxWeightBytes;
+    private final AtomicLong weightBytes;
+    private final AtomicInteger numEntries;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+
+    public AnalysisResultCache(String name){
+        this(name, DEFAULT_CAPACITY, DEFAULT_MAX_WEIGHT_BYTES);
+    }
+
+    public AnalysisResultCache(String name, int requestedCapacity, long maxWeightBytes){
+        int capacity = Integer.highestOneBit(Math.max(2, requestedCapacity) - 1) << 1;
+        this.name = name;
+        this.entries = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+        this.maxWeightBytes = maxWeightBytes;
+        this.weightBytes = new AtomicLong();
+        this.numEntries = new AtomicInteger();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+    }
+
+    /**
+     * Copies the cached analysis of the payload into the results; returns false, leaving the payload
+     * analysis cleared, if it isn't cached.
+     */
+    boolean get(byte[] buffer, int offset, int length, long hash, PacketAnalysisResults results){
+        Entry entry = entries.get(slotOf(hash));
+        if (entry != null){
+            long stamp = entry.lock.tryOptimisticRead();
+            if (stamp != 0 && entry.hasPayload(buffer, offset, length, hash)){
+                results.copyPayloadAnalysisFrom(entry.results);
+                if (entry.lock.validate(stamp)){
+                    hits.increment();
+                    return true;
+                }
+                results.clearPayloadAnalysis();
+            }
+        }
+        misses.increment();
+        return false;
+    }
+
+    /**
+     * Caches a copy of the payload and its analysis, since the given buffer belongs to the packet.
+     */
+    void put(byte[] buffer, int offset, int length, long hash, PacketAnalysisResults results){
+        if (length > maxWeightBytes){ return; }
+        Entry entry = entryAt(slotOf(hash));
+        long stamp = entry.lock.tryWriteLock();
+        if (stamp == 0){ return; }
+        try {
+            if (entry.payload.length < length){
+                int grownBytes = length - entry.payload.length;
+                if (weightBytes.addAndGet(grownBytes) > maxWeightBytes){
+                    weightBytes.addAndGet(-grownBytes);
+                    return;
+                }
+                entry.payload = new byte[length];
+            }
+            if (entry.occupied){
+                evictions.increment();
+            } else {
+                entry.occupied = true;
+                numEntries.incrementAndGet();
+            }
+            System.arraycopy(buffer, offset, entry.payload, 0, length);
+            entry.length = length;
+            entry.hash = hash;
+            entry.results.copyPayloadAnalysisFrom(results);
+        } finally {
+            entry.lock.unlockWrite(stamp);
+        }
+    }
+
+    private Entry entryAt(int slot){
+        Entry entry = entries.get(slot);
+        if (entry == null){
+            entries.compareAndSet(slot, null, new Entry());
+            entry = entries.get(slot);
+        }
+        return entry;
+    }
+
+    private int slotOf(long hash){
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    public CacheSnapshot snapshot(){
+        return new CacheSnapshot(name, numEntries.get(), weightBytes.get(), hits.sum(), misses.sum(), evictions.sum());
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    static long hash(byte[] data, int offset, int length){
+        long h = length * 0x9E3779B97F4A7C15L;
+        int end = offset + length;
+        int i = offset;
+        for (; i + 8 <= end; i += 8){
+            h = (h ^ mix(readLongLittleEndian(data, i))) * 0x9E3779B97F4A7C15L;
+        }
+        long tail = 0;
+        for (int shift = 0; i < end; i++, shift += 8){
+            tail |= (data[i] & 0xFFL) << shift;
+        }
+        h = (h ^ mix(tail)) * 0x9E3779B97F4A7C15L;
+        return mix(h);
+    }
+
+    private static long readLongLittleEndian(byte[] data, int i){
+        return (data[i] & 0xFFL) | (data[i + 1] & 0xFFL) << 8 | (data[i + 2] & 0xFFL) << 16 | (data[i + 3] & 0xFFL) << 24
+                | (data[i + 4] & 0xFFL) << 32 | (data[i + 5] & 0xFFL) << 40 | (data[i + 6] & 0xFFL) << 48 | (data[i + 7] & 0xFFL) << 56;
+    }
+
+    private static long mix(long k){
+        k ^= k >>> 33;
+        k *= 0xFF51AFD7ED558CCDL;
+        return k ^ (k >>> 29);
+    }
+
+    private static class Entry {
+
+        private static final byte[] NO_PAYLOAD = {};
+
+        private final StampedLock lock;
+        private final PacketAnalysisResults results;
+        private byte[] payload;
+        private int length;
+        private long hash;
+        private boolean occupied;
+
+        private Entry(){
+            this.lock = new StampedLock();
+            this.results = new PacketAnalysisResults();
+            this.payload = NO_PAYLOAD;
+        }
+
+        /**
+         * May be called while a writer changes the entry, which the caller detects afterwards; until
+         * then the fields may be inconsistent, so the buffer is only read within its bounds.
+         */
+        private boolean hasPayload(byte[] buffer, int offset, int length, long hash){
+            byte[] payload = this.payload;
+            if (!occupied || this.hash != hash || this.length != length || payload.length < length){ return false; }
+            for (int i = 0; i < length; i++){
+                if (payload[i] != buffer[offset + i]){ return false; }
+            }
+            return true;
+        }
+
+    }
+
+}
@@ -0,0 +1,164 @@
+package packetSinks;
+
+import flows.FlowKey;
+import metrics.CacheSnapshot;
+import packetSinks.PacketDeserializer.PacketAnalysisResults;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers how each flow frames its messages - for example a 4-byte big-endian length in front of
+ * every serialized object, as BFT-SMaRt sends them - so that packets on an established connection are
+ * decoded at the known offset instead of being searched for a stream header. A framing is learnt from
+ * a packet whose object length was found in its prefix and confirmed by the first packet decoded with
+ * it. Packets that don't start a frame at the known offset - continuations of a longer message, or
+ * messages coalesced behind the end of an earlier one - are still searched; an object found there with
+ * the same length field layout doesn't change a confirmed framing. A frame that doesn't decode as
+ * described makes the flow's framing be forgotten.
+ * The table is two-way set-associative; a new flow evicts one of the two framings that shared its slots.
+ */
+public class FlowFramingDetector {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final String name;
+    private final AtomicReferenceArray<Framing> framings;
+    private final int mask;
+    private final AtomicInteger numFramings;
+    private final LongAdder framedPackets;
+    private final LongAdder searchedPackets;
+    private final LongAdder evictions;
+
+    public FlowFramingDetector(String name){
+        this(name, DEFAULT_CAPACITY);
+    }
+
+    public FlowFramingDetector(String name, int requestedCapacity){
+        int capacity = Integer.highestOneBit(Math.max(2, requestedCapacity) - 1) << 1;
+        this.name = name;
+        this.framings = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+        this.numFramings = new AtomicInteger();
+        this.framedPackets = new LongAdder();
+        this.searchedPackets = new LongAdder();
+        this.evictions = new LongAdder();
+    }
+
+    Framing get(long flowAddresses, long flowPortsAndProtocol){
+        int slot = slotOf(flowAddresses, flowPortsAndProtocol);
+        Framing framing = framings.get(slot);
+        if (framing != null && framing.isFor(flowAddresses, flowPortsAndProtocol)){ return framing; }
+        framing = framings.get(slot ^ 1);
+        return (framing != null && framing.isFor(flowAddresses, flowPortsAndProtocol) ? framing : null);
+    }
+
+    /**
+     * Takes note of a packet that had to be searched, learning or forgetting the flow's framing
+     * depending on where its object turned up.
+     */
+    void recordSearched(PacketAnalysisResults results, Framing current){
+        searchedPackets.increment();
+        if (results.getType() == null){ return; }
+        if (results.isSerializedObjectByteLengthFoundInPrefix()){
+            if (current == null || !current.matches(results) && !(current.confirmed && current.hasLayoutOf(results))){
+                put(new Framing(results.getFlowAddresses(), results.getFlowPortsAndProtocol(), results.getLengthFieldOffset(),
+                        results.getPrefixLength(), results.getLengthAdjustment()));
+            }
+        } else if (current != null){
+            forget(current);
+        }
+    }
+
+    void recordFramed(){
+        framedPackets.increment();
+    }
+
+    void forget(Framing framing){
+        int slot = slotOf(framing.flowAddresses, framing.flowPortsAndProtocol);
+        if (framings.compareAndSet(slot, framing, null) || framings.compareAndSet(slot ^ 1, framing, null)){
+            numFramings.decrementAndGet();
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Each flow can go in its own slot or the neighbouring one. A flow replaces its earlier framing,
+     * otherwise an empty slot is taken before a framing that hasn't been confirmed is evicted.
+     */
+    private void put(Framing framing){
+        int slot = slotOf(framing.flowAddresses, framing.flowPortsAndProtocol);
+        Framing first = framings.get(slot);
+        Framing second = framings.get(slot ^ 1);
+        if (second != null && second.isFor(framing.flowAddresses, framing.flowPortsAndProtocol)
+                || !(first == null || first.isFor(framing.flowAddresses, framing.flowPortsAndProtocol)) && (second == null || first.confirmed && !second.confirmed)){
+            slot ^= 1;
+        }
+        Framing evicted = framings.getAndSet(slot, framing);
+        if (evicted == null){
+            numFramings.incrementAndGet();
+        } else {
+            evictions.increment();
+        }
+    }
+
+    private int slotOf(long flowAddresses, long flowPortsAndProtocol){
+        long hash = FlowKey.hash(flowAddresses, flowPortsAndProtocol);
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    /**
+     * Hits are packets handled by a known framing, misses are packets that were searched.
+     */
+    public CacheSnapshot snapshot(){
+        return new CacheSnapshot(name, numFramings.get(), 0, framedPackets.sum(), searchedPackets.sum(), evictions.sum());
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    static final class Framing {
+
+        private final long flowAddresses;
+        private final long flowPortsAndProtocol;
+        final int lengthFieldOffset;
+        final int objectOffset;
+        final int lengthAdjustment;
+
+        private volatile boolean confirmed;
+
+        private Framing(long flowAddresses, long flowPortsAndProtocol, int lengthFieldOffset, int objectOffset, int lengthAdjustment){
+            this.flowAddresses = flowAddresses;
+            this.flowPortsAndProtocol = flowPortsAndProtocol;
+            this.lengthFieldOffset = lengthFieldOffset;
+            this.objectOffset = objectOffset;
+            this.lengthAdjustment = lengthAdjustment;
+        }
+
+        private boolean isFor(long flowAddresses, long flowPortsAndProtocol){
+            return this.flowAddresses == flowAddresses && this.flowPortsAndProtocol == flowPortsAndProtocol;
+        }
+
+        private boolean matches(PacketAnalysisResults results){
+            return lengthFieldOffset == results.getLengthFieldOffset() && objectOffset == results.getPrefixLength()
+                    && lengthAdjustment == results.getLengthAdjustment();
+        }
+
+        /**
+         * Whether the object was framed the same way, wherever it was in the payload.
+         */
+        private boolean hasLayoutOf(PacketAnalysisResults results){
+            return objectOffset - lengthFieldOffset == results.getPrefixLength() - results.getLengthFieldOffset()
+                    && lengthAdjustment == results.getLengthAdjustment();
+        }
+
+        void confirm(){
+            if (!confirmed){ confirmed = true; }
+        }
+
+    }
+
+}
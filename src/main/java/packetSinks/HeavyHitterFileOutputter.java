@@ -0,0 +1,90 @@
+package packetSinks;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import queues.RingBufferSettings;
+import sketches.HeavyHitterSettings;
+import sketches.HeavyHitterSummary;
+import sniffer.CapturedPacket;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import packetSinks.PacketDeserializer.PacketAnalysisResults;
+
+/**
+ * Counts packets by decoded object type, by flow and by both in a {@link HeavyHitterSummary}, so its
+ * memory stays fixed however many types and flows are seen. On shutdown it writes a top-k report to
+ * the output file and the summary itself next to it, where {@code display.HeavyHitterReport} can merge
+ * it with the summaries of other sinks or capture hosts.
+ */
+public class HeavyHitterFileOutputter extends AbstractPacketFileOutputter {
+
+    private static final Logger logger = LoggerFactory.getLogger(HeavyHitterFileOutputter.class);
+
+    public static final String SUMMARY_FILE_EXTENSION = ".hhs";
+    public static final int DEFAULT_REPORTED_HEAVY_HITTERS = 20;
+
+    private final String summaryFileName;
+    private final int numReportedHeavyHitters;
+    private final HeavyHitterSummary summary;
+    private final AnalysisResultCache resultCache;
+    private final FlowFramingDetector framingDetector;
+    private final PacketAnalysisResults results;
+
+    public HeavyHitterFileOutputter(String fileName) throws IOException {
+        this(fileName, RingBufferSettings.DEFAULT, HeavyHitterSettings.DEFAULT, DEFAULT_REPORTED_HEAVY_HITTERS);
+    }
+
+    public HeavyHitterFileOutputter(String fileName, RingBufferSettings queueSettings, HeavyHitterSettings settings, int numReportedHeavyHitters) throws IOException {
+        super(fileName, queueSettings);
+        this.summaryFileName = fileName + SUMMARY_FILE_EXTENSION;
+        this.numReportedHeavyHitters = numReportedHeavyHitters;
+        this.summary = new HeavyHitterSummary(settings);
+        this.resultCache = new AnalysisResultCache("heavy hitter analysis results");
+        this.framingDetector = new FlowFramingDetector("heavy hitter flow framing");
+        this.results = new PacketAnalysisResults();
+        logger.info("Heavy hitter summary {} takes {} bytes", settings, summary.getMemoryBytes());
+    }
+
+    @Override
+    protected void processPacket(CapturedPacket o) {
+        PacketDeserializer.analyzePacket(o, resultCache, framingDetector, results);
+        synchronized (summary){
+            summary.record(results.hasFlow(), results.getFlowAddresses(), results.getFlowPortsAndProtocol(), results.getType());
+        }
+    }
+
+    /**
+     * A copy of the summary so far, which can be merged with others while capturing goes on.
+     */
+    public HeavyHitterSummary snapshot(){
+        synchronized (summary){
+            return summary.copy();
+        }
+    }
+
+    public AnalysisResultCache getResultCache() {
+        return resultCache;
+    }
+
+    public FlowFramingDetector getFramingDetector() {
+        return framingDetector;
+    }
+
+    @Override
+    protected void doBeforeShuttingDown() {
+        synchronized (summary){
+            summary.writeReport(writer, numReportedHeavyHitters);
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(Paths.get(summaryFileName)))){
+                summary.writeTo(out);
+            } catch (IOException e){
+                logger.error("Couldn't write the heavy hitter summary to " + summaryFileName, e);
+            }
+        }
+    }
+
+}
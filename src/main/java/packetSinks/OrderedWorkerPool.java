@@ -0,0 +1,207 @@
+package packetSinks;
+
+import metrics.CpuAccount;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs a function over submitted inputs on a fixed number of worker threads and hands the results
+ * to a consumer in submission order. Completed results wait in a reorder buffer until a single writer
+ * thread has handed every earlier result to the consumer, so workers never wait on the consumer's
+ * output; the buffer's size bounds the number of inputs in flight. Inputs are submitted from one
+ * thread, and once the pool is shutting down, it refuses them.
+ * <p>
+ * Each slot of the reorder buffer has a preallocated task that is reused for every input submitted to
+ * that slot, and tasks are queued in a bounded array, so submitting allocates nothing. Threads that
+ * have to wait, for an input or for room in the buffer, may still allocate inside the JDK's locks.
+ */
+class OrderedWorkerPool<I, O> {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderedWorkerPool.class);
+
+    private static final int IN_FLIGHT_PER_WORKER = 64;
+    private static final Object FAILED = new Object();
+
+    private final Function<I, O> function;
+    private final Consumer<O> consumer;
+    private final ThreadPoolExecutor workers;
+    private final List<Task> tasks;
+    private final Semaphore inFlight;
+    private final Object[] reorderBuffer;
+    private final int mask;
+    private final int window;
+    private final Thread writer;
+    private volatile boolean shuttingDown;
+
+    private long nextSequence;
+    private long nextSequenceToEmit;
+
+    OrderedWorkerPool(String name, int parallelism, Function<I, O> function, Consumer<O> consumer){
+        this(name, parallelism, function, consumer, new CpuAccount());
+    }
+
+    OrderedWorkerPool(String name, int parallelism, Function<I, O> function, Consumer<O> consumer, CpuAccount cpuAccount){
+        if (parallelism <= 0){ throw new IllegalArgumentException("The parallelism must be positive"); }
+        this.function = function;
+        this.consumer = consumer;
+        this.window = Integer.highestOneBit(parallelism * IN_FLIGHT_PER_WORKER - 1) << 1;
+        this.mask = window - 1;
+        this.reorderBuffer = new Object[window];
+        this.inFlight = new Semaphore(window);
+        this.workers = new ThreadPoolExecutor(parallelism, parallelism, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(window),
+                new WorkerThreadFactory(name, cpuAccount));
+        this.workers.prestartAllCoreThreads();
+        this.tasks = new ArrayList<>(window);
+        for (int i = 0; i < window; i++){
+            tasks.add(new Task());
+        }
+        this.nextSequence = 0;
+        this.nextSequenceToEmit = 0;
+        this.writer = new WorkerThreadFactory(name + "-writer", cpuAccount).newThread(this::emitInOrder);
+        this.writer.start();
+    }
+
+    /**
+     * Returns false if the input was refused because the pool is shutting down.
+     */
+    boolean submit(I input) throws InterruptedException {
+        if (shuttingDown){ return false; }
+        inFlight.acquire();
+        long sequence = nextSequence++;
+        Task task = tasks.get((int) sequence & mask);
+        task.input = input;
+        task.sequence = sequence;
+        try {
+            workers.execute(task);
+        } catch (RejectedExecutionException e){
+            complete(sequence, FAILED);
+            return false;
+        }
+        return true;
+    }
+
+    private Object apply(I input){
+        try {
+            O output = function.apply(input);
+            return (output == null ? FAILED : output);
+        } catch (RuntimeException e){
+            logger.error("A worker couldn't process its input, skipping it...", e);
+            return FAILED;
+        }
+    }
+
+    private void complete(long sequence, Object output){
+        synchronized (reorderBuffer){
+            reorderBuffer[(int) sequence & mask] = output;
+            if (sequence == nextSequenceToEmit){ reorderBuffer.notify(); }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void emitInOrder(){
+        try {
+            while (true){
+                Object next;
+                synchronized (reorderBuffer){
+                    int slot = (int) nextSequenceToEmit & mask;
+                    while ((next = reorderBuffer[slot]) == null){
+                        reorderBuffer.wait();
+                    }
+                    reorderBuffer[slot] = null;
+                    nextSequenceToEmit++;
+                }
+                if (next != FAILED){ accept((O) next); }
+                inFlight.release();
+            }
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void accept(O output){
+        try {
+            consumer.accept(output);
+        } catch (RuntimeException e){
+            logger.error("Couldn't hand over a result, skipping it...", e);
+        }
+    }
+
+    int getMaxInFlight(){
+        return window;
+    }
+
+    void awaitCompletion(){
+        inFlight.acquireUninterruptibly(window);
+        inFlight.release(window);
+    }
+
+    /**
+     * Refuses further inputs, waits until every accepted one has been handed to the consumer, and
+     * stops the threads.
+     */
+    void shutdown(){
+        shuttingDown = true;
+        awaitCompletion();
+        writer.interrupt();
+        workers.shutdown();
+    }
+
+    /**
+     * Only reused once the writer has handed over its previous result, which the worker stored after
+     * it had read the input.
+     */
+    private class Task implements Runnable {
+
+        private I input;
+        private long sequence;
+
+        @Override
+        public void run() {
+            I input = this.input;
+            this.input = null;
+            complete(sequence, apply(input));
+        }
+
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+
+        private final String name;
+        private final AtomicInteger numThreads;
+        private final CpuAccount cpuAccount;
+
+        WorkerThreadFactory(String name, CpuAccount cpuAccount){
+            this.name = name;
+            this.cpuAccount = cpuAccount;
+            this.numThreads = new AtomicInteger();
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(() -> {
+                cpuAccount.attachCurrentThread();
+                try {
+                    runnable.run();
+                } finally {
+                    cpuAccount.detachCurrentThread();
+                }
+            }, name + "-" + numThreads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+
+    }
+
+}
@@ -1,84 +1,282 @@
 package packetSinks;
 
-import org.pcap4j.packet.Packet;
+import flows.FlowTable;
+import metrics.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import output.GroupCommitOutputStream;
+import output.GroupCommitSettings;
+import queues.RingBufferSettings;
+import records.AnalysisRecord;
+import records.AnalysisRecordWriter;
+import records.RecordFormat;
+import records.RecordSettings;
+import sniffer.CapturedPacket;
+import windows.WindowSettings;
+import windows.WindowSnapshot;
+import windows.WindowedAggregator;
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
 
 import packetSinks.PacketDeserializer.PacketAnalysisResults;
 
 public class PacketDeserializationAnalysisFileOutputter extends AbstractPacketFileOutputter {
 
-    private Map<AggregateKey, Integer> aggregateOccurances;
+    private static final Logger logger = LoggerFactory.getLogger(PacketDeserializationAnalysisFileOutputter.class);
+
+    public static final int DEFAULT_ANALYSIS_PARALLELISM = Runtime.getRuntime().availableProcessors();
+    public static final int DEFAULT_FLOW_TABLE_CAPACITY = 1 << 16;
+    public static final long DEFAULT_FLOW_IDLE_TIMEOUT_NANOS = TimeUnit.MINUTES.toNanos(2);
+
+    private static final int PACKETS_BETWEEN_FLOW_EVICTIONS = 4096;
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private static final AggregateKey[] UNTYPED_AGGREGATE_KEYS = {new AggregateKey(null, false), new AggregateKey(null, true)};
+
+    private ConcurrentMap<AggregateKey, LongAdder> aggregateOccurances;
+    private final ConcurrentMap<String, AggregateKey[]> aggregateKeys;
+    private final BlockingQueue<PacketAnalysisResults> freeResults;
+    private OrderedWorkerPool<CapturedPacket, PacketAnalysisResults> analysisWorkers;
+    private final LatencyHistogram analysisLatency;
+    private final AnalysisResultCache resultCache;
+    private final FlowFramingDetector framingDetector;
+    private final WindowedAggregator<AggregateKey> windowedAggregates;
+    private final AnalysisRecordWriter recordWriter;
+    private final AnalysisRecord record;
+
+    private final FlowTable flowTable;
+    private final long flowIdleTimeoutNanos;
+    private final Map<String, Integer> typeIds;
+    private final List<String> typesById;
+    private final FlowTable.FlowVisitor flowPrinter;
+    private long numPacketsSinceFlowEviction;
+    private final StringBuilder resultBuilder = new StringBuilder(1024);
 
     public PacketDeserializationAnalysisFileOutputter(String fileName) throws IOException {
-        super(fileName);
-        this.aggregateOccurances = new HashMap<>();
+        this(fileName, RingBufferSettings.DEFAULT);
     }
 
-    @Override
-    protected void processPacket(Packet o) {
-        PacketAnalysisResults results = PacketDeserializer.analyzePacket(o);
-        writer.println();
-        writer.println(results);
-        writer.println("---------------- END ----------------");
-        updateAggregateCount(results);
+    public PacketDeserializationAnalysisFileOutputter(String fileName, RingBufferSettings queueSettings) throws IOException {
+        this(fileName, queueSettings, DEFAULT_ANALYSIS_PARALLELISM);
     }
 
-    private void updateAggregateCount(PacketAnalysisResults results){
-        AggregateKey key = new AggregateKey(results.getType(), results.isSerializedObjectByteLengthFoundInPrefix());
-        Integer numOccurances = aggregateOccurances.get(key);
-        numOccurances = (numOccurances == null ? 1 : numOccurances + 1);
-        aggregateOccurances.put(key, numOccurances);
+    public PacketDeserializationAnalysisFileOutputter(String fileName, RingBufferSettings queueSettings, int analysisParallelism) throws IOException {
+        this(fileName, queueSettings, analysisParallelism, DEFAULT_FLOW_TABLE_CAPACITY, false, DEFAULT_FLOW_IDLE_TIMEOUT_NANOS);
     }
 
-    @Override
-    protected void doBeforeShuttingDown(){
-        for (Map.Entry<AggregateKey, Integer> entry : aggregateOccurances.entrySet()){
-            writer.println(entry.getKey().getString(entry.getValue()));
+    public PacketDeserializationAnalysisFileOutputter(String fileName, RingBufferSettings queueSettings, int analysisParallelism,
+                                                      int flowTableCapacity, boolean flowTableOffHeap, long flowIdleTimeoutNanos) throws IOException {
+        this(fileName, queueSettings, analysisParallelism, flowTableCapacity, flowTableOffHeap, flowIdleTimeoutNanos, GroupCommitSettings.DEFAULT);
+    }
+
+    public PacketDeserializationAnalysisFileOutputter(String fileName, RingBufferSettings queueSettings, int analysisParallelism,
+                                                      int flowTableCapacity, boolean flowTableOffHeap, long flowIdleTimeoutNanos,
+                                                      GroupCommitSettings outputSettings) throws IOException {
+        this(fileName, queueSettings, analysisParallelism, flowTableCapacity, flowTableOffHeap, flowIdleTimeoutNanos, outputSettings, WindowSettings.DEFAULT);
+    }
+
+    public PacketDeserializationAnalysisFileOutputter(String fileName, RingBufferSettings queueSettings, int analysisParallelism,
+                                                      int flowTableCapacity, boolean flowTableOffHeap, long flowIdleTimeoutNanos,
+                                                      GroupCommitSettings outputSettings, WindowSettings windowSettings) throws IOException {
+        this(fileName, queueSettings, analysisParallelism, flowTableCapacity, flowTableOffHeap, flowIdleTimeoutNanos, outputSettings, windowSettings, RecordSettings.DEFAULT);
+    }
+
+    /**
+     * With binary records, each packet's analysis goes to the record file next to the text file and
+     * the text file only gets the windows, flows and totals.
+     */
+    public PacketDeserializationAnalysisFileOutputter(String fileName, RingBufferSettings queueSettings, int analysisParallelism,
+                                                      int flowTableCapacity, boolean flowTableOffHeap, long flowIdleTimeoutNanos,
+                                                      GroupCommitSettings outputSettings, WindowSettings windowSettings,
+                                                      RecordSettings recordSettings) throws IOException {
+        super(fileName, queueSettings, outputSettings);
+        if (recordSettings.getFormat() == RecordFormat.BINARY){
+            String recordFileName = outputSettings.fileNameFor(fileName + RecordSettings.BINARY_FILE_EXTENSION);
+            this.recordWriter = new AnalysisRecordWriter(new GroupCommitOutputStream(Paths.get(recordFileName), outputSettings), recordSettings.getPayloadMode());
+            this.record = new AnalysisRecord();
+        } else {
+            this.recordWriter = null;
+            this.record = null;
         }
+        this.aggregateOccurances = new ConcurrentHashMap<>();
+        this.aggregateKeys = new ConcurrentHashMap<>();
+        this.flowTable = new FlowTable(flowTableCapacity, flowTableOffHeap);
+        this.flowIdleTimeoutNanos = flowIdleTimeoutNanos;
+        this.typeIds = new HashMap<>();
+        this.typesById = new ArrayList<>();
+        this.typesById.add(null);
+        this.flowPrinter = this::writeFlow;
+        this.analysisLatency = new LatencyHistogram("analyzePacket");
+        this.resultCache = new AnalysisResultCache("analysis results");
+        this.framingDetector = new FlowFramingDetector("flow framing");
+        this.windowedAggregates = new WindowedAggregator<>(windowSettings, this::writeWindow);
+        this.analysisWorkers = new OrderedWorkerPool<>("packet-analysis", analysisParallelism, this::analyzePacket, this::writeResults, getCpuAccount());
+        this.freeResults = new ArrayBlockingQueue<>(analysisWorkers.getMaxInFlight());
     }
 
-    private static class AggregateKey {
+    @Override
+    protected void processPacket(CapturedPacket o) {
+        try {
+            if (!analysisWorkers.submit(o)){ logger.debug("Couldn't analyze a sniffed packet - the workers are shutting down"); }
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            logger.info("Couldn't analyze a sniffed packet - interrupted while waiting for a worker");
+        }
+    }
 
-        private Class<?> deserializedObjType;
-        private boolean lenFoundInPrefix;
+    private PacketAnalysisResults analyzePacket(CapturedPacket o){
+        PacketAnalysisResults results = freeResults.poll();
+        if (results == null){ results = new PacketAnalysisResults(); }
+        long start = System.nanoTime();
+        PacketDeserializer.analyzePacket(o, resultCache, framingDetector, results);
+        analysisLatency.record(System.nanoTime() - start);
+        updateAggregateCount(results);
+        return results;
+    }
 
-        AggregateKey(Class<?> deserializedObjType, boolean lenFoundInPrefix){
-            this.deserializedObjType = deserializedObjType;
-            this.lenFoundInPrefix = lenFoundInPrefix;
+    private void writeResults(PacketAnalysisResults results){
+        if (recordWriter == null){
+            writeText(results);
+        } else {
+            writeRecord(results);
         }
+        updateFlow(results);
+        windowedAggregates.record(results.getTimestampNanos(), aggregateKeyOf(results), results.getPacketLength());
+        freeResults.offer(results);
+    }
+
+    private void writeText(PacketAnalysisResults results){
+        resultBuilder.setLength(0);
+        resultBuilder.append(LINE_SEPARATOR);
+        results.appendTo(resultBuilder).append(LINE_SEPARATOR);
+        resultBuilder.append("---------------- END ----------------").append(LINE_SEPARATOR);
+        writer.append(resultBuilder);
+    }
 
-        @Override
-        public String toString() {
-            return getString(-1);
+    private void writeRecord(PacketAnalysisResults results){
+        results.copyTo(record, recordWriter.getPayloadMode());
+        try {
+            recordWriter.write(record);
+        } catch (IOException e){
+            logger.error("Couldn't write an analysis record", e);
         }
+    }
 
-        String getString(int numOccurances){
-            if (numOccurances <= 0){
-                return String.format("(class: %s, serial length found: %b)", (deserializedObjType == null ? null : deserializedObjType.getName()), lenFoundInPrefix);
-            } else {
-                return String.format("(class: %s, serial length found: %b, number of occurances: %d)", (deserializedObjType == null ? null : deserializedObjType.getName()), lenFoundInPrefix, numOccurances);
+    private void writeWindow(WindowSnapshot<AggregateKey> pane, WindowSnapshot<AggregateKey> slidingWindow){
+        writer.println("window " + pane);
+        if (slidingWindow != null){
+            writer.println("sliding window " + slidingWindow);
+        }
+        writer.flush();
+        if (recordWriter != null){
+            try {
+                recordWriter.flush();
+            } catch (IOException e){
+                logger.error("Couldn't flush the analysis records", e);
             }
         }
+    }
+
+    private void updateFlow(PacketAnalysisResults results){
+        if (!results.hasFlow()){ return; }
+        int slot = flowTable.update(results.getFlowAddresses(), results.getFlowPortsAndProtocol(), results.getPacketLength(), results.getTimestampNanos());
+        if (results.getType() != null){
+            flowTable.recordObjectType(slot, typeIdOf(results.getType()));
+        }
+        if (++numPacketsSinceFlowEviction >= PACKETS_BETWEEN_FLOW_EVICTIONS){
+            numPacketsSinceFlowEviction = 0;
+            flowTable.evictIdle(results.getTimestampNanos(), flowIdleTimeoutNanos, flowPrinter);
+        }
+    }
+
+    private int typeIdOf(String type){
+        Integer typeId = typeIds.get(type);
+        if (typeId == null){
+            typeId = typesById.size();
+            typeIds.put(type, typeId);
+            typesById.add(type);
+        }
+        return typeId;
+    }
+
+    private void writeFlow(FlowTable.Entry flow){
+        writer.println(flow.describe(typesById));
+    }
+
+    public LatencyHistogram getAnalysisLatency(){
+        return analysisLatency;
+    }
+
+    public WindowedAggregator<AggregateKey> getWindowedAggregates(){
+        return windowedAggregates;
+    }
+
+    public AnalysisResultCache getResultCache(){
+        return resultCache;
+    }
 
-        @Override
-        public boolean equals(Object o){
-            if (this == o){
-                return true;
-            } else if (!(o instanceof AggregateKey)){
-                return false;
-            } else {
-                return Objects.equals(this.deserializedObjType, ((AggregateKey) o).deserializedObjType) && Objects.equals(this.lenFoundInPrefix, ((AggregateKey) o).lenFoundInPrefix);
+    public FlowFramingDetector getFramingDetector(){
+        return framingDetector;
+    }
+
+    @Override
+    protected void closeOutput() {
+        if (recordWriter != null){
+            try {
+                recordWriter.close();
+            } catch (IOException e){
+                logger.error("Couldn't close the analysis record file", e);
             }
         }
+        super.closeOutput();
+    }
+
+    private AggregateKey aggregateKeyOf(PacketAnalysisResults results){
+        int index = (results.isSerializedObjectByteLengthFoundInPrefix() ? 1 : 0);
+        String type = results.getType();
+        if (type == null){ return UNTYPED_AGGREGATE_KEYS[index]; }
+        AggregateKey[] keys = aggregateKeys.get(type);
+        if (keys == null){
+            keys = aggregateKeys.computeIfAbsent(type, t -> new AggregateKey[]{new AggregateKey(t, false), new AggregateKey(t, true)});
+        }
+        return keys[index];
+    }
 
-        @Override
-        public int hashCode(){
-            return Objects.hash(deserializedObjType, lenFoundInPrefix);
+    private void updateAggregateCount(PacketAnalysisResults results){
+        AggregateKey key = aggregateKeyOf(results);
+        LongAdder numOccurances = aggregateOccurances.get(key);
+        if (numOccurances == null){
+            numOccurances = aggregateOccurances.computeIfAbsent(key, k -> new LongAdder());
         }
+        numOccurances.increment();
+    }
 
+    @Override
+    protected void doBeforeShuttingDown(){
+        analysisWorkers.shutdown();
+        windowedAggregates.flush();
+        if (windowedAggregates.getNumLatePackets() > 0){
+            logger.info("{} packets arrived after their window had been dropped", windowedAggregates.getNumLatePackets());
+        }
+        for (Map.Entry<AggregateKey, LongAdder> entry : aggregateOccurances.entrySet()){
+            writer.println(entry.getKey().getString(entry.getValue().sum()));
+        }
+        flowTable.forEach(flowPrinter);
+        if (flowTable.getNumRejectedUpdates() > 0){
+            logger.info("The flow table was full for {} packets", flowTable.getNumRejectedUpdates());
+        }
+        logger.info("Result cache: {}", resultCache);
+        logger.info("Flow framing: {}", framingDetector);
     }
 
 }
@@ -1,31 +1,130 @@
 package packetSinks;
 
-import org.apache.commons.codec.DecoderException;
+import flows.FlowKey;
 import org.pcap4j.packet.Packet;
-import org.apache.commons.codec.binary.Hex;
+import records.AnalysisRecord;
+import records.PayloadMode;
+import serialization.SerializationStreamParser;
+import sniffer.CapturedPacket;
+import sniffer.PacketHeaders;
 
-import java.io.*;
-import java.util.Arrays;
-import java.util.logging.Logger;
+import java.io.ObjectStreamConstants;
+import java.nio.ByteBuffer;
 
 public final class PacketDeserializer {
 
-    private static final int MAX_UNSIGNED_BYTE_VALUE = Math.toIntExact(Math.round(Math.pow(2, 8))) - 1;
-    private static final int MAX_SIGNED_BYTE_VALUE = Math.toIntExact(Math.round(Math.pow(2, 7))) - 1;
-    private static final int MIN_SIGNED_BYTE_VALUE = - Math.toIntExact(Math.round(Math.pow(2, 7)));
+    private static final int LENGTH_FIELD_SIZE = 4;
+    private static final int MAX_FRAME_HEADER_BYTES = 64;
+    private static final int FRAME_DECODED = 0;
+    private static final int NOT_A_FRAME = 1;
+    private static final int MISFRAMED = 2;
+    private static final byte[] STREAM_HEADER = ByteBuffer.allocate(4)
+            .putShort(ObjectStreamConstants.STREAM_MAGIC).putShort(ObjectStreamConstants.STREAM_VERSION).array();
+    static final int STREAM_HEADER_LENGTH = STREAM_HEADER.length;
+
+    private static final ThreadLocal<PacketHeaders> HEADERS = ThreadLocal.withInitial(PacketHeaders::new);
+    private static final ThreadLocal<SerializationStreamParser> PARSER = ThreadLocal.withInitial(SerializationStreamParser::new);
 
     private PacketDeserializer(){}
 
-    public static PacketAnalysisResults analyzePacket(Packet packet){
-        PacketAnalysisResults results = new PacketAnalysisResults();
-        byte[] byteStream = extractByteStream(packet);
-        extractObject(byteStream, results);
-        results.setBytestreamAsciiTranslation(new String(byteStream));
-        findLengthInPrefix(results);
+    public static PacketAnalysisResults analyzePacket(CapturedPacket packet){
+        return analyzePacket(packet, null);
+    }
+
+    public static PacketAnalysisResults analyzePacket(CapturedPacket packet, AnalysisResultCache cache){
+        return analyzePacket(packet, cache, new PacketAnalysisResults());
+    }
+
+    public static PacketAnalysisResults analyzePacket(CapturedPacket packet, AnalysisResultCache cache, PacketAnalysisResults results){
+        return analyzePacket(packet, cache, null, results);
+    }
+
+    /**
+     * Analyzes the packet into the given results, which are overwritten and returned. The results point
+     * into the packet's data rather than copying it, so they stay valid as long as the packet's data
+     * isn't changed; reusing one instance per thread keeps the analysis free of allocations. Packets on
+     * a flow whose framing the detector knows are decoded at the known offset without a search; packets
+     * that don't start a frame there, such as messages coalesced behind the end of an earlier one, are
+     * searched as usual.
+     */
+    public static PacketAnalysisResults analyzePacket(CapturedPacket packet, AnalysisResultCache cache, FlowFramingDetector framings,
+                                                      PacketAnalysisResults results){
+        results.reset();
+        results.setTimestampNanos(packet.getTimestampNanos());
+        results.setPacketLength(packet.getOriginalLength());
+        extractByteStream(packet, results);
+        byte[] buffer = results.getPayloadBuffer();
+        int offset = results.getPayloadOffset();
+        int length = results.getPayloadLength();
+        FlowFramingDetector.Framing framing = null;
+        if (framings != null && results.hasFlow()){
+            framing = framings.get(results.getFlowAddresses(), results.getFlowPortsAndProtocol());
+            if (framing != null){
+                int outcome = decodeFrame(buffer, offset, length, framing, results);
+                if (outcome == FRAME_DECODED){
+                    framings.recordFramed();
+                    return results;
+                } else if (outcome == MISFRAMED){
+                    framings.forget(framing);
+                    framing = null;
+                }
+            }
+        }
+        analyzePayload(buffer, offset, length, cache, results);
+        if (framings != null && results.hasFlow()){ framings.recordSearched(results, framing); }
         return results;
     }
 
-    private static byte[] extractByteStream(Packet packet){
+    private static void analyzePayload(byte[] buffer, int offset, int length, AnalysisResultCache cache, PacketAnalysisResults results){
+        long hash = 0;
+        if (cache != null){
+            hash = AnalysisResultCache.hash(buffer, offset, length);
+            if (cache.get(buffer, offset, length, hash, results)){ return; }
+        }
+        extractObject(buffer, offset, length, results);
+        findLengthInPrefix(buffer, offset, results);
+        if (cache != null){ cache.put(buffer, offset, length, hash, results); }
+    }
+
+    /**
+     * Decodes the object the flow's framing places in the payload. A frame whose object doesn't fit the
+     * payload yet continues in later packets, so it counts as decoded without a type.
+     */
+    private static int decodeFrame(byte[] buffer, int offset, int length, FlowFramingDetector.Framing framing, PacketAnalysisResults results){
+        int objectOffset = framing.objectOffset;
+        if (length < objectOffset + STREAM_HEADER_LENGTH || indexOfStreamHeader(buffer, offset + objectOffset, offset + objectOffset + STREAM_HEADER_LENGTH) < 0){
+            results.setFraming(length, 0, 0);
+            return NOT_A_FRAME;
+        }
+        int objectLength = readLength(buffer, offset + framing.lengthFieldOffset) - framing.lengthAdjustment;
+        if (objectLength < STREAM_HEADER_LENGTH){ return MISFRAMED; }
+        if (objectOffset + objectLength > length){
+            results.setFraming(length, 0, 0);
+            return FRAME_DECODED;
+        }
+        SerializationStreamParser parser = PARSER.get();
+        if (!parser.parse(buffer, offset + objectOffset, objectLength) || parser.getSerializedLength() != objectLength){ return MISFRAMED; }
+        framing.confirm();
+        results.setType(parser.getTypeName());
+        results.setFraming(objectOffset, objectLength, length - objectOffset - objectLength);
+        results.setLengthField(framing.lengthFieldOffset, framing.lengthAdjustment);
+        return FRAME_DECODED;
+    }
+
+    private static void extractByteStream(CapturedPacket capturedPacket, PacketAnalysisResults results){
+        PacketHeaders headers = HEADERS.get();
+        byte[] rawData = capturedPacket.getRawData();
+        if (headers.parse(rawData, rawData.length, capturedPacket.getDataLinkType())){
+            results.setFlow(FlowKey.packAddresses(headers.getSourceAddress(), headers.getDestinationAddress()),
+                    FlowKey.packPortsAndProtocol(headers.getIpVersion(), headers.getProtocol(), headers.getSourcePort(), headers.getDestinationPort()));
+            results.setPayload(rawData, headers.getPayloadOffset(), headers.getPayloadLength());
+        } else {
+            byte[] payload = extractInnermostPayload(capturedPacket.getPacket());
+            results.setPayload(payload, 0, payload.length);
+        }
+    }
+
+    private static byte[] extractInnermostPayload(Packet packet){
         Packet packet0 = null;
         Packet packet1 = packet;
         while (packet1 != null && !packet1.equals(packet0)){
@@ -35,79 +134,137 @@ public final class PacketDeserializer {
         return (packet0 == null ? new byte[]{} : packet0.getRawData());
     }
 
-    private static void extractObject(byte[] byteStream, PacketAnalysisResults result){
-        ByteArrayInputStream bais = null;
-        ObjectInputStream ois = null;
-        Object object = null;
-        boolean completedSuccessfully = false;
-        int byteOffset = 0;
-        int bytesLeft = 0;
-        while (!completedSuccessfully && byteOffset != byteStream.length){
-            try {
-                bais = new ByteArrayInputStream(byteStream, byteOffset, byteStream.length - byteOffset);
-                ois = new ObjectInputStream(bais);
-                object = ois.readObject();
-                bytesLeft = bais.available();
-                completedSuccessfully = true;
-            } catch (IOException | ClassNotFoundException e){
-                byteOffset++;
-                object = null;
-            } finally {
-                boolean oisClosed = true;
-                if (ois != null) { try { ois.close(); } catch (IOException e){ oisClosed = false; } }
-                if (bais != null && !oisClosed) { try { ois.close(); } catch (IOException ignored){} }
+    private static void extractObject(byte[] buffer, int offset, int length, PacketAnalysisResults result){
+        SerializationStreamParser parser = PARSER.get();
+        int end = offset + length;
+        String type = null;
+        int objectOffset = end;
+        int objectLength = 0;
+        int candidateOffset = indexOfStreamHeader(buffer, offset, end);
+        while (candidateOffset != -1){
+            if (parser.parse(buffer, candidateOffset, end - candidateOffset)){
+                type = parser.getTypeName();
+                objectOffset = candidateOffset;
+                objectLength = parser.getSerializedLength();
+                break;
             }
+            candidateOffset = indexOfStreamHeader(buffer, candidateOffset + 1, end);
         }
-        result.setType((object == null ? null : object.getClass()));
-        result.setSerializedObjectByteLength(byteStream.length - byteOffset - bytesLeft);
-        result.setBytestreamPrefix(Arrays.copyOfRange(byteStream, 0, byteOffset));
-        result.setBytestreamSuffix(Arrays.copyOfRange(byteStream, byteStream.length - bytesLeft, byteStream.length));
+        result.setType(type);
+        result.setFraming(objectOffset - offset, objectLength, end - objectOffset - objectLength);
     }
 
-    private static void findLengthInPrefix(PacketAnalysisResults result){
-        byte[] prefix = result.getBytestreamPrefix();
-        int length = result.getSerializedObjectByteLength();
-        int numBytesForLength = Math.toIntExact(Math.round(Math.ceil(Math.log(length + 1) / Math.log(MAX_UNSIGNED_BYTE_VALUE))));
-        byte[] searchPattern = new byte[numBytesForLength];
-        for (int remainder = length, i = 0; remainder > 0; remainder /= MAX_UNSIGNED_BYTE_VALUE, i++){
-            int numToEncode = remainder % MAX_UNSIGNED_BYTE_VALUE;
-            if (numToEncode > MAX_SIGNED_BYTE_VALUE){
-                numToEncode = numToEncode - MAX_SIGNED_BYTE_VALUE - 1 + MIN_SIGNED_BYTE_VALUE;
+    static int indexOfStreamHeader(byte[] byteStream, int fromIndex, int toIndex){
+        int lastCandidate = toIndex - STREAM_HEADER.length;
+        for (int i = fromIndex; i <= lastCandidate; i++){
+            if (byteStream[i] == STREAM_HEADER[0] && byteStream[i + 1] == STREAM_HEADER[1]
+                    && byteStream[i + 2] == STREAM_HEADER[2] && byteStream[i + 3] == STREAM_HEADER[3]){
+                return i;
             }
-            searchPattern[i] = (byte) numToEncode;
-        }
-        boolean match = false;
-        for (int i = 0; i < prefix.length - searchPattern.length; i++){
-            match = true;
-            for (int j = 0; j < searchPattern.length; j++){
-                if (prefix[prefix.length - 1 - j] != searchPattern[searchPattern.length - 1 - j]){
-                    match = false;
-                    break;
-                }
+        }
+        return -1;
+    }
+
+    /**
+     * Looks for a 4-byte big-endian field in the bytes just before the object that holds the object's
+     * length, either alone or together with the header bytes between the field and the object.
+     */
+    private static void findLengthInPrefix(byte[] buffer, int offset, PacketAnalysisResults result){
+        if (result.getType() == null){ return; }
+        int objectOffset = result.getPrefixLength();
+        int objectLength = result.getSerializedObjectByteLength();
+        int lowestFieldOffset = Math.max(0, objectOffset - LENGTH_FIELD_SIZE - MAX_FRAME_HEADER_BYTES);
+        for (int fieldOffset = objectOffset - LENGTH_FIELD_SIZE; fieldOffset >= lowestFieldOffset; fieldOffset--){
+            int value = readLength(buffer, offset + fieldOffset);
+            int headerBytes = objectOffset - fieldOffset - LENGTH_FIELD_SIZE;
+            if (value == objectLength || value == objectLength + headerBytes){
+                result.setLengthField(fieldOffset, value - objectLength);
+                return;
             }
-            if (match){ break; }
         }
-        result.setSerializedObjectByteLengthFoundInPrefix(match);
     }
 
-    static class PacketAnalysisResults {
+    private static int readLength(byte[] buffer, int position){
+        return ((buffer[position] & 0xFF) << 24) | ((buffer[position + 1] & 0xFF) << 16) | ((buffer[position + 2] & 0xFF) << 8) | (buffer[position + 3] & 0xFF);
+    }
+
+    /**
+     * The analysis of one packet. The payload isn't copied: the results hold the buffer it was found in
+     * together with its offset and length, and the prefix, object and suffix are consecutive slices of
+     * it. The hex and ASCII renderings are only produced when the results are appended to some output.
+     */
+    public static class PacketAnalysisResults {
 
-        private Class<?> type;
+        private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+        private String type;
         private boolean serializedObjectByteLengthFoundInPrefix;
         private int serializedObjectByteLength;
+        private int prefixLength;
+        private int suffixLength;
+        private int lengthFieldOffset = -1;
+        private int lengthAdjustment;
+
+        private byte[] payloadBuffer;
+        private int payloadOffset;
+        private int payloadLength;
+
+        private long flowAddresses;
+        private long flowPortsAndProtocol;
+        private long timestampNanos;
+        private int packetLength;
+
+        public PacketAnalysisResults(){}
+
+        void reset(){
+            clearPayloadAnalysis();
+            payloadBuffer = null;
+            payloadOffset = 0;
+            payloadLength = 0;
+            flowAddresses = 0;
+            flowPortsAndProtocol = 0;
+            timestampNanos = 0;
+            packetLength = 0;
+        }
+
+        public boolean hasFlow() {
+            return flowPortsAndProtocol != 0;
+        }
 
-        private byte[] bytestreamPrefix;
-        private byte[] bytestreamSuffix;
+        public long getFlowAddresses() {
+            return flowAddresses;
+        }
 
-        private String bytestreamAsciiTranslation;
+        public long getFlowPortsAndProtocol() {
+            return flowPortsAndProtocol;
+        }
 
-        private PacketAnalysisResults(){}
+        public void setFlow(long flowAddresses, long flowPortsAndProtocol) {
+            this.flowAddresses = flowAddresses;
+            this.flowPortsAndProtocol = flowPortsAndProtocol;
+        }
+
+        public long getTimestampNanos() {
+            return timestampNanos;
+        }
+
+        public void setTimestampNanos(long timestampNanos) {
+            this.timestampNanos = timestampNanos;
+        }
+
+        public int getPacketLength() {
+            return packetLength;
+        }
 
-        public Class<?> getType() {
+        public void setPacketLength(int packetLength) {
+            this.packetLength = packetLength;
+        }
+
+        public String getType() {
             return type;
         }
 
-        public void setType(Class<?> type) {
+        public void setType(String type) {
             this.type = type;
         }
 
@@ -123,41 +280,131 @@ public final class PacketDeserializer {
             return serializedObjectByteLength;
         }
 
-        public void setSerializedObjectByteLength(int serializedObjectByteLength) {
+        public int getPrefixLength() {
+            return prefixLength;
+        }
+
+        public int getSuffixLength() {
+            return suffixLength;
+        }
+
+        /**
+         * The offset of the length field in the payload, or -1 if the object length wasn't found in the
+         * prefix.
+         */
+        public int getLengthFieldOffset() {
+            return lengthFieldOffset;
+        }
+
+        /**
+         * How many bytes the length field counts besides the object itself.
+         */
+        public int getLengthAdjustment() {
+            return lengthAdjustment;
+        }
+
+        void setLengthField(int lengthFieldOffset, int lengthAdjustment) {
+            this.serializedObjectByteLengthFoundInPrefix = true;
+            this.lengthFieldOffset = lengthFieldOffset;
+            this.lengthAdjustment = lengthAdjustment;
+        }
+
+        public void setFraming(int prefixLength, int serializedObjectByteLength, int suffixLength) {
+            this.prefixLength = prefixLength;
             this.serializedObjectByteLength = serializedObjectByteLength;
+            this.suffixLength = suffixLength;
         }
 
-        public byte[] getBytestreamPrefix() {
-            return bytestreamPrefix;
+        public byte[] getPayloadBuffer() {
+            return payloadBuffer;
         }
 
-        public void setBytestreamPrefix(byte[] bytestreamPrefix) {
-            this.bytestreamPrefix = bytestreamPrefix;
+        public int getPayloadOffset() {
+            return payloadOffset;
         }
 
-        public byte[] getBytestreamSuffix() {
-            return bytestreamSuffix;
+        public int getPayloadLength() {
+            return payloadLength;
         }
 
-        public void setBytestreamSuffix(byte[] bytestreamSuffix) {
-            this.bytestreamSuffix = bytestreamSuffix;
+        public void setPayload(byte[] buffer, int offset, int length) {
+            this.payloadBuffer = buffer;
+            this.payloadOffset = offset;
+            this.payloadLength = length;
         }
 
-        public String getBytestreamAsciiTranslation() {
-            return bytestreamAsciiTranslation;
+        /**
+         * Fills the given record for a file in the given payload mode. Without a flow the payload couldn't
+         * be looked up in the packet store, so it's stored inline even in {@link PayloadMode#STORE_REFERENCE}.
+         */
+        public void copyTo(AnalysisRecord record, PayloadMode payloadMode){
+            record.set(timestampNanos, packetLength, hasFlow(), flowAddresses, flowPortsAndProtocol, type, serializedObjectByteLengthFoundInPrefix,
+                    prefixLength, serializedObjectByteLength, suffixLength);
+            if (payloadMode == PayloadMode.FULL || (payloadMode == PayloadMode.STORE_REFERENCE && !hasFlow())){
+                record.setPayload(payloadBuffer, payloadOffset);
+            } else if (payloadMode == PayloadMode.FRAMING){
+                record.setFraming(payloadBuffer, payloadOffset);
+            }
         }
 
-        public void setBytestreamAsciiTranslation(String bytestreamAsciiTranslation) {
-            this.bytestreamAsciiTranslation = bytestreamAsciiTranslation;
+        void clearPayloadAnalysis(){
+            type = null;
+            serializedObjectByteLengthFoundInPrefix = false;
+            serializedObjectByteLength = 0;
+            prefixLength = 0;
+            suffixLength = 0;
+            lengthFieldOffset = -1;
+            lengthAdjustment = 0;
+        }
+
+        void copyPayloadAnalysisFrom(PacketAnalysisResults other){
+            this.type = other.type;
+            this.serializedObjectByteLengthFoundInPrefix = other.serializedObjectByteLengthFoundInPrefix;
+            this.serializedObjectByteLength = other.serializedObjectByteLength;
+            this.prefixLength = other.prefixLength;
+            this.suffixLength = other.suffixLength;
+            this.lengthFieldOffset = other.lengthFieldOffset;
+            this.lengthAdjustment = other.lengthAdjustment;
         }
 
         @Override
         public String toString() {
-            return String.format("{type: %s, length found: %b, length: %d, prefix: %s, suffix: %s, bytestream translation: %s}",
-                    (type == null ? null : type.getName()), serializedObjectByteLengthFoundInPrefix, serializedObjectByteLength,
-                    (bytestreamPrefix == null ? null : Hex.encodeHexString(bytestreamPrefix)),
-                    (bytestreamSuffix == null ? null : Hex.encodeHexString(bytestreamSuffix)),
-                    bytestreamAsciiTranslation);
+            return appendTo(new StringBuilder()).toString();
+        }
+
+        public StringBuilder appendTo(StringBuilder sb) {
+            sb.append("{type: ").append(type)
+                    .append(", length found: ").append(serializedObjectByteLengthFoundInPrefix)
+                    .append(", length: ").append(serializedObjectByteLength)
+                    .append(", prefix: ");
+            appendHex(sb, payloadOffset, prefixLength);
+            sb.append(", suffix: ");
+            appendHex(sb, payloadOffset + payloadLength - suffixLength, suffixLength);
+            sb.append(", bytestream translation: ");
+            appendAscii(sb, payloadOffset, payloadLength);
+            return sb.append('}');
+        }
+
+        private void appendHex(StringBuilder sb, int offset, int length){
+            if (payloadBuffer == null){
+                sb.append((String) null);
+                return;
+            }
+            for (int i = offset; i < offset + length; i++){
+                byte b = payloadBuffer[i];
+                sb.append(HEX_DIGITS[(b >> 4) & 0xF]).append(HEX_DIGITS[b & 0xF]);
+            }
+        }
+
+        private void appendAscii(StringBuilder sb, int offset, int length){
+            if (payloadBuffer == null){
+                sb.append((String) null);
+                return;
+            }
+            for (int i = offset; i < offset + length; i++){
+                byte b = payloadBuffer[i];
+                sb.append(b >= 0 ? (char) b : '\uFFFD');
+            }
         }
     }
 
@@ -1,10 +1,10 @@
 package packetSinks;
 
-import org.pcap4j.packet.Packet;
+import sniffer.CapturedPacket;
 
 public interface PacketSink extends Runnable {
 
-    void acceptPacket(Packet o);
+    void acceptPacket(CapturedPacket o);
 
     void incrementNumActiveSources();
 
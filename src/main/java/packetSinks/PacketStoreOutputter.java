@@ -0,0 +1,62 @@
+package packetSinks;
+
+import flows.FlowKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import queues.RingBufferSettings;
+import sniffer.CapturedPacket;
+import sniffer.PacketHeaders;
+import store.PacketStore;
+
+import java.io.File;
+import java.io.IOException;
+
+public class PacketStoreOutputter extends AbstractPacketSink {
+
+    private static final Logger logger = LoggerFactory.getLogger(PacketStoreOutputter.class);
+
+    private final PacketStore store;
+    private final PacketHeaders headers;
+
+    public PacketStoreOutputter(File directory) throws IOException {
+        this(directory, PacketStore.DEFAULT_SEGMENT_BYTES, RingBufferSettings.DEFAULT);
+    }
+
+    public PacketStoreOutputter(File directory, int segmentBytes, RingBufferSettings queueSettings) throws IOException {
+        super(queueSettings);
+        this.store = new PacketStore(directory, segmentBytes);
+        this.headers = new PacketHeaders();
+    }
+
+    @Override
+    protected void processPacket(CapturedPacket o) {
+        byte[] data = o.getRawData();
+        long flowAddresses = 0;
+        long flowPortsAndProtocol = 0;
+        if (headers.parse(data, data.length, o.getDataLinkType())){
+            flowAddresses = FlowKey.packAddresses(headers.getSourceAddress(), headers.getDestinationAddress());
+            flowPortsAndProtocol = FlowKey.packPortsAndProtocol(headers.getIpVersion(), headers.getProtocol(), headers.getSourcePort(), headers.getDestinationPort());
+        }
+        try {
+            if (!store.append(o.getTimestampNanos(), o.getOriginalLength(), o.getDataLinkType(), flowAddresses, flowPortsAndProtocol, data, 0, data.length)){
+                logger.debug("Couldn't store a packet - it's larger than a segment");
+            }
+        } catch (IOException e){
+            logger.error("Couldn't store a packet in " + store.getDirectory(), e);
+        }
+    }
+
+    public PacketStore getStore() {
+        return store;
+    }
+
+    @Override
+    protected void closeOutput() {
+        try {
+            store.close();
+        } catch (IOException e){
+            logger.error("Couldn't close the packet store in " + store.getDirectory(), e);
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+package packetSinks;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import output.GroupCommitSettings;
+import pcap.CaptureFileFormat;
+import pcap.CaptureFileWriter;
+import queues.RingBufferSettings;
+import sniffer.CapturedPacket;
+
+import java.io.File;
+import java.io.IOException;
+
+public class PcapFileOutputter extends AbstractPacketSink {
+
+    private static final Logger logger = LoggerFactory.getLogger(PcapFileOutputter.class);
+
+    public static final long NO_ROTATION = Long.MAX_VALUE;
+
+    private final String fileNamePrefix;
+    private final CaptureFileFormat format;
+    private final long maxFileBytes;
+    private final long maxFileNanos;
+    private final GroupCommitSettings outputSettings;
+
+    private CaptureFileWriter fileWriter;
+    private long fileStartTimestampNanos;
+    private int fileIndex;
+
+    public PcapFileOutputter(String fileNamePrefix, CaptureFileFormat format) throws IOException {
+        this(fileNamePrefix, format, NO_ROTATION, NO_ROTATION, RingBufferSettings.DEFAULT);
+    }
+
+    public PcapFileOutputter(String fileNamePrefix, CaptureFileFormat format, long maxFileBytes, long maxFileMillis, RingBufferSettings queueSettings) throws IOException {
+        this(fileNamePrefix, format, maxFileBytes, maxFileMillis, queueSettings, GroupCommitSettings.DEFAULT);
+    }
+
+    public PcapFileOutputter(String fileNamePrefix, CaptureFileFormat format, long maxFileBytes, long maxFileMillis,
+                             RingBufferSettings queueSettings, GroupCommitSettings outputSettings) throws IOException {
+        super(queueSettings);
+        this.outputSettings = outputSettings;
+        this.fileNamePrefix = fileNamePrefix;
+        this.format = format;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFileNanos = (maxFileMillis == NO_ROTATION ? NO_ROTATION : maxFileMillis * 1_000_000L);
+        this.fileIndex = 0;
+        openNextFile();
+    }
+
+    @Override
+    protected void processPacket(CapturedPacket o) {
+        byte[] data = o.getRawData();
+        try {
+            if (needsRotation(o, data.length)){
+                closeCurrentFile();
+                openNextFile();
+            }
+            if (fileStartTimestampNanos == Long.MIN_VALUE){
+                fileStartTimestampNanos = o.getTimestampNanos();
+            }
+            fileWriter.writePacket(o.getTimestampNanos(), o.getOriginalLength(), o.getDataLinkType(), data, 0, data.length);
+        } catch (IOException e){
+            logger.error("Couldn't write a packet to " + fileWriter.getFile(), e);
+        }
+    }
+
+    private boolean needsRotation(CapturedPacket o, int length){
+        if (!fileWriter.accepts(o.getDataLinkType())){ return true; }
+        if (fileStartTimestampNanos == Long.MIN_VALUE){ return false; }
+        boolean tooLarge = maxFileBytes != NO_ROTATION && fileWriter.getNumBytesWritten() + length > maxFileBytes;
+        boolean tooOld = maxFileNanos != NO_ROTATION && o.getTimestampNanos() - fileStartTimestampNanos >= maxFileNanos;
+        return tooLarge || tooOld;
+    }
+
+    private void openNextFile() throws IOException {
+        File file = new File(outputSettings.fileNameFor(String.format("%s-%06d%s", fileNamePrefix, fileIndex++, format.getFileExtension())));
+        fileWriter = new CaptureFileWriter(file, format, CaptureFileWriter.DEFAULT_SNAPLEN, outputSettings);
+        fileStartTimestampNanos = Long.MIN_VALUE;
+    }
+
+    private void closeCurrentFile(){
+        try {
+            fileWriter.close();
+        } catch (IOException e){
+            logger.error("Couldn't close " + fileWriter.getFile(), e);
+        }
+    }
+
+    @Override
+    protected void closeOutput() {
+        closeCurrentFile();
+    }
+
+}
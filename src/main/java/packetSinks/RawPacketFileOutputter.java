@@ -1,7 +1,8 @@
 package packetSinks;
 
 import packetSinks.PacketSink;
-import org.pcap4j.packet.Packet;
+import queues.RingBufferSettings;
+import sniffer.CapturedPacket;
 
 import java.io.FileWriter;
 import java.io.IOException;
@@ -10,12 +11,16 @@ import java.io.PrintWriter;
 public class RawPacketFileOutputter extends AbstractPacketFileOutputter {
 
     public RawPacketFileOutputter(String fileName) throws IOException {
-        super(fileName);
+        this(fileName, RingBufferSettings.DEFAULT);
+    }
+
+    public RawPacketFileOutputter(String fileName, RingBufferSettings queueSettings) throws IOException {
+        super(fileName, queueSettings);
     }
 
     @Override
-    protected void processPacket(Packet o) {
-        writer.println(o.toString());
+    protected void processPacket(CapturedPacket o) {
+        writer.println(o.getPacket().toString());
         writer.println("--- END OF PACKET ---");
         writer.println();
     }
@@ -0,0 +1,160 @@
+package packetSinks;
+
+import flows.FlowKey;
+import flows.TcpStreamReassembler;
+import serialization.SerializationStreamParser;
+
+/**
+ * Finds serialized objects in one direction of a reassembled TCP stream. Every byte is scanned for
+ * the stream header only once. A header preceded by a plausible 4-byte big-endian length is decoded
+ * once its whole frame has arrived; an unframed header is retried only after the bytes buffered behind
+ * it have doubled, so a large message costs a bounded number of decode attempts. Whatever is still
+ * pending when the stream closes gets one last unframed attempt.
+ */
+class StreamingObjectDecoder implements TcpStreamReassembler.StreamConsumer {
+
+    private static final int INITIAL_BUFFER_SIZE = 4096;
+    private static final int LENGTH_PREFIX_SIZE = 4;
+    private static final int MIN_RETRY_BYTES = 1024;
+    private static final int TRUNCATED = -1;
+    private static final int NOT_AN_OBJECT = -2;
+    private static final ThreadLocal<SerializationStreamParser> PARSER = ThreadLocal.withInitial(SerializationStreamParser::new);
+
+    interface DecodedObjectListener {
+
+        void onObject(FlowKey flow, long streamOffset, String type, int length, boolean lengthPrefixed);
+
+    }
+
+    private final FlowKey flow;
+    private final DecodedObjectListener listener;
+    private final int maxBufferedBytes;
+
+    private byte[] buffer;
+    private int start;
+    private int limit;
+    private long bufferStreamOffset;
+    private int scanPosition;
+
+    private int candidate;
+    private int candidateFrameEnd;
+    private int retryLimit;
+    private String decodedType;
+
+    StreamingObjectDecoder(FlowKey flow, DecodedObjectListener listener, int maxBufferedBytes){
+        this.flow = flow;
+        this.listener = listener;
+        this.maxBufferedBytes = maxBufferedBytes;
+        this.buffer = new byte[INITIAL_BUFFER_SIZE];
+        this.candidate = -1;
+    }
+
+    @Override
+    public void onData(byte[] data, int offset, int length) {
+        if (limit - start + length > maxBufferedBytes){ discardBufferedBytes(); }
+        ensureCapacity(length);
+        System.arraycopy(data, offset, buffer, limit, length);
+        limit += length;
+        decodeAvailable();
+    }
+
+    @Override
+    public void onGap() {
+        discardBufferedBytes();
+    }
+
+    @Override
+    public void onClose() {
+        if (candidate >= 0){
+            candidateFrameEnd = -1;
+            retryLimit = limit;
+            decodeAvailable();
+        }
+        discardBufferedBytes();
+        buffer = new byte[0];
+    }
+
+    @Override
+    public int getNumBufferedBytes() {
+        return limit - start;
+    }
+
+    private void decodeAvailable(){
+        while (true){
+            if (candidate < 0){
+                candidate = PacketDeserializer.indexOfStreamHeader(buffer, scanPosition, limit);
+                if (candidate < 0){
+                    scanPosition = Math.max(scanPosition, limit - PacketDeserializer.STREAM_HEADER_LENGTH + 1);
+                    start = Math.max(start, scanPosition - LENGTH_PREFIX_SIZE);
+                    return;
+                }
+                candidateFrameEnd = frameEnd(candidate);
+                retryLimit = limit;
+            }
+            int end = (candidateFrameEnd >= 0 ? candidateFrameEnd : limit);
+            if (limit < end || limit < retryLimit){ return; }
+            int length = tryDecode(candidate, end);
+            if (length >= 0){
+                listener.onObject(flow, bufferStreamOffset + candidate, decodedType, length, candidateFrameEnd >= 0);
+                scanPosition = candidate + length;
+                start = Math.max(start, scanPosition - LENGTH_PREFIX_SIZE);
+                candidate = -1;
+            } else if (candidateFrameEnd >= 0){
+                candidateFrameEnd = -1;
+                retryLimit = limit;
+            } else if (length == TRUNCATED && limit - candidate < maxBufferedBytes){
+                retryLimit = limit + Math.max(limit - candidate, MIN_RETRY_BYTES);
+                return;
+            } else {
+                scanPosition = candidate + 1;
+                candidate = -1;
+            }
+        }
+    }
+
+    private int frameEnd(int headerPosition){
+        if (headerPosition - LENGTH_PREFIX_SIZE < start){ return -1; }
+        int p = headerPosition - LENGTH_PREFIX_SIZE;
+        int frameLength = ((buffer[p] & 0xFF) << 24) | ((buffer[p + 1] & 0xFF) << 16) | ((buffer[p + 2] & 0xFF) << 8) | (buffer[p + 3] & 0xFF);
+        if (frameLength < PacketDeserializer.STREAM_HEADER_LENGTH || frameLength > maxBufferedBytes){ return -1; }
+        return headerPosition + frameLength;
+    }
+
+    private int tryDecode(int from, int to){
+        SerializationStreamParser parser = PARSER.get();
+        if (parser.parse(buffer, from, to - from)){
+            decodedType = parser.getTypeName();
+            return parser.getSerializedLength();
+        }
+        return (parser.isTruncated() ? TRUNCATED : NOT_AN_OBJECT);
+    }
+
+    private void ensureCapacity(int length){
+        if (start > 0 && limit + length > buffer.length){
+            System.arraycopy(buffer, start, buffer, 0, limit - start);
+            bufferStreamOffset += start;
+            limit -= start;
+            scanPosition -= start;
+            if (candidate >= 0){
+                candidate -= start;
+                retryLimit -= start;
+                if (candidateFrameEnd >= 0){ candidateFrameEnd -= start; }
+            }
+            start = 0;
+        }
+        if (limit + length > buffer.length){
+            byte[] grown = new byte[Math.max(buffer.length * 2, limit + length)];
+            System.arraycopy(buffer, 0, grown, 0, limit);
+            buffer = grown;
+        }
+    }
+
+    private void discardBufferedBytes(){
+        bufferStreamOffset += limit;
+        start = 0;
+        limit = 0;
+        scanPosition = 0;
+        candidate = -1;
+    }
+
+}
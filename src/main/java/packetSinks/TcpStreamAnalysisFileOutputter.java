@@ -0,0 +1,67 @@
+package packetSinks;
+
+import flows.FlowKey;
+import flows.TcpStreamReassembler;
+import queues.RingBufferSettings;
+import sniffer.CapturedPacket;
+import sniffer.PacketHeaders;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class TcpStreamAnalysisFileOutputter extends AbstractPacketFileOutputter implements StreamingObjectDecoder.DecodedObjectListener {
+
+    public static final int DEFAULT_MAX_BYTES_PER_FLOW = 16 * 1024 * 1024;
+    public static final long DEFAULT_MAX_TOTAL_BYTES = 512L * 1024 * 1024;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(2);
+    private static final int PACKETS_BETWEEN_EVICTIONS = 4096;
+
+    private final PacketHeaders headers;
+    private final TcpStreamReassembler reassembler;
+    private final Map<String, Long> decodedObjectCounts;
+    private int packetsSinceEviction;
+
+    public TcpStreamAnalysisFileOutputter(String fileName) throws IOException {
+        this(fileName, RingBufferSettings.DEFAULT, DEFAULT_MAX_BYTES_PER_FLOW, DEFAULT_MAX_TOTAL_BYTES, DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+
+    public TcpStreamAnalysisFileOutputter(String fileName, RingBufferSettings queueSettings, int maxBytesPerFlow, long maxTotalBytes, long idleTimeoutMillis) throws IOException {
+        super(fileName, queueSettings);
+        this.headers = new PacketHeaders();
+        this.reassembler = new TcpStreamReassembler(key -> new StreamingObjectDecoder(key, this, maxBytesPerFlow),
+                maxBytesPerFlow, maxTotalBytes, TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis));
+        this.decodedObjectCounts = new HashMap<>();
+        this.packetsSinceEviction = 0;
+    }
+
+    @Override
+    protected void processPacket(CapturedPacket o) {
+        byte[] data = o.getRawData();
+        if (headers.parse(data, data.length, o.getDataLinkType())){
+            reassembler.accept(headers, data, o.getTimestampNanos());
+        }
+        if (++packetsSinceEviction >= PACKETS_BETWEEN_EVICTIONS){
+            reassembler.evictIdle(o.getTimestampNanos());
+            packetsSinceEviction = 0;
+        }
+    }
+
+    @Override
+    public void onObject(FlowKey flow, long streamOffset, String typeName, int length, boolean lengthPrefixed) {
+        writer.println(String.format("{flow: %s, stream offset: %d, type: %s, length: %d, length prefixed: %b}",
+                flow, streamOffset, typeName, length, lengthPrefixed));
+        decodedObjectCounts.merge(String.valueOf(typeName), 1L, Long::sum);
+    }
+
+    @Override
+    protected void doBeforeShuttingDown() {
+        reassembler.closeAll();
+        writer.println("Reassembly statistics: " + reassembler);
+        for (Map.Entry<String, Long> entry : decodedObjectCounts.entrySet()){
+            writer.println(String.format("(class: %s, number of decoded objects: %d)", entry.getKey(), entry.getValue()));
+        }
+    }
+
+}
@@ -0,0 +1,18 @@
+package pcap;
+
+public enum CaptureFileFormat {
+
+    PCAP(".pcap"),
+    PCAPNG(".pcapng");
+
+    private final String fileExtension;
+
+    CaptureFileFormat(String fileExtension){
+        this.fileExtension = fileExtension;
+    }
+
+    public String getFileExtension() {
+        return fileExtension;
+    }
+
+}
@@ -0,0 +1,504 @@
+package pcap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import output.Compression;
+import sniffer.CapturedPacket;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Reads pcap (micro- or nanosecond resolution, either byte order) and pcapng files without libpcap,
+ * either whole or one {@link CaptureFileSplit} at a time. Compressed files (see {@link Compression})
+ * can only be read whole. A record cut off by the end of the file ends the file, since that's how a
+ * capture that was still being written looks.
+ * <p>
+ * Splits are cut at fixed offsets without reading the file; each split's reader seeks to its offset
+ * and resynchronizes on the first record that starts a chain of {@link #RESYNC_CHAIN_LENGTH} plausible
+ * records. A pcap record is plausible if its lengths and sub-second timestamp are in range and it isn't
+ * more than {@link #RESYNC_MAX_GAP_SECONDS} from its neighbours; a pcapng block if its trailing length
+ * repeats its length. A pcapng split knows the interfaces declared before the first packet and looks up
+ * later ones in the file's {@link PcapngDeclarations} when it meets a packet for one of them; a split
+ * that starts inside a later section of a multi-section file can't tell that section's interfaces from
+ * the first one's, so such files are best read whole.
+ */
+public class CaptureFileReader implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(CaptureFileReader.class);
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final int MAX_RECORD_LENGTH = 64 * 1024 * 1024;
+    private static final int PCAPNG_SIMPLE_PACKET_BLOCK = 0x00000003;
+    private static final int PCAPNG_BLOCK_OVERHEAD = 12;
+    private static final int PCAPNG_OPTION_END = 0;
+    private static final int PCAPNG_OPTION_IF_TSRESOL = 9;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final long DEFAULT_PCAPNG_UNITS_PER_SECOND = 1_000_000L;
+    static final int RESYNC_CHAIN_LENGTH = 4;
+    static final long RESYNC_MAX_GAP_SECONDS = 3600;
+
+    private final File file;
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final long endOffset;
+    private long bufferOffset;
+    private boolean exhausted;
+
+    private boolean pcapng;
+    private int pcapLinkType;
+    private long pcapNanosPerUnit;
+    private final List<Interface> interfaces;
+    private final PcapngDeclarations declarations;
+
+    private long timestampNanos;
+    private int originalLength;
+    private int linkType;
+    private byte[] data;
+
+    public CaptureFileReader(File file) throws IOException {
+        this(CaptureFileSplit.wholeFile(file));
+    }
+
+    public CaptureFileReader(CaptureFileSplit split) throws IOException {
+        this.file = split.getFile();
+        this.endOffset = split.getEndOffset();
+        this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        this.buffer.flip();
+        this.interfaces = new ArrayList<>(split.interfaces);
+        this.declarations = (split.declarations != null ? split.declarations : new PcapngDeclarations(file));
+        this.channel = openChannel(split);
+        try {
+            if (split.getStartOffset() == 0){
+                readFileHeader();
+            } else {
+                this.bufferOffset = split.getStartOffset();
+                this.pcapng = split.pcapng;
+                this.buffer.order(split.byteOrder);
+                this.pcapLinkType = split.pcapLinkType;
+                this.pcapNanosPerUnit = split.pcapNanosPerUnit;
+                if (split.resynchronizes() && !resynchronize()){ exhausted = true; }
+            }
+        } catch (IOException | RuntimeException e){
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static ReadableByteChannel openChannel(CaptureFileSplit split) throws IOException {
+        File file = split.getFile();
+        Compression compression = Compression.forFileName(file.getName());
+        if (compression == Compression.NONE){
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            channel.position(split.getStartOffset());
+            return channel;
+        } else if (split.getStartOffset() != 0){
+            throw new IllegalArgumentException("Compressed capture files can only be read whole");
+        }
+        InputStream in = new FileInputStream(file);
+        try {
+            return Channels.newChannel(compression.unwrap(in));
+        } catch (IOException e){
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Cuts the file into splits of about the given size, reading only the headers in front of the first
+     * record; every split after the first resynchronizes when it is read. Compressed files and files
+     * no larger than one split come back as a single split.
+     */
+    public static List<CaptureFileSplit> split(File file, long targetSplitBytes) throws IOException {
+        if (Compression.forFileName(file.getName()) != Compression.NONE){
+            return Collections.singletonList(CaptureFileSplit.wholeFile(file));
+        }
+        try (CaptureFileReader reader = new CaptureFileReader(file)){
+            long firstRecordOffset = reader.skipToFirstRecord();
+            long fileSize = ((FileChannel) reader.channel).size();
+            if (firstRecordOffset < 0 || fileSize - firstRecordOffset <= targetSplitBytes){
+                return Collections.singletonList(CaptureFileSplit.wholeFile(file));
+            }
+            List<CaptureFileSplit> splits = new ArrayList<>();
+            splits.add(CaptureFileSplit.wholeFile(file).withEndOffset(firstRecordOffset + targetSplitBytes));
+            for (long start = firstRecordOffset + targetSplitBytes; start < fileSize; start += targetSplitBytes){
+                long end = (fileSize - start <= targetSplitBytes ? Long.MAX_VALUE : start + targetSplitBytes);
+                splits.add(reader.splitFrom(start, end));
+            }
+            return splits;
+        }
+    }
+
+    /**
+     * Returns the next packet, or null at the end of the file or split.
+     */
+    public CapturedPacket next() throws IOException {
+        if (!readRecord(true)){ return null; }
+        return new CapturedPacket(data, timestampNanos, originalLength, linkType);
+    }
+
+    public long getPosition(){
+        return bufferOffset + buffer.position();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    private CaptureFileSplit splitFrom(long startOffset, long endOffset){
+        return new CaptureFileSplit(file, startOffset, endOffset, true, pcapng, buffer.order(), pcapLinkType, pcapNanosPerUnit, interfaces, declarations);
+    }
+
+    /**
+     * Walks the blocks of a pcapng file, seeking past everything but section headers and interface
+     * descriptions, and returns the header state that holds from the end of each of those blocks on.
+     */
+    static NavigableMap<Long, CaptureFileSplit> readDeclarations(File file) throws IOException {
+        NavigableMap<Long, CaptureFileSplit> headerStates = new TreeMap<>();
+        try (CaptureFileReader reader = new CaptureFileReader(file)){
+            while (reader.pcapng && reader.require(PCAPNG_BLOCK_OVERHEAD)){
+                int type = reader.buffer.getInt(reader.buffer.position());
+                if (type == CaptureFileWriter.PCAPNG_SECTION_HEADER_BLOCK || type == CaptureFileWriter.PCAPNG_INTERFACE_DESCRIPTION_BLOCK){
+                    reader.readPcapngBlock(false);
+                    headerStates.put(reader.getPosition(), reader.splitFrom(reader.getPosition(), Long.MAX_VALUE));
+                } else {
+                    int length = reader.buffer.getInt(reader.buffer.position() + 4);
+                    if (length < PCAPNG_BLOCK_OVERHEAD || length > MAX_RECORD_LENGTH || (length & 3) != 0){
+                        throw new IOException("Corrupt pcapng block at offset " + reader.getPosition() + " of " + file);
+                    }
+                    reader.seek(reader.getPosition() + length);
+                }
+            }
+        } catch (EOFException e){
+            logger.warn("Ignoring the truncated block at the end of {}", file);
+        }
+        return headerStates;
+    }
+
+    private void seek(long position) throws IOException {
+        long bufferPosition = position - bufferOffset;
+        if (bufferPosition <= buffer.limit()){
+            buffer.position((int) bufferPosition);
+        } else {
+            ((FileChannel) channel).position(position);
+            bufferOffset = position;
+            buffer.clear().flip();
+        }
+    }
+
+    /**
+     * Takes the interfaces declared before the given block from the file's declarations, if they
+     * include the given interface.
+     */
+    private boolean adoptDeclaredInterfaces(long blockOffset, int interfaceId) throws IOException {
+        if (!(channel instanceof FileChannel)){ return false; }
+        CaptureFileSplit headerState = declarations.headerStateAt(blockOffset);
+        if (headerState == null || interfaceId < 0 || interfaceId >= headerState.interfaces.size()){ return false; }
+        interfaces.clear();
+        interfaces.addAll(headerState.interfaces);
+        return true;
+    }
+
+    /**
+     * Reads the file header and any pcapng blocks in front of the first packet, and returns the offset
+     * of the first record, or -1 if there's none.
+     */
+    private long skipToFirstRecord() throws IOException {
+        try {
+            while (!exhausted && require(PCAPNG_BLOCK_OVERHEAD)){
+                if (!pcapng || isPacketBlock(buffer.getInt(buffer.position()))){ return getPosition(); }
+                readPcapngBlock(false);
+            }
+        } catch (EOFException e){
+            exhausted = true;
+        }
+        return -1;
+    }
+
+    private static boolean isPacketBlock(int type){
+        return type == CaptureFileWriter.PCAPNG_ENHANCED_PACKET_BLOCK || type == PCAPNG_SIMPLE_PACKET_BLOCK;
+    }
+
+    /**
+     * Moves to the first record at or after the current position that starts a chain of plausible
+     * records. Returns false if none starts before the end of the split.
+     */
+    private boolean resynchronize() throws IOException {
+        FileChannel fileChannel = (FileChannel) channel;
+        long fileSize = fileChannel.size();
+        ByteBuffer header = ByteBuffer.allocate(CaptureFileWriter.PCAP_RECORD_HEADER_LENGTH).order(buffer.order());
+        int minRecordLength = (pcapng ? PCAPNG_BLOCK_OVERHEAD : CaptureFileWriter.PCAP_RECORD_HEADER_LENGTH);
+        while (getPosition() < endOffset && require(minRecordLength)){
+            if (startsRecordChain(fileChannel, header, getPosition(), fileSize)){ return true; }
+            buffer.position(buffer.position() + 1);
+        }
+        return false;
+    }
+
+    private boolean startsRecordChain(FileChannel fileChannel, ByteBuffer header, long position, long fileSize) throws IOException {
+        long previousSeconds = -1;
+        for (int i = 0; i < RESYNC_CHAIN_LENGTH; i++){
+            if (position == fileSize){ return i > 0; }
+            long recordLength;
+            if (pcapng){
+                recordLength = plausibleBlockLength(fileChannel, header, position);
+            } else {
+                if (!readAt(fileChannel, header, position, CaptureFileWriter.PCAP_RECORD_HEADER_LENGTH)){ return i > 0; }
+                long seconds = header.getInt(0) & 0xFFFFFFFFL;
+                if (previousSeconds >= 0 && Math.abs(seconds - previousSeconds) > RESYNC_MAX_GAP_SECONDS){ return false; }
+                previousSeconds = seconds;
+                recordLength = plausiblePcapRecordLength(header);
+            }
+            if (recordLength < 0){ return false; }
+            position += recordLength;
+            if (position > fileSize){ return i > 0; }
+        }
+        return true;
+    }
+
+    private long plausiblePcapRecordLength(ByteBuffer header){
+        long fraction = header.getInt(4) & 0xFFFFFFFFL;
+        int capturedLength = header.getInt(8);
+        int originalLength = header.getInt(12);
+        if (fraction * pcapNanosPerUnit >= NANOS_PER_SECOND || capturedLength < 0 || capturedLength > originalLength || originalLength <= 0 || originalLength > MAX_RECORD_LENGTH){
+            return -1;
+        }
+        return CaptureFileWriter.PCAP_RECORD_HEADER_LENGTH + capturedLength;
+    }
+
+    private long plausibleBlockLength(FileChannel fileChannel, ByteBuffer header, long position) throws IOException {
+        if (!readAt(fileChannel, header, position, PCAPNG_BLOCK_OVERHEAD)){ return -1; }
+        int length = header.getInt(4);
+        if (length < PCAPNG_BLOCK_OVERHEAD || length > MAX_RECORD_LENGTH || (length & 3) != 0){ return -1; }
+        if (!readAt(fileChannel, header, position + length - 4, 4) || header.getInt(0) != length){ return -1; }
+        return length;
+    }
+
+    private static boolean readAt(FileChannel fileChannel, ByteBuffer header, long position, int length) throws IOException {
+        header.clear().limit(length);
+        while (header.hasRemaining()){
+            if (fileChannel.read(header, position + header.position()) < 0){ return false; }
+        }
+        return true;
+    }
+
+    private void readFileHeader() throws IOException {
+        if (!require(4)){
+            exhausted = true;
+            return;
+        }
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        int magic = buffer.getInt(buffer.position());
+        if (magic == CaptureFileWriter.PCAPNG_SECTION_HEADER_BLOCK){
+            pcapng = true;
+            return;
+        }
+        if (magic == CaptureFileWriter.PCAP_MICROSECOND_MAGIC || magic == CaptureFileWriter.PCAP_NANOSECOND_MAGIC){
+            buffer.order(ByteOrder.BIG_ENDIAN);
+        } else if (Integer.reverseBytes(magic) == CaptureFileWriter.PCAP_MICROSECOND_MAGIC || Integer.reverseBytes(magic) == CaptureFileWriter.PCAP_NANOSECOND_MAGIC){
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            magic = Integer.reverseBytes(magic);
+        } else {
+            throw new IOException("Not a pcap or pcapng file: " + file);
+        }
+        if (!require(CaptureFileWriter.PCAP_FILE_HEADER_LENGTH)){ throw new EOFException("Truncated pcap header in " + file); }
+        pcapNanosPerUnit = (magic == CaptureFileWriter.PCAP_NANOSECOND_MAGIC ? 1 : 1000);
+        pcapLinkType = buffer.getInt(buffer.position() + 20) & 0xFFFF;
+        buffer.position(buffer.position() + CaptureFileWriter.PCAP_FILE_HEADER_LENGTH);
+    }
+
+    private boolean readRecord(boolean copyData) throws IOException {
+        try {
+            while (!exhausted && getPosition() < endOffset && require(1)){
+                if (!pcapng){
+                    return readPcapRecord(copyData);
+                } else if (readPcapngBlock(copyData)){
+                    return true;
+                }
+            }
+        } catch (EOFException e){
+            logger.warn("Ignoring the truncated record at offset {} of {}", getPosition(), file);
+        }
+        exhausted = true;
+        return false;
+    }
+
+    private boolean readPcapRecord(boolean copyData) throws IOException {
+        requireOrFail(CaptureFileWriter.PCAP_RECORD_HEADER_LENGTH);
+        long seconds = buffer.getInt() & 0xFFFFFFFFL;
+        long fraction = buffer.getInt() & 0xFFFFFFFFL;
+        int capturedLength = buffer.getInt();
+        originalLength = buffer.getInt();
+        if (capturedLength < 0 || capturedLength > MAX_RECORD_LENGTH){
+            throw new IOException("Corrupt pcap record at offset " + (getPosition() - CaptureFileWriter.PCAP_RECORD_HEADER_LENGTH) + " of " + file);
+        }
+        timestampNanos = seconds * NANOS_PER_SECOND + fraction * pcapNanosPerUnit;
+        linkType = pcapLinkType;
+        readData(capturedLength, copyData);
+        return true;
+    }
+
+    private boolean readPcapngBlock(boolean copyData) throws IOException {
+        requireOrFail(PCAPNG_BLOCK_OVERHEAD);
+        long blockOffset = getPosition();
+        int start = buffer.position();
+        int type = buffer.getInt(start);
+        if (type == CaptureFileWriter.PCAPNG_SECTION_HEADER_BLOCK){
+            if (buffer.getInt(start + 8) != CaptureFileWriter.PCAPNG_BYTE_ORDER_MAGIC){
+                buffer.order(buffer.order() == ByteOrder.BIG_ENDIAN ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+                if (buffer.getInt(start + 8) != CaptureFileWriter.PCAPNG_BYTE_ORDER_MAGIC){
+                    throw new IOException("Corrupt pcapng section header at offset " + getPosition() + " of " + file);
+                }
+            }
+            interfaces.clear();
+        }
+        int length = buffer.getInt(start + 4);
+        if (length < PCAPNG_BLOCK_OVERHEAD || length > MAX_RECORD_LENGTH || (length & 3) != 0){
+            throw new IOException("Corrupt pcapng block at offset " + getPosition() + " of " + file);
+        }
+        buffer.position(start + 8);
+        if (type == CaptureFileWriter.PCAPNG_ENHANCED_PACKET_BLOCK){
+            requireOrFail(20);
+            int interfaceId = buffer.getInt();
+            long timestamp = ((long) buffer.getInt() << 32) | (buffer.getInt() & 0xFFFFFFFFL);
+            int capturedLength = buffer.getInt();
+            originalLength = buffer.getInt();
+            if ((interfaceId < 0 || interfaceId >= interfaces.size()) && !adoptDeclaredInterfaces(blockOffset, interfaceId)){
+                throw new IOException("Packet block for an undeclared interface at offset " + getPosition() + " of " + file);
+            } else if (capturedLength < 0 || capturedLength > length - CaptureFileWriter.PCAPNG_ENHANCED_PACKET_HEADER_LENGTH - 4){
+                throw new IOException("Corrupt pcapng packet block at offset " + getPosition() + " of " + file);
+            }
+            Interface captureInterface = interfaces.get(interfaceId);
+            timestampNanos = toNanos(timestamp, captureInterface.unitsPerSecond);
+            linkType = captureInterface.linkType;
+            readData(capturedLength, copyData);
+            skip(length - CaptureFileWriter.PCAPNG_ENHANCED_PACKET_HEADER_LENGTH - capturedLength);
+            return true;
+        } else if (type == PCAPNG_SIMPLE_PACKET_BLOCK){
+            requireOrFail(4);
+            originalLength = buffer.getInt();
+            int capturedLength = Math.min(Math.max(originalLength, 0), length - 16);
+            if (interfaces.isEmpty() && !adoptDeclaredInterfaces(blockOffset, 0)){
+                throw new IOException("Packet block for an undeclared interface at offset " + getPosition() + " of " + file);
+            }
+            timestampNanos = 0;
+            linkType = interfaces.get(0).linkType;
+            readData(capturedLength, copyData);
+            skip(length - 12 - capturedLength);
+            return true;
+        } else if (type == CaptureFileWriter.PCAPNG_INTERFACE_DESCRIPTION_BLOCK){
+            requireOrFail(8);
+            int interfaceLinkType = buffer.getShort() & 0xFFFF;
+            buffer.getShort();
+            buffer.getInt();
+            interfaces.add(new Interface(interfaceLinkType, readUnitsPerSecond(length - 20)));
+            skip(4);
+        } else {
+            skip(length - 8);
+        }
+        return false;
+    }
+
+    private long readUnitsPerSecond(int optionBytes) throws IOException {
+        long unitsPerSecond = DEFAULT_PCAPNG_UNITS_PER_SECOND;
+        while (optionBytes >= 4){
+            requireOrFail(4);
+            int code = buffer.getShort() & 0xFFFF;
+            int paddedLength = ((buffer.getShort() & 0xFFFF) + 3) & ~3;
+            optionBytes -= 4;
+            if (code == PCAPNG_OPTION_END || paddedLength > optionBytes){ break; }
+            if (code == PCAPNG_OPTION_IF_TSRESOL && paddedLength > 0){
+                requireOrFail(1);
+                int resolution = buffer.get(buffer.position());
+                unitsPerSecond = ((resolution & 0x80) != 0 ? 1L << Math.min(resolution & 0x7F, 62) : pow10(Math.min(resolution, 18)));
+            }
+            skip(paddedLength);
+            optionBytes -= paddedLength;
+        }
+        skip(optionBytes);
+        return unitsPerSecond;
+    }
+
+    private static long toNanos(long timestamp, long unitsPerSecond){
+        if (unitsPerSecond == NANOS_PER_SECOND){ return timestamp; }
+        return (timestamp / unitsPerSecond) * NANOS_PER_SECOND + (long) ((timestamp % unitsPerSecond) * ((double) NANOS_PER_SECOND / unitsPerSecond));
+    }
+
+    private static long pow10(int exponent){
+        long value = 1;
+        for (int i = 0; i < exponent; i++){
+            value *= 10;
+        }
+        return value;
+    }
+
+    private void readData(int length, boolean copyData) throws IOException {
+        if (!copyData){
+            skip(length);
+            return;
+        }
+        data = new byte[length];
+        int offset = 0;
+        while (offset < length){
+            requireOrFail(1);
+            int n = Math.min(length - offset, buffer.remaining());
+            buffer.get(data, offset, n);
+            offset += n;
+        }
+    }
+
+    private void skip(long numBytes) throws IOException {
+        while (numBytes > 0){
+            requireOrFail(1);
+            int n = (int) Math.min(numBytes, buffer.remaining());
+            buffer.position(buffer.position() + n);
+            numBytes -= n;
+        }
+    }
+
+    private void requireOrFail(int numBytes) throws IOException {
+        if (!require(numBytes)){ throw new EOFException(); }
+    }
+
+    private boolean require(int numBytes) throws IOException {
+        if (buffer.remaining() >= numBytes){ return true; }
+        bufferOffset += buffer.position();
+        buffer.compact();
+        while (buffer.position() < numBytes && channel.read(buffer) >= 0){}
+        buffer.flip();
+        return buffer.remaining() >= numBytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    static final class Interface {
+
+        private final int linkType;
+        private final long unitsPerSecond;
+
+        Interface(int linkType, long unitsPerSecond){
+            this.linkType = linkType;
+            this.unitsPerSecond = unitsPerSecond;
+        }
+
+    }
+
+}
@@ -0,0 +1,76 @@
+package pcap;
+
+import java.io.File;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A run of whole records in a capture file, together with the header state needed to decode them
+ * without reading the file from the start. A split that resynchronizes starts at a nominal offset
+ * rather than a known record boundary: it begins with the first record found at or after that offset
+ * and, like every split, ends with the last record that starts before its end offset, so neighbouring
+ * splits meet at the same record.
+ */
+public class CaptureFileSplit {
+
+    private final File file;
+    private final long startOffset;
+    private final long endOffset;
+    private final boolean resynchronizes;
+
+    final boolean pcapng;
+    final ByteOrder byteOrder;
+    final int pcapLinkType;
+    final long pcapNanosPerUnit;
+    final List<CaptureFileReader.Interface> interfaces;
+    final PcapngDeclarations declarations;
+
+    CaptureFileSplit(File file, long startOffset, long endOffset, boolean resynchronizes, boolean pcapng, ByteOrder byteOrder, int pcapLinkType,
+                     long pcapNanosPerUnit, List<CaptureFileReader.Interface> interfaces, PcapngDeclarations declarations){
+        this.file = file;
+        this.startOffset = startOffset;
+        this.endOffset = endOffset;
+        this.resynchronizes = resynchronizes;
+        this.pcapng = pcapng;
+        this.byteOrder = byteOrder;
+        this.pcapLinkType = pcapLinkType;
+        this.pcapNanosPerUnit = pcapNanosPerUnit;
+        this.interfaces = new ArrayList<>(interfaces);
+        this.declarations = declarations;
+    }
+
+    public static CaptureFileSplit wholeFile(File file){
+        return new CaptureFileSplit(file, 0, Long.MAX_VALUE, false, false, ByteOrder.LITTLE_ENDIAN, -1, 1, new ArrayList<>(), null);
+    }
+
+    CaptureFileSplit withEndOffset(long endOffset){
+        return new CaptureFileSplit(file, startOffset, endOffset, resynchronizes, pcapng, byteOrder, pcapLinkType, pcapNanosPerUnit, interfaces, declarations);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getStartOffset() {
+        return startOffset;
+    }
+
+    public long getEndOffset() {
+        return endOffset;
+    }
+
+    public boolean resynchronizes() {
+        return resynchronizes;
+    }
+
+    public boolean isWholeFile() {
+        return startOffset == 0 && endOffset == Long.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+        return file + "[" + startOffset + ", " + (endOffset == Long.MAX_VALUE ? "end" : String.valueOf(endOffset)) + ")";
+    }
+
+}
@@ -0,0 +1,185 @@
+package pcap;
+
+import output.GroupCommitOutputStream;
+import output.GroupCommitSettings;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes packet records to a single pcap (nanosecond resolution) or pcapng file. Records are
+ * encoded into a small staging buffer and handed to a {@link GroupCommitOutputStream}, which
+ * does the (optionally compressed) file I/O on its own thread. This costs a copy per record that
+ * writing a direct buffer straight to a {@code FileChannel} would avoid, but keeps disk writes, fsyncs
+ * and compression off the capture path and shares them with the other file outputs.
+ * A pcap file holds a single link type; a pcapng file gets one interface block per link type.
+ */
+public class CaptureFileWriter implements Closeable {
+
+    private static final int STAGING_BUFFER_SIZE = 64 * 1024;
+    public static final int DEFAULT_SNAPLEN = 65535;
+
+    static final int PCAP_NANOSECOND_MAGIC = 0xA1B23C4D;
+    static final int PCAP_MICROSECOND_MAGIC = 0xA1B2C3D4;
+    static final int PCAP_FILE_HEADER_LENGTH = 24;
+    static final int PCAP_RECORD_HEADER_LENGTH = 16;
+
+    static final int PCAPNG_SECTION_HEADER_BLOCK = 0x0A0D0D0A;
+    static final int PCAPNG_INTERFACE_DESCRIPTION_BLOCK = 0x00000001;
+    static final int PCAPNG_ENHANCED_PACKET_BLOCK = 0x00000006;
+    static final int PCAPNG_BYTE_ORDER_MAGIC = 0x1A2B3C4D;
+    static final int PCAPNG_ENHANCED_PACKET_HEADER_LENGTH = 28;
+    private static final short PCAPNG_OPTION_END = 0;
+    private static final short PCAPNG_OPTION_IF_TSRESOL = 9;
+    private static final byte PCAPNG_NANOSECOND_RESOLUTION = 9;
+
+    private final File file;
+    private final CaptureFileFormat format;
+    private final int snaplen;
+    private final GroupCommitOutputStream output;
+    private final ByteBuffer buffer;
+    private final Map<Integer, Integer> pcapngInterfaceIds;
+
+    private int pcapLinkType;
+    private long numBytesWritten;
+
+    public CaptureFileWriter(File file, CaptureFileFormat format) throws IOException {
+        this(file, format, DEFAULT_SNAPLEN, GroupCommitSettings.DEFAULT);
+    }
+
+    public CaptureFileWriter(File file, CaptureFileFormat format, int snaplen, int bufferSize) throws IOException {
+        this(file, format, snaplen, new GroupCommitSettings(bufferSize, GroupCommitSettings.DEFAULT.getMaxCommitDelayMillis(),
+                GroupCommitSettings.DEFAULT.getFsyncPolicy(), GroupCommitSettings.DEFAULT.getCompression()));
+    }
+
+    public CaptureFileWriter(File file, CaptureFileFormat format, int snaplen, GroupCommitSettings outputSettings) throws IOException {
+        this.file = file;
+        this.format = format;
+        this.snaplen = snaplen;
+        this.output = new GroupCommitOutputStream(file.toPath(), outputSettings);
+        this.buffer = ByteBuffer.allocate(STAGING_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        this.pcapngInterfaceIds = new HashMap<>();
+        this.pcapLinkType = -1;
+        this.numBytesWritten = 0;
+        if (format == CaptureFileFormat.PCAPNG){ writeSectionHeaderBlock(); }
+    }
+
+    public boolean accepts(int linkType){
+        return format == CaptureFileFormat.PCAPNG || pcapLinkType == -1 || pcapLinkType == linkType;
+    }
+
+    public void writePacket(long timestampNanos, int originalLength, int linkType, byte[] data, int offset, int length) throws IOException {
+        int capturedLength = Math.min(length, snaplen);
+        if (format == CaptureFileFormat.PCAP){
+            writePcapRecord(timestampNanos, originalLength, linkType, data, offset, capturedLength);
+        } else {
+            writeEnhancedPacketBlock(timestampNanos, originalLength, linkType, data, offset, capturedLength);
+        }
+    }
+
+    private void writePcapRecord(long timestampNanos, int originalLength, int linkType, byte[] data, int offset, int length) throws IOException {
+        if (pcapLinkType == -1){
+            reserve(PCAP_FILE_HEADER_LENGTH);
+            buffer.putInt(PCAP_NANOSECOND_MAGIC).putShort((short) 2).putShort((short) 4)
+                    .putInt(0).putInt(0).putInt(snaplen).putInt(linkType);
+            numBytesWritten += PCAP_FILE_HEADER_LENGTH;
+            pcapLinkType = linkType;
+        } else if (pcapLinkType != linkType){
+            throw new IllegalArgumentException("A pcap file can only hold a single link type");
+        }
+        reserve(PCAP_RECORD_HEADER_LENGTH);
+        buffer.putInt((int) Math.floorDiv(timestampNanos, 1_000_000_000L))
+                .putInt((int) Math.floorMod(timestampNanos, 1_000_000_000L))
+                .putInt(length)
+                .putInt(originalLength);
+        put(data, offset, length);
+        numBytesWritten += PCAP_RECORD_HEADER_LENGTH + length;
+    }
+
+    private void writeSectionHeaderBlock() throws IOException {
+        int blockLength = 28;
+        reserve(blockLength);
+        buffer.putInt(PCAPNG_SECTION_HEADER_BLOCK).putInt(blockLength).putInt(PCAPNG_BYTE_ORDER_MAGIC)
+                .putShort((short) 1).putShort((short) 0).putLong(-1L).putInt(blockLength);
+        numBytesWritten += blockLength;
+    }
+
+    private int interfaceIdFor(int linkType) throws IOException {
+        Integer interfaceId = pcapngInterfaceIds.get(linkType);
+        if (interfaceId == null){
+            int blockLength = 32;
+            reserve(blockLength);
+            buffer.putInt(PCAPNG_INTERFACE_DESCRIPTION_BLOCK).putInt(blockLength)
+                    .putShort((short) linkType).putShort((short) 0).putInt(snaplen)
+                    .putShort(PCAPNG_OPTION_IF_TSRESOL).putShort((short) 1).put(PCAPNG_NANOSECOND_RESOLUTION).put((byte) 0).putShort((short) 0)
+                    .putShort(PCAPNG_OPTION_END).putShort((short) 0)
+                    .putInt(blockLength);
+            numBytesWritten += blockLength;
+            interfaceId = pcapngInterfaceIds.size();
+            pcapngInterfaceIds.put(linkType, interfaceId);
+        }
+        return interfaceId;
+    }
+
+    private void writeEnhancedPacketBlock(long timestampNanos, int originalLength, int linkType, byte[] data, int offset, int length) throws IOException {
+        int interfaceId = interfaceIdFor(linkType);
+        int padding = (4 - (length & 3)) & 3;
+        int blockLength = PCAPNG_ENHANCED_PACKET_HEADER_LENGTH + length + padding + 4;
+        reserve(PCAPNG_ENHANCED_PACKET_HEADER_LENGTH);
+        buffer.putInt(PCAPNG_ENHANCED_PACKET_BLOCK).putInt(blockLength).putInt(interfaceId)
+                .putInt((int) (timestampNanos >>> 32)).putInt((int) timestampNanos)
+                .putInt(length).putInt(originalLength);
+        put(data, offset, length);
+        reserve(padding + 4);
+        for (int i = 0; i < padding; i++){ buffer.put((byte) 0); }
+        buffer.putInt(blockLength);
+        numBytesWritten += blockLength;
+    }
+
+    private void reserve(int numBytes) throws IOException {
+        if (buffer.remaining() < numBytes){ drain(); }
+    }
+
+    private void put(byte[] data, int offset, int length) throws IOException {
+        while (length > 0){
+            if (!buffer.hasRemaining()){ drain(); }
+            int chunk = Math.min(length, buffer.remaining());
+            buffer.put(data, offset, chunk);
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    private void drain() throws IOException {
+        output.write(buffer.array(), 0, buffer.position());
+        buffer.clear();
+    }
+
+    public void flush() throws IOException {
+        drain();
+        output.flush();
+    }
+
+    public long getNumBytesWritten() {
+        return numBytesWritten;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            output.close();
+        }
+    }
+
+}
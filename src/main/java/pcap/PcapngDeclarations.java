@@ -0,0 +1,31 @@
+package pcap;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.NavigableMap;
+
+/**
+ * The section headers and interface descriptions of a pcapng file, shared by all splits of the file.
+ * They're only read the first time a split meets a packet for an interface it doesn't know, which
+ * happens when a file declares an interface after its first packet.
+ */
+final class PcapngDeclarations {
+
+    private final File file;
+    private NavigableMap<Long, CaptureFileSplit> headerStates;
+
+    PcapngDeclarations(File file){
+        this.file = file;
+    }
+
+    /**
+     * The header state that holds at the given offset, or null if nothing is declared before it.
+     */
+    synchronized CaptureFileSplit headerStateAt(long position) throws IOException {
+        if (headerStates == null){ headerStates = CaptureFileReader.readDeclarations(file); }
+        Map.Entry<Long, CaptureFileSplit> entry = headerStates.floorEntry(position);
+        return (entry == null ? null : entry.getValue());
+    }
+
+}
@@ -0,0 +1,7 @@
+package queues;
+
+public enum OverflowPolicy {
+    DROP_NEWEST,
+    DROP_OLDEST,
+    BLOCK
+}
@@ -0,0 +1,39 @@
+package queues;
+
+public final class RingBufferSettings {
+
+    public static final RingBufferSettings DEFAULT = new RingBufferSettings(65536, OverflowPolicy.DROP_NEWEST, WaitStrategy.PARK);
+
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final WaitStrategy waitStrategy;
+
+    public RingBufferSettings(int capacity, OverflowPolicy overflowPolicy, WaitStrategy waitStrategy){
+        if (capacity <= 0){ throw new IllegalArgumentException("The ring buffer capacity must be positive"); }
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.waitStrategy = waitStrategy;
+    }
+
+    public <E> SpscRingBuffer<E> newRingBuffer(){
+        return new SpscRingBuffer<>(capacity, overflowPolicy, waitStrategy);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("(capacity: %d, overflow policy: %s, wait strategy: %s)", capacity, overflowPolicy, waitStrategy);
+    }
+
+}
@@ -0,0 +1,156 @@
+package queues;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A preallocated, bounded queue for exactly one producer thread and one consumer thread.
+ * When the buffer is full, the overflow policy decides whether the offered element is dropped,
+ * the oldest queued element is dropped to make room, or the producer waits for the consumer.
+ * Every wait (a blocked producer or an empty buffer) goes through the configured wait strategy.
+ */
+public class SpscRingBuffer<E> {
+
+    private final AtomicReferenceArray<E> slots;
+    private final int mask;
+    private final OverflowPolicy overflowPolicy;
+    private final WaitStrategy waitStrategy;
+
+    private final AtomicLong head;
+    private final AtomicLong tail;
+    private long producerHeadCache;
+    private long consumerTailCache;
+
+    private final AtomicLong numDroppedNewest;
+    private final AtomicLong numDroppedOldest;
+
+    public SpscRingBuffer(int requestedCapacity, OverflowPolicy overflowPolicy, WaitStrategy waitStrategy){
+        int capacity = roundUpToPowerOfTwo(requestedCapacity);
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+        this.overflowPolicy = overflowPolicy;
+        this.waitStrategy = waitStrategy;
+        this.head = new AtomicLong();
+        this.tail = new AtomicLong();
+        this.numDroppedNewest = new AtomicLong();
+        this.numDroppedOldest = new AtomicLong();
+    }
+
+    private static int roundUpToPowerOfTwo(int value){
+        if (value <= 0 || value > (1 << 30)){ throw new IllegalArgumentException("Unsupported ring buffer capacity: " + value); }
+        return (value == 1 ? 1 : Integer.highestOneBit(value - 1) << 1);
+    }
+
+    public boolean offer(E element){
+        if (element == null){ throw new NullPointerException(); }
+        long currentTail = tail.get();
+        if (currentTail - producerHeadCache <= mask){
+            return publish(currentTail, element);
+        }
+        while (currentTail - (producerHeadCache = head.get()) > mask){
+            if (overflowPolicy == OverflowPolicy.DROP_NEWEST){
+                numDroppedNewest.incrementAndGet();
+                return false;
+            } else if (overflowPolicy == OverflowPolicy.DROP_OLDEST){
+                long currentHead = head.get();
+                if (currentTail - currentHead > mask && head.compareAndSet(currentHead, currentHead + 1)){
+                    numDroppedOldest.incrementAndGet();
+                }
+            } else if (Thread.currentThread().isInterrupted()){
+                numDroppedNewest.incrementAndGet();
+                return false;
+            } else {
+                waitStrategy.idle();
+            }
+        }
+        return publish(currentTail, element);
+    }
+
+    private boolean publish(long currentTail, E element){
+        slots.lazySet(index(currentTail), element);
+        tail.lazySet(currentTail + 1);
+        return true;
+    }
+
+    public E poll(){
+        while (true){
+            long currentHead = head.get();
+            if (currentHead >= consumerTailCache && currentHead >= (consumerTailCache = tail.get())){ return null; }
+            int index = index(currentHead);
+            E element = slots.get(index);
+            if (overflowPolicy != OverflowPolicy.DROP_OLDEST){
+                slots.lazySet(index, null);
+                head.lazySet(currentHead + 1);
+                return element;
+            } else if (head.compareAndSet(currentHead, currentHead + 1)){
+                return element;
+            }
+        }
+    }
+
+    public E peek(){
+        long currentHead = head.get();
+        if (currentHead >= consumerTailCache && currentHead >= (consumerTailCache = tail.get())){ return null; }
+        return slots.get(index(currentHead));
+    }
+
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        E element;
+        while ((element = poll()) == null){
+            if (Thread.interrupted()){ throw new InterruptedException(); }
+            if (System.nanoTime() - deadline >= 0){ return null; }
+            waitStrategy.idle();
+        }
+        return element;
+    }
+
+    public E take() throws InterruptedException {
+        E element;
+        while ((element = poll()) == null){
+            if (Thread.interrupted()){ throw new InterruptedException(); }
+            waitStrategy.idle();
+        }
+        return element;
+    }
+
+    private int index(long sequence){
+        return (int) sequence & mask;
+    }
+
+    public int size(){
+        long currentHead = head.get();
+        long size = tail.get() - currentHead;
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+
+    public boolean isEmpty(){
+        return size() == 0;
+    }
+
+    public int capacity(){
+        return mask + 1;
+    }
+
+    public int remainingCapacity(){
+        return capacity() - size();
+    }
+
+    public long getNumDroppedNewest(){
+        return numDroppedNewest.get();
+    }
+
+    public long getNumDroppedOldest(){
+        return numDroppedOldest.get();
+    }
+
+    public long getNumDropped(){
+        return numDroppedNewest.get() + numDroppedOldest.get();
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+}
@@ -0,0 +1,28 @@
+package queues;
+
+import java.util.concurrent.locks.LockSupport;
+
+public enum WaitStrategy {
+
+    BUSY_SPIN {
+        @Override
+        void idle() {}
+    },
+    YIELD {
+        @Override
+        void idle() {
+            Thread.yield();
+        }
+    },
+    PARK {
+        @Override
+        void idle() {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    };
+
+    private static final long PARK_NANOS = 50_000;
+
+    abstract void idle();
+
+}
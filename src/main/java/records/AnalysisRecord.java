@@ -0,0 +1,186 @@
+package records;
+
+import flows.FlowKey;
+
+import java.util.Arrays;
+
+/**
+ * One packet analysis as stored in a binary record file. Instances are reused by the writer and the
+ * reader. Depending on the payload mode, the payload array holds the whole payload, only the prefix
+ * followed by the suffix, or nothing.
+ */
+public final class AnalysisRecord {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private long timestampNanos;
+    private int packetLength;
+    private boolean hasFlow;
+    private long flowAddresses;
+    private long flowPortsAndProtocol;
+    private String type;
+    private boolean lengthFoundInPrefix;
+    private int prefixLength;
+    private int objectLength;
+    private int suffixLength;
+    private PayloadMode payloadContent;
+    private byte[] payload = new byte[256];
+    private int payloadLength;
+
+    public void set(long timestampNanos, int packetLength, boolean hasFlow, long flowAddresses, long flowPortsAndProtocol,
+                    String type, boolean lengthFoundInPrefix, int prefixLength, int objectLength, int suffixLength){
+        this.timestampNanos = timestampNanos;
+        this.packetLength = packetLength;
+        this.hasFlow = hasFlow;
+        this.flowAddresses = flowAddresses;
+        this.flowPortsAndProtocol = flowPortsAndProtocol;
+        this.type = type;
+        this.lengthFoundInPrefix = lengthFoundInPrefix;
+        this.prefixLength = prefixLength;
+        this.objectLength = objectLength;
+        this.suffixLength = suffixLength;
+        this.payloadContent = PayloadMode.STORE_REFERENCE;
+        this.payloadLength = 0;
+    }
+
+    /**
+     * Stores the whole payload: prefix, serialized object and suffix.
+     */
+    public void setPayload(byte[] data, int offset){
+        payloadLength = 0;
+        append(data, offset, prefixLength + objectLength + suffixLength);
+        payloadContent = PayloadMode.FULL;
+    }
+
+    /**
+     * Stores only the prefix and suffix of the whole payload starting at the given offset.
+     */
+    public void setFraming(byte[] data, int offset){
+        payloadLength = 0;
+        append(data, offset, prefixLength);
+        append(data, offset + prefixLength + objectLength, suffixLength);
+        payloadContent = PayloadMode.FRAMING;
+    }
+
+    byte[] preparePayload(PayloadMode content, int length){
+        if (payload.length < length){ payload = new byte[Math.max(length, payload.length * 2)]; }
+        payloadContent = content;
+        payloadLength = length;
+        return payload;
+    }
+
+    private void append(byte[] data, int offset, int length){
+        if (payload.length < payloadLength + length){ payload = Arrays.copyOf(payload, Math.max(payloadLength + length, payload.length * 2)); }
+        System.arraycopy(data, offset, payload, payloadLength, length);
+        payloadLength += length;
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public int getPacketLength() {
+        return packetLength;
+    }
+
+    public boolean hasFlow() {
+        return hasFlow;
+    }
+
+    public long getFlowAddresses() {
+        return flowAddresses;
+    }
+
+    public long getFlowPortsAndProtocol() {
+        return flowPortsAndProtocol;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public boolean isLengthFoundInPrefix() {
+        return lengthFoundInPrefix;
+    }
+
+    public int getPrefixLength() {
+        return prefixLength;
+    }
+
+    public int getObjectLength() {
+        return objectLength;
+    }
+
+    public int getSuffixLength() {
+        return suffixLength;
+    }
+
+    public int getPayloadLength() {
+        return prefixLength + objectLength + suffixLength;
+    }
+
+    public PayloadMode getPayloadContent() {
+        return payloadContent;
+    }
+
+    byte[] getPayloadBytes() {
+        return payload;
+    }
+
+    int getStoredPayloadLength() {
+        return payloadLength;
+    }
+
+    /**
+     * Appends the same text the analysis sink writes in text mode. Bytes that weren't stored are
+     * replaced by their count.
+     */
+    public StringBuilder appendTo(StringBuilder sb){
+        sb.append("{type: ").append(type)
+                .append(", length found: ").append(lengthFoundInPrefix)
+                .append(", length: ").append(objectLength)
+                .append(", prefix: ");
+        if (payloadContent == PayloadMode.STORE_REFERENCE){
+            appendMissing(sb, prefixLength).append(", suffix: ");
+            appendMissing(sb, suffixLength).append(", bytestream translation: ");
+            appendMissing(sb, getPayloadLength());
+        } else {
+            appendHex(sb, 0, prefixLength).append(", suffix: ");
+            int suffixOffset = (payloadContent == PayloadMode.FULL ? prefixLength + objectLength : prefixLength);
+            appendHex(sb, suffixOffset, suffixLength).append(", bytestream translation: ");
+            if (payloadContent == PayloadMode.FULL){
+                appendAscii(sb, 0, payloadLength);
+            } else {
+                appendMissing(sb, getPayloadLength());
+            }
+        }
+        return sb.append('}');
+    }
+
+    private StringBuilder appendHex(StringBuilder sb, int offset, int length){
+        for (int i = offset; i < offset + length; i++){
+            sb.append(HEX_DIGITS[(payload[i] >> 4) & 0xF]).append(HEX_DIGITS[payload[i] & 0xF]);
+        }
+        return sb;
+    }
+
+    private void appendAscii(StringBuilder sb, int offset, int length){
+        for (int i = offset; i < offset + length; i++){
+            sb.append(payload[i] >= 0 ? (char) payload[i] : '\uFFFD');
+        }
+    }
+
+    private static StringBuilder appendMissing(StringBuilder sb, int length){
+        return sb.append('<').append(length).append(" bytes not stored>");
+    }
+
+    @Override
+    public String toString() {
+        return appendTo(new StringBuilder()).toString();
+    }
+
+    public FlowKey getFlowKey() {
+        return (hasFlow ? FlowKey.unpack(flowAddresses, flowPortsAndProtocol) : null);
+    }
+
+}
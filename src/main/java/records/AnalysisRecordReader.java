@@ -0,0 +1,122 @@
+package records;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static records.AnalysisRecordWriter.*;
+
+/**
+ * Reads files written by {@link AnalysisRecordWriter}. The layout is a header (magic, version, payload
+ * mode) followed by tagged entries:
+ * <pre>
+ * class:  TAG_CLASS  id:varint nameLength:varint name:utf8
+ * record: TAG_RECORD flags:u8 timestampDelta:zigzag-varint packetLength:varint
+ *         [flowAddresses:i64 flowPortsAndProtocol:varint] [classId:varint]
+ *         prefixLength:varint objectLength:varint suffixLength:varint [payload bytes]
+ * </pre>
+ */
+public class AnalysisRecordReader implements Closeable {
+
+    private final DataInputStream in;
+    private final PayloadMode payloadMode;
+    private final List<String> classNames;
+    private long previousTimestampNanos;
+
+    public AnalysisRecordReader(InputStream in) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+        if (this.in.readInt() != MAGIC){ throw new IOException("Not an analysis record file"); }
+        int version = this.in.readUnsignedByte();
+        if (version != VERSION){ throw new IOException("Unsupported analysis record version " + version); }
+        int mode = this.in.readUnsignedByte();
+        if (mode >= PayloadMode.values().length){ throw new IOException("Unknown payload mode " + mode); }
+        this.payloadMode = PayloadMode.values()[mode];
+        this.classNames = new ArrayList<>();
+        this.classNames.add(null);
+    }
+
+    /**
+     * Reads the next record into the given instance. Returns false at the end of the file.
+     */
+    public boolean next(AnalysisRecord record) throws IOException {
+        while (true){
+            int tag = in.read();
+            if (tag == -1){ return false; }
+            if (tag == TAG_CLASS){
+                readClass();
+            } else if (tag == TAG_RECORD){
+                readRecord(record);
+                return true;
+            } else {
+                throw new IOException("Corrupt analysis record file: unknown tag " + tag);
+            }
+        }
+    }
+
+    private void readClass() throws IOException {
+        int classId = (int) readVarLong();
+        byte[] name = new byte[(int) readVarLong()];
+        in.readFully(name);
+        if (classId != classNames.size()){ throw new IOException("Corrupt analysis record file: class " + classId + " out of order"); }
+        classNames.add(new String(name, StandardCharsets.UTF_8));
+    }
+
+    private void readRecord(AnalysisRecord record) throws IOException {
+        int flags = in.readUnsignedByte();
+        long delta = readVarLong();
+        long timestampNanos = previousTimestampNanos + ((delta >>> 1) ^ -(delta & 1));
+        previousTimestampNanos = timestampNanos;
+        int packetLength = (int) readVarLong();
+        long flowAddresses = 0;
+        long flowPortsAndProtocol = 0;
+        if ((flags & FLAG_FLOW) != 0){
+            flowAddresses = in.readLong();
+            flowPortsAndProtocol = readVarLong();
+        }
+        String type = null;
+        if ((flags & FLAG_TYPE) != 0){
+            int classId = (int) readVarLong();
+            if (classId <= 0 || classId >= classNames.size()){ throw new IOException("Corrupt analysis record file: unknown class " + classId); }
+            type = classNames.get(classId);
+        }
+        int prefixLength = (int) readVarLong();
+        int objectLength = (int) readVarLong();
+        int suffixLength = (int) readVarLong();
+        record.set(timestampNanos, packetLength, (flags & FLAG_FLOW) != 0, flowAddresses, flowPortsAndProtocol,
+                type, (flags & FLAG_LENGTH_FOUND) != 0, prefixLength, objectLength, suffixLength);
+        if ((flags & FLAG_PAYLOAD_FULL) != 0){
+            int length = prefixLength + objectLength + suffixLength;
+            in.readFully(record.preparePayload(PayloadMode.FULL, length), 0, length);
+        } else if ((flags & FLAG_PAYLOAD_FRAMING) != 0){
+            int length = prefixLength + suffixLength;
+            in.readFully(record.preparePayload(PayloadMode.FRAMING, length), 0, length);
+        }
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7){
+            int b = in.read();
+            if (b == -1){ throw new EOFException("Truncated analysis record"); }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0){ return value; }
+        }
+        throw new IOException("Corrupt analysis record file: varint too long");
+    }
+
+    public PayloadMode getPayloadMode() {
+        return payloadMode;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+}
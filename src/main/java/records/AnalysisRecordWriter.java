@@ -0,0 +1,158 @@
+package records;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes analysis records in a compact binary form. Class names are written once and referenced by
+ * ID afterwards, timestamps as the difference to the previous record, and lengths as varints.
+ * See {@link AnalysisRecordReader} for the layout.
+ */
+public class AnalysisRecordWriter implements Closeable {
+
+    static final int MAGIC = 0x50534152; // "PSAR"
+    static final int VERSION = 1;
+
+    static final int TAG_CLASS = 1;
+    static final int TAG_RECORD = 2;
+
+    static final int FLAG_FLOW = 1;
+    static final int FLAG_LENGTH_FOUND = 1 << 1;
+    static final int FLAG_TYPE = 1 << 2;
+    static final int FLAG_PAYLOAD_FULL = 1 << 3;
+    static final int FLAG_PAYLOAD_FRAMING = 1 << 4;
+
+    private static final int MAX_HEADER_BYTES = 64;
+
+    private final OutputStream out;
+    private final PayloadMode payloadMode;
+    private final Map<String, Integer> classIds;
+    private byte[] buffer;
+    private int position;
+    private long previousTimestampNanos;
+    private long numRecords;
+
+    public AnalysisRecordWriter(OutputStream out, PayloadMode payloadMode) throws IOException {
+        this.out = out;
+        this.payloadMode = payloadMode;
+        this.classIds = new HashMap<>();
+        this.buffer = new byte[4096];
+        writeInt(MAGIC);
+        buffer[position++] = (byte) VERSION;
+        buffer[position++] = (byte) payloadMode.ordinal();
+        drain();
+    }
+
+    public void write(AnalysisRecord record) throws IOException {
+        int classId = (record.getType() == null ? 0 : classIdOf(record.getType()));
+        int flags = (record.hasFlow() ? FLAG_FLOW : 0)
+                | (record.isLengthFoundInPrefix() ? FLAG_LENGTH_FOUND : 0)
+                | (record.getType() != null ? FLAG_TYPE : 0);
+        int storedLength = record.getStoredPayloadLength();
+        if (record.getPayloadContent() == PayloadMode.FULL){
+            flags |= FLAG_PAYLOAD_FULL;
+        } else if (record.getPayloadContent() == PayloadMode.FRAMING){
+            flags |= FLAG_PAYLOAD_FRAMING;
+        } else {
+            storedLength = 0;
+        }
+        ensureCapacity(MAX_HEADER_BYTES + storedLength);
+        buffer[position++] = TAG_RECORD;
+        buffer[position++] = (byte) flags;
+        writeVarLong(zigZag(record.getTimestampNanos() - previousTimestampNanos));
+        previousTimestampNanos = record.getTimestampNanos();
+        writeVarLong(record.getPacketLength());
+        if (record.hasFlow()){
+            writeLong(record.getFlowAddresses());
+            writeVarLong(record.getFlowPortsAndProtocol());
+        }
+        if (classId != 0){ writeVarLong(classId); }
+        writeVarLong(record.getPrefixLength());
+        writeVarLong(record.getObjectLength());
+        writeVarLong(record.getSuffixLength());
+        System.arraycopy(record.getPayloadBytes(), 0, buffer, position, storedLength);
+        position += storedLength;
+        numRecords++;
+        if (position >= 4096){ drain(); }
+    }
+
+    public PayloadMode getPayloadMode() {
+        return payloadMode;
+    }
+
+    public long getNumRecords() {
+        return numRecords;
+    }
+
+    public void flush() throws IOException {
+        drain();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            out.close();
+        }
+    }
+
+    private int classIdOf(String type){
+        Integer classId = classIds.get(type);
+        if (classId == null){
+            classId = classIds.size() + 1;
+            classIds.put(type, classId);
+            byte[] name = type.getBytes(StandardCharsets.UTF_8);
+            ensureCapacity(MAX_HEADER_BYTES + name.length);
+            buffer[position++] = TAG_CLASS;
+            writeVarLong(classId);
+            writeVarLong(name.length);
+            System.arraycopy(name, 0, buffer, position, name.length);
+            position += name.length;
+        }
+        return classId;
+    }
+
+    private void ensureCapacity(int numBytes){
+        if (buffer.length - position < numBytes){
+            byte[] grown = new byte[Math.max(buffer.length * 2, position + numBytes)];
+            System.arraycopy(buffer, 0, grown, 0, position);
+            buffer = grown;
+        }
+    }
+
+    private void drain() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+
+    private void writeVarLong(long value){
+        while ((value & ~0x7FL) != 0){
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private void writeInt(int value){
+        buffer[position++] = (byte) (value >>> 24);
+        buffer[position++] = (byte) (value >>> 16);
+        buffer[position++] = (byte) (value >>> 8);
+        buffer[position++] = (byte) value;
+    }
+
+    private void writeLong(long value){
+        writeInt((int) (value >>> 32));
+        writeInt((int) value);
+    }
+
+    private static long zigZag(long value){
+        return (value << 1) ^ (value >> 63);
+    }
+
+}
@@ -0,0 +1,12 @@
+package records;
+
+public enum PayloadMode {
+
+    /** The whole payload is stored inline. */
+    FULL,
+    /** Only the bytes before and after the serialized object are stored inline. */
+    FRAMING,
+    /** No payload bytes are stored; they're looked up in the packet store by timestamp and flow. */
+    STORE_REFERENCE
+
+}
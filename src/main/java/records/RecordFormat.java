@@ -0,0 +1,6 @@
+package records;
+
+public enum RecordFormat {
+    TEXT,
+    BINARY
+}
@@ -0,0 +1,30 @@
+package records;
+
+public final class RecordSettings {
+
+    public static final RecordSettings DEFAULT = new RecordSettings(RecordFormat.TEXT, PayloadMode.FULL);
+
+    public static final String BINARY_FILE_EXTENSION = ".par";
+
+    private final RecordFormat format;
+    private final PayloadMode payloadMode;
+
+    public RecordSettings(RecordFormat format, PayloadMode payloadMode){
+        this.format = format;
+        this.payloadMode = payloadMode;
+    }
+
+    public RecordFormat getFormat() {
+        return format;
+    }
+
+    public PayloadMode getPayloadMode() {
+        return payloadMode;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("(format: %s, payload: %s)", format, payloadMode);
+    }
+
+}
@@ -0,0 +1,6 @@
+package scheduler;
+
+public enum ExecutionMode {
+    DEDICATED,  // the sink owns a thread that blocks on its queue - for hot stages
+    COOPERATIVE // the sink runs in batches on a shared pool whenever its queue has packets
+}
@@ -0,0 +1,147 @@
+package scheduler;
+
+import metrics.CpuAccount;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import packetSinks.AbstractPacketSink;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs sinks and captures without letting one starve another. Dedicated sinks each get their own thread;
+ * cooperative sinks share a fixed pool and are only scheduled while their queue holds packets, one bounded
+ * batch at a time, so any number of them can run next to the hot stages. Captures get their own threads
+ * as well. The CPU time of each sink is accounted in its {@link CpuAccount} in both modes.
+ */
+public class SinkScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(SinkScheduler.class);
+
+    public static final int DEFAULT_COOPERATIVE_THREADS = 2;
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    private final int batchSize;
+    private final ThreadPoolExecutor cooperativeWorkers;
+    private final ExecutorService captureThreads;
+    private final List<Thread> dedicatedThreads;
+    private final List<AbstractPacketSink> sinks;
+    private final List<AbstractPacketSink> cooperativeSinks;
+
+    public SinkScheduler(){
+        this(DEFAULT_COOPERATIVE_THREADS, DEFAULT_BATCH_SIZE);
+    }
+
+    public SinkScheduler(int cooperativeThreads, int batchSize){
+        if (cooperativeThreads <= 0 || batchSize <= 0){
+            throw new IllegalArgumentException("The number of cooperative threads and the batch size must be positive");
+        }
+        this.batchSize = batchSize;
+        this.cooperativeWorkers = new ThreadPoolExecutor(cooperativeThreads, cooperativeThreads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), new NamedThreadFactory("cooperative-sink"), (batch, executor) -> batch.run());
+        this.captureThreads = Executors.newCachedThreadPool(new NamedThreadFactory("capture"));
+        this.dedicatedThreads = new CopyOnWriteArrayList<>();
+        this.sinks = new CopyOnWriteArrayList<>();
+        this.cooperativeSinks = new CopyOnWriteArrayList<>();
+    }
+
+    public void schedule(String name, AbstractPacketSink sink, ExecutionMode mode){
+        sinks.add(sink);
+        if (mode == ExecutionMode.DEDICATED){
+            CpuAccount cpuAccount = sink.getCpuAccount();
+            Thread thread = new Thread(() -> {
+                cpuAccount.attachCurrentThread();
+                try {
+                    sink.run();
+                } finally {
+                    cpuAccount.detachCurrentThread();
+                }
+            }, "sink-" + name);
+            dedicatedThreads.add(thread);
+            thread.start();
+        } else {
+            cooperativeSinks.add(sink);
+            sink.enableCooperativeExecution(() -> cooperativeWorkers.execute(new Batch(sink)));
+        }
+    }
+
+    public Future<?> submitCapture(Runnable capture){
+        return captureThreads.submit(capture);
+    }
+
+    /**
+     * Stops the captures and asks every sink to shut down. Sinks still drain what their sources
+     * already handed them and then close on the thread that processes their packets: a dedicated
+     * sink on its own thread, a cooperative one in its final batch. Once the shared pool has stopped,
+     * late batches run on the thread that scheduled them.
+     */
+    public void shutdownNow(){
+        for (AbstractPacketSink sink : sinks){
+            sink.requestShutdown();
+        }
+        captureThreads.shutdownNow();
+        cooperativeWorkers.shutdown();
+        logger.info("Scheduler shut down with {} dedicated and {} cooperative sink(s)", dedicatedThreads.size(), cooperativeSinks.size());
+    }
+
+    /**
+     * Waits for the dedicated sink threads and the shared pool to finish after {@link #shutdownNow()}.
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Thread thread : dedicatedThreads){
+            thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            if (thread.isAlive()){ return false; }
+        }
+        return cooperativeWorkers.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)
+                && captureThreads.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    private class Batch implements Runnable {
+
+        private final AbstractPacketSink sink;
+
+        private Batch(AbstractPacketSink sink){
+            this.sink = sink;
+        }
+
+        @Override
+        public void run() {
+            long start = CpuAccount.currentThreadCpuNanos();
+            boolean moreQueued;
+            try {
+                moreQueued = sink.runBatch(batchSize);
+            } finally {
+                sink.getCpuAccount().add(CpuAccount.currentThreadCpuNanos() - start);
+            }
+            if (moreQueued){ cooperativeWorkers.execute(this); }
+        }
+
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+
+        private final String name;
+        private final AtomicInteger numThreads;
+
+        NamedThreadFactory(String name){
+            this.name = name;
+            this.numThreads = new AtomicInteger();
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            return new Thread(runnable, name + "-" + numThreads.incrementAndGet());
+        }
+
+    }
+
+}
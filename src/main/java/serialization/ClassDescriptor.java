@@ -0,0 +1,91 @@
+package serialization;
+
+import java.nio.charset.StandardCharsets;
+
+final class ClassDescriptor {
+
+    private final byte[] encodedName;
+    private final String name;
+    private final long serialVersionUID;
+    private final int flags;
+    private final byte[] fieldTypeCodes;
+    private final byte[] encodedFields;
+    private final int numFieldHandles;
+
+    ClassDescriptor(byte[] data, int nameOffset, int nameLength, long serialVersionUID, int flags,
+                    byte[] fieldTypeCodes, int fieldsOffset, int fieldsLength, int numFieldHandles){
+        this.encodedName = copy(data, nameOffset, nameLength);
+        this.name = new String(encodedName, StandardCharsets.UTF_8);
+        this.serialVersionUID = serialVersionUID;
+        this.flags = flags;
+        this.fieldTypeCodes = fieldTypeCodes;
+        this.encodedFields = copy(data, fieldsOffset, fieldsLength);
+        this.numFieldHandles = numFieldHandles;
+    }
+
+    ClassDescriptor(String name, int flags){
+        this.encodedName = name.getBytes(StandardCharsets.UTF_8);
+        this.name = name;
+        this.serialVersionUID = 0;
+        this.flags = flags;
+        this.fieldTypeCodes = new byte[0];
+        this.encodedFields = new byte[0];
+        this.numFieldHandles = 0;
+    }
+
+    private static byte[] copy(byte[] data, int offset, int length){
+        byte[] copy = new byte[length];
+        System.arraycopy(data, offset, copy, 0, length);
+        return copy;
+    }
+
+    boolean hasName(byte[] data, int nameOffset, int nameLength, long serialVersionUID){
+        return this.serialVersionUID == serialVersionUID && regionEquals(encodedName, data, nameOffset, nameLength);
+    }
+
+    boolean hasFields(int flags, byte[] data, int fieldsOffset, int limit){
+        return this.flags == flags && encodedFields.length <= limit - fieldsOffset
+                && regionEquals(encodedFields, data, fieldsOffset, encodedFields.length);
+    }
+
+    private static boolean regionEquals(byte[] expected, byte[] data, int offset, int length){
+        if (expected.length != length){ return false; }
+        for (int i = 0; i < length; i++){
+            if (expected[i] != data[offset + i]){ return false; }
+        }
+        return true;
+    }
+
+    static int hash(byte[] data, int nameOffset, int nameLength, long serialVersionUID){
+        int hash = (int) (serialVersionUID ^ (serialVersionUID >>> 32));
+        for (int i = 0; i < nameLength; i++){
+            hash = 31 * hash + data[nameOffset + i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    int hash(){
+        return hash(encodedName, 0, encodedName.length, serialVersionUID);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    int getFlags() {
+        return flags;
+    }
+
+    byte[] getFieldTypeCodes() {
+        return fieldTypeCodes;
+    }
+
+    int getEncodedFieldsLength() {
+        return encodedFields.length;
+    }
+
+    int getNumFieldHandles() {
+        return numFieldHandles;
+    }
+
+}
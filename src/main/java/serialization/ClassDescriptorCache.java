@@ -0,0 +1,25 @@
+package serialization;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+class ClassDescriptorCache {
+
+    private final AtomicReferenceArray<ClassDescriptor> entries;
+    private final int mask;
+
+    ClassDescriptorCache(int requestedCapacity){
+        int capacity = Integer.highestOneBit(Math.max(2, requestedCapacity) - 1) << 1;
+        this.entries = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+    }
+
+    ClassDescriptor get(byte[] data, int nameOffset, int nameLength, long serialVersionUID){
+        ClassDescriptor descriptor = entries.get(ClassDescriptor.hash(data, nameOffset, nameLength, serialVersionUID) & mask);
+        return (descriptor != null && descriptor.hasName(data, nameOffset, nameLength, serialVersionUID) ? descriptor : null);
+    }
+
+    void put(ClassDescriptor descriptor){
+        entries.lazySet(descriptor.hash() & mask, descriptor);
+    }
+
+}
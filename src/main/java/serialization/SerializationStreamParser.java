@@ -0,0 +1,395 @@
+package serialization;
+
+import java.io.ObjectStreamConstants;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Walks the Java serialization grammar without loading a class or creating an object, so it works for
+ * classes that aren't on the classpath and never runs code picked by the sender. A successful parse
+ * gives the class of the first object in the stream, every class descriptor the object refers to, and
+ * the exact number of bytes it takes up. Class descriptors are cached by name and serialVersionUID; if
+ * a cached descriptor's field list matches the bytes of a stream, those bytes are skipped without
+ * decoding them. A parser instance is reused from parse to parse and isn't thread-safe. The cache is
+ * shared by all instances.
+ */
+public final class SerializationStreamParser {
+
+    private static final int BASE_WIRE_HANDLE = ObjectStreamConstants.baseWireHandle;
+    private static final int MAX_DEPTH = 512;
+    private static final int MAX_HIERARCHY_DEPTH = 64;
+    private static final int NO_CLASS = -1;
+    private static final ClassDescriptor PROXY = new ClassDescriptor("java.lang.reflect.Proxy", ObjectStreamConstants.SC_SERIALIZABLE);
+    private static final ClassDescriptorCache CACHE = new ClassDescriptorCache(4096);
+    private static final MalformedStreamException MALFORMED = new MalformedStreamException();
+
+    private byte[] data;
+    private int position;
+    private int limit;
+    private int depth;
+    private boolean truncated;
+
+    private ClassDescriptor[] handleDescriptors;
+    private int[] handleSuperclasses;
+    private int numHandles;
+
+    private final List<String> classNames;
+    private String typeName;
+    private int serializedLength;
+
+    public SerializationStreamParser(){
+        this.handleDescriptors = new ClassDescriptor[64];
+        this.handleSuperclasses = new int[64];
+        this.classNames = new ArrayList<>();
+    }
+
+    public boolean parse(byte[] data, int offset, int length){
+        this.data = data;
+        this.position = offset;
+        this.limit = offset + length;
+        this.depth = 0;
+        this.truncated = false;
+        this.numHandles = 0;
+        this.classNames.clear();
+        this.typeName = null;
+        this.serializedLength = 0;
+        try {
+            if (readShort() != ObjectStreamConstants.STREAM_MAGIC || readShort() != ObjectStreamConstants.STREAM_VERSION){ return false; }
+            typeName = readTopLevelObject();
+            serializedLength = position - offset;
+            return true;
+        } catch (MalformedStreamException e){
+            typeName = null;
+            return false;
+        } finally {
+            this.data = null;
+        }
+    }
+
+    private String readTopLevelObject() throws MalformedStreamException {
+        byte typeCode;
+        while ((typeCode = peekByte()) == ObjectStreamConstants.TC_RESET){
+            position++;
+        }
+        if (typeCode == ObjectStreamConstants.TC_OBJECT || typeCode == ObjectStreamConstants.TC_ARRAY || typeCode == ObjectStreamConstants.TC_ENUM){
+            return handleDescriptors[readContent()].getName();
+        }
+        readContent();
+        switch (typeCode){
+            case ObjectStreamConstants.TC_NULL: return null;
+            case ObjectStreamConstants.TC_STRING:
+            case ObjectStreamConstants.TC_LONGSTRING: return "java.lang.String";
+            case ObjectStreamConstants.TC_CLASS: return "java.lang.Class";
+            case ObjectStreamConstants.TC_CLASSDESC:
+            case ObjectStreamConstants.TC_PROXYCLASSDESC: return "java.io.ObjectStreamClass";
+            default: throw MALFORMED;
+        }
+    }
+
+    private int readContent() throws MalformedStreamException {
+        if (++depth > MAX_DEPTH){ throw MALFORMED; }
+        try {
+            byte typeCode = readByte();
+            switch (typeCode){
+                case ObjectStreamConstants.TC_NULL:
+                    return NO_CLASS;
+                case ObjectStreamConstants.TC_REFERENCE:
+                    readHandle();
+                    return NO_CLASS;
+                case ObjectStreamConstants.TC_OBJECT:
+                    return readNewObject();
+                case ObjectStreamConstants.TC_ARRAY:
+                    return readNewArray();
+                case ObjectStreamConstants.TC_ENUM: {
+                    int descriptor = readRequiredClassDesc();
+                    newHandle();
+                    readContent();
+                    return descriptor;
+                }
+                case ObjectStreamConstants.TC_STRING:
+                    newHandle();
+                    skip(readUnsignedShort());
+                    return NO_CLASS;
+                case ObjectStreamConstants.TC_LONGSTRING:
+                    newHandle();
+                    skip(readLong());
+                    return NO_CLASS;
+                case ObjectStreamConstants.TC_CLASS:
+                    readClassDesc();
+                    newHandle();
+                    return NO_CLASS;
+                case ObjectStreamConstants.TC_CLASSDESC:
+                    readNewClassDesc();
+                    return NO_CLASS;
+                case ObjectStreamConstants.TC_PROXYCLASSDESC:
+                    readNewProxyClassDesc();
+                    return NO_CLASS;
+                default:
+                    throw MALFORMED;
+            }
+        } finally {
+            depth--;
+        }
+    }
+
+    private int readNewObject() throws MalformedStreamException {
+        int descriptor = readRequiredClassDesc();
+        newHandle();
+        int flags = handleDescriptors[descriptor].getFlags();
+        if ((flags & ObjectStreamConstants.SC_EXTERNALIZABLE) != 0){
+            if ((flags & ObjectStreamConstants.SC_BLOCK_DATA) == 0){ throw MALFORMED; }
+            skipAnnotation();
+            return descriptor;
+        }
+        readClassData(descriptor, 0);
+        return descriptor;
+    }
+
+    private void readClassData(int descriptor, int hierarchyDepth) throws MalformedStreamException {
+        if (hierarchyDepth == MAX_HIERARCHY_DEPTH){ throw MALFORMED; }
+        int superclass = handleSuperclasses[descriptor];
+        if (superclass != NO_CLASS){ readClassData(superclass, hierarchyDepth + 1); }
+        readClassData(handleDescriptors[descriptor]);
+    }
+
+    private void readClassData(ClassDescriptor descriptor) throws MalformedStreamException {
+        int flags = descriptor.getFlags();
+        if ((flags & ObjectStreamConstants.SC_SERIALIZABLE) == 0){ return; }
+        for (byte typeCode : descriptor.getFieldTypeCodes()){
+            readValue(typeCode);
+        }
+        if ((flags & ObjectStreamConstants.SC_WRITE_METHOD) != 0){ skipAnnotation(); }
+    }
+
+    private void readValue(byte typeCode) throws MalformedStreamException {
+        switch (typeCode){
+            case 'B': case 'Z': skip(1); break;
+            case 'C': case 'S': skip(2); break;
+            case 'I': case 'F': skip(4); break;
+            case 'J': case 'D': skip(8); break;
+            case 'L': case '[': readContent(); break;
+            default: throw MALFORMED;
+        }
+    }
+
+    private int readNewArray() throws MalformedStreamException {
+        int descriptor = readRequiredClassDesc();
+        newHandle();
+        int size = readInt();
+        String name = handleDescriptors[descriptor].getName();
+        if (size < 0 || name.length() < 2 || name.charAt(0) != '['){ throw MALFORMED; }
+        int width = primitiveWidth(name.charAt(1));
+        if (width > 0){
+            skip((long) size * width);
+        } else {
+            if (size > limit - position){ throw truncation(); }
+            for (int i = 0; i < size; i++){
+                readContent();
+            }
+        }
+        return descriptor;
+    }
+
+    private static int primitiveWidth(char typeCode){
+        switch (typeCode){
+            case 'B': case 'Z': return 1;
+            case 'C': case 'S': return 2;
+            case 'I': case 'F': return 4;
+            case 'J': case 'D': return 8;
+            default: return 0;
+        }
+    }
+
+    private int readRequiredClassDesc() throws MalformedStreamException {
+        int descriptor = readClassDesc();
+        if (descriptor == NO_CLASS){ throw MALFORMED; }
+        return descriptor;
+    }
+
+    private int readClassDesc() throws MalformedStreamException {
+        byte typeCode = readByte();
+        switch (typeCode){
+            case ObjectStreamConstants.TC_NULL:
+                return NO_CLASS;
+            case ObjectStreamConstants.TC_REFERENCE: {
+                int handle = readHandle();
+                if (handleDescriptors[handle] == null){ throw MALFORMED; }
+                return handle;
+            }
+            case ObjectStreamConstants.TC_CLASSDESC:
+                return readNewClassDesc();
+            case ObjectStreamConstants.TC_PROXYCLASSDESC:
+                return readNewProxyClassDesc();
+            default:
+                throw MALFORMED;
+        }
+    }
+
+    private int readNewClassDesc() throws MalformedStreamException {
+        int nameLength = readUnsignedShort();
+        int nameOffset = position;
+        skip(nameLength);
+        long serialVersionUID = readLong();
+        int handle = newHandle();
+        int flags = readByte() & 0xFF;
+        ClassDescriptor descriptor = CACHE.get(data, nameOffset, nameLength, serialVersionUID);
+        if (descriptor != null && descriptor.hasFields(flags, data, position, limit)){
+            position += descriptor.getEncodedFieldsLength();
+            for (int i = 0; i < descriptor.getNumFieldHandles(); i++){
+                newHandle();
+            }
+        } else {
+            descriptor = readFields(nameOffset, nameLength, serialVersionUID, flags);
+            CACHE.put(descriptor);
+        }
+        handleDescriptors[handle] = descriptor;
+        classNames.add(descriptor.getName());
+        skipAnnotation();
+        handleSuperclasses[handle] = readClassDesc();
+        return handle;
+    }
+
+    private ClassDescriptor readFields(int nameOffset, int nameLength, long serialVersionUID, int flags) throws MalformedStreamException {
+        int fieldsOffset = position;
+        int firstHandle = numHandles;
+        int numFields = readShort();
+        if (numFields < 0){ throw MALFORMED; }
+        if (numFields > limit - position){ throw truncation(); }
+        byte[] typeCodes = new byte[numFields];
+        for (int i = 0; i < numFields; i++){
+            typeCodes[i] = readByte();
+            skip(readUnsignedShort());
+            if (typeCodes[i] == 'L' || typeCodes[i] == '['){
+                readContent();
+            } else if (primitiveWidth((char) typeCodes[i]) == 0){
+                throw MALFORMED;
+            }
+        }
+        return new ClassDescriptor(data, nameOffset, nameLength, serialVersionUID, flags,
+                typeCodes, fieldsOffset, position - fieldsOffset, numHandles - firstHandle);
+    }
+
+    private int readNewProxyClassDesc() throws MalformedStreamException {
+        int handle = newHandle();
+        int numInterfaces = readInt();
+        if (numInterfaces < 0){ throw MALFORMED; }
+        if (numInterfaces > limit - position){ throw truncation(); }
+        for (int i = 0; i < numInterfaces; i++){
+            skip(readUnsignedShort());
+        }
+        handleDescriptors[handle] = PROXY;
+        classNames.add(PROXY.getName());
+        skipAnnotation();
+        handleSuperclasses[handle] = readClassDesc();
+        return handle;
+    }
+
+    private void skipAnnotation() throws MalformedStreamException {
+        while (true){
+            byte typeCode = peekByte();
+            if (typeCode == ObjectStreamConstants.TC_ENDBLOCKDATA){
+                position++;
+                return;
+            } else if (typeCode == ObjectStreamConstants.TC_BLOCKDATA){
+                position++;
+                skip(readByte() & 0xFF);
+            } else if (typeCode == ObjectStreamConstants.TC_BLOCKDATALONG){
+                position++;
+                skip(readInt() & 0xFFFFFFFFL);
+            } else {
+                readContent();
+            }
+        }
+    }
+
+    private int newHandle(){
+        if (numHandles == handleDescriptors.length){
+            ClassDescriptor[] descriptors = new ClassDescriptor[numHandles * 2];
+            System.arraycopy(handleDescriptors, 0, descriptors, 0, numHandles);
+            handleDescriptors = descriptors;
+            int[] superclasses = new int[numHandles * 2];
+            System.arraycopy(handleSuperclasses, 0, superclasses, 0, numHandles);
+            handleSuperclasses = superclasses;
+        }
+        handleDescriptors[numHandles] = null;
+        handleSuperclasses[numHandles] = NO_CLASS;
+        return numHandles++;
+    }
+
+    private int readHandle() throws MalformedStreamException {
+        int handle = readInt() - BASE_WIRE_HANDLE;
+        if (handle < 0 || handle >= numHandles){ throw MALFORMED; }
+        return handle;
+    }
+
+    private void skip(long length) throws MalformedStreamException {
+        if (length > limit - position){ throw truncation(); }
+        position += (int) length;
+    }
+
+    private byte peekByte() throws MalformedStreamException {
+        if (position >= limit){ throw truncation(); }
+        return data[position];
+    }
+
+    private byte readByte() throws MalformedStreamException {
+        if (position >= limit){ throw truncation(); }
+        return data[position++];
+    }
+
+    private int readUnsignedShort() throws MalformedStreamException {
+        if (limit - position < 2){ throw truncation(); }
+        int value = ((data[position] & 0xFF) << 8) | (data[position + 1] & 0xFF);
+        position += 2;
+        return value;
+    }
+
+    private short readShort() throws MalformedStreamException {
+        return (short) readUnsignedShort();
+    }
+
+    private int readInt() throws MalformedStreamException {
+        if (limit - position < 4){ throw truncation(); }
+        int value = ((data[position] & 0xFF) << 24) | ((data[position + 1] & 0xFF) << 16)
+                | ((data[position + 2] & 0xFF) << 8) | (data[position + 3] & 0xFF);
+        position += 4;
+        return value;
+    }
+
+    private long readLong() throws MalformedStreamException {
+        return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+    }
+
+    private MalformedStreamException truncation(){
+        truncated = true;
+        return MALFORMED;
+    }
+
+    public String getTypeName() {
+        return typeName;
+    }
+
+    public int getSerializedLength() {
+        return serializedLength;
+    }
+
+    public List<String> getClassNames() {
+        return Collections.unmodifiableList(classNames);
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    private static final class MalformedStreamException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        MalformedStreamException(){
+            super(null, null, false, false);
+        }
+
+    }
+
+}
@@ -0,0 +1,140 @@
+package sketches;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Count-Min sketch over 64-bit key hashes. With width w and depth d, an estimate never undercounts and
+ * overcounts by at most (e / w) times the total count with probability at least 1 - e^-d. Its memory is
+ * fixed at w * d counters. Two sketches of the same shape merge by adding their counters, which gives
+ * the sketch of the combined stream. Rows are indexed by double hashing the key hash, so callers only
+ * need a good 64-bit hash. Not thread-safe; threads keep their own sketches and merge them.
+ */
+public final class CountMinSketch {
+
+    private final int width;
+    private final int depth;
+    private final int mask;
+    private final long[] counts;
+    private long totalCount;
+
+    public CountMinSketch(int requestedWidth, int depth){
+        if (requestedWidth <= 0 || depth <= 0){ throw new IllegalArgumentException("The width and depth must be positive"); }
+        this.width = Integer.highestOneBit(Math.max(2, requestedWidth) - 1) << 1;
+        this.depth = depth;
+        this.mask = width - 1;
+        this.counts = new long[width * depth];
+    }
+
+    /**
+     * The smallest sketch whose estimates are within epsilon times the total count with probability
+     * 1 - delta.
+     */
+    public static CountMinSketch withErrorBounds(double epsilon, double delta){
+        if (epsilon <= 0 || delta <= 0 || delta >= 1){ throw new IllegalArgumentException("The error bounds must be positive and delta below 1"); }
+        return new CountMinSketch((int) Math.ceil(Math.E / epsilon), (int) Math.ceil(Math.log(1 / delta)));
+    }
+
+    public void add(long hash, long count){
+        long h2 = mix(hash) | 1;
+        for (int row = 0; row < depth; row++){
+            counts[row * width + (int) ((hash + row * h2) & mask)] += count;
+        }
+        totalCount += count;
+    }
+
+    public long estimate(long hash){
+        long h2 = mix(hash) | 1;
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++){
+            estimate = Math.min(estimate, counts[row * width + (int) ((hash + row * h2) & mask)]);
+        }
+        return estimate;
+    }
+
+    public void merge(CountMinSketch other){
+        if (other.width != width || other.depth != depth){
+            throw new IllegalArgumentException("Can't merge a " + other.width + "x" + other.depth + " sketch into a " + width + "x" + depth + " one");
+        }
+        for (int i = 0; i < counts.length; i++){
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+    }
+
+    public CountMinSketch copy(){
+        CountMinSketch copy = new CountMinSketch(width, depth);
+        copy.merge(this);
+        return copy;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public double getEpsilon() {
+        return Math.E / width;
+    }
+
+    public double getDelta() {
+        return Math.exp(-depth);
+    }
+
+    /**
+     * The most an estimate overcounts, unless the 1 - delta guarantee fails.
+     */
+    public long getErrorBound() {
+        return (long) Math.ceil(getEpsilon() * totalCount);
+    }
+
+    public long getMemoryBytes() {
+        return (long) counts.length * Long.BYTES;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(width);
+        out.writeInt(depth);
+        out.writeLong(totalCount);
+        for (long count : counts){
+            out.writeLong(count);
+        }
+    }
+
+    public static CountMinSketch readFrom(DataInput in) throws IOException {
+        int width = in.readInt();
+        int depth = in.readInt();
+        if (width <= 0 || Integer.bitCount(width) != 1 || depth <= 0 || (long) width * depth > Integer.MAX_VALUE){
+            throw new IOException("Not a valid Count-Min sketch shape: " + width + "x" + depth);
+        }
+        CountMinSketch sketch = new CountMinSketch(width, depth);
+        sketch.totalCount = in.readLong();
+        for (int i = 0; i < sketch.counts.length; i++){
+            sketch.counts[i] = in.readLong();
+        }
+        return sketch;
+    }
+
+    private static long mix(long k){
+        k ^= k >>> 33;
+        k *= 0xFF51AFD7ED558CCDL;
+        k ^= k >>> 33;
+        k *= 0xC4CEB9FE1A85EC53L;
+        return k ^ (k >>> 33);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%dx%d Count-Min sketch, %d counted, error at most %d with probability %.4f",
+                width, depth, totalCount, getErrorBound(), 1 - getDelta());
+    }
+
+}
@@ -0,0 +1,105 @@
+package sketches;
+
+import flows.FlowKey;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A flow, an object type, or both, depending on the view it's counted in. The flow is kept packed so
+ * that a probe key can be refilled for every packet; only keys that get a counter are copied.
+ */
+public final class HeavyHitterKey {
+
+    private boolean hasFlow;
+    private long flowAddresses;
+    private long flowPortsAndProtocol;
+    private String type;
+
+    public HeavyHitterKey(){}
+
+    public HeavyHitterKey(boolean hasFlow, long flowAddresses, long flowPortsAndProtocol, String type){
+        set(hasFlow, flowAddresses, flowPortsAndProtocol, type);
+    }
+
+    public HeavyHitterKey set(boolean hasFlow, long flowAddresses, long flowPortsAndProtocol, String type){
+        this.hasFlow = hasFlow;
+        this.flowAddresses = (hasFlow ? flowAddresses : 0);
+        this.flowPortsAndProtocol = (hasFlow ? flowPortsAndProtocol : 0);
+        this.type = type;
+        return this;
+    }
+
+    public HeavyHitterKey copy(){
+        return new HeavyHitterKey(hasFlow, flowAddresses, flowPortsAndProtocol, type);
+    }
+
+    public boolean hasFlow() {
+        return hasFlow;
+    }
+
+    public FlowKey getFlowKey() {
+        return (hasFlow ? FlowKey.unpack(flowAddresses, flowPortsAndProtocol) : null);
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * 64-bit hash for the Count-Min sketch.
+     */
+    public long hash64(){
+        long h = (hasFlow ? FlowKey.hash(flowAddresses, flowPortsAndProtocol) : 0);
+        if (type != null){
+            long t = (type.hashCode() + 0x9E3779B97F4A7C15L) * 0xFF51AFD7ED558CCDL;
+            h ^= t ^ (t >>> 29);
+        }
+        return h * 0xC4CEB9FE1A85EC53L + (hasFlow ? 1 : 0);
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeBoolean(hasFlow);
+        if (hasFlow){
+            out.writeLong(flowAddresses);
+            out.writeLong(flowPortsAndProtocol);
+        }
+        out.writeBoolean(type != null);
+        if (type != null){ out.writeUTF(type); }
+    }
+
+    static HeavyHitterKey readFrom(DataInput in) throws IOException {
+        boolean hasFlow = in.readBoolean();
+        long flowAddresses = (hasFlow ? in.readLong() : 0);
+        long flowPortsAndProtocol = (hasFlow ? in.readLong() : 0);
+        String type = (in.readBoolean() ? in.readUTF() : null);
+        return new HeavyHitterKey(hasFlow, flowAddresses, flowPortsAndProtocol, type);
+    }
+
+    @Override
+    public boolean equals(Object o){
+        if (this == o){
+            return true;
+        } else if (!(o instanceof HeavyHitterKey)){
+            return false;
+        } else {
+            HeavyHitterKey other = (HeavyHitterKey) o;
+            return hasFlow == other.hasFlow && flowAddresses == other.flowAddresses && flowPortsAndProtocol == other.flowPortsAndProtocol
+                    && (type == null ? other.type == null : type.equals(other.type));
+        }
+    }
+
+    @Override
+    public int hashCode(){
+        long h = hash64();
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        if (!hasFlow){ return "(class: " + type + ")"; }
+        return (type == null ? "(flow: " + getFlowKey() + ")" : "(flow: " + getFlowKey() + ", class: " + type + ")");
+    }
+
+}
@@ -0,0 +1,43 @@
+package sketches;
+
+/**
+ * Sizes the sketches of each view. The Count-Min sketch is sized from its error bounds: estimates
+ * overcount by at most epsilon times the view's total with probability 1 - delta. The top-k summary
+ * keeps a fixed number of counters, and its counts overcount by at most the total divided by that
+ * number.
+ */
+public final class HeavyHitterSettings {
+
+    public static final HeavyHitterSettings DEFAULT = new HeavyHitterSettings(1024, 0.0002, 0.001);
+
+    private final int topKCapacity;
+    private final double epsilon;
+    private final double delta;
+
+    public HeavyHitterSettings(int topKCapacity, double epsilon, double delta){
+        if (topKCapacity <= 0 || epsilon <= 0 || delta <= 0 || delta >= 1){
+            throw new IllegalArgumentException("Unsupported heavy hitter settings: " + topKCapacity + " counters, epsilon " + epsilon + ", delta " + delta);
+        }
+        this.topKCapacity = topKCapacity;
+        this.epsilon = epsilon;
+        this.delta = delta;
+    }
+
+    public int getTopKCapacity() {
+        return topKCapacity;
+    }
+
+    public double getEpsilon() {
+        return epsilon;
+    }
+
+    public double getDelta() {
+        return delta;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("(top-k counters: %d, epsilon: %s, delta: %s)", topKCapacity, epsilon, delta);
+    }
+
+}
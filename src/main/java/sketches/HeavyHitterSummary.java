@@ -0,0 +1,223 @@
+package sketches;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Heavy hitters among decoded object types, flows and (flow, type) pairs in fixed memory. Each view has
+ * a Count-Min sketch for point estimates and a Space-Saving summary that remembers which keys are heavy;
+ * a reported count is the smaller of the two overestimates, so it overcounts by at most the smaller of
+ * the two error bounds (see {@link HeavyHitterSettings}). Summaries with the same settings merge, so
+ * threads or capture hosts can keep their own and combine them later, and they can be written to a
+ * stream for that. Not thread-safe.
+ */
+public final class HeavyHitterSummary {
+
+    private static final int MAGIC = 0x48485331;
+    private static final HeavyHitterView[] VIEWS = HeavyHitterView.values();
+    private static final long BYTES_PER_COUNTER = 160;
+
+    private final HeavyHitterSettings settings;
+    private final CountMinSketch[] sketches;
+    private final List<SpaceSaving<HeavyHitterKey>> topK;
+    private final HeavyHitterKey probe;
+
+    public HeavyHitterSummary(HeavyHitterSettings settings){
+        this.settings = settings;
+        this.sketches = new CountMinSketch[VIEWS.length];
+        this.topK = new ArrayList<>(VIEWS.length);
+        for (HeavyHitterView view : VIEWS){
+            sketches[view.ordinal()] = CountMinSketch.withErrorBounds(settings.getEpsilon(), settings.getDelta());
+            topK.add(new SpaceSaving<>(settings.getTopKCapacity(), HeavyHitterKey::copy));
+        }
+        this.probe = new HeavyHitterKey();
+    }
+
+    /**
+     * Counts one packet: in the flow view if it has a flow, and in the type views if an object was
+     * decoded from it.
+     */
+    public void record(boolean hasFlow, long flowAddresses, long flowPortsAndProtocol, String type){
+        if (hasFlow){ add(HeavyHitterView.FLOW, probe.set(true, flowAddresses, flowPortsAndProtocol, null)); }
+        if (type != null){
+            add(HeavyHitterView.TYPE, probe.set(false, 0, 0, type));
+            if (hasFlow){ add(HeavyHitterView.FLOW_AND_TYPE, probe.set(true, flowAddresses, flowPortsAndProtocol, type)); }
+        }
+    }
+
+    private void add(HeavyHitterView view, HeavyHitterKey key){
+        sketches[view.ordinal()].add(key.hash64(), 1);
+        topK.get(view.ordinal()).add(key, 1);
+    }
+
+    public long estimate(HeavyHitterView view, HeavyHitterKey key){
+        return Math.min(sketches[view.ordinal()].estimate(key.hash64()), topK.get(view.ordinal()).estimate(key));
+    }
+
+    /**
+     * The n keys with the largest counts, largest first.
+     */
+    public List<HeavyHitter> top(HeavyHitterView view, int n){
+        CountMinSketch sketch = sketches[view.ordinal()];
+        List<HeavyHitter> heavyHitters = new ArrayList<>();
+        for (SpaceSaving.Counter<HeavyHitterKey> counter : topK.get(view.ordinal()).getCounters()){
+            long count = Math.min(counter.getCount(), sketch.estimate(counter.getKey().hash64()));
+            heavyHitters.add(new HeavyHitter(counter.getKey(), count, counter.getCount() - counter.getError()));
+        }
+        heavyHitters.sort((a, b) -> Long.compare(b.count, a.count));
+        return (heavyHitters.size() > n ? heavyHitters.subList(0, n) : heavyHitters);
+    }
+
+    public void merge(HeavyHitterSummary other){
+        for (HeavyHitterView view : VIEWS){
+            SpaceSaving<HeavyHitterKey> otherTopK = other.topK.get(view.ordinal());
+            if (otherTopK.getCapacity() != topK.get(view.ordinal()).getCapacity()){
+                throw new IllegalArgumentException("Can't merge summaries with " + otherTopK.getCapacity() + " and "
+                        + topK.get(view.ordinal()).getCapacity() + " top-k counters");
+            }
+        }
+        for (HeavyHitterView view : VIEWS){
+            sketches[view.ordinal()].merge(other.sketches[view.ordinal()]);
+            topK.get(view.ordinal()).merge(other.topK.get(view.ordinal()));
+        }
+    }
+
+    public HeavyHitterSummary copy(){
+        HeavyHitterSummary copy = new HeavyHitterSummary(settings);
+        copy.merge(this);
+        return copy;
+    }
+
+    public long getTotalCount(HeavyHitterView view){
+        return sketches[view.ordinal()].getTotalCount();
+    }
+
+    /**
+     * The most a reported count overcounts: the top-k summary's bound always holds, the sketch's with
+     * probability 1 - delta.
+     */
+    public long getErrorBound(HeavyHitterView view){
+        return Math.min(topK.get(view.ordinal()).getErrorBound(), sketches[view.ordinal()].getErrorBound());
+    }
+
+    /**
+     * The memory taken by the sketches and, roughly, by fully used top-k summaries; it doesn't grow
+     * with the number of keys seen.
+     */
+    public long getMemoryBytes(){
+        long bytes = 0;
+        for (HeavyHitterView view : VIEWS){
+            bytes += sketches[view.ordinal()].getMemoryBytes() + topK.get(view.ordinal()).getCapacity() * BYTES_PER_COUNTER;
+        }
+        return bytes;
+    }
+
+    public HeavyHitterSettings getSettings() {
+        return settings;
+    }
+
+    public void writeTo(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeInt(settings.getTopKCapacity());
+        out.writeDouble(settings.getEpsilon());
+        out.writeDouble(settings.getDelta());
+        for (HeavyHitterView view : VIEWS){
+            sketches[view.ordinal()].writeTo(out);
+            writeTopK(out, topK.get(view.ordinal()));
+        }
+        out.flush();
+    }
+
+    private static void writeTopK(DataOutput out, SpaceSaving<HeavyHitterKey> summary) throws IOException {
+        List<SpaceSaving.Counter<HeavyHitterKey>> counters = summary.getCounters();
+        out.writeLong(summary.getTotalCount());
+        out.writeInt(counters.size());
+        for (SpaceSaving.Counter<HeavyHitterKey> counter : counters){
+            counter.getKey().writeTo(out);
+            out.writeLong(counter.getCount());
+            out.writeLong(counter.getError());
+        }
+    }
+
+    public static HeavyHitterSummary readFrom(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC){ throw new IOException("Not a heavy hitter summary"); }
+        HeavyHitterSettings settings;
+        try {
+            settings = new HeavyHitterSettings(in.readInt(), in.readDouble(), in.readDouble());
+        } catch (IllegalArgumentException e){
+            throw new IOException(e.getMessage());
+        }
+        HeavyHitterSummary summary = new HeavyHitterSummary(settings);
+        for (HeavyHitterView view : VIEWS){
+            summary.sketches[view.ordinal()] = CountMinSketch.readFrom(in);
+            readTopK(in, summary.topK.get(view.ordinal()));
+        }
+        return summary;
+    }
+
+    private static void readTopK(DataInput in, SpaceSaving<HeavyHitterKey> summary) throws IOException {
+        long totalCount = in.readLong();
+        int numCounters = in.readInt();
+        if (numCounters < 0 || numCounters > summary.getCapacity()){ throw new IOException("Too many top-k counters: " + numCounters); }
+        for (int i = 0; i < numCounters; i++){
+            summary.restore(HeavyHitterKey.readFrom(in), in.readLong(), in.readLong());
+        }
+        summary.setTotalCount(totalCount);
+    }
+
+    public void writeReport(PrintWriter writer, int n){
+        for (HeavyHitterView view : VIEWS){
+            writer.println(String.format("heavy hitters by %s: %d counted, counts overcount by at most %d (%d from the top-k summary, %d with probability %.4f from the sketch)",
+                    view, getTotalCount(view), getErrorBound(view), topK.get(view.ordinal()).getErrorBound(),
+                    sketches[view.ordinal()].getErrorBound(), 1 - sketches[view.ordinal()].getDelta()));
+            for (HeavyHitter heavyHitter : top(view, n)){
+                writer.println(heavyHitter);
+            }
+        }
+    }
+
+    public static final class HeavyHitter {
+
+        private final HeavyHitterKey key;
+        private final long count;
+        private final long guaranteedCount;
+
+        private HeavyHitter(HeavyHitterKey key, long count, long guaranteedCount){
+            this.key = key;
+            this.count = count;
+            this.guaranteedCount = guaranteedCount;
+        }
+
+        public HeavyHitterKey getKey() {
+            return key;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * A lower bound on the key's true count.
+         */
+        public long getGuaranteedCount() {
+            return guaranteedCount;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d (at least %d)", key, count, guaranteedCount);
+        }
+
+    }
+
+}
@@ -0,0 +1,12 @@
+package sketches;
+
+public enum HeavyHitterView {
+
+    /** Decoded objects by class name. */
+    TYPE,
+    /** Packets by flow, whether or not they carried an object. */
+    FLOW,
+    /** Decoded objects by flow and class name, e.g. which clients send the most of a request type. */
+    FLOW_AND_TYPE
+
+}
@@ -0,0 +1,232 @@
+package sketches;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * Space-Saving top-k summary with a fixed number of counters. A key that isn't counted yet takes over
+ * the smallest counter and inherits its count as its error, so counts never undercount and overcount
+ * by at most the total count divided by the capacity. Every key occurring more often than that is
+ * guaranteed to hold a counter. The smallest counter is found through a binary min-heap.
+ * <p>
+ * Lookups take a probe key that may be reused by the caller; the key copier is only applied when a
+ * key is admitted. Summaries merge as described by Agarwal et al., "Mergeable summaries": a key
+ * missing from one side is charged that side's smallest count, and the largest counters are kept.
+ * Not thread-safe.
+ */
+public final class SpaceSaving<K> {
+
+    private final int capacity;
+    private final UnaryOperator<K> keyCopier;
+    private final Map<K, Counter<K>> counters;
+    private final List<Counter<K>> heap;
+    private long totalCount;
+
+    public SpaceSaving(int capacity, UnaryOperator<K> keyCopier){
+        if (capacity <= 0){ throw new IllegalArgumentException("The capacity must be positive"); }
+        this.capacity = capacity;
+        this.keyCopier = keyCopier;
+        this.counters = new HashMap<>(capacity * 4 / 3 + 1);
+        this.heap = new ArrayList<>(capacity);
+    }
+
+    public void add(K probe, long count){
+        totalCount += count;
+        Counter<K> counter = counters.get(probe);
+        if (counter != null){
+            counter.count += count;
+            siftDown(counter.heapIndex);
+        } else if (heap.size() < capacity){
+            counter = new Counter<>(keyCopier.apply(probe), count, 0);
+            counters.put(counter.key, counter);
+            counter.heapIndex = heap.size();
+            heap.add(counter);
+            siftUp(counter.heapIndex);
+        } else {
+            counter = heap.get(0);
+            counters.remove(counter.key);
+            counter.key = keyCopier.apply(probe);
+            counter.error = counter.count;
+            counter.count += count;
+            counters.put(counter.key, counter);
+            siftDown(0);
+        }
+    }
+
+    /**
+     * The counted value of the key, or the most it could have occurred if it doesn't hold a counter.
+     */
+    public long estimate(K key){
+        Counter<K> counter = counters.get(key);
+        return (counter != null ? counter.count : getMinCount());
+    }
+
+    public long getMinCount(){
+        return (heap.size() < capacity ? 0 : heap.get(0).count);
+    }
+
+    public void merge(SpaceSaving<K> other){
+        long thisMin = getMinCount();
+        long otherMin = other.getMinCount();
+        List<Counter<K>> merged = new ArrayList<>(heap.size() + other.heap.size());
+        for (Counter<K> counter : heap){
+            Counter<K> match = other.counters.get(counter.key);
+            merged.add(match != null
+                    ? new Counter<>(counter.key, counter.count + match.count, counter.error + match.error)
+                    : new Counter<>(counter.key, counter.count + otherMin, counter.error + otherMin));
+        }
+        for (Counter<K> counter : other.heap){
+            if (!counters.containsKey(counter.key)){
+                merged.add(new Counter<>(counter.key, counter.count + thisMin, counter.error + thisMin));
+            }
+        }
+        long mergedTotal = totalCount + other.totalCount;
+        clear();
+        totalCount = mergedTotal;
+        Collections.sort(merged, (a, b) -> Long.compare(b.count, a.count));
+        for (int i = 0; i < Math.min(capacity, merged.size()); i++){
+            restore(merged.get(i));
+        }
+    }
+
+    /**
+     * Puts back a counter that was read with {@link #getCounters()}, e.g. from a file.
+     */
+    public void restore(K key, long count, long error){
+        restore(new Counter<>(key, count, error));
+    }
+
+    private void restore(Counter<K> counter){
+        if (heap.size() >= capacity){ throw new IllegalStateException("All " + capacity + " counters are taken"); }
+        counters.put(counter.key, counter);
+        counter.heapIndex = heap.size();
+        heap.add(counter);
+        siftUp(counter.heapIndex);
+    }
+
+    public void setTotalCount(long totalCount){
+        this.totalCount = totalCount;
+    }
+
+    public void clear(){
+        counters.clear();
+        heap.clear();
+        totalCount = 0;
+    }
+
+    /**
+     * The counters, largest count first.
+     */
+    public List<Counter<K>> getCounters(){
+        List<Counter<K>> sorted = new ArrayList<>(heap.size());
+        for (Counter<K> counter : heap){
+            sorted.add(new Counter<>(counter.key, counter.count, counter.error));
+        }
+        Collections.sort(sorted, (a, b) -> Long.compare(b.count, a.count));
+        return sorted;
+    }
+
+    public SpaceSaving<K> copy(){
+        SpaceSaving<K> copy = new SpaceSaving<>(capacity, keyCopier);
+        for (Counter<K> counter : heap){
+            copy.restore(new Counter<>(counter.key, counter.count, counter.error));
+        }
+        copy.totalCount = totalCount;
+        return copy;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return heap.size();
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * The most any count overcounts.
+     */
+    public long getErrorBound() {
+        return totalCount / capacity;
+    }
+
+    private void siftUp(int index){
+        Counter<K> counter = heap.get(index);
+        while (index > 0){
+            int parent = (index - 1) >>> 1;
+            Counter<K> parentCounter = heap.get(parent);
+            if (parentCounter.count <= counter.count){ break; }
+            place(parentCounter, index);
+            index = parent;
+        }
+        place(counter, index);
+    }
+
+    private void siftDown(int index){
+        Counter<K> counter = heap.get(index);
+        int size = heap.size();
+        while (true){
+            int child = 2 * index + 1;
+            if (child >= size){ break; }
+            if (child + 1 < size && heap.get(child + 1).count < heap.get(child).count){ child++; }
+            Counter<K> childCounter = heap.get(child);
+            if (counter.count <= childCounter.count){ break; }
+            place(childCounter, index);
+            index = child;
+        }
+        place(counter, index);
+    }
+
+    private void place(Counter<K> counter, int index){
+        heap.set(index, counter);
+        counter.heapIndex = index;
+    }
+
+    public static final class Counter<K> {
+
+        private K key;
+        private long count;
+        private long error;
+        private int heapIndex;
+
+        private Counter(K key, long count, long error){
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        /**
+         * An upper bound on the key's true count.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * How much of the count may have belonged to other keys; count - error is a lower bound on the
+         * key's true count.
+         */
+        public long getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return key + ": " + count + " (+/- " + error + ")";
+        }
+
+    }
+
+}
@@ -0,0 +1,108 @@
+package sniffer;
+
+/**
+ * How a live capture handle is opened. A buffer size of {@link #LIBPCAP_DEFAULT_BUFFER_SIZE} leaves
+ * the kernel buffer at libpcap's default. If the maximum buffer size is larger than the buffer size,
+ * the buffer is doubled (up to the maximum) whenever the kernel reports new drops, which means
+ * reopening the handle.
+ */
+public final class CaptureProfile {
+
+    public static final int LIBPCAP_DEFAULT_BUFFER_SIZE = 0;
+    public static final int MAX_SNAPLEN = 65535;
+
+    public static final CaptureProfile DEFAULT = new CaptureProfile("default", MAX_SNAPLEN, LIBPCAP_DEFAULT_BUFFER_SIZE, false, 30000, false);
+    public static final CaptureProfile LOW_LATENCY = new CaptureProfile("low-latency", MAX_SNAPLEN, 4 * 1024 * 1024, true, 10, false);
+    public static final CaptureProfile HIGH_THROUGHPUT = new CaptureProfile("high-throughput", MAX_SNAPLEN, 64 * 1024 * 1024, false, 250, false,
+            512 * 1024 * 1024, 1000);
+
+    private static final CaptureProfile[] NAMED_PROFILES = {DEFAULT, LOW_LATENCY, HIGH_THROUGHPUT};
+    private static final long DEFAULT_STATS_INTERVAL_MILLIS = 1000;
+
+    private final String name;
+    private final int snaplen;
+    private final int bufferSizeBytes;
+    private final boolean immediateMode;
+    private final int timeoutMillis;
+    private final boolean promiscuous;
+    private final int maxBufferSizeBytes;
+    private final long statsIntervalMillis;
+
+    public CaptureProfile(String name, int snaplen, int bufferSizeBytes, boolean immediateMode, int timeoutMillis, boolean promiscuous){
+        this(name, snaplen, bufferSizeBytes, immediateMode, timeoutMillis, promiscuous, bufferSizeBytes, DEFAULT_STATS_INTERVAL_MILLIS);
+    }
+
+    public CaptureProfile(String name, int snaplen, int bufferSizeBytes, boolean immediateMode, int timeoutMillis, boolean promiscuous,
+                          int maxBufferSizeBytes, long statsIntervalMillis){
+        if (snaplen <= 0 || snaplen > MAX_SNAPLEN){ throw new IllegalArgumentException("The snaplen must be between 1 and " + MAX_SNAPLEN); }
+        if (bufferSizeBytes < 0){ throw new IllegalArgumentException("The buffer size can't be negative"); }
+        if (timeoutMillis < 0){ throw new IllegalArgumentException("The read timeout can't be negative"); }
+        if (statsIntervalMillis <= 0){ throw new IllegalArgumentException("The statistics interval must be positive"); }
+        if (maxBufferSizeBytes > bufferSizeBytes && bufferSizeBytes == LIBPCAP_DEFAULT_BUFFER_SIZE){
+            throw new IllegalArgumentException("An adaptive buffer needs an initial buffer size");
+        }
+        this.name = name;
+        this.snaplen = snaplen;
+        this.bufferSizeBytes = bufferSizeBytes;
+        this.immediateMode = immediateMode;
+        this.timeoutMillis = timeoutMillis;
+        this.promiscuous = promiscuous;
+        this.maxBufferSizeBytes = Math.max(bufferSizeBytes, maxBufferSizeBytes);
+        this.statsIntervalMillis = statsIntervalMillis;
+    }
+
+    public static CaptureProfile forName(String name){
+        for (CaptureProfile profile : NAMED_PROFILES){
+            if (profile.name.equalsIgnoreCase(name)){ return profile; }
+        }
+        throw new IllegalArgumentException("There's no capture profile called " + name);
+    }
+
+    public CaptureProfile withPromiscuousMode(boolean promiscuous){
+        return new CaptureProfile(name, snaplen, bufferSizeBytes, immediateMode, timeoutMillis, promiscuous, maxBufferSizeBytes, statsIntervalMillis);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getSnaplen() {
+        return snaplen;
+    }
+
+    public int getBufferSizeBytes() {
+        return bufferSizeBytes;
+    }
+
+    public boolean isImmediateMode() {
+        return immediateMode;
+    }
+
+    public int getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public boolean isPromiscuous() {
+        return promiscuous;
+    }
+
+    public int getMaxBufferSizeBytes() {
+        return maxBufferSizeBytes;
+    }
+
+    public boolean isAdaptive() {
+        return maxBufferSizeBytes > bufferSizeBytes;
+    }
+
+    public long getStatsIntervalMillis() {
+        return statsIntervalMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (snaplen: %d, buffer: %s, immediate mode: %b, timeout: %d ms, promiscuous: %b%s)", name, snaplen,
+                (bufferSizeBytes == LIBPCAP_DEFAULT_BUFFER_SIZE ? "libpcap default" : bufferSizeBytes + " bytes"), immediateMode, timeoutMillis,
+                promiscuous, (isAdaptive() ? ", grows up to " + maxBufferSizeBytes + " bytes" : ""));
+    }
+
+}
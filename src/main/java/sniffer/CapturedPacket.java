@@ -0,0 +1,69 @@
+package sniffer;
+
+import org.pcap4j.packet.Packet;
+import org.pcap4j.packet.factory.PacketFactories;
+import org.pcap4j.packet.namednumber.DataLinkType;
+
+import java.sql.Timestamp;
+
+public final class CapturedPacket {
+
+    private final byte[] rawData;
+    private final long timestampNanos;
+    private final int originalLength;
+    private final int dataLinkType;
+    private final long arrivalNanos;
+    private volatile Packet packet;
+
+    public CapturedPacket(byte[] rawData, long timestampNanos, int originalLength, int dataLinkType){
+        this.rawData = rawData;
+        this.timestampNanos = timestampNanos;
+        this.originalLength = originalLength;
+        this.dataLinkType = dataLinkType;
+        this.arrivalNanos = System.nanoTime();
+    }
+
+    public CapturedPacket(Packet packet, long timestampNanos, int originalLength, int dataLinkType){
+        this(packet.getRawData(), timestampNanos, originalLength, dataLinkType);
+        this.packet = packet;
+    }
+
+    public Packet getPacket() {
+        Packet decoded = packet;
+        if (decoded == null){
+            decoded = PacketFactories.getFactory(Packet.class, DataLinkType.class)
+                    .newInstance(rawData, 0, rawData.length, DataLinkType.getInstance(dataLinkType));
+            packet = decoded;
+        }
+        return decoded;
+    }
+
+    public byte[] getRawData() {
+        return rawData;
+    }
+
+    public int getCapturedLength() {
+        return rawData.length;
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public int getOriginalLength() {
+        return originalLength;
+    }
+
+    public int getDataLinkType() {
+        return dataLinkType;
+    }
+
+    public long getArrivalNanos() {
+        return arrivalNanos;
+    }
+
+    public static long toEpochNanos(Timestamp timestamp){
+        return Math.floorDiv(timestamp.getTime(), 1000L) * 1_000_000_000L + timestamp.getNanos();
+    }
+
+}
@@ -0,0 +1,185 @@
+package sniffer;
+
+/**
+ * Offsets and addressing fields of a captured frame, filled in by {@link #parse} straight from the
+ * raw bytes without building any pcap4j packet objects. An instance is meant to be reused by one
+ * thread for many frames. IPv6 addresses are folded into 32 bits, which is enough to tell flows apart.
+ */
+public final class PacketHeaders {
+
+    public static final int PROTOCOL_TCP = 6;
+    public static final int PROTOCOL_UDP = 17;
+
+    private static final int LINKTYPE_NULL = 0;
+    private static final int LINKTYPE_ETHERNET = 1;
+    private static final int LINKTYPE_RAW = 101;
+    private static final int LINKTYPE_PCAP4J_RAW = 12;
+    private static final int LINKTYPE_LOOP = 108;
+    private static final int LINKTYPE_LINUX_SLL = 113;
+
+    private static final int ETHERTYPE_IPV4 = 0x0800;
+    private static final int ETHERTYPE_IPV6 = 0x86DD;
+    private static final int ETHERTYPE_VLAN = 0x8100;
+    private static final int ETHERTYPE_QINQ = 0x88A8;
+
+    private int ipVersion;
+    private int protocol;
+    private int sourceAddress;
+    private int destinationAddress;
+    private int sourcePort;
+    private int destinationPort;
+    private long tcpSequenceNumber;
+    private int tcpFlags;
+    private int transportOffset;
+    private int payloadOffset;
+    private int payloadLength;
+
+    public boolean parse(byte[] data, int length, int linkType){
+        ipVersion = 0;
+        protocol = -1;
+        int networkOffset = networkOffset(data, length, linkType);
+        if (networkOffset < 0 || networkOffset >= length){ return false; }
+        int version = (data[networkOffset] >> 4) & 0x0F;
+        if (version == 4){
+            return parseIpV4(data, length, networkOffset);
+        } else if (version == 6){
+            return parseIpV6(data, length, networkOffset);
+        }
+        return false;
+    }
+
+    private static int networkOffset(byte[] data, int length, int linkType){
+        switch (linkType){
+            case LINKTYPE_ETHERNET:
+                int offset = 12;
+                int etherType = readUnsignedShort(data, length, offset);
+                while (etherType == ETHERTYPE_VLAN || etherType == ETHERTYPE_QINQ){
+                    offset += 4;
+                    etherType = readUnsignedShort(data, length, offset);
+                }
+                return (etherType == ETHERTYPE_IPV4 || etherType == ETHERTYPE_IPV6 ? offset + 2 : -1);
+            case LINKTYPE_NULL:
+            case LINKTYPE_LOOP:
+                return 4;
+            case LINKTYPE_RAW:
+            case LINKTYPE_PCAP4J_RAW:
+                return 0;
+            case LINKTYPE_LINUX_SLL:
+                int protocolType = readUnsignedShort(data, length, 14);
+                return (protocolType == ETHERTYPE_IPV4 || protocolType == ETHERTYPE_IPV6 ? 16 : -1);
+            default:
+                return -1;
+        }
+    }
+
+    private boolean parseIpV4(byte[] data, int length, int offset){
+        if (offset + 20 > length){ return false; }
+        int headerLength = (data[offset] & 0x0F) * 4;
+        int totalLength = readUnsignedShort(data, length, offset + 2);
+        int fragmentField = readUnsignedShort(data, length, offset + 6);
+        if (headerLength < 20 || totalLength < headerLength || (fragmentField & 0x3FFF) != 0){ return false; }
+        ipVersion = 4;
+        protocol = data[offset + 9] & 0xFF;
+        sourceAddress = readInt(data, offset + 12);
+        destinationAddress = readInt(data, offset + 16);
+        int end = Math.min(length, offset + totalLength);
+        return parseTransport(data, offset + headerLength, end);
+    }
+
+    private boolean parseIpV6(byte[] data, int length, int offset){
+        if (offset + 40 > length){ return false; }
+        int payloadLength = readUnsignedShort(data, length, offset + 4);
+        int nextHeader = data[offset + 6] & 0xFF;
+        int end = Math.min(length, offset + 40 + payloadLength);
+        ipVersion = 6;
+        sourceAddress = readInt(data, offset + 8) ^ readInt(data, offset + 12) ^ readInt(data, offset + 16) ^ readInt(data, offset + 20);
+        destinationAddress = readInt(data, offset + 24) ^ readInt(data, offset + 28) ^ readInt(data, offset + 32) ^ readInt(data, offset + 36);
+        int headerOffset = offset + 40;
+        while (nextHeader == 0 || nextHeader == 43 || nextHeader == 60 || nextHeader == 44){
+            if (headerOffset + 8 > end){ return false; }
+            if (nextHeader == 44 && (readUnsignedShort(data, length, headerOffset + 2) & 0xFFF9) != 0){ return false; }
+            int extensionLength = (nextHeader == 44 ? 8 : ((data[headerOffset + 1] & 0xFF) + 1) * 8);
+            nextHeader = data[headerOffset] & 0xFF;
+            headerOffset += extensionLength;
+        }
+        protocol = nextHeader;
+        return parseTransport(data, headerOffset, end);
+    }
+
+    private boolean parseTransport(byte[] data, int offset, int end){
+        transportOffset = offset;
+        if (protocol == PROTOCOL_TCP){
+            if (offset + 20 > end){ return false; }
+            int headerLength = ((data[offset + 12] >> 4) & 0x0F) * 4;
+            if (headerLength < 20 || offset + headerLength > end){ return false; }
+            sourcePort = readUnsignedShort(data, end, offset);
+            destinationPort = readUnsignedShort(data, end, offset + 2);
+            tcpSequenceNumber = readInt(data, offset + 4) & 0xFFFFFFFFL;
+            tcpFlags = data[offset + 13] & 0xFF;
+            payloadOffset = offset + headerLength;
+        } else if (protocol == PROTOCOL_UDP){
+            if (offset + 8 > end){ return false; }
+            sourcePort = readUnsignedShort(data, end, offset);
+            destinationPort = readUnsignedShort(data, end, offset + 2);
+            payloadOffset = offset + 8;
+        } else {
+            return false;
+        }
+        payloadLength = end - payloadOffset;
+        return true;
+    }
+
+    private static int readUnsignedShort(byte[] data, int length, int offset){
+        if (offset + 2 > length){ return -1; }
+        return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+    }
+
+    private static int readInt(byte[] data, int offset){
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16) | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
+
+    public int getIpVersion() {
+        return ipVersion;
+    }
+
+    public int getProtocol() {
+        return protocol;
+    }
+
+    public int getSourceAddress() {
+        return sourceAddress;
+    }
+
+    public int getDestinationAddress() {
+        return destinationAddress;
+    }
+
+    public int getSourcePort() {
+        return sourcePort;
+    }
+
+    public int getDestinationPort() {
+        return destinationPort;
+    }
+
+    public long getTcpSequenceNumber() {
+        return tcpSequenceNumber;
+    }
+
+    public int getTcpFlags() {
+        return tcpFlags;
+    }
+
+    public int getTransportOffset() {
+        return transportOffset;
+    }
+
+    public int getPayloadOffset() {
+        return payloadOffset;
+    }
+
+    public int getPayloadLength() {
+        return payloadLength;
+    }
+
+}
@@ -0,0 +1,40 @@
+package sniffer;
+
+import java.util.concurrent.TimeUnit;
+
+class ReplayPacer {
+
+    static final double AS_FAST_AS_POSSIBLE = 0;
+
+    private final double speed;
+    private boolean started;
+    private long firstCaptureNanos;
+    private long firstWallClockNanos;
+
+    ReplayPacer(double speed){
+        this.speed = speed;
+        this.started = false;
+    }
+
+    void reset(){
+        started = false;
+    }
+
+    boolean isPaced(){
+        return speed > AS_FAST_AS_POSSIBLE;
+    }
+
+    void awaitReleaseOf(long captureNanos) throws InterruptedException {
+        if (!isPaced()){ return; }
+        if (!started){
+            firstCaptureNanos = captureNanos;
+            firstWallClockNanos = System.nanoTime();
+            started = true;
+            return;
+        }
+        long releaseAt = firstWallClockNanos + Math.round((captureNanos - firstCaptureNanos) / speed);
+        long delay = releaseAt - System.nanoTime();
+        if (delay > 0){ TimeUnit.NANOSECONDS.sleep(delay); }
+    }
+
+}
@@ -2,67 +2,249 @@ package sniffer;
 
 import packetSinks.PacketSink;
 import org.pcap4j.core.*;
-import org.pcap4j.packet.Packet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import queues.RingBufferSettings;
+import queues.SpscRingBuffer;
 
+import java.io.File;
 import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
-public class Sniffer implements Runnable, PacketListener {
+public class Sniffer implements Runnable, RawPacketListener {
 
     private static final Logger logger = LoggerFactory.getLogger(Sniffer.class);
 
+    public static final double REPLAY_AS_FAST_AS_POSSIBLE = ReplayPacer.AS_FAST_AS_POSSIBLE;
+    private static final long QUEUE_POLL_INTERVAL_MILLIS = 100;
+    private static final Inet4Address UNKNOWN_NETMASK = unknownNetmask();
+
     private List<PacketSink> enabledSinks;
     private List<PacketSink> disabledSinks;
     private PcapNetworkInterface device;
-    private PcapHandle sniffHandle;
+    private final CaptureProfile profile;
+    private volatile int bufferSizeBytes;
+    private File replayFile;
+    private ReplayPacer replayPacer;
+    private volatile PcapHandle sniffHandle;
+    private int dataLinkType;
 
     private volatile boolean workerThreadFailed;
+    private volatile boolean sourceExhausted;
     private LoopExecutor loopExecutor;
+    private Thread captureThread;
+    private ScheduledExecutorService statisticsPoller;
+    private volatile boolean reopening;
+    private volatile boolean stopped;
+    private boolean loopRunning;
 
+    private final Object handleLock = new Object();
     private String nextFilterExpression;
     private Inet4Address nextFilterAddress;
-    private boolean filterChanged;
 
-    private BlockingQueue<Packet> packetQueue;
+    private SpscRingBuffer<CapturedPacket> packetQueue;
+    private ThroughputCounter throughputCounter;
+    private volatile long numCapturedPackets;
+    private volatile PcapStat lastCaptureStatistics;
+    private long numKernelDropsAtLastPoll;
+    private volatile long numKernelReceivedByClosedHandles;
+    private volatile long numKernelDroppedByClosedHandles;
+    private volatile long numInterfaceDroppedByClosedHandles;
 
     public Sniffer(String deviceName) throws PcapNativeException {
+        this(deviceName, RingBufferSettings.DEFAULT);
+    }
+
+    public Sniffer(String deviceName, RingBufferSettings queueSettings) throws PcapNativeException {
+        this(deviceName, queueSettings, CaptureProfile.DEFAULT);
+    }
+
+    public Sniffer(String deviceName, RingBufferSettings queueSettings, CaptureProfile profile) throws PcapNativeException {
+        this(Pcaps.getDevByName(deviceName), null, REPLAY_AS_FAST_AS_POSSIBLE, queueSettings, profile);
+    }
+
+    public Sniffer(File replayFile, double replaySpeed) {
+        this(replayFile, replaySpeed, RingBufferSettings.DEFAULT);
+    }
+
+    public Sniffer(File replayFile, double replaySpeed, RingBufferSettings queueSettings) {
+        this(null, replayFile, replaySpeed, queueSettings, CaptureProfile.DEFAULT);
+    }
+
+    private Sniffer(PcapNetworkInterface device, File replayFile, double replaySpeed, RingBufferSettings queueSettings, CaptureProfile profile) {
         this.enabledSinks = new LinkedList<>();
         this.disabledSinks = new LinkedList<>();
-        this.packetQueue = new LinkedBlockingQueue<>();
-        this.device = Pcaps.getDevByName(deviceName);
-        this.filterChanged = false;
+        this.packetQueue = queueSettings.newRingBuffer();
+        this.device = device;
+        this.profile = profile;
+        this.bufferSizeBytes = profile.getBufferSizeBytes();
+        this.replayFile = replayFile;
+        this.replayPacer = new ReplayPacer(replaySpeed);
         this.loopExecutor = new LoopExecutor();
+        this.throughputCounter = new ThroughputCounter();
     }
 
     @Override
     public void run() {
-        initializeSniffSession();
+        if (!startCapture(Thread.currentThread())){ return; }
+        enableAllSinks();
         mainSniffSessionLoop();
-        if (!workerThreadFailed){ endSniffSession(); }
+        endSniffSession();
     }
 
-    private void initializeSniffSession() {
+    boolean startCapture(Thread parentThread) {
         try {
-            sniffHandle = device.openLive(65535, PcapNetworkInterface.PromiscuousMode.NONPROMISCUOUS, 30000);
-            if (filterChanged){ applyFilter(); }
-            enableAllSinks();
-            workerThreadFailed = false;
-            (new Thread(loopExecutor.setParentThread(Thread.currentThread()))).start();
+            synchronized (handleLock){
+                sniffHandle = openHandle();
+                dataLinkType = sniffHandle.getDlt().value();
+                applyFilter();
+                workerThreadFailed = false;
+                sourceExhausted = false;
+                stopped = false;
+                numKernelDropsAtLastPoll = 0;
+                throughputCounter.reset();
+                replayPacer.reset();
+                startLoop(parentThread);
+            }
+            if (!isReplaying()){ startPollingStatistics(); }
+            return true;
         } catch (PcapNativeException | NotOpenException e){
             logger.error("Something appears to be wrong with the device initialization...");
+            return false;
+        }
+    }
+
+    private void startLoop(Thread parentThread){
+        loopRunning = true;
+        captureThread = new Thread(loopExecutor.setParentThread(parentThread), "capture-" + getName());
+        captureThread.start();
+    }
+
+    private PcapHandle openHandle() throws PcapNativeException {
+        if (isReplaying()){
+            return Pcaps.openOffline(replayFile.getPath(), PcapHandle.TimestampPrecision.NANO);
+        }
+        PcapHandle.Builder builder = new PcapHandle.Builder(device.getName())
+                .snaplen(profile.getSnaplen())
+                .promiscuousMode(profile.isPromiscuous() ? PcapNetworkInterface.PromiscuousMode.PROMISCUOUS : PcapNetworkInterface.PromiscuousMode.NONPROMISCUOUS)
+                .timeoutMillis(profile.getTimeoutMillis());
+        if (bufferSizeBytes != CaptureProfile.LIBPCAP_DEFAULT_BUFFER_SIZE){ builder.bufferSize(bufferSizeBytes); }
+        if (profile.isImmediateMode()){ builder.immediateMode(true); }
+        return builder.build();
+    }
+
+    private void startPollingStatistics(){
+        statisticsPoller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "capture-statistics-" + getName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        statisticsPoller.scheduleWithFixedDelay(this::pollCaptureStatistics, profile.getStatsIntervalMillis(), profile.getStatsIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void pollCaptureStatistics(){
+        PcapStat stats = getCaptureStatistics();
+        if (stats == null){ return; }
+        long numNewDrops = stats.getNumPacketsDropped() - numKernelDropsAtLastPoll;
+        numKernelDropsAtLastPoll = stats.getNumPacketsDropped();
+        if (numNewDrops <= 0){ return; }
+        if (profile.isAdaptive() && bufferSizeBytes < profile.getMaxBufferSizeBytes()){
+            growBuffer(numNewDrops);
+        } else {
+            logger.warn("The kernel dropped {} packets on {} in the last {} ms", numNewDrops, getName(), profile.getStatsIntervalMillis());
+        }
+    }
+
+    /**
+     * The buffer size of an open handle can't be changed, so the capture loop is broken and the handle
+     * reopened with the larger buffer. Packets arriving in between are lost. Breaking the loop only
+     * takes effect once the next packet or read timeout wakes it up; the handle lock isn't held while
+     * waiting for that, only while the handles are swapped.
+     */
+    private void growBuffer(long numNewDrops){
+        PcapHandle oldHandle;
+        Thread oldCaptureThread;
+        int grownSize;
+        synchronized (handleLock){
+            if (stopped){ return; }
+            grownSize = (int) Math.min(profile.getMaxBufferSizeBytes(), 2L * bufferSizeBytes);
+            logger.info("The kernel dropped {} packets on {}, growing the capture buffer from {} to {} bytes",
+                    numNewDrops, getName(), bufferSizeBytes, grownSize);
+            oldHandle = sniffHandle;
+            oldCaptureThread = captureThread;
+            reopening = true;
+            try { oldHandle.breakLoop(); } catch (NotOpenException ignored) {}
         }
+        joinUninterruptibly(oldCaptureThread);
+        synchronized (handleLock){
+            closeHandle(oldHandle);
+            reopening = false;
+            if (stopped){ return; }
+            try {
+                bufferSizeBytes = grownSize;
+                sniffHandle = openHandle();
+                applyFilter();
+                numKernelDropsAtLastPoll = 0;
+                startLoop(loopExecutor.parentThread);
+            } catch (PcapNativeException | NotOpenException e){
+                logger.error("Couldn't reopen " + getName() + " with a larger buffer", e);
+                workerThreadFailed = true;
+                if (loopExecutor.parentThread != null){ loopExecutor.parentThread.interrupt(); }
+            }
+        }
+    }
+
+    private static void joinUninterruptibly(Thread thread){
+        boolean interrupted = false;
+        while (thread.isAlive()){
+            try {
+                thread.join();
+            } catch (InterruptedException e){
+                interrupted = true;
+            }
+        }
+        if (interrupted){ Thread.currentThread().interrupt(); }
+    }
+
+    private void closeHandle(PcapHandle handle){
+        synchronized (handleLock){
+            if (handle == null || !handle.isOpen()){ return; }
+            if (!isReplaying()){ rememberStatisticsOf(handle); }
+            handle.close();
+        }
+    }
+
+    private void rememberStatisticsOf(PcapHandle handle){
+        try {
+            PcapStat stats = handle.getStats();
+            numKernelReceivedByClosedHandles += stats.getNumPacketsReceived();
+            numKernelDroppedByClosedHandles += stats.getNumPacketsDropped();
+            numInterfaceDroppedByClosedHandles += stats.getNumPacketsDroppedByIf();
+        } catch (PcapNativeException | NotOpenException e){
+            logger.debug("Couldn't read the capture statistics", e);
+        }
+        lastCaptureStatistics = null;
+    }
+
+    private boolean isReplaying(){
+        return replayFile != null;
     }
 
     private void mainSniffSessionLoop() {
         try {
             while (!Thread.currentThread().isInterrupted()) {
-                Packet packet = packetQueue.take();
-                notifySinks(packet);
+                CapturedPacket packet = packetQueue.poll(QUEUE_POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (packet != null){
+                    notifySinks(packet);
+                } else if (sourceExhausted){
+                    break;
+                }
             }
         } catch (InterruptedException e){
             Thread.currentThread().interrupt();
@@ -75,29 +257,102 @@ public class Sniffer implements Runnable, PacketListener {
 
     private void endSniffSession(){
         logger.info("This sniffer is quitting...");
-        try { sniffHandle.breakLoop(); } catch (NotOpenException ignored) {}
+        stopCapture();
         disableAllSinks();
     }
 
+    /**
+     * A running capture loop closes its handle once the break takes effect; otherwise the handle is
+     * closed right away.
+     */
+    void stopCapture(){
+        synchronized (handleLock){
+            stopped = true;
+            if (loopRunning){
+                try { sniffHandle.breakLoop(); } catch (NotOpenException ignored) {}
+            } else {
+                closeHandle(sniffHandle);
+            }
+        }
+        if (statisticsPoller != null){ statisticsPoller.shutdown(); }
+        if (isReplaying()){
+            logger.info("Replay of {} finished: {}", replayFile, throughputCounter);
+        }
+    }
+
+    CapturedPacket pollCaptured(){
+        return packetQueue.poll();
+    }
+
+    CapturedPacket peekCaptured(){
+        return packetQueue.peek();
+    }
+
+    boolean isCaptureFinished(){
+        return sourceExhausted || workerThreadFailed;
+    }
+
+    public String getName(){
+        return (isReplaying() ? replayFile.getPath() : device.getName());
+    }
+
     public void setFilterForNextSniff(String filterExpression, Inet4Address mask){
-        this.nextFilterExpression = filterExpression;
-        this.nextFilterAddress = mask;
-        filterChanged = true;
+        synchronized (handleLock){
+            this.nextFilterExpression = filterExpression;
+            this.nextFilterAddress = mask;
+        }
+    }
+
+    /**
+     * Compiles the filter against the running handle and installs it without interrupting the capture.
+     * The expression is also kept for later sessions. If the expression doesn't compile, the current
+     * filter stays in place. Returns false if there's no live capture to apply the filter to yet.
+     */
+    public boolean swapFilter(String filterExpression) throws PcapNativeException, NotOpenException {
+        Inet4Address mask = netmaskOf(device);
+        synchronized (handleLock){
+            PcapHandle handle = sniffHandle;
+            boolean live = handle != null && handle.isOpen();
+            if (live){ setFilter(handle, filterExpression, mask); }
+            nextFilterExpression = filterExpression;
+            nextFilterAddress = mask;
+            return live;
+        }
+    }
+
+    private static Inet4Address netmaskOf(PcapNetworkInterface device){
+        if (device != null){
+            for (PcapAddress address : device.getAddresses()){
+                if (address instanceof PcapIpV4Address && address.getNetmask() != null){
+                    return (Inet4Address) address.getNetmask();
+                }
+            }
+        }
+        return UNKNOWN_NETMASK;
     }
 
     private void applyFilter() throws PcapNativeException, NotOpenException {
-        BpfProgram filter = sniffHandle.compileFilter(nextFilterExpression, BpfProgram.BpfCompileMode.OPTIMIZE, nextFilterAddress);
-        sniffHandle.setFilter(filter);
-        filterChanged = false;
+        synchronized (handleLock){
+            if (nextFilterExpression != null){ setFilter(sniffHandle, nextFilterExpression, nextFilterAddress); }
+        }
+    }
+
+    private static void setFilter(PcapHandle handle, String filterExpression, Inet4Address mask) throws PcapNativeException, NotOpenException {
+        BpfProgram filter = handle.compileFilter(filterExpression, BpfProgram.BpfCompileMode.OPTIMIZE, mask);
+        try {
+            handle.setFilter(filter);
+        } finally {
+            filter.free();
+        }
     }
 
-    private synchronized void notifySinks(Packet packet){
+    synchronized void notifySinks(CapturedPacket packet){
         for (PacketSink sink : enabledSinks) {
             sink.acceptPacket(packet);
         }
     }
 
-    private synchronized void enableAllSinks(){
+    synchronized void enableAllSinks(){
         while (!disabledSinks.isEmpty()){
             PacketSink sink = disabledSinks.remove(0);
             sink.incrementNumActiveSources();
@@ -113,16 +368,89 @@ public class Sniffer implements Runnable, PacketListener {
         }
     }
 
+    public long getNumDroppedPackets(){
+        return packetQueue.getNumDropped();
+    }
+
+    public long getNumCapturedPackets(){
+        return numCapturedPackets;
+    }
+
+    public int getQueueDepth(){
+        return packetQueue.size();
+    }
+
+    /**
+     * The statistics of the current handle; after the buffer has grown, they only count from the
+     * reopening on.
+     */
+    public PcapStat getCaptureStatistics(){
+        synchronized (handleLock){
+            PcapHandle handle = sniffHandle;
+            if (!isReplaying() && handle != null && handle.isOpen()){
+                try {
+                    lastCaptureStatistics = handle.getStats();
+                } catch (PcapNativeException | NotOpenException e){
+                    logger.debug("Couldn't read the capture statistics", e);
+                }
+            }
+            return lastCaptureStatistics;
+        }
+    }
+
+    public long getKernelReceivedPackets(){
+        PcapStat stats = getCaptureStatistics();
+        return numKernelReceivedByClosedHandles + (stats == null ? 0 : stats.getNumPacketsReceived());
+    }
+
+    public long getKernelDroppedPackets(){
+        PcapStat stats = getCaptureStatistics();
+        return numKernelDroppedByClosedHandles + (stats == null ? 0 : stats.getNumPacketsDropped());
+    }
+
+    public long getInterfaceDroppedPackets(){
+        PcapStat stats = getCaptureStatistics();
+        return numInterfaceDroppedByClosedHandles + (stats == null ? 0 : stats.getNumPacketsDroppedByIf());
+    }
+
+    public CaptureProfile getProfile() {
+        return profile;
+    }
+
+    public int getBufferSizeBytes() {
+        return bufferSizeBytes;
+    }
+
     public synchronized void addSink(PacketSink sink){
         disabledSinks.add(sink);
     }
 
     @Override
-    public void gotPacket(Packet packet) {
-        if (packetQueue.remainingCapacity() > 0) {
-            packetQueue.offer(packet);
-        } else {
-            logger.info("Couldn't save a sniffed packet - queue is too full");
+    public void gotPacket(byte[] packet) {
+        long timestampNanos = CapturedPacket.toEpochNanos(sniffHandle.getTimestamp());
+        if (isReplaying()){ paceReplay(timestampNanos); }
+        CapturedPacket capturedPacket = new CapturedPacket(packet, timestampNanos, sniffHandle.getOriginalLength(), dataLinkType);
+        numCapturedPackets++;
+        throughputCounter.record(packet.length);
+        if (!packetQueue.offer(capturedPacket)) {
+            logger.debug("Couldn't save a sniffed packet - queue is too full");
+        }
+    }
+
+    private void paceReplay(long timestampNanos){
+        try {
+            replayPacer.awaitReleaseOf(timestampNanos);
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            try { sniffHandle.breakLoop(); } catch (NotOpenException ignored) {}
+        }
+    }
+
+    private static Inet4Address unknownNetmask(){
+        try {
+            return (Inet4Address) InetAddress.getByAddress(new byte[]{(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF});
+        } catch (UnknownHostException e){
+            throw new IllegalStateException(e);
         }
     }
 
@@ -137,11 +465,23 @@ public class Sniffer implements Runnable, PacketListener {
 
         @Override
         public void run() {
+            PcapHandle handle = sniffHandle;
             try {
-                sniffHandle.loop(-1, Sniffer.this);
-            } catch (PcapNativeException | InterruptedException | NotOpenException e) {
+                handle.loop(-1, Sniffer.this);
+                sourceExhausted = isReplaying();
+            } catch (InterruptedException e) {
+                if (!reopening){
+                    workerThreadFailed = true;
+                    if (parentThread != null){ parentThread.interrupt(); }
+                }
+            } catch (PcapNativeException | NotOpenException e) {
                 workerThreadFailed = true;
-                parentThread.interrupt();
+                if (parentThread != null){ parentThread.interrupt(); }
+            } finally {
+                synchronized (handleLock){
+                    loopRunning = false;
+                    if (isReplaying() || stopped){ closeHandle(handle); }
+                }
             }
         }
 
@@ -0,0 +1,151 @@
+package sniffer;
+
+import org.pcap4j.core.NotOpenException;
+import org.pcap4j.core.PcapNativeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import packetSinks.PacketSink;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs several sniffers at once, each with its own capture thread and queue, and merges their packets
+ * into one set of sinks. The group's thread is the only one handing packets to the sinks. Each member
+ * counts as an active source of every sink until its capture finishes. In ordered mode the merge
+ * always forwards the earliest queued packet. When a live member's queue is empty, a packet waits at
+ * most the merge delay for an earlier one to show up, so the sinks see one timeline.
+ */
+public class SnifferGroup implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnifferGroup.class);
+
+    public static final long UNORDERED = -1;
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final List<Sniffer> sniffers;
+    private final List<PacketSink> sinks;
+    private final long mergeDelayNanos;
+    private boolean[] active;
+    private int numActive;
+
+    public SnifferGroup(List<Sniffer> sniffers){
+        this(sniffers, UNORDERED);
+    }
+
+    public SnifferGroup(List<Sniffer> sniffers, long mergeDelayMillis){
+        this.sniffers = new ArrayList<>(sniffers);
+        this.sinks = new ArrayList<>();
+        this.mergeDelayNanos = (mergeDelayMillis == UNORDERED ? UNORDERED : TimeUnit.MILLISECONDS.toNanos(mergeDelayMillis));
+    }
+
+    @Override
+    public void run() {
+        startCaptures();
+        try {
+            while (numActive > 0 && !Thread.currentThread().isInterrupted()){
+                boolean forwarded = (mergeDelayNanos == UNORDERED ? forwardUnordered() : forwardEarliest());
+                if (!forwarded){ LockSupport.parkNanos(IDLE_PARK_NANOS); }
+            }
+        } finally {
+            for (int i = 0; i < sniffers.size(); i++){
+                if (active[i]){ deactivate(i); }
+            }
+            logger.info("This sniffer group is quitting...");
+        }
+    }
+
+    private synchronized void startCaptures(){
+        active = new boolean[sniffers.size()];
+        numActive = 0;
+        for (int i = 0; i < sniffers.size(); i++){
+            if (sniffers.get(i).startCapture(null)){
+                active[i] = true;
+                numActive++;
+                for (PacketSink sink : sinks){
+                    sink.incrementNumActiveSources();
+                }
+            }
+        }
+    }
+
+    private boolean forwardUnordered(){
+        boolean forwarded = false;
+        for (int i = 0; i < sniffers.size(); i++){
+            if (!active[i]){ continue; }
+            Sniffer sniffer = sniffers.get(i);
+            CapturedPacket packet = sniffer.pollCaptured();
+            if (packet != null){
+                notifySinks(packet);
+                forwarded = true;
+            } else if (sniffer.isCaptureFinished() && sniffer.peekCaptured() == null){
+                deactivate(i);
+            }
+        }
+        return forwarded;
+    }
+
+    private boolean forwardEarliest(){
+        int earliestIndex = -1;
+        CapturedPacket earliest = null;
+        boolean waitingOnLiveSource = false;
+        for (int i = 0; i < sniffers.size(); i++){
+            if (!active[i]){ continue; }
+            Sniffer sniffer = sniffers.get(i);
+            CapturedPacket packet = sniffer.peekCaptured();
+            if (packet == null){
+                if (sniffer.isCaptureFinished() && sniffer.peekCaptured() == null){
+                    deactivate(i);
+                } else {
+                    waitingOnLiveSource = true;
+                }
+            } else if (earliest == null || packet.getTimestampNanos() < earliest.getTimestampNanos()){
+                earliest = packet;
+                earliestIndex = i;
+            }
+        }
+        if (earliest == null){ return false; }
+        if (waitingOnLiveSource && System.nanoTime() - earliest.getArrivalNanos() < mergeDelayNanos){ return false; }
+        notifySinks(sniffers.get(earliestIndex).pollCaptured());
+        return true;
+    }
+
+    private synchronized void deactivate(int index){
+        active[index] = false;
+        numActive--;
+        sniffers.get(index).stopCapture();
+        for (PacketSink sink : sinks){
+            sink.decrementNumActiveSources();
+        }
+    }
+
+    private synchronized void notifySinks(CapturedPacket packet){
+        for (PacketSink sink : sinks){
+            sink.acceptPacket(packet);
+        }
+    }
+
+    public synchronized void addSink(PacketSink sink){
+        sinks.add(sink);
+    }
+
+    /**
+     * Swaps the capture filter on every member. Returns how many of them were capturing and got the new
+     * filter right away; the others pick it up on their next capture.
+     */
+    public int swapFilter(String filterExpression) throws PcapNativeException, NotOpenException {
+        int numSwapped = 0;
+        for (Sniffer sniffer : sniffers){
+            if (sniffer.swapFilter(filterExpression)){ numSwapped++; }
+        }
+        return numSwapped;
+    }
+
+    public List<Sniffer> getSniffers() {
+        return sniffers;
+    }
+
+}
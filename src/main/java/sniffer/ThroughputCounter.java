@@ -0,0 +1,34 @@
+package sniffer;
+
+class ThroughputCounter {
+
+    private long numPackets;
+    private long numBytes;
+    private long firstPacketNanos;
+    private long lastPacketNanos;
+
+    void reset(){
+        numPackets = 0;
+        numBytes = 0;
+        firstPacketNanos = 0;
+        lastPacketNanos = 0;
+    }
+
+    void record(int packetLength){
+        long now = System.nanoTime();
+        if (numPackets == 0){ firstPacketNanos = now; }
+        lastPacketNanos = now;
+        numPackets++;
+        numBytes += packetLength;
+    }
+
+    @Override
+    public String toString() {
+        double seconds = (lastPacketNanos - firstPacketNanos) / 1e9;
+        double packetsPerSecond = (seconds > 0 ? numPackets / seconds : 0);
+        double bytesPerSecond = (seconds > 0 ? numBytes / seconds : 0);
+        return String.format("%d packets, %d bytes in %.3f s (%.1f packets/sec, %.1f bytes/sec)",
+                numPackets, numBytes, seconds, packetsPerSecond, bytesPerSecond);
+    }
+
+}
@@ -0,0 +1,61 @@
+package store;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+class FlowFilter {
+
+    private static final int NUM_HASHES = 3;
+
+    private final long[] bits;
+    private final int mask;
+
+    FlowFilter(int numBits){
+        this(new long[numBits / Long.SIZE]);
+    }
+
+    private FlowFilter(long[] bits){
+        this.bits = bits;
+        this.mask = bits.length * Long.SIZE - 1;
+    }
+
+    void add(long hash){
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < NUM_HASHES; i++){
+            int bit = (h1 + i * h2) & mask;
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    boolean mightContain(long hash){
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < NUM_HASHES; i++){
+            int bit = (h1 + i * h2) & mask;
+            if ((bits[bit >>> 6] & (1L << bit)) == 0){ return false; }
+        }
+        return true;
+    }
+
+    FlowFilter copy(){
+        return new FlowFilter(bits.clone());
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(bits.length);
+        for (long word : bits){
+            out.writeLong(word);
+        }
+    }
+
+    static FlowFilter readFrom(DataInputStream in) throws IOException {
+        long[] bits = new long[in.readInt()];
+        for (int i = 0; i < bits.length; i++){
+            bits[i] = in.readLong();
+        }
+        return new FlowFilter(bits);
+    }
+
+}
@@ -0,0 +1,73 @@
+package store;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+class IndexBlock {
+
+    static final int FILTER_BITS = 1024;
+
+    private final int offset;
+    private int length;
+    private int numRecords;
+    private long minTimestampNanos;
+    private long maxTimestampNanos;
+    private final FlowFilter connections;
+
+    IndexBlock(int offset){
+        this(offset, 0, 0, Long.MAX_VALUE, Long.MIN_VALUE, new FlowFilter(FILTER_BITS));
+    }
+
+    private IndexBlock(int offset, int length, int numRecords, long minTimestampNanos, long maxTimestampNanos, FlowFilter connections){
+        this.offset = offset;
+        this.length = length;
+        this.numRecords = numRecords;
+        this.minTimestampNanos = minTimestampNanos;
+        this.maxTimestampNanos = maxTimestampNanos;
+        this.connections = connections;
+    }
+
+    void add(int recordLength, long timestampNanos, long connectionHash){
+        length += recordLength;
+        numRecords++;
+        minTimestampNanos = Math.min(minTimestampNanos, timestampNanos);
+        maxTimestampNanos = Math.max(maxTimestampNanos, timestampNanos);
+        connections.add(connectionHash);
+    }
+
+    boolean mightMatch(PacketQuery query){
+        return numRecords > 0 && query.overlaps(minTimestampNanos, maxTimestampNanos)
+                && (!query.hasConnection() || connections.mightContain(query.getConnectionHash()));
+    }
+
+    IndexBlock copy(){
+        return new IndexBlock(offset, length, numRecords, minTimestampNanos, maxTimestampNanos, connections.copy());
+    }
+
+    int getOffset() {
+        return offset;
+    }
+
+    int getLength() {
+        return length;
+    }
+
+    int getNumRecords() {
+        return numRecords;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(offset);
+        out.writeInt(length);
+        out.writeInt(numRecords);
+        out.writeLong(minTimestampNanos);
+        out.writeLong(maxTimestampNanos);
+        connections.writeTo(out);
+    }
+
+    static IndexBlock readFrom(DataInputStream in) throws IOException {
+        return new IndexBlock(in.readInt(), in.readInt(), in.readInt(), in.readLong(), in.readLong(), FlowFilter.readFrom(in));
+    }
+
+}
@@ -0,0 +1,52 @@
+package store;
+
+import flows.FlowKey;
+
+public class PacketQuery {
+
+    public static final long UNBOUNDED_START = Long.MIN_VALUE;
+    public static final long UNBOUNDED_END = Long.MAX_VALUE;
+
+    private final long fromNanos;
+    private final long toNanos;
+    private final FlowKey connection;
+    private final long connectionHash;
+
+    public PacketQuery(long fromNanos, long toNanos){
+        this(fromNanos, toNanos, null);
+    }
+
+    public PacketQuery(long fromNanos, long toNanos, FlowKey connection){
+        this.fromNanos = fromNanos;
+        this.toNanos = toNanos;
+        this.connection = connection;
+        this.connectionHash = (connection == null ? 0 : PacketStore.connectionHash(connection.packAddresses(), connection.packPortsAndProtocol()));
+    }
+
+    boolean overlaps(long minTimestampNanos, long maxTimestampNanos){
+        return minTimestampNanos < toNanos && maxTimestampNanos >= fromNanos;
+    }
+
+    boolean matches(long timestampNanos, long flowAddresses, long flowPortsAndProtocol){
+        if (timestampNanos < fromNanos || timestampNanos >= toNanos){ return false; }
+        if (connection == null){ return true; }
+        long addresses = connection.packAddresses();
+        long portsAndProtocol = connection.packPortsAndProtocol();
+        return (flowAddresses == addresses && flowPortsAndProtocol == portsAndProtocol)
+                || (flowAddresses == FlowKey.reverseAddresses(addresses) && flowPortsAndProtocol == FlowKey.reversePortsAndProtocol(portsAndProtocol));
+    }
+
+    boolean hasConnection(){
+        return connection != null;
+    }
+
+    long getConnectionHash(){
+        return connectionHash;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("(from: %d, to: %d, connection: %s)", fromNanos, toNanos, connection);
+    }
+
+}
@@ -0,0 +1,152 @@
+package store;
+
+import flows.FlowKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Appends packet records to fixed-size memory-mapped segment files in a directory. Every block of 256
+ * records gets a sparse index entry holding its time range and a Bloom filter of its connections, and
+ * every segment a summary of the same kind, so a query only maps and walks the blocks that can contain
+ * a match. A segment's index is written next to it once it's
+ * full, or rebuilt from the records when the store is reopened after a crash.
+ */
+public class PacketStore implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(PacketStore.class);
+
+    public static final int DEFAULT_SEGMENT_BYTES = 256 * 1024 * 1024;
+
+    private static final Pattern SEGMENT_FILE_NAME = Pattern.compile("segment-(\\d+)" + Pattern.quote(Segment.DATA_FILE_EXTENSION));
+
+    private final File directory;
+    private final int segmentBytes;
+    private final List<Segment> segments;
+    private Segment activeSegment;
+    private int nextSegmentId;
+    private long numRejectedPackets;
+
+    public PacketStore(File directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_BYTES);
+    }
+
+    public PacketStore(File directory, int segmentBytes) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()){
+            throw new IOException("Couldn't create the packet store directory " + directory);
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.segments = new ArrayList<>();
+        this.nextSegmentId = 0;
+        openExistingSegments();
+    }
+
+    private void openExistingSegments() throws IOException {
+        List<Integer> ids = new ArrayList<>();
+        String[] fileNames = directory.list();
+        for (String fileName : (fileNames == null ? new String[0] : fileNames)){
+            Matcher matcher = SEGMENT_FILE_NAME.matcher(fileName);
+            if (matcher.matches()){ ids.add(Integer.parseInt(matcher.group(1))); }
+        }
+        ids.sort(null);
+        for (int id : ids){
+            segments.add(Segment.open(directory, id));
+            nextSegmentId = id + 1;
+        }
+    }
+
+    public synchronized boolean append(long timestampNanos, int originalLength, int dataLinkType, long flowAddresses, long flowPortsAndProtocol,
+                                       byte[] data, int offset, int length) throws IOException {
+        if (Segment.RECORD_HEADER_LENGTH + length > segmentBytes){
+            numRejectedPackets++;
+            return false;
+        }
+        if (activeSegment == null || !activeSegment.append(timestampNanos, originalLength, dataLinkType, flowAddresses, flowPortsAndProtocol, data, offset, length)){
+            rollSegment();
+            activeSegment.append(timestampNanos, originalLength, dataLinkType, flowAddresses, flowPortsAndProtocol, data, offset, length);
+        }
+        return true;
+    }
+
+    private void rollSegment() throws IOException {
+        if (activeSegment != null){ activeSegment.seal(); }
+        activeSegment = Segment.create(directory, nextSegmentId++, segmentBytes);
+        segments.add(activeSegment);
+        logger.debug("Started packet store segment {}", activeSegment.getDataFile());
+    }
+
+    public long query(PacketQuery query, Visitor visitor) throws IOException {
+        List<Segment.Scan> scans = new ArrayList<>();
+        synchronized (this){
+            for (Segment segment : segments){
+                Segment.Scan scan = segment.prepareScan(query);
+                if (scan != null){ scans.add(scan); }
+            }
+        }
+        CountingVisitor countingVisitor = new CountingVisitor(visitor);
+        for (Segment.Scan scan : scans){
+            if (!scan.run(query, countingVisitor)){ break; }
+        }
+        return countingVisitor.numVisited;
+    }
+
+    public synchronized void flush(){
+        if (activeSegment != null){ activeSegment.flush(); }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (activeSegment != null){
+            activeSegment.seal();
+            activeSegment = null;
+        }
+    }
+
+    public synchronized int getNumSegments(){
+        return segments.size();
+    }
+
+    public synchronized long getNumRejectedPackets(){
+        return numRejectedPackets;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    static long connectionHash(long flowAddresses, long flowPortsAndProtocol){
+        return FlowKey.connectionHash(flowAddresses, flowPortsAndProtocol);
+    }
+
+    public interface Visitor {
+
+        boolean visit(StoredPacket packet);
+
+    }
+
+    private static class CountingVisitor implements Visitor {
+
+        private final Visitor delegate;
+        private long numVisited;
+
+        CountingVisitor(Visitor delegate){
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean visit(StoredPacket packet) {
+            numVisited++;
+            return delegate.visit(packet);
+        }
+
+    }
+
+}
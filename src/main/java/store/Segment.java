@@ -0,0 +1,227 @@
+package store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+class Segment {
+
+    private static final Logger logger = LoggerFactory.getLogger(Segment.class);
+
+    static final String DATA_FILE_EXTENSION = ".dat";
+    static final String INDEX_FILE_EXTENSION = ".idx";
+    static final int RECORD_HEADER_LENGTH = 36;
+    static final int RECORDS_PER_BLOCK = 256;
+
+    private static final int INDEX_MAGIC = 0x50534958;
+    private static final int INDEX_VERSION = 1;
+    private static final int SUMMARY_FILTER_BITS = 1 << 16;
+
+    private final int id;
+    private final File dataFile;
+    private final File indexFile;
+    private final List<IndexBlock> blocks;
+    private final FlowFilter connections;
+    private long minTimestampNanos;
+    private long maxTimestampNanos;
+    private int dataLength;
+
+    private MappedByteBuffer writeBuffer;
+    private IndexBlock currentBlock;
+
+    private Segment(int id, File directory, List<IndexBlock> blocks, FlowFilter connections, long minTimestampNanos, long maxTimestampNanos, int dataLength){
+        this.id = id;
+        this.dataFile = new File(directory, fileName(id, DATA_FILE_EXTENSION));
+        this.indexFile = new File(directory, fileName(id, INDEX_FILE_EXTENSION));
+        this.blocks = blocks;
+        this.connections = connections;
+        this.minTimestampNanos = minTimestampNanos;
+        this.maxTimestampNanos = maxTimestampNanos;
+        this.dataLength = dataLength;
+    }
+
+    static String fileName(int id, String extension){
+        return String.format("segment-%06d%s", id, extension);
+    }
+
+    static Segment create(File directory, int id, int capacity) throws IOException {
+        Segment segment = new Segment(id, directory, new ArrayList<>(), new FlowFilter(SUMMARY_FILTER_BITS), Long.MAX_VALUE, Long.MIN_VALUE, 0);
+        try (FileChannel channel = FileChannel.open(segment.dataFile.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+            segment.writeBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        }
+        segment.currentBlock = new IndexBlock(0);
+        return segment;
+    }
+
+    static Segment open(File directory, int id) throws IOException {
+        Segment segment = new Segment(id, directory, new ArrayList<>(), new FlowFilter(SUMMARY_FILTER_BITS), Long.MAX_VALUE, Long.MIN_VALUE, 0);
+        if (segment.indexFile.isFile()){
+            return readIndex(segment);
+        }
+        logger.info("{} has no index - rebuilding it", segment.dataFile);
+        segment.rebuildIndex();
+        segment.writeIndex();
+        return segment;
+    }
+
+    boolean append(long timestampNanos, int originalLength, int dataLinkType, long flowAddresses, long flowPortsAndProtocol, byte[] data, int offset, int length){
+        int recordLength = RECORD_HEADER_LENGTH + length;
+        if (writeBuffer.capacity() - dataLength < recordLength){ return false; }
+        int position = dataLength;
+        writeBuffer.position(position + Integer.BYTES);
+        writeBuffer.putLong(timestampNanos).putInt(originalLength).putInt(dataLinkType).putLong(flowAddresses).putLong(flowPortsAndProtocol);
+        writeBuffer.put(data, offset, length);
+        writeBuffer.putInt(position, length);
+        dataLength += recordLength;
+        index(recordLength, timestampNanos, flowAddresses, flowPortsAndProtocol);
+        return true;
+    }
+
+    private void index(int recordLength, long timestampNanos, long flowAddresses, long flowPortsAndProtocol){
+        long connectionHash = PacketStore.connectionHash(flowAddresses, flowPortsAndProtocol);
+        currentBlock.add(recordLength, timestampNanos, connectionHash);
+        connections.add(connectionHash);
+        minTimestampNanos = Math.min(minTimestampNanos, timestampNanos);
+        maxTimestampNanos = Math.max(maxTimestampNanos, timestampNanos);
+        if (currentBlock.getNumRecords() == RECORDS_PER_BLOCK){
+            blocks.add(currentBlock);
+            currentBlock = new IndexBlock(dataLength);
+        }
+    }
+
+    void flush(){
+        if (writeBuffer != null){ writeBuffer.force(); }
+    }
+
+    void seal() throws IOException {
+        if (writeBuffer == null){ return; }
+        if (currentBlock.getNumRecords() > 0){ blocks.add(currentBlock); }
+        currentBlock = null;
+        writeBuffer.force();
+        writeBuffer = null;
+        writeIndex();
+    }
+
+    Scan prepareScan(PacketQuery query){
+        if (dataLength == 0 || !query.overlaps(minTimestampNanos, maxTimestampNanos)){ return null; }
+        if (query.hasConnection() && !connections.mightContain(query.getConnectionHash())){ return null; }
+        List<IndexBlock> candidates = new ArrayList<>();
+        for (IndexBlock block : blocks){
+            if (block.mightMatch(query)){ candidates.add(block); }
+        }
+        if (currentBlock != null && currentBlock.mightMatch(query)){
+            candidates.add(currentBlock.copy());
+        }
+        return (candidates.isEmpty() ? null : new Scan(candidates, (writeBuffer == null ? null : writeBuffer.duplicate())));
+    }
+
+    private void rebuildIndex() throws IOException {
+        currentBlock = new IndexBlock(0);
+        try (FileChannel channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ)){
+            ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            while (data.remaining() >= RECORD_HEADER_LENGTH){
+                int position = data.position();
+                int length = data.getInt(position);
+                if (length <= 0 || length > data.remaining() - RECORD_HEADER_LENGTH){ break; }
+                dataLength = position + RECORD_HEADER_LENGTH + length;
+                index(RECORD_HEADER_LENGTH + length, data.getLong(position + 4), data.getLong(position + 20), data.getLong(position + 28));
+                data.position(dataLength);
+            }
+        }
+        if (currentBlock.getNumRecords() > 0){ blocks.add(currentBlock); }
+        currentBlock = null;
+    }
+
+    private void writeIndex() throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)))){
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(INDEX_VERSION);
+            out.writeInt(dataLength);
+            out.writeLong(minTimestampNanos);
+            out.writeLong(maxTimestampNanos);
+            connections.writeTo(out);
+            out.writeInt(blocks.size());
+            for (IndexBlock block : blocks){
+                block.writeTo(out);
+            }
+        }
+    }
+
+    private static Segment readIndex(Segment segment) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.indexFile)))){
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION){
+                throw new IOException(segment.indexFile + " isn't a packet store index");
+            }
+            int dataLength = in.readInt();
+            long minTimestampNanos = in.readLong();
+            long maxTimestampNanos = in.readLong();
+            FlowFilter connections = FlowFilter.readFrom(in);
+            int numBlocks = in.readInt();
+            List<IndexBlock> blocks = new ArrayList<>(numBlocks);
+            for (int i = 0; i < numBlocks; i++){
+                blocks.add(IndexBlock.readFrom(in));
+            }
+            return new Segment(segment.id, segment.dataFile.getParentFile(), blocks, connections, minTimestampNanos, maxTimestampNanos, dataLength);
+        }
+    }
+
+    int getId() {
+        return id;
+    }
+
+    int getDataLength() {
+        return dataLength;
+    }
+
+    File getDataFile() {
+        return dataFile;
+    }
+
+    class Scan {
+
+        private final List<IndexBlock> candidates;
+        private final ByteBuffer activeData;
+
+        private Scan(List<IndexBlock> candidates, ByteBuffer activeData){
+            this.candidates = candidates;
+            this.activeData = activeData;
+        }
+
+        boolean run(PacketQuery query, PacketStore.Visitor visitor) throws IOException {
+            ByteBuffer data = activeData;
+            if (data == null){
+                try (FileChannel channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ)){
+                    data = channel.map(FileChannel.MapMode.READ_ONLY, 0, dataLength);
+                }
+            }
+            for (IndexBlock block : candidates){
+                int position = block.getOffset();
+                for (int i = 0; i < block.getNumRecords(); i++){
+                    int length = data.getInt(position);
+                    long timestampNanos = data.getLong(position + 4);
+                    long flowAddresses = data.getLong(position + 20);
+                    long flowPortsAndProtocol = data.getLong(position + 28);
+                    if (query.matches(timestampNanos, flowAddresses, flowPortsAndProtocol)){
+                        ByteBuffer packetData = data.duplicate();
+                        packetData.limit(position + RECORD_HEADER_LENGTH + length).position(position + RECORD_HEADER_LENGTH);
+                        if (!visitor.visit(new StoredPacket(timestampNanos, data.getInt(position + 12), data.getInt(position + 16),
+                                flowAddresses, flowPortsAndProtocol, packetData.slice()))){
+                            return false;
+                        }
+                    }
+                    position += RECORD_HEADER_LENGTH + length;
+                }
+            }
+            return true;
+        }
+
+    }
+
+}
@@ -0,0 +1,58 @@
+package store;
+
+import flows.FlowKey;
+import sniffer.CapturedPacket;
+
+import java.nio.ByteBuffer;
+
+public class StoredPacket {
+
+    private final long timestampNanos;
+    private final int originalLength;
+    private final int dataLinkType;
+    private final long flowAddresses;
+    private final long flowPortsAndProtocol;
+    private final ByteBuffer data;
+
+    StoredPacket(long timestampNanos, int originalLength, int dataLinkType, long flowAddresses, long flowPortsAndProtocol, ByteBuffer data){
+        this.timestampNanos = timestampNanos;
+        this.originalLength = originalLength;
+        this.dataLinkType = dataLinkType;
+        this.flowAddresses = flowAddresses;
+        this.flowPortsAndProtocol = flowPortsAndProtocol;
+        this.data = data;
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public int getOriginalLength() {
+        return originalLength;
+    }
+
+    public int getDataLinkType() {
+        return dataLinkType;
+    }
+
+    public FlowKey getFlowKey() {
+        return (flowPortsAndProtocol == 0 ? null : FlowKey.unpack(flowAddresses, flowPortsAndProtocol));
+    }
+
+    public ByteBuffer getData() {
+        return data.asReadOnlyBuffer();
+    }
+
+    public CapturedPacket toCapturedPacket(){
+        byte[] rawData = new byte[data.remaining()];
+        data.duplicate().get(rawData);
+        return new CapturedPacket(rawData, timestampNanos, originalLength, dataLinkType);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("(timestamp: %d, flow: %s, captured length: %d, original length: %d)",
+                timestampNanos, getFlowKey(), data.remaining(), originalLength);
+    }
+
+}
@@ -0,0 +1,51 @@
+package windows;
+
+import java.util.concurrent.TimeUnit;
+
+public final class WindowSettings {
+
+    public static final WindowSettings DEFAULT = new WindowSettings(TimeUnit.MINUTES.toMillis(1), 5, 60, 1024);
+
+    private final long paneMillis;
+    private final int slidingWindowPanes;
+    private final int retainedPanes;
+    private final int maxKeysPerPane;
+
+    public WindowSettings(long paneMillis, int slidingWindowPanes, int retainedPanes, int maxKeysPerPane){
+        if (paneMillis <= 0 || slidingWindowPanes <= 0 || retainedPanes < slidingWindowPanes || maxKeysPerPane <= 0){
+            throw new IllegalArgumentException("Unsupported window settings: " + paneMillis + " ms panes, " + slidingWindowPanes
+                    + " panes per sliding window, " + retainedPanes + " retained panes, " + maxKeysPerPane + " keys per pane");
+        }
+        this.paneMillis = paneMillis;
+        this.slidingWindowPanes = slidingWindowPanes;
+        this.retainedPanes = retainedPanes;
+        this.maxKeysPerPane = maxKeysPerPane;
+    }
+
+    public long getPaneMillis() {
+        return paneMillis;
+    }
+
+    public int getSlidingWindowPanes() {
+        return slidingWindowPanes;
+    }
+
+    public int getRetainedPanes() {
+        return retainedPanes;
+    }
+
+    public int getMaxKeysPerPane() {
+        return maxKeysPerPane;
+    }
+
+    public boolean isTumbling() {
+        return slidingWindowPanes == 1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("(pane: %d ms, sliding window: %d panes, retained: %d panes, keys per pane: %d)",
+                paneMillis, slidingWindowPanes, retainedPanes, maxKeysPerPane);
+    }
+
+}
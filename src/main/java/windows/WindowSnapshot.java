@@ -0,0 +1,68 @@
+package windows;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable aggregate of one or more adjacent panes, covering [start, end) in capture time.
+ */
+public final class WindowSnapshot<K> {
+
+    private final long startNanos;
+    private final long endNanos;
+    private final long packets;
+    private final long bytes;
+    private final long overflowPackets;
+    private final Map<K, Long> counts;
+
+    WindowSnapshot(long startNanos, long endNanos, long packets, long bytes, long overflowPackets, Map<K, Long> counts){
+        this.startNanos = startNanos;
+        this.endNanos = endNanos;
+        this.packets = packets;
+        this.bytes = bytes;
+        this.overflowPackets = overflowPackets;
+        this.counts = Collections.unmodifiableMap(counts);
+    }
+
+    public WindowSnapshot<K> merge(WindowSnapshot<K> other){
+        Map<K, Long> merged = new HashMap<>(counts);
+        for (Map.Entry<K, Long> entry : other.counts.entrySet()){
+            merged.merge(entry.getKey(), entry.getValue(), Long::sum);
+        }
+        return new WindowSnapshot<>(Math.min(startNanos, other.startNanos), Math.max(endNanos, other.endNanos),
+                packets + other.packets, bytes + other.bytes, overflowPackets + other.overflowPackets, merged);
+    }
+
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    public long getEndNanos() {
+        return endNanos;
+    }
+
+    public long getPackets() {
+        return packets;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getOverflowPackets() {
+        return overflowPackets;
+    }
+
+    public Map<K, Long> getCounts() {
+        return counts;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("(window: %s - %s, packets: %d, bytes: %d, overflow: %d, counts: %s)",
+                Instant.ofEpochSecond(0, startNanos), Instant.ofEpochSecond(0, endNanos), packets, bytes, overflowPackets, counts);
+    }
+
+}
@@ -0,0 +1,183 @@
+package windows;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts keys per fixed-length pane of capture time and keeps the most recent panes in a ring, so
+ * memory stays constant however long the capture runs. Whenever a pane closes, the listener gets the
+ * pane itself (the tumbling window) and, if configured, the sliding window made of the last few panes.
+ * Longer ranges are answered by merging retained panes. Packets that belong to an already closed pane are
+ * only counted as late, and keys beyond the per-pane limit are only counted as overflow.
+ * <p>
+ * Time only advances with the packets themselves: a pane closes when a packet from a later pane arrives
+ * or on {@link #flush()}. On a link that goes quiet the last pane is therefore only emitted with the next
+ * packet or at shutdown. Capture time isn't the wall clock when a file is replayed, so the aggregator
+ * doesn't close panes on a timer.
+ */
+public class WindowedAggregator<K> {
+
+    private static final long NO_PANE = Long.MIN_VALUE;
+
+    private final WindowSettings settings;
+    private final long paneNanos;
+    private final WindowListener<K> listener;
+    private final Pane<K>[] panes;
+
+    private long currentPaneIndex;
+    private long numLatePackets;
+
+    public WindowedAggregator(WindowSettings settings, WindowListener<K> listener){
+        this.settings = settings;
+        this.paneNanos = TimeUnit.MILLISECONDS.toNanos(settings.getPaneMillis());
+        this.listener = listener;
+        this.panes = newPanes(settings.getRetainedPanes());
+        for (int i = 0; i < panes.length; i++){
+            panes[i] = new Pane<>();
+        }
+        this.currentPaneIndex = NO_PANE;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K> Pane<K>[] newPanes(int numPanes){
+        return (Pane<K>[]) new Pane<?>[numPanes];
+    }
+
+    public synchronized void record(long timestampNanos, K key, long numBytes){
+        long paneIndex = Math.floorDiv(timestampNanos, paneNanos);
+        if (currentPaneIndex == NO_PANE){
+            openPane(paneIndex);
+        } else if (paneIndex > currentPaneIndex){
+            advanceTo(paneIndex);
+        }
+        if (paneIndex < currentPaneIndex){
+            numLatePackets++;
+        } else {
+            panes[slotOf(paneIndex)].add(key, numBytes, settings.getMaxKeysPerPane());
+        }
+    }
+
+    /**
+     * Closes the open pane early and hands it to the listener, e.g. before shutting down.
+     */
+    public synchronized void flush(){
+        if (currentPaneIndex != NO_PANE){
+            closePane(currentPaneIndex);
+            currentPaneIndex = NO_PANE;
+        }
+    }
+
+    /**
+     * Merges the most recent panes, including the one still open. Asking for more panes than are
+     * retained returns the retained ones.
+     */
+    public synchronized WindowSnapshot<K> mergeLast(int numPanes){
+        if (currentPaneIndex == NO_PANE){
+            return new WindowSnapshot<>(0, 0, 0, 0, 0, new HashMap<>());
+        }
+        return merge(currentPaneIndex - Math.min(numPanes, panes.length) + 1, currentPaneIndex);
+    }
+
+    public synchronized long getNumLatePackets() {
+        return numLatePackets;
+    }
+
+    public WindowSettings getSettings() {
+        return settings;
+    }
+
+    private void advanceTo(long paneIndex){
+        closePane(currentPaneIndex);
+        if (paneIndex - currentPaneIndex > panes.length){
+            for (Pane<K> pane : panes){
+                pane.reset(NO_PANE);
+            }
+        } else {
+            for (long index = currentPaneIndex + 1; index < paneIndex; index++){
+                openPane(index);
+                closePane(index);
+            }
+        }
+        openPane(paneIndex);
+    }
+
+    private void openPane(long paneIndex){
+        panes[slotOf(paneIndex)].reset(paneIndex);
+        currentPaneIndex = paneIndex;
+    }
+
+    private void closePane(long paneIndex){
+        WindowSnapshot<K> pane = merge(paneIndex, paneIndex);
+        WindowSnapshot<K> slidingWindow = (settings.isTumbling() ? null : merge(paneIndex - settings.getSlidingWindowPanes() + 1, paneIndex));
+        listener.onPaneClosed(pane, slidingWindow);
+    }
+
+    private WindowSnapshot<K> merge(long fromPaneIndex, long toPaneIndex){
+        Map<K, Long> counts = new HashMap<>();
+        long packets = 0;
+        long bytes = 0;
+        long overflowPackets = 0;
+        for (long index = fromPaneIndex; index <= toPaneIndex; index++){
+            Pane<K> pane = paneAt(index);
+            if (pane == null){ continue; }
+            for (Map.Entry<K, long[]> entry : pane.counts.entrySet()){
+                counts.merge(entry.getKey(), entry.getValue()[0], Long::sum);
+            }
+            packets += pane.packets;
+            bytes += pane.bytes;
+            overflowPackets += pane.overflowPackets;
+        }
+        return new WindowSnapshot<>(fromPaneIndex * paneNanos, (toPaneIndex + 1) * paneNanos, packets, bytes, overflowPackets, counts);
+    }
+
+    private Pane<K> paneAt(long paneIndex){
+        if (paneIndex > currentPaneIndex || paneIndex <= currentPaneIndex - panes.length){ return null; }
+        Pane<K> pane = panes[slotOf(paneIndex)];
+        return (pane.index == paneIndex ? pane : null);
+    }
+
+    private int slotOf(long paneIndex){
+        return (int) Math.floorMod(paneIndex, (long) panes.length);
+    }
+
+    public interface WindowListener<K> {
+
+        void onPaneClosed(WindowSnapshot<K> pane, WindowSnapshot<K> slidingWindow);
+
+    }
+
+    private static class Pane<K> {
+
+        private final Map<K, long[]> counts = new HashMap<>();
+        private long index = NO_PANE;
+        private long packets;
+        private long bytes;
+        private long overflowPackets;
+
+        void reset(long index){
+            this.index = index;
+            this.counts.clear();
+            this.packets = 0;
+            this.bytes = 0;
+            this.overflowPackets = 0;
+        }
+
+        void add(K key, long numBytes, int maxKeys){
+            packets++;
+            bytes += numBytes;
+            long[] count = counts.get(key);
+            if (count == null){
+                if (counts.size() >= maxKeys){
+                    overflowPackets++;
+                    return;
+                }
+                count = new long[1];
+                counts.put(key, count);
+            }
+            count[0]++;
+        }
+
+    }
+
+}
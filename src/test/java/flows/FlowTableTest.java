@@ -0,0 +1,155 @@
+package flows;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class FlowTableTest {
+
+    private static final int CAPACITY = 256;
+
+    private static class ExpectedFlow {
+
+        private long packets;
+        private long bytes;
+        private long lastSeen;
+
+    }
+
+    private static long addresses(int flow){
+        return FlowKey.packAddresses(0x0A000000 | flow, 0x0A0000FF);
+    }
+
+    private static long portsAndProtocol(int flow){
+        return FlowKey.packPortsAndProtocol(4, 6, 40000 + flow, 11000);
+    }
+
+    private static double[] statistics(FlowTable.Entry entry){
+        return new double[]{entry.getPackets(), entry.getBytes(), entry.getFirstSeenNanos(), entry.getLastSeenNanos(),
+                entry.getInterArrivalMeanNanos(), entry.getInterArrivalStandardDeviationNanos(), entry.getInterArrivalMinNanos(),
+                entry.getInterArrivalMaxNanos(), entry.getNumObjects(), entry.getObjectTypes()};
+    }
+
+    private static Map<Long, double[]> statistics(FlowTable table){
+        Map<Long, double[]> statistics = new HashMap<>();
+        table.forEach(entry -> statistics.put(entry.getPortsAndProtocol(), statistics(entry)));
+        return statistics;
+    }
+
+    @Test
+    void backwardShiftDeletionKeepsEveryOtherFlowReachable(){
+        for (boolean offHeap : new boolean[]{false, true}){
+            FlowTable table = new FlowTable(CAPACITY, offHeap);
+            Map<Integer, ExpectedFlow> expected = new HashMap<>();
+            Random random = new Random(11);
+            long now = 0;
+            for (int round = 0; round < 200; round++){
+                for (int i = 0; i < 150; i++){
+                    int flow = random.nextInt(400);
+                    if (!expected.containsKey(flow) && expected.size() >= CAPACITY * 3 / 4){ continue; }
+                    int numBytes = 1 + random.nextInt(1500);
+                    now += 1 + random.nextInt(10);
+                    table.update(addresses(flow), portsAndProtocol(flow), numBytes, now);
+                    ExpectedFlow expectedFlow = expected.computeIfAbsent(flow, f -> new ExpectedFlow());
+                    expectedFlow.packets++;
+                    expectedFlow.bytes += numBytes;
+                    expectedFlow.lastSeen = now;
+                }
+                long cutoff = now - random.nextInt(800);
+                int numExpectedEvictions = 0;
+                for (Iterator<ExpectedFlow> iterator = expected.values().iterator(); iterator.hasNext(); ){
+                    if (iterator.next().lastSeen <= cutoff){
+                        iterator.remove();
+                        numExpectedEvictions++;
+                    }
+                }
+                assertEquals(numExpectedEvictions, table.evictIdle(cutoff, 0, null));
+                assertEquals(expected.size(), table.size());
+                Map<Long, double[]> actual = statistics(table);
+                assertEquals(expected.size(), actual.size());
+                for (Map.Entry<Integer, ExpectedFlow> flow : expected.entrySet()){
+                    double[] statistics = actual.get(portsAndProtocol(flow.getKey()));
+                    assertNotNull(statistics, "flow " + flow.getKey());
+                    assertEquals(flow.getValue().packets, (long) statistics[0], "packets of flow " + flow.getKey());
+                    assertEquals(flow.getValue().bytes, (long) statistics[1], "bytes of flow " + flow.getKey());
+                }
+            }
+            assertEquals(0, table.getNumRejectedUpdates());
+        }
+    }
+
+    @Test
+    void rejectsNewFlowsBeyondTheLoadFactor(){
+        FlowTable table = new FlowTable(16, false);
+        for (int flow = 0; flow < 20; flow++){
+            table.update(addresses(flow), portsAndProtocol(flow), 100, flow);
+        }
+        assertEquals(12, table.size());
+        assertEquals(8, table.getNumRejectedUpdates());
+        assertEquals(12, table.evictIdle(Long.MAX_VALUE, 0, null));
+        assertEquals(0, table.size());
+        table.update(addresses(99), portsAndProtocol(99), 100, 0);
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    void mergingConsecutiveTablesMatchesOneTableThatSawEverything(){
+        FlowTable whole = new FlowTable(CAPACITY, false);
+        FlowTable first = new FlowTable(CAPACITY, false);
+        FlowTable second = new FlowTable(CAPACITY, true);
+        Random random = new Random(5);
+        long now = 1_000_000;
+        for (int i = 0; i < 20_000; i++){
+            int flow = random.nextInt(100);
+            int numBytes = 1 + random.nextInt(1500);
+            now += random.nextInt(5000);
+            FlowTable part = (i < 12_000 ? first : second);
+            int slot = part.update(addresses(flow), portsAndProtocol(flow), numBytes, now);
+            int wholeSlot = whole.update(addresses(flow), portsAndProtocol(flow), numBytes, now);
+            if (i % 3 == 0){
+                part.recordObjectType(slot, flow % 7);
+                whole.recordObjectType(wholeSlot, flow % 7);
+            }
+        }
+        first.mergeFrom(second);
+        assertEquals(whole.size(), first.size());
+        Map<Long, double[]> expected = statistics(whole);
+        Map<Long, double[]> actual = statistics(first);
+        for (Map.Entry<Long, double[]> flow : expected.entrySet()){
+            double[] statistics = actual.get(flow.getKey());
+            assertNotNull(statistics);
+            for (int i = 0; i < statistics.length; i++){
+                assertEquals(flow.getValue()[i], statistics[i], Math.abs(flow.getValue()[i]) * 1e-9, "statistic " + i + " of " + FlowKey.unpack(0, flow.getKey()));
+            }
+        }
+    }
+
+    @Test
+    void mergingInterleavedTablesAddsUpTheCounts(){
+        FlowTable first = new FlowTable(CAPACITY, false);
+        FlowTable second = new FlowTable(CAPACITY, false);
+        for (int i = 0; i < 100; i++){
+            first.update(addresses(1), portsAndProtocol(1), 10, i * 2);
+            second.update(addresses(1), portsAndProtocol(1), 20, i * 2 + 1);
+            second.update(addresses(2), portsAndProtocol(2), 30, i);
+        }
+        first.mergeFrom(second);
+        assertEquals(2, first.size());
+        Map<Long, double[]> statistics = statistics(first);
+        double[] interleaved = statistics.get(portsAndProtocol(1));
+        assertEquals(200, interleaved[0]);
+        assertEquals(3000, interleaved[1]);
+        assertEquals(0, interleaved[2]);
+        assertEquals(199, interleaved[3]);
+        double[] copied = statistics.get(portsAndProtocol(2));
+        assertEquals(100, copied[0]);
+        assertEquals(3000, copied[1]);
+    }
+
+}
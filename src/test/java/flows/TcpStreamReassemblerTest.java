@@ -0,0 +1,184 @@
+package flows;
+
+import org.junit.jupiter.api.Test;
+import sniffer.PacketHeaders;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TcpStreamReassemblerTest {
+
+    private static final int LINKTYPE_RAW = 101;
+    private static final int FIN = 0x01;
+    private static final int SYN = 0x02;
+    private static final int ACK = 0x10;
+    private static final int CLIENT = 0x0A000001;
+    private static final int SERVER = 0x0A000002;
+
+    private static class RecordingConsumer implements TcpStreamReassembler.StreamConsumer {
+
+        private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        private int numGaps;
+        private boolean closed;
+
+        @Override
+        public void onData(byte[] data, int offset, int length) {
+            this.data.write(data, offset, length);
+        }
+
+        @Override
+        public void onGap() {
+            numGaps++;
+        }
+
+        @Override
+        public void onClose() {
+            closed = true;
+        }
+
+        @Override
+        public int getNumBufferedBytes() {
+            return 0;
+        }
+
+    }
+
+    private final Map<Integer, RecordingConsumer> consumers = new HashMap<>();
+    private final PacketHeaders headers = new PacketHeaders();
+
+    private TcpStreamReassembler newReassembler(int maxBytesPerFlow){
+        return new TcpStreamReassembler(key -> {
+            RecordingConsumer consumer = new RecordingConsumer();
+            consumers.put(key.equals(new FlowKey(4, PacketHeaders.PROTOCOL_TCP, CLIENT, 40000, SERVER, 11000)) ? CLIENT : SERVER, consumer);
+            return consumer;
+        }, maxBytesPerFlow, 1 << 20, Long.MAX_VALUE);
+    }
+
+    private void send(TcpStreamReassembler reassembler, int source, long sequenceNumber, int flags, String payload){
+        byte[] frame = frame(source, sequenceNumber, flags, payload.getBytes(StandardCharsets.US_ASCII));
+        assertTrue(headers.parse(frame, frame.length, LINKTYPE_RAW));
+        reassembler.accept(headers, frame, 0);
+    }
+
+    private static byte[] frame(int source, long sequenceNumber, int flags, byte[] payload){
+        ByteBuffer frame = ByteBuffer.allocate(40 + payload.length);
+        frame.put((byte) 0x45).put((byte) 0).putShort((short) frame.capacity()).putInt(0);
+        frame.put((byte) 64).put((byte) PacketHeaders.PROTOCOL_TCP).putShort((short) 0);
+        frame.putInt(source).putInt(source == CLIENT ? SERVER : CLIENT);
+        frame.putShort((short) (source == CLIENT ? 40000 : 11000)).putShort((short) (source == CLIENT ? 11000 : 40000));
+        frame.putInt((int) sequenceNumber).putInt(0);
+        frame.put((byte) 0x50).put((byte) flags).putShort((short) 65535).putInt(0);
+        frame.put(payload);
+        return frame.array();
+    }
+
+    private String received(int source){
+        return new String(consumers.get(source).data.toByteArray(), StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    void deliversInOrderSegmentsAfterTheSyn(){
+        TcpStreamReassembler reassembler = newReassembler(1024);
+        send(reassembler, CLIENT, 1000, SYN, "");
+        send(reassembler, CLIENT, 1001, ACK, "hello ");
+        send(reassembler, CLIENT, 1007, ACK, "world");
+        assertEquals("hello world", received(CLIENT));
+        assertEquals(0, consumers.get(CLIENT).numGaps);
+    }
+
+    @Test
+    void reordersOutOfOrderSegments(){
+        TcpStreamReassembler reassembler = newReassembler(1024);
+        send(reassembler, CLIENT, 1000, SYN, "");
+        send(reassembler, CLIENT, 1011, ACK, "cccc");
+        send(reassembler, CLIENT, 1006, ACK, "bbbbb");
+        assertEquals("", received(CLIENT));
+        send(reassembler, CLIENT, 1001, ACK, "aaaaa");
+        assertEquals("aaaaabbbbbcccc", received(CLIENT));
+        assertEquals(0, consumers.get(CLIENT).numGaps);
+    }
+
+    @Test
+    void trimsRetransmittedBytes(){
+        TcpStreamReassembler reassembler = newReassembler(1024);
+        send(reassembler, CLIENT, 1000, SYN, "");
+        send(reassembler, CLIENT, 1001, ACK, "abcdef");
+        send(reassembler, CLIENT, 1001, ACK, "abc");
+        send(reassembler, CLIENT, 1004, ACK, "defghi");
+        send(reassembler, CLIENT, 1012, ACK, "lm");
+        send(reassembler, CLIENT, 1012, ACK, "lmn");
+        send(reassembler, CLIENT, 1008, ACK, "hijk");
+        assertEquals("abcdefghijklmn", received(CLIENT));
+    }
+
+    @Test
+    void followsTheSequenceNumberAcrossTheWrap(){
+        TcpStreamReassembler reassembler = newReassembler(1024);
+        long first = 0xFFFFFFFFL - 6;
+        send(reassembler, CLIENT, first, SYN, "");
+        send(reassembler, CLIENT, 0, ACK, "6789");
+        send(reassembler, CLIENT, first + 1, ACK, "012");
+        send(reassembler, CLIENT, 0xFFFFFFFFL - 2, ACK, "345");
+        send(reassembler, CLIENT, 4, ACK, "abc");
+        assertEquals("0123456789abc", received(CLIENT));
+        assertEquals(0, consumers.get(CLIENT).numGaps);
+    }
+
+    @Test
+    void givesUpOnAGapWhenAFlowRunsOutOfRoom(){
+        TcpStreamReassembler reassembler = newReassembler(8);
+        send(reassembler, CLIENT, 1000, SYN, "");
+        send(reassembler, CLIENT, 1001, ACK, "aaaa");
+        send(reassembler, CLIENT, 1009, ACK, "cccc");
+        send(reassembler, CLIENT, 1013, ACK, "dddd");
+        send(reassembler, CLIENT, 1017, ACK, "eeee");
+        assertEquals(1, consumers.get(CLIENT).numGaps);
+        assertEquals("aaaaccccddddeeee", received(CLIENT));
+        send(reassembler, CLIENT, 1021, ACK, "ffff");
+        assertEquals("aaaaccccddddeeeeffff", received(CLIENT));
+    }
+
+    @Test
+    void keepsDirectionsApartAndClosesOnFin(){
+        TcpStreamReassembler reassembler = newReassembler(1024);
+        send(reassembler, CLIENT, 1000, SYN, "");
+        send(reassembler, SERVER, 5000, SYN | ACK, "");
+        send(reassembler, SERVER, 5001, ACK, "pong");
+        send(reassembler, CLIENT, 1001, ACK, "ping");
+        assertEquals(2, reassembler.getNumActiveFlows());
+        send(reassembler, CLIENT, 1005, FIN | ACK, "!");
+        assertEquals("ping!", received(CLIENT));
+        assertEquals("pong", received(SERVER));
+        assertTrue(consumers.get(CLIENT).closed);
+        assertEquals(1, reassembler.getNumActiveFlows());
+        reassembler.closeAll();
+        assertTrue(consumers.get(SERVER).closed);
+        assertEquals(0, reassembler.getNumActiveFlows());
+    }
+
+    @Test
+    void passesPayloadBytesThrough(){
+        TcpStreamReassembler reassembler = newReassembler(1 << 16);
+        byte[] payload = new byte[3000];
+        for (int i = 0; i < payload.length; i++){
+            payload[i] = (byte) (i * 7);
+        }
+        send(reassembler, CLIENT, 99, SYN, "");
+        for (int offset = payload.length - 1000; offset >= 0; offset -= 1000){
+            byte[] segment = new byte[1000];
+            System.arraycopy(payload, offset, segment, 0, segment.length);
+            byte[] frame = frame(CLIENT, 100 + offset, ACK, segment);
+            headers.parse(frame, frame.length, LINKTYPE_RAW);
+            reassembler.accept(headers, frame, 0);
+        }
+        assertArrayEquals(payload, consumers.get(CLIENT).data.toByteArray());
+    }
+
+}
@@ -0,0 +1,118 @@
+package output;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class GroupCommitOutputStreamTest {
+
+    private static final int NUM_WRITERS = 4;
+    private static final int NUM_WRITES = 2000;
+    private static final int WRITE_LENGTH = 1000;
+
+    @TempDir
+    File directory;
+
+    private void writeConcurrently(File file, GroupCommitSettings settings) throws Exception {
+        try (GroupCommitOutputStream out = new GroupCommitOutputStream(file.toPath(), settings)){
+            List<Thread> writers = new ArrayList<>();
+            for (int w = 0; w < NUM_WRITERS; w++){
+                byte[] record = new byte[WRITE_LENGTH];
+                Arrays.fill(record, (byte) ('a' + w));
+                writers.add(new Thread(() -> {
+                    try {
+                        for (int i = 0; i < NUM_WRITES; i++){
+                            out.write(record, 0, record.length);
+                            if (i % 100 == 0){ Thread.sleep(2); }
+                        }
+                    } catch (IOException | InterruptedException e){
+                        throw new IllegalStateException(e);
+                    }
+                }));
+            }
+            for (Thread writer : writers){
+                writer.start();
+            }
+            for (Thread writer : writers){
+                writer.join();
+            }
+            assertEquals((long) NUM_WRITERS * NUM_WRITES * WRITE_LENGTH, out.getNumBytesWritten());
+        }
+    }
+
+    private static void assertWholeWrites(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        int[] numWrites = new int[NUM_WRITERS];
+        byte[] record = new byte[WRITE_LENGTH];
+        for (int i = 0; i < NUM_WRITERS * NUM_WRITES; i++){
+            data.readFully(record);
+            for (byte b : record){
+                assertEquals(record[0], b);
+            }
+            numWrites[record[0] - 'a']++;
+        }
+        assertEquals(-1, data.read());
+        for (int count : numWrites){
+            assertEquals(NUM_WRITES, count);
+        }
+    }
+
+    @Test
+    void smallChunksWithAShortDelayDontDeadlock(){
+        File file = new File(directory, "small-chunks.out");
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> writeConcurrently(file, new GroupCommitSettings(16, 1, FsyncPolicy.NEVER, Compression.NONE)));
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            try (InputStream in = Files.newInputStream(file.toPath())){
+                assertWholeWrites(in);
+            }
+        });
+    }
+
+    @Test
+    void compressedOutputKeepsEveryWrite() throws Exception {
+        File file = new File(directory, "compressed.out.gz");
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> writeConcurrently(file, new GroupCommitSettings(4096, 1, FsyncPolicy.ON_CLOSE, Compression.GZIP)));
+        try (InputStream in = Compression.GZIP.unwrap(Files.newInputStream(file.toPath()))){
+            assertWholeWrites(in);
+        }
+    }
+
+    @Test
+    void utf8MatchesTheJdkEncoder() throws IOException {
+        File file = new File(directory, "utf8.out");
+        String text = "ascii, caf\u00e9, \u20ac, \ud83d\ude00, lone \ud800 surrogate";
+        try (GroupCommitOutputStream out = new GroupCommitOutputStream(file.toPath(), new GroupCommitSettings(16, 1000, FsyncPolicy.NEVER, Compression.NONE))){
+            out.writeUtf8(text, 0, text.length());
+        }
+        assertEquals(text.replace('\ud800', '?'), new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void writerCharArraysMatchTheJdkEncoder() throws IOException {
+        File file = new File(directory, "writer.out");
+        char[] chars = "caf\u00e9 \ud83d\ude00 \u20ac".toCharArray();
+        try (GroupCommitWriter writer = new GroupCommitWriter(file.toPath(), new GroupCommitSettings(16, 1000, FsyncPolicy.NEVER, Compression.NONE))){
+            writer.write(chars, 1, chars.length - 1);
+            writer.print('\u00e9');
+            writer.write(' ');
+            writer.println(chars);
+        }
+        String text = new String(chars);
+        String expected = text.substring(1) + "\u00e9 " + text + System.lineSeparator();
+        assertEquals(expected, new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+    }
+
+}
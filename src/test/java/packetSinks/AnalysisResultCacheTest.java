@@ -0,0 +1,183 @@
+package packetSinks;
+
+import metrics.CacheSnapshot;
+import org.junit.jupiter.api.Test;
+import packetSinks.PacketDeserializer.PacketAnalysisResults;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AnalysisResultCacheTest {
+
+    private static byte[] payload(int seed, int length){
+        byte[] payload = new byte[length];
+        for (int i = 0; i < length; i++){
+            payload[i] = (byte) (seed * 31 + i);
+        }
+        return payload;
+    }
+
+    private static PacketAnalysisResults analysis(String type, int prefixLength, int objectLength, int suffixLength){
+        PacketAnalysisResults results = new PacketAnalysisResults();
+        results.setType(type);
+        results.setFraming(prefixLength, objectLength, suffixLength);
+        results.setLengthField(0, prefixLength - 4);
+        return results;
+    }
+
+    private static void assertSameAnalysis(PacketAnalysisResults expected, PacketAnalysisResults actual){
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(expected.isSerializedObjectByteLengthFoundInPrefix(), actual.isSerializedObjectByteLengthFoundInPrefix());
+        assertEquals(expected.getPrefixLength(), actual.getPrefixLength());
+        assertEquals(expected.getSerializedObjectByteLength(), actual.getSerializedObjectByteLength());
+        assertEquals(expected.getSuffixLength(), actual.getSuffixLength());
+        assertEquals(expected.getLengthFieldOffset(), actual.getLengthFieldOffset());
+        assertEquals(expected.getLengthAdjustment(), actual.getLengthAdjustment());
+    }
+
+    @Test
+    void hashDependsOnTheBytesOnly(){
+        byte[] payload = payload(1, 37);
+        byte[] shifted = new byte[payload.length + 5];
+        System.arraycopy(payload, 0, shifted, 5, payload.length);
+        assertEquals(AnalysisResultCache.hash(payload, 0, payload.length), AnalysisResultCache.hash(shifted, 5, payload.length));
+        assertNotEquals(AnalysisResultCache.hash(payload, 0, payload.length), AnalysisResultCache.hash(payload, 0, payload.length - 1));
+        shifted[20] ^= 1;
+        assertNotEquals(AnalysisResultCache.hash(payload, 0, payload.length), AnalysisResultCache.hash(shifted, 5, payload.length));
+    }
+
+    @Test
+    void returnsACopyOfTheCachedAnalysis(){
+        AnalysisResultCache cache = new AnalysisResultCache("test");
+        byte[] payload = payload(1, 100);
+        long hash = AnalysisResultCache.hash(payload, 0, payload.length);
+        PacketAnalysisResults analysis = analysis("a.B", 8, 80, 12);
+        PacketAnalysisResults results = new PacketAnalysisResults();
+        assertFalse(cache.get(payload, 0, payload.length, hash, results));
+        cache.put(payload, 0, payload.length, hash, analysis);
+
+        byte[] packet = new byte[payload.length + 14];
+        System.arraycopy(payload, 0, packet, 14, payload.length);
+        assertTrue(cache.get(packet, 14, payload.length, hash, results));
+        assertSameAnalysis(analysis, results);
+
+        payload[50]++;
+        analysis.setType("changed");
+        assertTrue(cache.get(packet, 14, payload.length, hash, results));
+        assertEquals("a.B", results.getType());
+
+        CacheSnapshot snapshot = cache.snapshot();
+        assertEquals(1, snapshot.getEntries());
+        assertEquals(100, snapshot.getWeightBytes());
+        assertEquals(2, snapshot.getHits());
+        assertEquals(1, snapshot.getMisses());
+        assertEquals(0, snapshot.getEvictions());
+    }
+
+    @Test
+    void confirmsHashMatchesByComparingTheBytes(){
+        AnalysisResultCache cache = new AnalysisResultCache("test");
+        byte[] cached = payload(1, 64);
+        byte[] other = payload(2, 64);
+        cache.put(cached, 0, cached.length, 42, analysis("a.B", 4, 60, 0));
+        PacketAnalysisResults results = new PacketAnalysisResults();
+        assertFalse(cache.get(other, 0, other.length, 42, results));
+        assertNull(results.getType());
+        assertFalse(cache.get(cached, 0, cached.length - 1, 42, results));
+        assertTrue(cache.get(cached, 0, cached.length, 42, results));
+    }
+
+    @Test
+    void newPayloadsEvictTheirSlotAndReuseItsBuffer(){
+        AnalysisResultCache cache = new AnalysisResultCache("test", 2, 1024);
+        byte[] first = payload(1, 64);
+        byte[] second = payload(2, 16);
+        byte[] third = payload(3, 32);
+        PacketAnalysisResults results = new PacketAnalysisResults();
+        cache.put(first, 0, first.length, 0, analysis("first", 4, 60, 0));
+        cache.put(second, 0, second.length, 2, analysis("second", 4, 12, 0));
+        cache.put(third, 0, third.length, 1, analysis("third", 4, 28, 0));
+
+        assertFalse(cache.get(first, 0, first.length, 0, results));
+        assertTrue(cache.get(second, 0, second.length, 2, results));
+        assertEquals("second", results.getType());
+        assertTrue(cache.get(third, 0, third.length, 1, results));
+        assertEquals("third", results.getType());
+
+        CacheSnapshot snapshot = cache.snapshot();
+        assertEquals(2, snapshot.getEntries());
+        assertEquals(64 + 32, snapshot.getWeightBytes());
+        assertEquals(1, snapshot.getEvictions());
+    }
+
+    @Test
+    void doesntGrowBeyondTheMaximumWeight(){
+        AnalysisResultCache cache = new AnalysisResultCache("test", 4, 100);
+        byte[] small = payload(1, 60);
+        byte[] large = payload(2, 101);
+        byte[] medium = payload(3, 50);
+        PacketAnalysisResults results = new PacketAnalysisResults();
+        cache.put(small, 0, small.length, 0, analysis("small", 4, 56, 0));
+        cache.put(large, 0, large.length, 1, analysis("large", 4, 97, 0));
+        cache.put(medium, 0, medium.length, 2, analysis("medium", 4, 46, 0));
+        assertTrue(cache.get(small, 0, small.length, 0, results));
+        assertFalse(cache.get(large, 0, large.length, 1, results));
+        assertFalse(cache.get(medium, 0, medium.length, 2, results));
+        assertEquals(60, cache.snapshot().getWeightBytes());
+
+        cache.put(medium, 0, medium.length, 4, analysis("medium", 4, 46, 0));
+        assertTrue(cache.get(medium, 0, medium.length, 4, results));
+        assertEquals(60, cache.snapshot().getWeightBytes());
+    }
+
+    @Test
+    void readersNeverSeeAnotherPayloadsAnalysis(){
+        assertTimeoutPreemptively(Duration.ofSeconds(60), () -> {
+            AnalysisResultCache cache = new AnalysisResultCache("test", 2, 1024);
+            byte[][] payloads = {payload(1, 40), payload(2, 40), payload(3, 40)};
+            PacketAnalysisResults[] analyses = {analysis("one", 4, 36, 0), analysis("two", 8, 30, 2), analysis("three", 12, 20, 8)};
+            AtomicBoolean running = new AtomicBoolean(true);
+            AtomicLong hits = new AtomicLong();
+            Thread[] readers = new Thread[3];
+            Throwable[] failures = new Throwable[readers.length];
+            for (int r = 0; r < readers.length; r++){
+                int reader = r;
+                readers[r] = new Thread(() -> {
+                    PacketAnalysisResults results = new PacketAnalysisResults();
+                    try {
+                        for (int i = 0; running.get(); i++){
+                            int p = (i + reader) % payloads.length;
+                            if (cache.get(payloads[p], 0, payloads[p].length, 8, results)){
+                                assertSameAnalysis(analyses[p], results);
+                                hits.incrementAndGet();
+                            }
+                        }
+                    } catch (Throwable e){
+                        failures[reader] = e;
+                    }
+                });
+                readers[r].start();
+            }
+            for (int i = 0; i < 200_000 || hits.get() < 1000; i++){
+                int p = i % payloads.length;
+                cache.put(payloads[p], 0, payloads[p].length, 8, analyses[p]);
+            }
+            running.set(false);
+            for (Thread reader : readers){
+                reader.join();
+            }
+            for (Throwable failure : failures){
+                if (failure != null){ throw failure; }
+            }
+        });
+    }
+
+}
@@ -0,0 +1,159 @@
+package packetSinks;
+
+import flows.FlowKey;
+import metrics.CacheSnapshot;
+import org.junit.jupiter.api.Test;
+import packetSinks.FlowFramingDetector.Framing;
+import packetSinks.PacketDeserializer.PacketAnalysisResults;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FlowFramingDetectorTest {
+
+    private static FlowKey flow(int port){
+        return new FlowKey(4, 6, 0x0A000001, port, 0x0A000002, 11000);
+    }
+
+    private static PacketAnalysisResults framed(FlowKey flow, int lengthFieldOffset, int objectOffset){
+        PacketAnalysisResults results = new PacketAnalysisResults();
+        results.setFlow(flow.packAddresses(), flow.packPortsAndProtocol());
+        results.setType("a.B");
+        results.setFraming(objectOffset, 40, 0);
+        results.setLengthField(lengthFieldOffset, objectOffset - lengthFieldOffset - 4);
+        return results;
+    }
+
+    private static PacketAnalysisResults unframed(FlowKey flow){
+        PacketAnalysisResults results = new PacketAnalysisResults();
+        results.setFlow(flow.packAddresses(), flow.packPortsAndProtocol());
+        results.setType("a.B");
+        results.setFraming(10, 40, 0);
+        return results;
+    }
+
+    private static Framing get(FlowFramingDetector detector, FlowKey flow){
+        return detector.get(flow.packAddresses(), flow.packPortsAndProtocol());
+    }
+
+    private static void learn(FlowFramingDetector detector, FlowKey flow, int lengthFieldOffset, int objectOffset){
+        detector.recordSearched(framed(flow, lengthFieldOffset, objectOffset), get(detector, flow));
+    }
+
+    @Test
+    void learnsAFramingFromAnObjectWithItsLengthInThePrefix(){
+        FlowFramingDetector detector = new FlowFramingDetector("test");
+        FlowKey flow = flow(40000);
+        detector.recordSearched(unframed(flow), null);
+        PacketAnalysisResults noObject = framed(flow, 0, 4);
+        noObject.setType(null);
+        detector.recordSearched(noObject, null);
+        assertNull(get(detector, flow));
+
+        learn(detector, flow, 2, 10);
+        Framing framing = get(detector, flow);
+        assertNotNull(framing);
+        assertEquals(2, framing.lengthFieldOffset);
+        assertEquals(10, framing.objectOffset);
+        assertEquals(4, framing.lengthAdjustment);
+        assertNull(get(detector, flow(40001)));
+
+        learn(detector, flow, 2, 10);
+        assertSame(framing, get(detector, flow));
+        detector.recordFramed();
+        CacheSnapshot snapshot = detector.snapshot();
+        assertEquals(1, snapshot.getEntries());
+        assertEquals(1, snapshot.getHits());
+        assertEquals(4, snapshot.getMisses());
+        assertEquals(0, snapshot.getEvictions());
+    }
+
+    @Test
+    void confirmedFramingsSurviveObjectsFramedTheSameWayElsewhere(){
+        FlowFramingDetector detector = new FlowFramingDetector("test");
+        FlowKey flow = flow(40000);
+        learn(detector, flow, 0, 4);
+        Framing unconfirmed = get(detector, flow);
+        learn(detector, flow, 20, 24);
+        Framing relearnt = get(detector, flow);
+        assertNotSame(unconfirmed, relearnt);
+        assertEquals(24, relearnt.objectOffset);
+
+        learn(detector, flow, 0, 4);
+        Framing confirmed = get(detector, flow);
+        confirmed.confirm();
+        learn(detector, flow, 20, 24);
+        assertSame(confirmed, get(detector, flow));
+        learn(detector, flow, 0, 8);
+        assertEquals(8, get(detector, flow).objectOffset);
+        assertEquals(1, detector.snapshot().getEntries());
+    }
+
+    @Test
+    void forgetsAFramingWhenAnObjectTurnsUpWithoutIt(){
+        FlowFramingDetector detector = new FlowFramingDetector("test");
+        FlowKey flow = flow(40000);
+        learn(detector, flow, 0, 4);
+        Framing framing = get(detector, flow);
+        framing.confirm();
+        detector.recordSearched(unframed(flow), framing);
+        assertNull(get(detector, flow));
+        assertEquals(0, detector.snapshot().getEntries());
+        assertEquals(1, detector.snapshot().getEvictions());
+
+        learn(detector, flow, 0, 4);
+        Framing relearnt = get(detector, flow);
+        detector.forget(framing);
+        assertSame(relearnt, get(detector, flow));
+        detector.forget(relearnt);
+        assertNull(get(detector, flow));
+        assertEquals(0, detector.snapshot().getEntries());
+        assertEquals(2, detector.snapshot().getEvictions());
+    }
+
+    @Test
+    void newFlowsEvictAnUnconfirmedFramingFromTheirTwoSlots(){
+        FlowFramingDetector detector = new FlowFramingDetector("test", 2);
+        FlowKey first = flow(40000);
+        FlowKey second = flow(40001);
+        FlowKey third = flow(40002);
+        FlowKey fourth = flow(40003);
+        learn(detector, first, 0, 4);
+        learn(detector, second, 0, 4);
+        assertNotNull(get(detector, first));
+        assertNotNull(get(detector, second));
+        assertEquals(2, detector.snapshot().getEntries());
+        assertEquals(0, detector.snapshot().getEvictions());
+
+        get(detector, first).confirm();
+        learn(detector, third, 0, 4);
+        assertNotNull(get(detector, first));
+        assertNull(get(detector, second));
+        assertNotNull(get(detector, third));
+        assertEquals(1, detector.snapshot().getEvictions());
+
+        learn(detector, first, 2, 8);
+        assertEquals(8, get(detector, first).objectOffset);
+        assertNotNull(get(detector, third));
+        assertEquals(2, detector.snapshot().getEntries());
+        assertEquals(2, detector.snapshot().getEvictions());
+
+        get(detector, first).confirm();
+        learn(detector, fourth, 0, 4);
+        assertNotNull(get(detector, first));
+        assertNull(get(detector, third));
+        assertNotNull(get(detector, fourth));
+
+        get(detector, fourth).confirm();
+        learn(detector, second, 0, 4);
+        assertNotNull(get(detector, second));
+        assertTrue(get(detector, first) == null ^ get(detector, fourth) == null);
+        assertEquals(2, detector.snapshot().getEntries());
+        assertEquals(4, detector.snapshot().getEvictions());
+    }
+
+}
@@ -0,0 +1,128 @@
+package packetSinks;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderedWorkerPoolTest {
+
+    private static final int NUM_WORKERS = 4;
+    private static final int NUM_INPUTS = 5000;
+
+    private static int[] randomDelaysMicros(){
+        Random random = new Random(5);
+        int[] delays = new int[NUM_INPUTS];
+        for (int i = 0; i < delays.length; i++){
+            delays[i] = (random.nextInt(8) == 0 ? random.nextInt(2000) : random.nextInt(50));
+        }
+        return delays;
+    }
+
+    private static void submitAllAndShutDown(OrderedWorkerPool<Integer, Integer> pool) throws InterruptedException {
+        for (int i = 0; i < NUM_INPUTS; i++){
+            assertTrue(pool.submit(i));
+        }
+        pool.shutdown();
+        assertFalse(pool.submit(NUM_INPUTS));
+    }
+
+    @Test
+    void emitsInSubmissionOrderAndDrainsOnShutdown(){
+        assertTimeoutPreemptively(Duration.ofSeconds(60), () -> {
+            int[] delays = randomDelaysMicros();
+            List<Integer> emitted = Collections.synchronizedList(new ArrayList<>());
+            OrderedWorkerPool<Integer, Integer> pool = new OrderedWorkerPool<>("test", NUM_WORKERS, input -> {
+                LockSupport.parkNanos(delays[input] * 1000L);
+                return input * 3;
+            }, emitted::add);
+            submitAllAndShutDown(pool);
+            assertEquals(NUM_INPUTS, emitted.size());
+            for (int i = 0; i < NUM_INPUTS; i++){
+                assertEquals(i * 3, (int) emitted.get(i));
+            }
+        });
+    }
+
+    @Test
+    void skipsFailedInputsWithoutStallingTheOrder(){
+        assertTimeoutPreemptively(Duration.ofSeconds(60), () -> {
+            int[] delays = randomDelaysMicros();
+            List<Integer> emitted = Collections.synchronizedList(new ArrayList<>());
+            OrderedWorkerPool<Integer, Integer> pool = new OrderedWorkerPool<>("test", NUM_WORKERS, input -> {
+                LockSupport.parkNanos(delays[input] * 1000L);
+                if (input % 7 == 0){ throw new IllegalStateException("input " + input); }
+                return (input % 11 == 0 ? null : input);
+            }, output -> {
+                if (output % 13 == 0){ throw new IllegalStateException("output " + output); }
+                emitted.add(output);
+            });
+            submitAllAndShutDown(pool);
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < NUM_INPUTS; i++){
+                if (i % 7 != 0 && i % 11 != 0 && i % 13 != 0){ expected.add(i); }
+            }
+            assertEquals(expected, emitted);
+        });
+    }
+
+    @Test
+    void boundsTheInputsInFlight(){
+        assertTimeoutPreemptively(Duration.ofSeconds(60), () -> {
+            Object gate = new Object();
+            boolean[] open = new boolean[1];
+            List<Integer> emitted = Collections.synchronizedList(new ArrayList<>());
+            OrderedWorkerPool<Integer, Integer> pool = new OrderedWorkerPool<>("test", NUM_WORKERS, input -> {
+                if (input == 0){
+                    synchronized (gate){
+                        while (!open[0]){
+                            try {
+                                gate.wait();
+                            } catch (InterruptedException e){
+                                Thread.currentThread().interrupt();
+                                return null;
+                            }
+                        }
+                    }
+                }
+                return input;
+            }, emitted::add);
+            int window = pool.getMaxInFlight();
+            assertTrue(window >= NUM_WORKERS);
+            Thread submitter = new Thread(() -> {
+                try {
+                    for (int i = 0; i <= window; i++){
+                        pool.submit(i);
+                    }
+                } catch (InterruptedException e){
+                    Thread.currentThread().interrupt();
+                }
+            });
+            submitter.start();
+            while (submitter.getState() != Thread.State.WAITING){
+                Thread.sleep(1);
+            }
+            assertTrue(emitted.isEmpty());
+            synchronized (gate){
+                open[0] = true;
+                gate.notifyAll();
+            }
+            submitter.join();
+            pool.shutdown();
+            assertEquals(window + 1, emitted.size());
+            for (int i = 0; i <= window; i++){
+                assertEquals(i, (int) emitted.get(i));
+            }
+        });
+    }
+
+}
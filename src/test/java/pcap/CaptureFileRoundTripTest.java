@@ -0,0 +1,217 @@
+package pcap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import output.Compression;
+import output.FsyncPolicy;
+import output.GroupCommitSettings;
+import sniffer.CapturedPacket;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CaptureFileRoundTripTest {
+
+    private static final int LINKTYPE_ETHERNET = 1;
+    private static final int LINKTYPE_RAW = 101;
+    private static final int NUM_PACKETS = 5000;
+
+    @TempDir
+    File directory;
+
+    private static class Record {
+
+        private final long timestampNanos;
+        private final int originalLength;
+        private final int linkType;
+        private final byte[] data;
+
+        Record(long timestampNanos, int originalLength, int linkType, byte[] data){
+            this.timestampNanos = timestampNanos;
+            this.originalLength = originalLength;
+            this.linkType = linkType;
+            this.data = data;
+        }
+
+    }
+
+    /**
+     * Packets whose payloads are full of byte patterns that look like pcap record headers, so a split
+     * that resynchronizes on the wrong offset would show.
+     */
+    private static List<Record> records(boolean mixedLinkTypes){
+        Random random = new Random(3);
+        List<Record> records = new ArrayList<>();
+        long timestampNanos = 1_700_000_000_123_456_789L;
+        for (int i = 0; i < NUM_PACKETS; i++){
+            byte[] data = new byte[random.nextInt(600)];
+            random.nextBytes(data);
+            ByteBuffer fake = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+            for (int offset = 0; offset + 16 <= data.length; offset += 29){
+                fake.putInt(offset + 8, 20).putInt(offset + 12, 20);
+            }
+            timestampNanos += random.nextInt(2_000_000);
+            int linkType = (mixedLinkTypes && i % 3 == 0 ? LINKTYPE_RAW : LINKTYPE_ETHERNET);
+            records.add(new Record(timestampNanos, data.length + 1 + random.nextInt(10), linkType, data));
+        }
+        return records;
+    }
+
+    private static void write(File file, CaptureFileFormat format, List<Record> records, GroupCommitSettings settings) throws IOException {
+        try (CaptureFileWriter writer = new CaptureFileWriter(file, format, CaptureFileWriter.DEFAULT_SNAPLEN, settings)){
+            for (Record record : records){
+                assertTrue(writer.accepts(record.linkType));
+                writer.writePacket(record.timestampNanos, record.originalLength, record.linkType, record.data, 0, record.data.length);
+            }
+        }
+    }
+
+    private static List<CapturedPacket> read(CaptureFileReader reader) throws IOException {
+        List<CapturedPacket> packets = new ArrayList<>();
+        CapturedPacket packet;
+        while ((packet = reader.next()) != null){
+            packets.add(packet);
+        }
+        return packets;
+    }
+
+    private static List<CapturedPacket> read(File file) throws IOException {
+        try (CaptureFileReader reader = new CaptureFileReader(file)){
+            return read(reader);
+        }
+    }
+
+    private static void assertRecords(List<Record> expected, List<CapturedPacket> packets){
+        assertEquals(expected.size(), packets.size());
+        for (int i = 0; i < packets.size(); i++){
+            Record record = expected.get(i);
+            CapturedPacket packet = packets.get(i);
+            assertEquals(record.timestampNanos, packet.getTimestampNanos(), "timestamp of packet " + i);
+            assertEquals(record.originalLength, packet.getOriginalLength(), "original length of packet " + i);
+            assertEquals(record.linkType, packet.getDataLinkType(), "link type of packet " + i);
+            assertArrayEquals(record.data, packet.getRawData(), "data of packet " + i);
+        }
+    }
+
+    @Test
+    void pcapRoundTrip() throws IOException {
+        File file = new File(directory, "capture.pcap");
+        List<Record> records = records(false);
+        write(file, CaptureFileFormat.PCAP, records, GroupCommitSettings.DEFAULT);
+        assertRecords(records, read(file));
+    }
+
+    @Test
+    void pcapHoldsASingleLinkType() throws IOException {
+        try (CaptureFileWriter writer = new CaptureFileWriter(new File(directory, "single.pcap"), CaptureFileFormat.PCAP)){
+            writer.writePacket(0, 1, LINKTYPE_ETHERNET, new byte[1], 0, 1);
+            assertTrue(writer.accepts(LINKTYPE_ETHERNET));
+            assertFalse(writer.accepts(LINKTYPE_RAW));
+        }
+    }
+
+    @Test
+    void pcapngRoundTripWithSeveralLinkTypes() throws IOException {
+        File file = new File(directory, "capture.pcapng");
+        List<Record> records = records(true);
+        write(file, CaptureFileFormat.PCAPNG, records, GroupCommitSettings.DEFAULT);
+        assertRecords(records, read(file));
+    }
+
+    @Test
+    void compressedRoundTrip() throws IOException {
+        for (Compression compression : new Compression[]{Compression.GZIP, Compression.DEFLATE}){
+            File file = new File(directory, "capture.pcapng" + compression.getFileExtension());
+            List<Record> records = records(true);
+            write(file, CaptureFileFormat.PCAPNG, records, new GroupCommitSettings(64 * 1024, 1000, FsyncPolicy.NEVER, compression));
+            assertRecords(records, read(file));
+            assertEquals(1, CaptureFileReader.split(file, 4096).size());
+        }
+    }
+
+    @Test
+    void readsMicrosecondBigEndianPcap() throws IOException {
+        File file = new File(directory, "big-endian.pcap");
+        ByteBuffer bytes = ByteBuffer.allocate(24 + 2 * (16 + 4)).order(ByteOrder.BIG_ENDIAN);
+        bytes.putInt(CaptureFileWriter.PCAP_MICROSECOND_MAGIC).putShort((short) 2).putShort((short) 4).putInt(0).putInt(0).putInt(65535).putInt(LINKTYPE_RAW);
+        bytes.putInt(10).putInt(999_999).putInt(4).putInt(60).put(new byte[]{1, 2, 3, 4});
+        bytes.putInt(11).putInt(1).putInt(4).putInt(4).put(new byte[]{5, 6, 7, 8});
+        Files.write(file.toPath(), bytes.array());
+        List<Record> expected = Arrays.asList(new Record(10_999_999_000L, 60, LINKTYPE_RAW, new byte[]{1, 2, 3, 4}),
+                new Record(11_000_001_000L, 4, LINKTYPE_RAW, new byte[]{5, 6, 7, 8}));
+        assertRecords(expected, read(file));
+    }
+
+    @Test
+    void aTruncatedLastRecordEndsTheFile() throws IOException {
+        File file = new File(directory, "truncated.pcap");
+        List<Record> records = records(false).subList(0, 10);
+        write(file, CaptureFileFormat.PCAP, records, GroupCommitSettings.DEFAULT);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)){
+            channel.truncate(channel.size() - 1);
+        }
+        assertRecords(records.subList(0, 9), read(file));
+    }
+
+    @Test
+    void splitsReadTheSamePacketsAsTheWholeFile() throws IOException {
+        for (CaptureFileFormat format : CaptureFileFormat.values()){
+            File file = new File(directory, "split" + format.getFileExtension());
+            List<Record> records = records(format == CaptureFileFormat.PCAPNG);
+            write(file, format, records, GroupCommitSettings.DEFAULT);
+            for (long splitBytes : new long[]{1000, 4096, 65536, Long.MAX_VALUE}){
+                List<CaptureFileSplit> splits = CaptureFileReader.split(file, splitBytes);
+                assertEquals(splitBytes == Long.MAX_VALUE, splits.size() == 1);
+                List<CapturedPacket> packets = new ArrayList<>();
+                for (CaptureFileSplit split : splits){
+                    try (CaptureFileReader reader = new CaptureFileReader(split)){
+                        packets.addAll(read(reader));
+                    }
+                }
+                assertRecords(records, packets);
+            }
+        }
+    }
+
+    @Test
+    void aSplitWithoutARecordStartIsEmpty() throws IOException {
+        File file = new File(directory, "large-records.pcap");
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < 4; i++){
+            records.add(new Record(i * 1_000_000_000L, 60_000, LINKTYPE_RAW, new byte[60_000]));
+        }
+        write(file, CaptureFileFormat.PCAP, records, GroupCommitSettings.DEFAULT);
+        List<CaptureFileSplit> splits = CaptureFileReader.split(file, 1000);
+        int numEmptySplits = 0;
+        List<CapturedPacket> packets = new ArrayList<>();
+        for (CaptureFileSplit split : splits){
+            try (CaptureFileReader reader = new CaptureFileReader(split)){
+                List<CapturedPacket> splitPackets = read(reader);
+                if (splitPackets.isEmpty()){ numEmptySplits++; }
+                packets.addAll(splitPackets);
+            }
+        }
+        assertTrue(numEmptySplits > 0);
+        assertRecords(records, packets);
+        try (CaptureFileReader reader = new CaptureFileReader(splits.get(1))){
+            assertNull(reader.next());
+        }
+    }
+
+}
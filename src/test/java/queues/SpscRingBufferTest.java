@@ -0,0 +1,148 @@
+package queues;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpscRingBufferTest {
+
+    private static final int NUM_ELEMENTS = 1_000_000;
+
+    @Test
+    void roundsCapacityUpToAPowerOfTwo(){
+        assertEquals(1, new SpscRingBuffer<Integer>(1, OverflowPolicy.DROP_NEWEST, WaitStrategy.PARK).capacity());
+        assertEquals(8, new SpscRingBuffer<Integer>(5, OverflowPolicy.DROP_NEWEST, WaitStrategy.PARK).capacity());
+        assertEquals(8, new SpscRingBuffer<Integer>(8, OverflowPolicy.DROP_NEWEST, WaitStrategy.PARK).capacity());
+        assertThrows(IllegalArgumentException.class, () -> new SpscRingBuffer<Integer>(0, OverflowPolicy.BLOCK, WaitStrategy.PARK));
+        assertThrows(NullPointerException.class, () -> new SpscRingBuffer<Integer>(4, OverflowPolicy.BLOCK, WaitStrategy.PARK).offer(null));
+    }
+
+    @Test
+    void dropNewestRejectsOfferedElementsWhenFull(){
+        SpscRingBuffer<Integer> buffer = new SpscRingBuffer<>(4, OverflowPolicy.DROP_NEWEST, WaitStrategy.PARK);
+        for (int i = 0; i < 4; i++){
+            assertTrue(buffer.offer(i));
+        }
+        assertFalse(buffer.offer(4));
+        assertFalse(buffer.offer(5));
+        assertEquals(2, buffer.getNumDroppedNewest());
+        assertEquals(0, buffer.getNumDroppedOldest());
+        assertEquals(4, buffer.size());
+        assertEquals(0, buffer.remainingCapacity());
+        for (int i = 0; i < 4; i++){
+            assertEquals(i, buffer.poll());
+        }
+        assertNull(buffer.poll());
+        assertTrue(buffer.offer(6));
+        assertEquals(6, buffer.peek());
+    }
+
+    @Test
+    void dropOldestMakesRoomForOfferedElements(){
+        SpscRingBuffer<Integer> buffer = new SpscRingBuffer<>(4, OverflowPolicy.DROP_OLDEST, WaitStrategy.PARK);
+        for (int i = 0; i < 10; i++){
+            assertTrue(buffer.offer(i));
+        }
+        assertEquals(6, buffer.getNumDroppedOldest());
+        assertEquals(0, buffer.getNumDroppedNewest());
+        assertEquals(4, buffer.size());
+        for (int i = 6; i < 10; i++){
+            assertEquals(i, buffer.poll());
+        }
+        assertNull(buffer.poll());
+    }
+
+    @Test
+    void blockWaitsForTheConsumer() throws InterruptedException {
+        SpscRingBuffer<Integer> buffer = new SpscRingBuffer<>(2, OverflowPolicy.BLOCK, WaitStrategy.PARK);
+        buffer.offer(0);
+        buffer.offer(1);
+        CountDownLatch offered = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            buffer.offer(2);
+            offered.countDown();
+        });
+        producer.start();
+        assertFalse(offered.await(100, TimeUnit.MILLISECONDS));
+        assertEquals(0, buffer.poll());
+        assertTrue(offered.await(5, TimeUnit.SECONDS));
+        producer.join();
+        assertEquals(1, buffer.poll());
+        assertEquals(2, buffer.poll());
+        assertEquals(0, buffer.getNumDropped());
+    }
+
+    @Test
+    void blockGivesUpWhenTheProducerIsInterrupted() throws InterruptedException {
+        SpscRingBuffer<Integer> buffer = new SpscRingBuffer<>(1, OverflowPolicy.BLOCK, WaitStrategy.PARK);
+        buffer.offer(0);
+        AtomicBoolean accepted = new AtomicBoolean(true);
+        Thread producer = new Thread(() -> accepted.set(buffer.offer(1)));
+        producer.start();
+        producer.interrupt();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        assertFalse(accepted.get());
+        assertEquals(1, buffer.getNumDroppedNewest());
+        assertEquals(0, buffer.poll());
+    }
+
+    @Test
+    void pollTimesOutOnAnEmptyBuffer() throws InterruptedException {
+        SpscRingBuffer<Integer> buffer = new SpscRingBuffer<>(4, OverflowPolicy.BLOCK, WaitStrategy.YIELD);
+        long start = System.nanoTime();
+        assertNull(buffer.poll(20, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    @Test
+    void blockHandsOverEveryElementInOrder() throws InterruptedException {
+        SpscRingBuffer<Integer> buffer = new SpscRingBuffer<>(64, OverflowPolicy.BLOCK, WaitStrategy.YIELD);
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < NUM_ELEMENTS; i++){
+                buffer.offer(i);
+            }
+        });
+        producer.start();
+        for (int i = 0; i < NUM_ELEMENTS; i++){
+            assertEquals(i, buffer.take());
+        }
+        producer.join();
+        assertEquals(0, buffer.getNumDropped());
+    }
+
+    @Test
+    void dropOldestKeepsOrderAndCountsEveryDrop() throws InterruptedException {
+        SpscRingBuffer<Integer> buffer = new SpscRingBuffer<>(16, OverflowPolicy.DROP_OLDEST, WaitStrategy.YIELD);
+        AtomicBoolean done = new AtomicBoolean();
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < NUM_ELEMENTS; i++){
+                buffer.offer(i);
+            }
+            done.set(true);
+        });
+        producer.start();
+        long received = 0;
+        int last = -1;
+        Integer element;
+        while (!done.get() || !buffer.isEmpty()){
+            if ((element = buffer.poll()) != null){
+                assertTrue(element > last, element + " after " + last);
+                last = element;
+                received++;
+            }
+        }
+        producer.join();
+        assertEquals(NUM_ELEMENTS - 1, last);
+        assertEquals(NUM_ELEMENTS, received + buffer.getNumDroppedOldest());
+    }
+
+}
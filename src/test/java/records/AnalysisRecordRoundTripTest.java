@@ -0,0 +1,240 @@
+package records;
+
+import flows.FlowKey;
+import org.junit.jupiter.api.Test;
+import packetSinks.PacketDeserializer.PacketAnalysisResults;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AnalysisRecordRoundTripTest {
+
+    private static final FlowKey FLOW = new FlowKey(4, 6, 0x0A000001, 40000, 0x0A000002, 11000);
+    private static final int HEADER_LENGTH = 6;
+
+    private static PacketAnalysisResults results(long timestampNanos, FlowKey flow, String type, int prefixLength, int objectLength, int suffixLength){
+        byte[] buffer = new byte[3 + prefixLength + objectLength + suffixLength];
+        for (int i = 0; i < buffer.length; i++){
+            buffer[i] = (byte) (i * 37 + timestampNanos);
+        }
+        if (buffer.length > 3){ buffer[3] = (byte) 0xAC; }
+        PacketAnalysisResults results = new PacketAnalysisResults();
+        results.setTimestampNanos(timestampNanos);
+        results.setPacketLength(buffer.length + 54);
+        if (flow != null){ results.setFlow(flow.packAddresses(), flow.packPortsAndProtocol()); }
+        results.setType(type);
+        results.setSerializedObjectByteLengthFoundInPrefix(prefixLength >= 4);
+        results.setFraming(prefixLength, objectLength, suffixLength);
+        results.setPayload(buffer, 3, buffer.length - 3);
+        return results;
+    }
+
+    private static List<PacketAnalysisResults> sampleResults(){
+        List<PacketAnalysisResults> samples = new ArrayList<>();
+        samples.add(results(5_000_000_000L, FLOW, "java.lang.String", 4, 12, 2));
+        samples.add(results(5_000_000_100L, null, "java.util.ArrayList", 0, 40, 0));
+        samples.add(results(4_999_999_000L, FLOW, null, 0, 0, 0));
+        samples.add(results(4_999_999_500L, null, null, 2, 0, 3));
+        samples.add(results(6_000_000_000L, FLOW, "java.lang.String", 8, 300, 1));
+        return samples;
+    }
+
+    private static byte[] write(PayloadMode mode, List<PacketAnalysisResults> samples) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        AnalysisRecord record = new AnalysisRecord();
+        try (AnalysisRecordWriter writer = new AnalysisRecordWriter(bytes, mode)){
+            for (PacketAnalysisResults results : samples){
+                results.copyTo(record, mode);
+                writer.write(record);
+            }
+            assertEquals(samples.size(), writer.getNumRecords());
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<String> readBack(PayloadMode mode, List<PacketAnalysisResults> samples) throws IOException {
+        List<String> texts = new ArrayList<>();
+        try (AnalysisRecordReader reader = new AnalysisRecordReader(new ByteArrayInputStream(write(mode, samples)))){
+            assertEquals(mode, reader.getPayloadMode());
+            AnalysisRecord record = new AnalysisRecord();
+            for (PacketAnalysisResults results : samples){
+                assertTrue(reader.next(record));
+                assertEquals(results.getTimestampNanos(), record.getTimestampNanos());
+                assertEquals(results.getPacketLength(), record.getPacketLength());
+                assertEquals(results.hasFlow(), record.hasFlow());
+                assertEquals(results.getFlowAddresses(), record.getFlowAddresses());
+                assertEquals(results.getFlowPortsAndProtocol(), record.getFlowPortsAndProtocol());
+                assertEquals(results.hasFlow() ? FLOW : null, record.getFlowKey());
+                assertEquals(results.getType(), record.getType());
+                assertEquals(results.isSerializedObjectByteLengthFoundInPrefix(), record.isLengthFoundInPrefix());
+                assertEquals(results.getPrefixLength(), record.getPrefixLength());
+                assertEquals(results.getSerializedObjectByteLength(), record.getObjectLength());
+                assertEquals(results.getSuffixLength(), record.getSuffixLength());
+                assertEquals(results.getPayloadLength(), record.getPayloadLength());
+                assertArrayEquals(expectedStoredPayload(mode, results), storedPayload(record));
+                texts.add(record.toString());
+            }
+            assertFalse(reader.next(record));
+        }
+        return texts;
+    }
+
+    private static PayloadMode expectedContent(PayloadMode mode, PacketAnalysisResults results){
+        return (mode == PayloadMode.STORE_REFERENCE && !results.hasFlow() ? PayloadMode.FULL : mode);
+    }
+
+    private static byte[] expectedStoredPayload(PayloadMode mode, PacketAnalysisResults results){
+        byte[] buffer = results.getPayloadBuffer();
+        int offset = results.getPayloadOffset();
+        switch (expectedContent(mode, results)){
+            case FULL:
+                return Arrays.copyOfRange(buffer, offset, offset + results.getPayloadLength());
+            case FRAMING:
+                byte[] framing = new byte[results.getPrefixLength() + results.getSuffixLength()];
+                System.arraycopy(buffer, offset, framing, 0, results.getPrefixLength());
+                System.arraycopy(buffer, offset + results.getPayloadLength() - results.getSuffixLength(), framing, results.getPrefixLength(), results.getSuffixLength());
+                return framing;
+            default:
+                return new byte[0];
+        }
+    }
+
+    private static byte[] storedPayload(AnalysisRecord record){
+        byte[] stored = new byte[record.getStoredPayloadLength()];
+        System.arraycopy(record.getPayloadBytes(), 0, stored, 0, stored.length);
+        return stored;
+    }
+
+    @Test
+    void fullRecordsReadBackAsTheAnalysisSinkText() throws IOException {
+        List<PacketAnalysisResults> samples = sampleResults();
+        List<String> texts = readBack(PayloadMode.FULL, samples);
+        for (int i = 0; i < samples.size(); i++){
+            assertEquals(samples.get(i).toString(), texts.get(i));
+        }
+    }
+
+    @Test
+    void framingRecordsKeepOnlyPrefixAndSuffix() throws IOException {
+        List<PacketAnalysisResults> samples = sampleResults();
+        List<String> texts = readBack(PayloadMode.FRAMING, samples);
+        PacketAnalysisResults first = samples.get(0);
+        String full = first.toString();
+        String framing = texts.get(0);
+        assertEquals(full.substring(0, full.indexOf(", bytestream translation: ")), framing.substring(0, framing.indexOf(", bytestream translation: ")));
+        assertTrue(framing.endsWith(", bytestream translation: <" + first.getPayloadLength() + " bytes not stored>}"));
+    }
+
+    @Test
+    void storeReferenceRecordsFallBackToInlinePayloadsWithoutAFlow() throws IOException {
+        List<PacketAnalysisResults> samples = sampleResults();
+        List<String> texts = readBack(PayloadMode.STORE_REFERENCE, samples);
+        for (int i = 0; i < samples.size(); i++){
+            PacketAnalysisResults results = samples.get(i);
+            if (results.hasFlow()){
+                assertTrue(texts.get(i).contains("prefix: <" + results.getPrefixLength() + " bytes not stored>"));
+            } else {
+                assertEquals(results.toString(), texts.get(i));
+            }
+        }
+    }
+
+    @Test
+    void headerHoldsMagicVersionAndPayloadMode() throws IOException {
+        for (PayloadMode mode : PayloadMode.values()){
+            byte[] file = write(mode, new ArrayList<>());
+            assertArrayEquals(new byte[]{'P', 'S', 'A', 'R', AnalysisRecordWriter.VERSION, (byte) mode.ordinal()}, file);
+        }
+        byte[] file = write(PayloadMode.FULL, new ArrayList<>());
+        file[HEADER_LENGTH - 2] = AnalysisRecordWriter.VERSION + 1;
+        assertThrows(IOException.class, () -> new AnalysisRecordReader(new ByteArrayInputStream(file)));
+        file[0] = 'X';
+        assertThrows(IOException.class, () -> new AnalysisRecordReader(new ByteArrayInputStream(file)));
+    }
+
+    @Test
+    void timestampsAreZigZagDeltasAndLengthsAreVarints() throws IOException {
+        List<PacketAnalysisResults> samples = new ArrayList<>();
+        samples.add(results(0, null, null, 0, 0, 0));
+        samples.add(results(-1, null, null, 0, 0, 0));
+        samples.add(results(63, null, null, 0, 0, 0));
+        samples.get(0).setPacketLength(300);
+        byte[] file = write(PayloadMode.STORE_REFERENCE, samples);
+        int flags = AnalysisRecordWriter.FLAG_PAYLOAD_FULL;
+        byte[] expected = {
+                AnalysisRecordWriter.TAG_RECORD, (byte) flags, 0, (byte) 0xAC, 0x02, 0, 0, 0,
+                AnalysisRecordWriter.TAG_RECORD, (byte) flags, 1, 57, 0, 0, 0,
+                AnalysisRecordWriter.TAG_RECORD, (byte) flags, (byte) 0x80, 1, 57, 0, 0, 0
+        };
+        assertArrayEquals(expected, Arrays.copyOfRange(file, HEADER_LENGTH, file.length));
+
+        try (AnalysisRecordReader reader = new AnalysisRecordReader(new ByteArrayInputStream(file))){
+            AnalysisRecord record = new AnalysisRecord();
+            assertTrue(reader.next(record));
+            assertEquals(300, record.getPacketLength());
+            assertTrue(reader.next(record));
+            assertEquals(-1, record.getTimestampNanos());
+            assertTrue(reader.next(record));
+            assertEquals(63, record.getTimestampNanos());
+        }
+    }
+
+    @Test
+    void classNamesAreWrittenOnceInIdOrder() throws IOException {
+        List<PacketAnalysisResults> samples = new ArrayList<>();
+        samples.add(results(1, null, "a.B", 0, 0, 0));
+        samples.add(results(2, null, "c.\u00c9", 0, 0, 0));
+        samples.add(results(3, null, "a.B", 0, 0, 0));
+        byte[] file = write(PayloadMode.STORE_REFERENCE, samples);
+        int[] classIds = {1, 2, 1};
+        int numClasses = 0;
+        int position = HEADER_LENGTH;
+        for (int record = 0; record < samples.size(); record++){
+            if (file[position] == AnalysisRecordWriter.TAG_CLASS){
+                numClasses++;
+                assertEquals(numClasses, file[position + 1]);
+                position += 3 + file[position + 2];
+            }
+            assertEquals(AnalysisRecordWriter.TAG_RECORD, file[position]);
+            position += 2 + 1 + 1 + 1 + 3 + samples.get(record).getPayloadLength();
+            assertEquals(classIds[record], file[position - 4 - samples.get(record).getPayloadLength()]);
+        }
+        assertEquals(file.length, position);
+        assertEquals(2, numClasses);
+        assertEquals(samples.get(1).toString(), readBack(PayloadMode.STORE_REFERENCE, samples).get(1));
+
+        int secondClass = HEADER_LENGTH + 3 + 3 + 8;
+        assertEquals(AnalysisRecordWriter.TAG_CLASS, file[secondClass]);
+        file[secondClass + 1] = 3;
+        try (AnalysisRecordReader reader = new AnalysisRecordReader(new ByteArrayInputStream(file))){
+            AnalysisRecord record = new AnalysisRecord();
+            assertTrue(reader.next(record));
+            assertThrows(IOException.class, () -> reader.next(record));
+        }
+    }
+
+    @Test
+    void recordsWithoutTypeOrFlowLeaveThemUnset() throws IOException {
+        List<PacketAnalysisResults> samples = new ArrayList<>();
+        samples.add(results(7, null, null, 0, 0, 0));
+        try (AnalysisRecordReader reader = new AnalysisRecordReader(new ByteArrayInputStream(write(PayloadMode.FULL, samples)))){
+            AnalysisRecord record = new AnalysisRecord();
+            assertTrue(reader.next(record));
+            assertNull(record.getType());
+            assertNull(record.getFlowKey());
+            assertEquals("{type: null, length found: false, length: 0, prefix: , suffix: , bytestream translation: }", record.toString());
+        }
+    }
+
+}
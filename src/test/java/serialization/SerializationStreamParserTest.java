@@ -0,0 +1,129 @@
+package serialization;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SerializationStreamParserTest {
+
+    static class Message implements Serializable {
+
+        private static final long serialVersionUID = 7L;
+
+        private final int id;
+        private final String sender;
+        private final byte[] payload;
+        private final Message previous;
+        private transient Object ignored;
+
+        Message(int id, String sender, byte[] payload, Message previous){
+            this.id = id;
+            this.sender = sender;
+            this.payload = payload;
+            this.previous = previous;
+        }
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            out.defaultWriteObject();
+            out.writeLong(id * 31L);
+            out.writeObject(Arrays.asList("a", "b"));
+        }
+
+    }
+
+    private static byte[] serialize(Object o) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)){
+            out.writeObject(o);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object[] samples(){
+        Map<String, Object> map = new HashMap<>();
+        map.put("key", 42L);
+        map.put("nested", new ArrayList<>(Arrays.asList(1, 2.5, "three")));
+        List<Object> cyclic = new ArrayList<>();
+        cyclic.add(cyclic);
+        Message first = new Message(1, "replica-0", new byte[]{1, 2, 3}, null);
+        return new Object[]{
+                "a string", 17, new int[]{1, 2, 3}, new String[][]{{"x"}, {"y", "z"}}, TimeUnit.SECONDS,
+                map, cyclic, first, new Message(2, "replica-1", new byte[100_000], first), new StringBuilder(70_000).append(new char[70_000]).toString()
+        };
+    }
+
+    @Test
+    void matchesObjectOutputStream() throws IOException {
+        SerializationStreamParser parser = new SerializationStreamParser();
+        for (Object sample : samples()){
+            byte[] bytes = serialize(sample);
+            assertTrue(parser.parse(bytes, 0, bytes.length), sample.getClass().getName());
+            assertEquals(sample.getClass().getName(), parser.getTypeName());
+            assertEquals(bytes.length, parser.getSerializedLength(), sample.getClass().getName());
+        }
+    }
+
+    @Test
+    void listsReferencedClasses() throws IOException {
+        SerializationStreamParser parser = new SerializationStreamParser();
+        byte[] bytes = serialize(samples()[8]);
+        assertTrue(parser.parse(bytes, 0, bytes.length));
+        assertTrue(parser.getClassNames().contains(Message.class.getName()));
+        assertTrue(parser.getClassNames().contains("[B"));
+    }
+
+    @Test
+    void parsesAtAnOffsetAndIgnoresTrailingBytes() throws IOException {
+        SerializationStreamParser parser = new SerializationStreamParser();
+        byte[] bytes = serialize(samples()[5]);
+        byte[] framed = new byte[bytes.length + 20];
+        System.arraycopy(bytes, 0, framed, 7, bytes.length);
+        assertTrue(parser.parse(framed, 7, framed.length - 7));
+        assertEquals(bytes.length, parser.getSerializedLength());
+        assertEquals(HashMap.class.getName(), parser.getTypeName());
+    }
+
+    @Test
+    void repeatedParsesUseTheCacheConsistently() throws IOException {
+        SerializationStreamParser parser = new SerializationStreamParser();
+        for (int i = 0; i < 3; i++){
+            for (Object sample : samples()){
+                byte[] bytes = serialize(sample);
+                assertTrue(parser.parse(bytes, 0, bytes.length));
+                assertEquals(bytes.length, parser.getSerializedLength());
+            }
+        }
+    }
+
+    @Test
+    void reportsTruncatedStreams() throws IOException {
+        SerializationStreamParser parser = new SerializationStreamParser();
+        byte[] bytes = serialize(samples()[8]);
+        for (int length : new int[]{3, bytes.length / 2, bytes.length - 1}){
+            assertFalse(parser.parse(bytes, 0, length));
+            assertTrue(parser.isTruncated(), "cut at " + length);
+        }
+    }
+
+    @Test
+    void rejectsOtherBytes(){
+        SerializationStreamParser parser = new SerializationStreamParser();
+        byte[] bytes = "not a serialized object".getBytes();
+        assertFalse(parser.parse(bytes, 0, bytes.length));
+        assertFalse(parser.isTruncated());
+    }
+
+}
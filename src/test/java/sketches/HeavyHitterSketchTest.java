@@ -0,0 +1,210 @@
+package sketches;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HeavyHitterSketchTest {
+
+    private static final int NUM_KEYS = 100_000;
+    private static final int STREAM_LENGTH = 500_000;
+    private static final int TOP_K_CAPACITY = 200;
+
+    /**
+     * Keys drawn with probability roughly proportional to 1 / key, like the flow sizes of real traffic.
+     */
+    private static long[] zipfStream(long seed){
+        Random random = new Random(seed);
+        long[] stream = new long[STREAM_LENGTH];
+        for (int i = 0; i < stream.length; i++){
+            stream[i] = (long) Math.pow(NUM_KEYS, random.nextDouble());
+        }
+        return stream;
+    }
+
+    private static Map<Long, Long> exactCounts(long[]... streams){
+        Map<Long, Long> counts = new HashMap<>();
+        for (long[] stream : streams){
+            for (long key : stream){
+                counts.merge(key, 1L, Long::sum);
+            }
+        }
+        return counts;
+    }
+
+    private static long hash(long key){
+        long z = key + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static CountMinSketch sketch(long[] stream){
+        CountMinSketch sketch = CountMinSketch.withErrorBounds(0.001, 0.001);
+        for (long key : stream){
+            sketch.add(hash(key), 1);
+        }
+        return sketch;
+    }
+
+    private static SpaceSaving<Long> topK(long[] stream){
+        SpaceSaving<Long> topK = new SpaceSaving<>(TOP_K_CAPACITY, UnaryOperator.identity());
+        for (long key : stream){
+            topK.add(key, 1);
+        }
+        return topK;
+    }
+
+    private static void assertSketchBounds(CountMinSketch sketch, Map<Long, Long> exact){
+        long bound = sketch.getErrorBound();
+        int numOverBound = 0;
+        for (Map.Entry<Long, Long> key : exact.entrySet()){
+            long estimate = sketch.estimate(hash(key.getKey()));
+            assertTrue(estimate >= key.getValue(), "undercounted " + key);
+            if (estimate - key.getValue() > bound){ numOverBound++; }
+        }
+        assertTrue(numOverBound <= exact.size() * sketch.getDelta(), numOverBound + " estimates over the bound");
+    }
+
+    private static void assertTopKBounds(SpaceSaving<Long> topK, Map<Long, Long> exact){
+        long bound = topK.getErrorBound();
+        for (SpaceSaving.Counter<Long> counter : topK.getCounters()){
+            long count = exact.getOrDefault(counter.getKey(), 0L);
+            assertTrue(counter.getCount() >= count, "undercounted " + counter);
+            assertTrue(counter.getCount() - counter.getError() <= count, "guaranteed count too high for " + counter);
+            assertTrue(counter.getError() <= bound, "error over the bound for " + counter);
+        }
+        for (Map.Entry<Long, Long> key : exact.entrySet()){
+            assertTrue(topK.estimate(key.getKey()) >= key.getValue());
+            if (key.getValue() > bound){
+                assertTrue(topK.getCounters().stream().anyMatch(counter -> counter.getKey().equals(key.getKey())), "heavy hitter " + key + " missing");
+            }
+        }
+    }
+
+    @Test
+    void countMinEstimatesStayWithinTheErrorBound(){
+        long[] stream = zipfStream(1);
+        CountMinSketch sketch = sketch(stream);
+        assertEquals(STREAM_LENGTH, sketch.getTotalCount());
+        assertSketchBounds(sketch, exactCounts(stream));
+    }
+
+    @Test
+    void mergedCountMinSketchEqualsTheSketchOfBothStreams(){
+        long[] first = zipfStream(2);
+        long[] second = zipfStream(3);
+        CountMinSketch merged = sketch(first);
+        merged.merge(sketch(second));
+        long[] both = new long[first.length + second.length];
+        System.arraycopy(first, 0, both, 0, first.length);
+        System.arraycopy(second, 0, both, first.length, second.length);
+        CountMinSketch combined = sketch(both);
+        assertEquals(combined.getTotalCount(), merged.getTotalCount());
+        for (long key = 0; key < NUM_KEYS; key++){
+            assertEquals(combined.estimate(hash(key)), merged.estimate(hash(key)));
+        }
+        assertSketchBounds(merged, exactCounts(first, second));
+        assertThrows(IllegalArgumentException.class, () -> merged.merge(new CountMinSketch(16, 2)));
+    }
+
+    @Test
+    void countMinSketchRoundTripsThroughAStream() throws IOException {
+        CountMinSketch sketch = sketch(zipfStream(4));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        sketch.writeTo(new DataOutputStream(bytes));
+        CountMinSketch read = CountMinSketch.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(sketch.getTotalCount(), read.getTotalCount());
+        for (long key = 0; key < 1000; key++){
+            assertEquals(sketch.estimate(hash(key)), read.estimate(hash(key)));
+        }
+    }
+
+    @Test
+    void spaceSavingKeepsEveryHeavyHitterWithinTheErrorBound(){
+        long[] stream = zipfStream(5);
+        SpaceSaving<Long> topK = topK(stream);
+        assertEquals(TOP_K_CAPACITY, topK.size());
+        assertTopKBounds(topK, exactCounts(stream));
+        List<SpaceSaving.Counter<Long>> counters = topK.getCounters();
+        for (int i = 1; i < counters.size(); i++){
+            assertTrue(counters.get(i - 1).getCount() >= counters.get(i).getCount());
+        }
+    }
+
+    @Test
+    void mergedSpaceSavingKeepsTheBoundsOfBothStreams(){
+        long[] first = zipfStream(6);
+        long[] second = zipfStream(7);
+        SpaceSaving<Long> merged = topK(first);
+        merged.merge(topK(second));
+        assertEquals(2L * STREAM_LENGTH, merged.getTotalCount());
+        assertTrue(merged.size() <= TOP_K_CAPACITY);
+        assertTopKBounds(merged, exactCounts(first, second));
+    }
+
+    @Test
+    void spaceSavingCopiesOnlyAdmittedProbeKeys(){
+        SpaceSaving<HeavyHitterKey> topK = new SpaceSaving<>(2, HeavyHitterKey::copy);
+        HeavyHitterKey probe = new HeavyHitterKey();
+        topK.add(probe.set(false, 0, 0, "a"), 5);
+        topK.add(probe.set(false, 0, 0, "b"), 3);
+        topK.add(probe.set(false, 0, 0, "a"), 1);
+        topK.add(probe.set(false, 0, 0, "c"), 1);
+        List<SpaceSaving.Counter<HeavyHitterKey>> counters = topK.getCounters();
+        assertEquals("a", counters.get(0).getKey().getType());
+        assertEquals(6, counters.get(0).getCount());
+        assertEquals("c", counters.get(1).getKey().getType());
+        assertEquals(4, counters.get(1).getCount());
+        assertEquals(3, counters.get(1).getError());
+        for (SpaceSaving.Counter<HeavyHitterKey> counter : counters){
+            assertNotSame(probe, counter.getKey());
+        }
+    }
+
+    @Test
+    void summariesMergeTheSameAfterARoundTrip() throws IOException {
+        HeavyHitterSettings settings = new HeavyHitterSettings(64, 0.001, 0.01);
+        HeavyHitterSummary first = new HeavyHitterSummary(settings);
+        HeavyHitterSummary second = new HeavyHitterSummary(settings);
+        Random random = new Random(8);
+        for (int i = 0; i < 100_000; i++){
+            int flow = (int) Math.pow(1000, random.nextDouble());
+            String type = (random.nextInt(4) == 0 ? null : "Type" + flow % 5);
+            (i % 2 == 0 ? first : second).record(true, flow, 11000, type);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        second.writeTo(bytes);
+        HeavyHitterSummary mergedCopy = first.copy();
+        mergedCopy.merge(HeavyHitterSummary.readFrom(new ByteArrayInputStream(bytes.toByteArray())));
+        first.merge(second);
+        for (HeavyHitterView view : HeavyHitterView.values()){
+            assertEquals(first.getTotalCount(view), mergedCopy.getTotalCount(view));
+            List<HeavyHitterSummary.HeavyHitter> expected = first.top(view, 10);
+            List<HeavyHitterSummary.HeavyHitter> actual = mergedCopy.top(view, 10);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++){
+                assertEquals(expected.get(i).getCount(), actual.get(i).getCount());
+                assertNotNull(actual.get(i).getKey());
+            }
+        }
+        assertEquals(100_000, first.getTotalCount(HeavyHitterView.FLOW));
+        assertThrows(IllegalArgumentException.class, () -> first.merge(new HeavyHitterSummary(new HeavyHitterSettings(32, 0.001, 0.01))));
+    }
+
+}
@@ -0,0 +1,153 @@
+package store;
+
+import flows.FlowKey;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PacketStoreTest {
+
+    private static final int SEGMENT_BYTES = 64 * 1024;
+    private static final int NUM_PACKETS = 2000;
+    private static final int NUM_FLOWS = 5;
+
+    @TempDir
+    File directory;
+
+    private static FlowKey flow(int packet){
+        return new FlowKey(4, 6, 0x0A000001, 40000 + packet % NUM_FLOWS, 0x0A000002, 11000);
+    }
+
+    private static byte[] data(int packet){
+        byte[] data = new byte[20 + packet % 97];
+        for (int i = 0; i < data.length; i++){
+            data[i] = (byte) (packet + i);
+        }
+        return data;
+    }
+
+    private static void append(PacketStore store, int packet) throws IOException {
+        byte[] data = data(packet);
+        FlowKey flow = flow(packet);
+        assertTrue(store.append(1000L + packet, data.length + 4, 1, flow.packAddresses(), flow.packPortsAndProtocol(), data, 0, data.length));
+    }
+
+    private static List<StoredPacket> query(PacketStore store, PacketQuery query) throws IOException {
+        List<StoredPacket> packets = new ArrayList<>();
+        store.query(query, packets::add);
+        return packets;
+    }
+
+    private static void assertPackets(List<StoredPacket> packets, int from, int to, int step){
+        assertEquals((to - from + step - 1) / step, packets.size());
+        for (int i = 0; i < packets.size(); i++){
+            int packet = from + i * step;
+            StoredPacket stored = packets.get(i);
+            assertEquals(1000L + packet, stored.getTimestampNanos());
+            assertEquals(flow(packet), stored.getFlowKey());
+            assertArrayEquals(data(packet), stored.toCapturedPacket().getRawData());
+        }
+    }
+
+    @Test
+    void queriesByTimeAndConnection() throws IOException {
+        try (PacketStore store = new PacketStore(directory, SEGMENT_BYTES)){
+            for (int packet = 0; packet < NUM_PACKETS; packet++){
+                append(store, packet);
+            }
+            assertTrue(store.getNumSegments() > 1);
+            assertPackets(query(store, new PacketQuery(PacketQuery.UNBOUNDED_START, PacketQuery.UNBOUNDED_END)), 0, NUM_PACKETS, 1);
+            assertPackets(query(store, new PacketQuery(1500, 1700)), 500, 700, 1);
+            assertPackets(query(store, new PacketQuery(PacketQuery.UNBOUNDED_START, PacketQuery.UNBOUNDED_END, flow(3))), 3, NUM_PACKETS, NUM_FLOWS);
+        }
+    }
+
+    @Test
+    void reopensSealedSegmentsFromTheirIndex() throws IOException {
+        try (PacketStore store = new PacketStore(directory, SEGMENT_BYTES)){
+            for (int packet = 0; packet < NUM_PACKETS; packet++){
+                append(store, packet);
+            }
+        }
+        try (PacketStore store = new PacketStore(directory, SEGMENT_BYTES)){
+            assertPackets(query(store, new PacketQuery(PacketQuery.UNBOUNDED_START, PacketQuery.UNBOUNDED_END)), 0, NUM_PACKETS, 1);
+            append(store, NUM_PACKETS);
+            assertPackets(query(store, new PacketQuery(PacketQuery.UNBOUNDED_START, PacketQuery.UNBOUNDED_END)), 0, NUM_PACKETS + 1, 1);
+        }
+    }
+
+    @Test
+    void rebuildsTheIndexOfASegmentLeftOpen() throws IOException {
+        File crashed = crashedCopy(NUM_PACKETS);
+        try (PacketStore store = new PacketStore(crashed, SEGMENT_BYTES)){
+            assertPackets(query(store, new PacketQuery(PacketQuery.UNBOUNDED_START, PacketQuery.UNBOUNDED_END)), 0, NUM_PACKETS, 1);
+        }
+        assertTrue(new File(crashed, Segment.fileName(lastSegmentId(crashed), Segment.INDEX_FILE_EXTENSION)).isFile());
+    }
+
+    @Test
+    void rebuildStopsBeforeATruncatedRecord() throws IOException {
+        File crashed = crashedCopy(NUM_PACKETS);
+        File lastSegment = new File(crashed, Segment.fileName(lastSegmentId(crashed), Segment.DATA_FILE_EXTENSION));
+        int numKept = NUM_PACKETS - 10;
+        try (FileChannel channel = FileChannel.open(lastSegment.toPath(), StandardOpenOption.WRITE)){
+            channel.truncate(offsetOfPacket(lastSegment, numKept) + Segment.RECORD_HEADER_LENGTH + 3);
+        }
+        try (PacketStore store = new PacketStore(crashed, SEGMENT_BYTES)){
+            assertPackets(query(store, new PacketQuery(PacketQuery.UNBOUNDED_START, PacketQuery.UNBOUNDED_END)), 0, numKept, 1);
+            append(store, numKept);
+            assertPackets(query(store, new PacketQuery(PacketQuery.UNBOUNDED_START, PacketQuery.UNBOUNDED_END)), 0, numKept + 1, 1);
+        }
+    }
+
+    /**
+     * A copy of a store whose last segment was never sealed, as a crash leaves it: full length, with no
+     * index and zeros after the last record.
+     */
+    private File crashedCopy(int numPackets) throws IOException {
+        File original = new File(directory, "original");
+        File crashed = new File(directory, "crashed");
+        PacketStore store = new PacketStore(original, SEGMENT_BYTES);
+        for (int packet = 0; packet < numPackets; packet++){
+            append(store, packet);
+        }
+        store.flush();
+        assertTrue(crashed.mkdirs());
+        for (File file : original.listFiles()){
+            Files.copy(file.toPath(), new File(crashed, file.getName()).toPath());
+        }
+        assertFalse(new File(crashed, Segment.fileName(lastSegmentId(crashed), Segment.INDEX_FILE_EXTENSION)).exists());
+        return crashed;
+    }
+
+    private static int lastSegmentId(File directory){
+        int id = 0;
+        while (new File(directory, Segment.fileName(id + 1, Segment.DATA_FILE_EXTENSION)).exists()){
+            id++;
+        }
+        return id;
+    }
+
+    private static long offsetOfPacket(File segment, int packet) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(segment.toPath()));
+        int position = 0;
+        while (data.getLong(position + 4) != 1000L + packet){
+            position += Segment.RECORD_HEADER_LENGTH + data.getInt(position);
+        }
+        return position;
+    }
+
+}
@@ -0,0 +1,157 @@
+package windows;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WindowedAggregatorTest {
+
+    private static final long PANE_MILLIS = 10;
+    private static final long PANE_NANOS = TimeUnit.MILLISECONDS.toNanos(PANE_MILLIS);
+    private static final int SLIDING_PANES = 4;
+    private static final int RETAINED_PANES = 8;
+    private static final int NUM_EVENTS = 20_000;
+
+    private static class Collector implements WindowedAggregator.WindowListener<String> {
+
+        private final TreeMap<Long, WindowSnapshot<String>> panes = new TreeMap<>();
+        private final Map<Long, WindowSnapshot<String>> slidingWindows = new HashMap<>();
+        private final List<Long> order = new ArrayList<>();
+
+        @Override
+        public void onPaneClosed(WindowSnapshot<String> pane, WindowSnapshot<String> slidingWindow) {
+            long index = pane.getStartNanos() / PANE_NANOS;
+            assertEquals(pane.getStartNanos() + PANE_NANOS, pane.getEndNanos());
+            assertNull(panes.put(index, pane), "pane " + index + " closed twice");
+            slidingWindows.put(index, slidingWindow);
+            order.add(index);
+        }
+
+    }
+
+    private static class Pane {
+
+        private final Map<String, Long> counts = new HashMap<>();
+        private long packets;
+        private long bytes;
+
+    }
+
+    @Test
+    void emittedPanesAccountForEveryEvent(){
+        Random random = new Random(17);
+        Collector collector = new Collector();
+        WindowedAggregator<String> aggregator = new WindowedAggregator<>(new WindowSettings(PANE_MILLIS, SLIDING_PANES, RETAINED_PANES, 1000), collector);
+        Map<Long, Pane> expected = new HashMap<>();
+        long currentPane = Long.MIN_VALUE;
+        long numLate = 0;
+        long time = TimeUnit.SECONDS.toNanos(1000);
+        for (int event = 0; event < NUM_EVENTS; event++){
+            int jump = random.nextInt(1000);
+            if (jump == 0){
+                time += PANE_NANOS * (RETAINED_PANES + 1 + random.nextInt(5));
+            } else if (jump < 10){
+                time += PANE_NANOS * (2 + random.nextInt(RETAINED_PANES - 1));
+            } else {
+                time += random.nextInt(300_000);
+            }
+            long timestamp = (random.nextInt(10) == 0 ? time - random.nextInt((int) (3 * PANE_NANOS)) : time);
+            String key = "k" + random.nextInt(20);
+            long numBytes = 40 + random.nextInt(1460);
+            aggregator.record(timestamp, key, numBytes);
+
+            long pane = Math.floorDiv(timestamp, PANE_NANOS);
+            currentPane = Math.max(currentPane, pane);
+            if (pane < currentPane){
+                numLate++;
+            } else {
+                Pane counts = expected.computeIfAbsent(pane, index -> new Pane());
+                counts.counts.merge(key, 1L, Long::sum);
+                counts.packets++;
+                counts.bytes += numBytes;
+            }
+        }
+        aggregator.flush();
+
+        assertTrue(numLate > 0);
+        assertEquals(numLate, aggregator.getNumLatePackets());
+        long emittedPackets = 0;
+        int numGapPanes = 0;
+        for (Map.Entry<Long, WindowSnapshot<String>> entry : collector.panes.entrySet()){
+            WindowSnapshot<String> pane = entry.getValue();
+            Pane counts = expected.get(entry.getKey());
+            if (counts == null){
+                numGapPanes++;
+                assertEquals(0, pane.getPackets());
+                assertEquals(0, pane.getBytes());
+                assertTrue(pane.getCounts().isEmpty());
+            } else {
+                assertEquals(counts.packets, pane.getPackets());
+                assertEquals(counts.bytes, pane.getBytes());
+                assertEquals(counts.counts, pane.getCounts());
+            }
+            assertEquals(0, pane.getOverflowPackets());
+            emittedPackets += pane.getPackets();
+        }
+        assertTrue(numGapPanes > 0);
+        assertTrue(collector.panes.keySet().containsAll(expected.keySet()));
+        assertEquals(NUM_EVENTS, emittedPackets + numLate);
+
+        int numResets = 0;
+        for (int i = 1; i < collector.order.size(); i++){
+            long gap = collector.order.get(i) - collector.order.get(i - 1);
+            assertTrue(gap == 1 || gap > RETAINED_PANES, "gap of " + gap + " panes");
+            if (gap > 1){ numResets++; }
+        }
+        assertTrue(numResets > 0);
+
+        for (Map.Entry<Long, WindowSnapshot<String>> entry : collector.slidingWindows.entrySet()){
+            long index = entry.getKey();
+            WindowSnapshot<String> slidingWindow = entry.getValue();
+            WindowSnapshot<String> sum = collector.panes.get(index);
+            for (long pane = index - SLIDING_PANES + 1; pane < index; pane++){
+                if (collector.panes.containsKey(pane)){ sum = sum.merge(collector.panes.get(pane)); }
+            }
+            assertEquals((index - SLIDING_PANES + 1) * PANE_NANOS, slidingWindow.getStartNanos());
+            assertEquals((index + 1) * PANE_NANOS, slidingWindow.getEndNanos());
+            assertEquals(sum.getPackets(), slidingWindow.getPackets());
+            assertEquals(sum.getBytes(), slidingWindow.getBytes());
+            assertEquals(sum.getCounts(), slidingWindow.getCounts());
+        }
+    }
+
+    @Test
+    void ringResetsWhenTheGapExceedsTheRetainedPanes(){
+        Collector collector = new Collector();
+        WindowedAggregator<String> aggregator = new WindowedAggregator<>(new WindowSettings(PANE_MILLIS, 1, RETAINED_PANES, 1000), collector);
+        aggregator.record(0, "a", 10);
+        aggregator.record(PANE_NANOS, "a", 10);
+        aggregator.record(PANE_NANOS * RETAINED_PANES, "b", 10);
+        assertEquals(RETAINED_PANES, collector.order.size());
+        assertEquals(2, aggregator.mergeLast(RETAINED_PANES).getPackets());
+
+        aggregator.record(PANE_NANOS * (2 * RETAINED_PANES + 1), "c", 10);
+        assertEquals(RETAINED_PANES + 1, collector.order.size());
+        WindowSnapshot<String> retained = aggregator.mergeLast(RETAINED_PANES);
+        assertEquals(1, retained.getPackets());
+        assertEquals(1, retained.getCounts().size());
+        assertEquals(1L, (long) retained.getCounts().get("c"));
+
+        aggregator.record(PANE_NANOS, "a", 10);
+        assertEquals(1, aggregator.getNumLatePackets());
+        for (WindowSnapshot<String> slidingWindow : collector.slidingWindows.values()){
+            assertNull(slidingWindow);
+        }
+    }
+
+}